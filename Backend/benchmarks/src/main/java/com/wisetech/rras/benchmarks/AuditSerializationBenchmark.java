@@ -0,0 +1,58 @@
+package com.wisetech.rras.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metric metadata and audit row JSON, built the way the calculation services
+ * build them (fresh HashMaps, the shared ObjectMapper from JacksonConfig)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuditSerializationBenchmark {
+
+    private final ObjectMapper objectMapper = KernelFactory.OBJECT_MAPPER;
+
+    @Benchmark
+    public String metricMetadata() throws JsonProcessingException {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("description", "Total Risk Weighted Assets");
+        metadata.put("loan_count", 1_000_000);
+        metadata.put("calculation_date", ZonedDateTime.now().toString());
+        metadata.put("methodology", "Basel III Standardized Approach - Lesotho CBL");
+        return objectMapper.writeValueAsString(metadata);
+    }
+
+    @Benchmark
+    public String auditRecord() throws JsonProcessingException {
+        Map<String, Object> inputData = new HashMap<>();
+        inputData.put("total_loan_count", 1_000_000);
+        inputData.put("npl_loan_count", 25_000);
+
+        Map<String, Object> outputData = new HashMap<>();
+        outputData.put("npl_amount", new BigDecimal("2113842193.40"));
+        outputData.put("total_amount", new BigDecimal("84512337421.17"));
+        outputData.put("npl_ratio", new BigDecimal("2.5012"));
+
+        return objectMapper.writeValueAsString(inputData) + objectMapper.writeValueAsString(outputData);
+    }
+}
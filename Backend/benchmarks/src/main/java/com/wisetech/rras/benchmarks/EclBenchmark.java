@@ -0,0 +1,64 @@
+package com.wisetech.rras.benchmarks;
+
+import com.wisetech.rras.calculationengine.domain.LoanExposureSnapshot;
+import com.wisetech.rras.calculationengine.service.ECLCalculationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IFRS 9 staging and per-loan ECL; one operation is one loan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EclBenchmark {
+
+    static final int BOOK_SIZE = 10_000;
+
+    private ECLCalculationService eclService;
+    private List<LoanExposureSnapshot> loans;
+    private Integer[] stages;
+
+    @Setup
+    public void setUp() {
+        eclService = KernelFactory.create(ECLCalculationService.class);
+        loans = LoanBookGenerator.generate(BOOK_SIZE, LoanBookGenerator.DEFAULT_SEED);
+
+        stages = new Integer[BOOK_SIZE];
+        for (int i = 0; i < BOOK_SIZE; i++) {
+            stages[i] = eclService.determineStage(loans.get(i));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOOK_SIZE)
+    public void determineStage(Blackhole blackhole) {
+        for (LoanExposureSnapshot loan : loans) {
+            blackhole.consume(eclService.determineStage(loan));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOOK_SIZE)
+    public void calculateLoanECL(Blackhole blackhole) {
+        for (int i = 0; i < BOOK_SIZE; i++) {
+            blackhole.consume(eclService.calculateLoanECL(loans.get(i), stages[i]));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.wisetech.rras.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wisetech.rras.calculationengine.config.JacksonConfig;
+import org.springframework.beans.SimpleTypeConverter;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+
+/**
+ * Builds calculation services outside Spring for the per-loan kernels. Repositories
+ * and other collaborators are left null, since the kernels never touch them, and
+ * every @Value field gets the default from its own placeholder, so the benchmarks
+ * run with the same risk weights and provisioning rates as an unconfigured engine.
+ */
+final class KernelFactory {
+
+    static final ObjectMapper OBJECT_MAPPER = new JacksonConfig().objectMapper();
+
+    private static final SimpleTypeConverter CONVERTER = new SimpleTypeConverter();
+
+    private KernelFactory() {
+    }
+
+    static <T> T create(Class<T> serviceClass) {
+        try {
+            Constructor<?> constructor = serviceClass.getConstructors()[0];
+            Class<?>[] parameterTypes = constructor.getParameterTypes();
+            Object[] arguments = new Object[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (parameterTypes[i] == ObjectMapper.class) {
+                    arguments[i] = OBJECT_MAPPER;
+                }
+            }
+
+            T service = serviceClass.cast(constructor.newInstance(arguments));
+            applyValueDefaults(service);
+            return service;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create " + serviceClass.getSimpleName(), e);
+        }
+    }
+
+    private static void applyValueDefaults(Object service) throws IllegalAccessException {
+        for (Field field : service.getClass().getDeclaredFields()) {
+            Value value = field.getAnnotation(Value.class);
+            if (value == null) {
+                continue;
+            }
+
+            // ${some.key:default}
+            String placeholder = value.value();
+            int separator = placeholder.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalStateException(field.getName() + " has no default in " + placeholder);
+            }
+            String defaultValue = placeholder.substring(separator + 1, placeholder.length() - 1);
+
+            field.setAccessible(true);
+            field.set(service, CONVERTER.convertIfNecessary(defaultValue, field.getType()));
+        }
+    }
+}
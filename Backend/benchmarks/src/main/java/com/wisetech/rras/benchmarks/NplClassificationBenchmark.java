@@ -0,0 +1,47 @@
+package com.wisetech.rras.benchmarks;
+
+import com.wisetech.rras.calculationengine.domain.LoanExposureSnapshot;
+import com.wisetech.rras.calculationengine.service.NPLCalculationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NPL classification loop over a whole book; ops/sec is loans per second
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NplClassificationBenchmark {
+
+    static final int BOOK_SIZE = 100_000;
+
+    private NPLCalculationService nplService;
+    private List<LoanExposureSnapshot> loans;
+
+    @Setup
+    public void setUp() {
+        nplService = KernelFactory.create(NPLCalculationService.class);
+        loans = LoanBookGenerator.generate(BOOK_SIZE, LoanBookGenerator.DEFAULT_SEED);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOOK_SIZE)
+    public NPLCalculationService.NplTotals classify() {
+        return nplService.classify(loans);
+    }
+}
@@ -0,0 +1,58 @@
+package com.wisetech.rras.benchmarks;
+
+import com.wisetech.rras.calculationengine.domain.LoanExposureSnapshot;
+import com.wisetech.rras.calculationengine.service.RWACalculationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-loan RWA kernels; one operation is one loan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RiskWeightBenchmark {
+
+    static final int BOOK_SIZE = 10_000;
+
+    private RWACalculationService rwaService;
+    private List<LoanExposureSnapshot> loans;
+
+    @Setup
+    public void setUp() {
+        rwaService = KernelFactory.create(RWACalculationService.class);
+        loans = LoanBookGenerator.generate(BOOK_SIZE, LoanBookGenerator.DEFAULT_SEED);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOOK_SIZE)
+    public void determineRiskWeight(Blackhole blackhole) {
+        for (LoanExposureSnapshot loan : loans) {
+            blackhole.consume(rwaService.determineRiskWeight(loan));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOOK_SIZE)
+    public void calculateLoanRWA(Blackhole blackhole) {
+        for (LoanExposureSnapshot loan : loans) {
+            blackhole.consume(rwaService.calculateLoanRWA(1, loan));
+        }
+    }
+}
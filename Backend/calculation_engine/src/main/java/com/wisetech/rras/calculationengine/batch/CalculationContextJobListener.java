@@ -0,0 +1,28 @@
+package com.wisetech.rras.calculationengine.batch;
+
+import com.wisetech.rras.calculationengine.context.CalculationContextRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.listener.JobExecutionListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Releases the in-memory calculation context of a snapshot when its job ends.
+ * A restarted job starts empty and falls back to the stored metrics. A job that
+ * handed the snapshot to the pipeline leaves it to the pipeline, which releases
+ * it when the snapshot is finalized or fails.
+ */
+@Component
+@RequiredArgsConstructor
+public class CalculationContextJobListener implements JobExecutionListener {
+
+    private final CalculationContextRegistry contextRegistry;
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (jobExecution.getExecutionContext().containsKey("snapshotId")
+                && !RegulatoryCalculationJobConfig.handedToPipeline(jobExecution)) {
+            contextRegistry.remove(jobExecution.getExecutionContext().getInt("snapshotId"));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.wisetech.rras.calculationengine.batch;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Named leases in snapshots.lease_locks, shared by every instance on the database.
+ *
+ * A lease is held until expires_at and kept by renewing it. When the holder stops
+ * renewing, any other instance can take it once it expired; taking it increments
+ * the fencing token. Work done under a lease carries the token, and writes check
+ * it with {@link #isCurrent}, so a holder that paused past its expiry (GC, network)
+ * cannot act on a lease another instance has since taken. Expiry is measured on
+ * the database clock, so instance clocks do not need to agree.
+ */
+@Component
+@RequiredArgsConstructor
+public class LeaseLock {
+
+    /**
+     * Takes a free or expired lease with a new token, or renews one this
+     * instance holds with its token unchanged; no row when another holds it
+     */
+    private static final String ACQUIRE_SQL = """
+            INSERT INTO snapshots.lease_locks (lock_name, holder, fencing_token, acquired_at, expires_at)
+            VALUES (?, ?, 1, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP + ? * INTERVAL '1 millisecond')
+            ON CONFLICT (lock_name) DO UPDATE
+            SET fencing_token = CASE WHEN lease_locks.holder = EXCLUDED.holder AND lease_locks.expires_at > CURRENT_TIMESTAMP
+                                     THEN lease_locks.fencing_token ELSE lease_locks.fencing_token + 1 END,
+                acquired_at = CASE WHEN lease_locks.holder = EXCLUDED.holder AND lease_locks.expires_at > CURRENT_TIMESTAMP
+                                   THEN lease_locks.acquired_at ELSE CURRENT_TIMESTAMP END,
+                holder = EXCLUDED.holder,
+                expires_at = EXCLUDED.expires_at
+            WHERE lease_locks.holder = EXCLUDED.holder OR lease_locks.expires_at <= CURRENT_TIMESTAMP
+            RETURNING fencing_token
+            """;
+
+    /**
+     * Expires the lease now but keeps the row, so the next token is still higher
+     */
+    private static final String RELEASE_SQL = """
+            UPDATE snapshots.lease_locks SET expires_at = CURRENT_TIMESTAMP
+            WHERE lock_name = ? AND holder = ?
+            """;
+
+    /**
+     * FOR SHARE holds off a takeover until the caller's transaction ends
+     */
+    private static final String CURRENT_TOKEN_SQL = """
+            SELECT fencing_token FROM snapshots.lease_locks WHERE lock_name = ? FOR SHARE
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** This instance; host name alone is not unique when instances share a host */
+    @Getter
+    private final String holder = holderId();
+
+    /**
+     * Acquires or renews the lease, returning its fencing token when this instance holds it
+     */
+    public OptionalLong tryAcquire(String lockName, Duration ttl) {
+        Long token = jdbcTemplate.query(ACQUIRE_SQL, rs -> rs.next() ? rs.getLong("fencing_token") : null,
+                lockName, holder, ttl.toMillis());
+        return token != null ? OptionalLong.of(token) : OptionalLong.empty();
+    }
+
+    public void release(String lockName) {
+        jdbcTemplate.update(RELEASE_SQL, lockName, holder);
+    }
+
+    /**
+     * Whether the token is still the lease's latest. Call it in the transaction of
+     * the write it guards: the row stays share-locked until that transaction ends.
+     */
+    public boolean isCurrent(String lockName, long fencingToken) {
+        Long current = jdbcTemplate.query(CURRENT_TOKEN_SQL, rs -> rs.next() ? rs.getLong("fencing_token") : null,
+                lockName);
+        return current != null && current == fencingToken;
+    }
+
+    private static String holderId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + "/" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
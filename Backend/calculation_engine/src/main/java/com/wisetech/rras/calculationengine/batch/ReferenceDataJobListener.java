@@ -0,0 +1,41 @@
+package com.wisetech.rras.calculationengine.batch;
+
+import com.wisetech.rras.calculationengine.reference.ReferenceDataCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.listener.JobExecutionListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * Drops the cached reference data of a run, and the shared entries of its date,
+ * when its job fails, so a restart after a source data fix reads the corrected
+ * rows. A job handed to the pipeline ends COMPLETED, so the pipeline's
+ * calculations keep the run's entries.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ReferenceDataJobListener implements JobExecutionListener {
+
+    private final ReferenceDataCache referenceDataCache;
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (jobExecution.getStatus() == BatchStatus.COMPLETED) {
+            return;
+        }
+
+        if (jobExecution.getExecutionContext().containsKey("snapshotId")) {
+            referenceDataCache.evictRun(jobExecution.getExecutionContext().getInt("snapshotId"));
+        }
+
+        String snapshotDate = jobExecution.getJobParameters().getString("snapshotDate");
+        if (snapshotDate != null) {
+            referenceDataCache.evictShared(LocalDate.parse(snapshotDate));
+        }
+    }
+}
@@ -1,31 +1,48 @@
 package com.wisetech.rras.calculationengine.batch;
 
 
+import com.wisetech.rras.calculationengine.concentration.ConcentrationRiskService;
 import com.wisetech.rras.calculationengine.enums.CalculationType;
 import com.wisetech.rras.calculationengine.enums.RunStatus;
+import com.wisetech.rras.calculationengine.jfr.JobFlightRecorder;
 import com.wisetech.rras.calculationengine.messaging.CalculationEventPublisher;
+import com.wisetech.rras.calculationengine.metrics.StepMetricsListener;
+import com.wisetech.rras.calculationengine.metrics.StepResourceUsageListener;
 import com.wisetech.rras.calculationengine.domain.SnapshotRun; // Assuming model package
+import com.wisetech.rras.calculationengine.reference.CapitalComponent;
+import com.wisetech.rras.calculationengine.reference.LiquidityPosition;
+import com.wisetech.rras.calculationengine.reference.ReferenceDataService;
 import com.wisetech.rras.calculationengine.repository.SnapshotRunRepository;
+import com.wisetech.rras.calculationengine.returns.ReturnGenerationService;
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties;
 import com.wisetech.rras.calculationengine.service.*;
+import com.wisetech.rras.calculationengine.simulation.CreditLossSimulationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.batch.core.job.parameters.JobParameters;
 import org.springframework.batch.core.step.Step;
 import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.JobExecution;
 import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.step.builder.StepBuilder;
 import org.springframework.batch.core.step.tasklet.Tasklet;
 import org.springframework.batch.infrastructure.repeat.RepeatStatus;
+import org.springframework.batch.infrastructure.support.transaction.ResourcelessTransactionManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.transaction.PlatformTransactionManager;
 
+import java.sql.Types;
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.Map;
 
 @Configuration
@@ -33,6 +50,12 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class RegulatoryCalculationJobConfig {
 
+    /**
+     * Exit code of a job that handed its calculations to the pipeline. The job is
+     * COMPLETED but the snapshot is not, so job listeners leave its run alone.
+     */
+    public static final String PIPELINE = "PIPELINE";
+
     private final JobRepository jobRepository;
     private final PlatformTransactionManager transactionManager;
     private final SnapshotRunRepository snapshotRunRepository;
@@ -44,7 +67,21 @@ public class RegulatoryCalculationJobConfig {
     private final NPLCalculationService nplService;
     private final ECLCalculationService eclService;
     private final LCRCalculationService lcrService;
+    private final ConcentrationRiskService concentrationService;
+    private final CreditLossSimulationService simulationService;
     private final CalculationEventPublisher eventPublisher;
+    private final ReturnGenerationService returnGenerationService;
+    private final ReturnTemplateProperties returnTemplateProperties;
+    private final ReferenceDataService referenceDataService;
+    private final ReferenceDataJobListener referenceDataJobListener;
+    private final CalculationContextJobListener calculationContextJobListener;
+    private final StepMetricsListener stepMetricsListener;
+    private final StepResourceUsageListener stepResourceUsageListener;
+    private final JobFlightRecorder jobFlightRecorder;
+    private final LeaseLock leaseLock;
+
+    @Value("${pipeline.enabled:false}")
+    private boolean pipelineEnabled;
 
     @Bean
     public Job regulatoryCalculationJob(Step createSnapshotStep,
@@ -56,27 +93,58 @@ public class RegulatoryCalculationJobConfig {
                                         Step calculateNPLStep,
                                         Step calculateECLStep,
                                         Step calculateCARStep,
+                                        Step calculateConcentrationStep,
                                         Step calculateLCRStep,
-                                        Step finalizeSnapshotStep) {
+                                        Step simulateCreditLossStep,
+                                        Step finalizeSnapshotStep,
+                                        Step generateReturnsStep) {
         return new JobBuilder("regulatoryCalculationJob", jobRepository)
+                .listener(referenceDataJobListener)
+                .listener(calculationContextJobListener)
+                .listener(jobFlightRecorder)
                 .start(createSnapshotStep)
                 .next(copyLoanDataStep)
                 .next(copyCapitalDataStep)
                 .next(copyLiquidityDataStep)
                 .next(validateSnapshotStep)
-                .next(calculateRWAStep)
+                .next(calculationModeDecider())
+                .on(PIPELINE).end(PIPELINE)
+                .from(calculationModeDecider()).on("*").to(calculateRWAStep)
                 .next(calculateNPLStep)
                 .next(calculateECLStep)
                 .next(calculateCARStep)
+                .next(calculateConcentrationStep)
                 .next(calculateLCRStep)
+                .next(simulateCreditLossStep)
                 .next(finalizeSnapshotStep)
+                .next(generateReturnsStep)
+                .end()
                 .build();
     }
 
+    /**
+     * Whether the job ended by handing the snapshot to the pipeline, which is then still calculating
+     */
+    public static boolean handedToPipeline(JobExecution jobExecution) {
+        return PIPELINE.equals(jobExecution.getExitStatus().getExitCode());
+    }
+
+    /**
+     * With pipeline.enabled the job ends after validation, with exit code PIPELINE;
+     * the snapshot.validated event starts the calculation queue consumers
+     * (CalculationPipeline)
+     */
+    @Bean
+    public JobExecutionDecider calculationModeDecider() {
+        return (jobExecution, stepExecution) -> new FlowExecutionStatus(pipelineEnabled ? PIPELINE : "BATCH");
+    }
+
     // Create Snapshot
     @Bean
     public Step createSnapshotStep() {
         return new StepBuilder("createSnapshot", jobRepository)
+                .listener(stepMetricsListener)
+                .listener(stepResourceUsageListener)
                 .tasklet(createSnapshotTasklet(), transactionManager)
                 .build();
     }
@@ -113,6 +181,13 @@ public class RegulatoryCalculationJobConfig {
             String initiatedBy =
                     (String) jobParams.getOrDefault("initiatedBy", "SYSTEM");
 
+            // Scheduled runs: refuse if the scheduler lease was taken over since launch
+            Long leaseToken = (Long) jobParams.get("leaseToken");
+            if (leaseToken != null && !leaseLock.isCurrent(ScheduledCalculationLauncher.SCHEDULER_LEASE, leaseToken)) {
+                throw new IllegalStateException(
+                        "Scheduler lease token " + leaseToken + " is stale, another instance launches this run");
+            }
+
             log.info("Creating snapshot for date: {}, type: {}", snapshotDate, calcType);
 
             SnapshotRun snapshot = snapshotRunRepository.save(
@@ -145,6 +220,8 @@ public class RegulatoryCalculationJobConfig {
     @Bean
     public Step copyLoanDataStep() {
         return new StepBuilder("copyLoanData", jobRepository)
+                .listener(stepMetricsListener)
+                .listener(stepResourceUsageListener)
                 .tasklet(copyLoanDataTasklet(), transactionManager)
                 .build();
     }
@@ -187,6 +264,8 @@ public class RegulatoryCalculationJobConfig {
     @Bean
     public Step copyCapitalDataStep() {
         return new StepBuilder("copyCapitalData", jobRepository)
+                .listener(stepMetricsListener)
+                .listener(stepResourceUsageListener)
                 .tasklet(copyCapitalDataTasklet(), transactionManager)
                 .build();
     }
@@ -217,19 +296,24 @@ public class RegulatoryCalculationJobConfig {
 
             log.info("Copying capital data to snapshot {}", snapshotId);
 
+            // Read through the reference cache so CAR reuses the same rows
+            List<CapitalComponent> components = referenceDataService.getCapitalComponents(snapshotId, snapshotDate);
+
             String sql = """
                 INSERT INTO snapshots.capital_snapshot (
                     snapshot_id, component_type, component_name, amount, currency
                 )
-                SELECT 
-                    ?, component_type, component_name, 
-                    (amount + COALESCE(regulatory_adjustment, 0)), currency
-                FROM cbs.capital_components
-                WHERE as_of_date = ?
+                VALUES (?, ?, ?, ?, ?)
                 """;
 
-            int rows = jdbcTemplate.update(sql, snapshotId, snapshotDate);
-            log.info("Copied {} capital records", rows);
+            jdbcTemplate.batchUpdate(sql, components, components.size(), (ps, component) -> {
+                ps.setInt(1, snapshotId);
+                ps.setString(2, component.getComponentType());
+                ps.setString(3, component.getComponentName());
+                ps.setBigDecimal(4, component.getAmount());
+                ps.setString(5, component.getCurrency());
+            });
+            log.info("Copied {} capital records", components.size());
             return RepeatStatus.FINISHED;
         };
     }
@@ -238,6 +322,8 @@ public class RegulatoryCalculationJobConfig {
     @Bean
     public Step copyLiquidityDataStep() {
         return new StepBuilder("copyLiquidityData", jobRepository)
+                .listener(stepMetricsListener)
+                .listener(stepResourceUsageListener)
                 .tasklet(copyLiquidityDataTasklet(), transactionManager)
                 .build();
     }
@@ -266,18 +352,25 @@ public class RegulatoryCalculationJobConfig {
                 );
             }
 
+            List<LiquidityPosition> positions = referenceDataService.getLiquidityPositions(snapshotId, snapshotDate);
+
             String sql = """
                 INSERT INTO snapshots.liquidity_snapshot (
                     snapshot_id, asset_id, asset_type, hqla_value, hqla_level, currency
                 )
-                SELECT 
-                    ?, asset_id, asset_type, hqla_value, hqla_level, currency
-                FROM source_read.liquidity_positions
-                WHERE as_of_date = ?
+                VALUES (?, ?, ?, ?, ?, ?)
                 """;
 
-            int rows = jdbcTemplate.update(sql, snapshotId, snapshotDate);
-            log.info("Copied {} liquidity records", rows);
+            // hqla_level is bound untyped so the server casts it to the column type
+            jdbcTemplate.batchUpdate(sql, positions, positions.size(), (ps, position) -> {
+                ps.setInt(1, snapshotId);
+                ps.setLong(2, position.getAssetId());
+                ps.setString(3, position.getAssetType());
+                ps.setBigDecimal(4, position.getHqlaValue());
+                ps.setObject(5, position.getHqlaLevel(), Types.OTHER);
+                ps.setString(6, position.getCurrency());
+            });
+            log.info("Copied {} liquidity records", positions.size());
             return RepeatStatus.FINISHED;
         };
     }
@@ -286,6 +379,8 @@ public class RegulatoryCalculationJobConfig {
     @Bean
     public Step validateSnapshotStep() {
         return new StepBuilder("validateSnapshot", jobRepository)
+                .listener(stepMetricsListener)
+                .listener(stepResourceUsageListener)
                 .tasklet(validateSnapshotTasklet(), transactionManager)
                 .build();
     }
@@ -318,6 +413,8 @@ public class RegulatoryCalculationJobConfig {
 
     private Step createCalculationStep(String stepName, String calcType, Runnable calcAction) {
         return new StepBuilder(stepName, jobRepository)
+                .listener(stepMetricsListener)
+                .listener(stepResourceUsageListener)
                 .tasklet((contribution, chunkContext) -> {
                     int snapshotId = chunkContext.getStepContext().getStepExecution()
                             .getJobExecution().getExecutionContext().getInt("snapshotId");
@@ -331,20 +428,28 @@ public class RegulatoryCalculationJobConfig {
                 .build();
     }
 
+    /**
+     * The service runs its own transactions, so none is held while partition
+     * workers are awaited; likewise calculateECLStep
+     */
     @Bean(name = "calculateRWAStep")
     public Step calculateRWAStepImpl() {
         return new StepBuilder("calculateRWA", jobRepository)
+                .listener(stepMetricsListener)
+                .listener(stepResourceUsageListener)
                 .tasklet((contribution, chunkContext) -> {
                     int id = chunkContext.getStepContext().getStepExecution().getJobExecution().getExecutionContext().getInt("snapshotId");
                     rwaService.calculateRWA(id);
                     eventPublisher.publishCalculationCompleted(id, "RWA");
                     return RepeatStatus.FINISHED;
-                }, transactionManager).build();
+                }, new ResourcelessTransactionManager()).build();
     }
 
     @Bean
     public Step calculateNPLStep() {
         return new StepBuilder("calculateNPL", jobRepository)
+                .listener(stepMetricsListener)
+                .listener(stepResourceUsageListener)
                 .tasklet((contribution, chunkContext) -> {
                     int id = chunkContext.getStepContext().getStepExecution().getJobExecution().getExecutionContext().getInt("snapshotId");
                     nplService.calculateNPL(id);
@@ -356,17 +461,21 @@ public class RegulatoryCalculationJobConfig {
     @Bean
     public Step calculateECLStep() {
         return new StepBuilder("calculateECL", jobRepository)
+                .listener(stepMetricsListener)
+                .listener(stepResourceUsageListener)
                 .tasklet((contribution, chunkContext) -> {
                     int id = chunkContext.getStepContext().getStepExecution().getJobExecution().getExecutionContext().getInt("snapshotId");
                     eclService.calculateECL(id);
                     eventPublisher.publishCalculationCompleted(id, "ECL");
                     return RepeatStatus.FINISHED;
-                }, transactionManager).build();
+                }, new ResourcelessTransactionManager()).build();
     }
 
     @Bean
     public Step calculateCARStep() {
         return new StepBuilder("calculateCAR", jobRepository)
+                .listener(stepMetricsListener)
+                .listener(stepResourceUsageListener)
                 .tasklet((contribution, chunkContext) -> {
                     int id = chunkContext.getStepContext().getStepExecution().getJobExecution().getExecutionContext().getInt("snapshotId");
                     String dateStr = (String) chunkContext.getStepContext().getJobParameters().get("snapshotDate");
@@ -376,9 +485,24 @@ public class RegulatoryCalculationJobConfig {
                 }, transactionManager).build();
     }
 
+    @Bean
+    public Step calculateConcentrationStep() {
+        return new StepBuilder("calculateConcentration", jobRepository)
+                .listener(stepMetricsListener)
+                .listener(stepResourceUsageListener)
+                .tasklet((contribution, chunkContext) -> {
+                    int id = chunkContext.getStepContext().getStepExecution().getJobExecution().getExecutionContext().getInt("snapshotId");
+                    concentrationService.calculateConcentration(id);
+                    eventPublisher.publishCalculationCompleted(id, "CONCENTRATION");
+                    return RepeatStatus.FINISHED;
+                }, transactionManager).build();
+    }
+
     @Bean
     public Step calculateLCRStep() {
         return new StepBuilder("calculateLCR", jobRepository)
+                .listener(stepMetricsListener)
+                .listener(stepResourceUsageListener)
                 .tasklet((contribution, chunkContext) -> {
                     int id = chunkContext.getStepContext().getStepExecution().getJobExecution().getExecutionContext().getInt("snapshotId");
                     String dateStr = (String) chunkContext.getStepContext().getJobParameters().get("snapshotDate");
@@ -388,11 +512,30 @@ public class RegulatoryCalculationJobConfig {
                 }, transactionManager).build();
     }
 
+    /**
+     * Monte Carlo credit losses (MC_*), stored while the snapshot is still VALIDATED.
+     * The service runs its own transactions, so none is held during the trials.
+     */
+    @Bean
+    public Step simulateCreditLossStep() {
+        return new StepBuilder("simulateCreditLoss", jobRepository)
+                .listener(stepMetricsListener)
+                .listener(stepResourceUsageListener)
+                .tasklet((contribution, chunkContext) -> {
+                    int id = chunkContext.getStepContext().getStepExecution().getJobExecution().getExecutionContext().getInt("snapshotId");
+                    simulationService.simulate(id, null, null);
+                    eventPublisher.publishCalculationCompleted(id, "SIMULATION");
+                    return RepeatStatus.FINISHED;
+                }, new ResourcelessTransactionManager()).build();
+    }
+
     // Finalize
 
     @Bean
     public Step finalizeSnapshotStep() {
         return new StepBuilder("finalizeSnapshot", jobRepository)
+                .listener(stepMetricsListener)
+                .listener(stepResourceUsageListener)
                 .tasklet((contribution, chunkContext) -> {
                     int id = chunkContext.getStepContext().getStepExecution().getJobExecution().getExecutionContext().getInt("snapshotId");
 
@@ -406,4 +549,24 @@ public class RegulatoryCalculationJobConfig {
                     return RepeatStatus.FINISHED;
                 }, transactionManager).build();
     }
+
+    // Regulatory Returns
+
+    @Bean
+    public Step generateReturnsStep() {
+        return new StepBuilder("generateReturns", jobRepository)
+                .listener(stepMetricsListener)
+                .listener(stepResourceUsageListener)
+                .tasklet((contribution, chunkContext) -> {
+                    int id = chunkContext.getStepContext().getStepExecution().getJobExecution().getExecutionContext().getInt("snapshotId");
+
+                    if (!returnTemplateProperties.isEnabled()) {
+                        log.info("Return generation is disabled. Skipping returns for snapshot {}", id);
+                        return RepeatStatus.FINISHED;
+                    }
+
+                    returnGenerationService.generateReturns(id);
+                    return RepeatStatus.FINISHED;
+                }, transactionManager).build();
+    }
 }
\ No newline at end of file
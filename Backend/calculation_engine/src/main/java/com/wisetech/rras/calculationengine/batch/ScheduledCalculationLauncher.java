@@ -1,6 +1,8 @@
 package com.wisetech.rras.calculationengine.batch;
 
 import com.wisetech.rras.calculationengine.enums.CalculationType;
+import com.wisetech.rras.calculationengine.repository.SnapshotRunRepository;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.job.Job;
@@ -14,9 +16,18 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.OptionalLong;
 import java.util.UUID;
 
+/**
+ * Launches the scheduled runs. Every instance evaluates the cron triggers, but
+ * only the holder of the scheduler lease launches; the others serve the API and
+ * workers. The holder renews the lease every renew-interval. If it dies, another
+ * instance takes the lease once it expires, including an instance waiting on a
+ * cron trigger that fired while the dead holder's lease was still running.
+ */
 @Component
 @EnableScheduling
 @ConditionalOnProperty(name = "scheduling.enabled", havingValue = "true", matchIfMissing = true)
@@ -24,12 +35,19 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class ScheduledCalculationLauncher {
 
+    public static final String SCHEDULER_LEASE = "calculation-scheduler";
+
     private final JobLauncher jobLauncher;
     private final Job regulatoryCalculationJob;
+    private final LeaseLock leaseLock;
+    private final SnapshotRunRepository snapshotRunRepository;
 
     @Value("${scheduling.enabled:true}")
     private boolean schedulingEnabled;
 
+    @Value("${scheduling.lease.ttl:30s}")
+    private Duration leaseTtl;
+
     @Scheduled(cron = "${scheduling.cron.biweekly:0 0 2 1,15 * ?}")
     public void runBiWeeklyCalculation() {
         run(LocalDate.now(), CalculationType.BI_WEEKLY);
@@ -46,6 +64,30 @@ public class ScheduledCalculationLauncher {
         run(LocalDate.now().minusDays(1), CalculationType.ANNUAL);
     }
 
+    /**
+     * Keeps the lease on its holder between cron triggers, and lets another instance take it after expiry
+     */
+    @Scheduled(fixedDelayString = "${scheduling.lease.renew-interval:10s}")
+    public void renewLease() {
+        if (!schedulingEnabled) {
+            return;
+        }
+        try {
+            leaseLock.tryAcquire(SCHEDULER_LEASE, leaseTtl);
+        } catch (Exception e) {
+            log.warn("Could not renew the scheduler lease", e);
+        }
+    }
+
+    @PreDestroy
+    public void releaseLease() {
+        try {
+            leaseLock.release(SCHEDULER_LEASE);
+        } catch (Exception e) {
+            log.debug("Could not release the scheduler lease", e);
+        }
+    }
+
     public void launchCalculationJob(LocalDate snapshotDate, CalculationType type, String initiatedBy) throws Exception {
         JobParameters params = new JobParametersBuilder()
                 .addString("snapshotDate", snapshotDate.toString())
@@ -64,19 +106,46 @@ public class ScheduledCalculationLauncher {
         }
 
         try {
+            OptionalLong fencingToken = awaitLease();
+            if (fencingToken.isEmpty()) {
+                log.info("Scheduler lease is held by another instance. Skipping {} run.", type);
+                return;
+            }
+
+            // A holder that died after launching leaves its snapshot behind
+            if (snapshotRunRepository.findBySnapshotDateAndCalculationType(snapshotDate, type).isPresent()) {
+                log.info("{} snapshot for {} already exists. Skipping {} run.", type, snapshotDate, type);
+                return;
+            }
+
             // Using UUID for run.id ensures every scheduled run is treated as a unique JobInstance
             JobParameters params = new JobParametersBuilder()
                     .addString("snapshotDate", snapshotDate.toString())
                     .addString("calculationType", type.name())
                     .addString("initiatedBy", "SCHEDULER")
                     .addString("jobId", UUID.randomUUID().toString())
+                    .addLong("leaseToken", fencingToken.getAsLong(), false)
                     .toJobParameters();
 
-            log.info("Launching {} calculation for {}", type, snapshotDate);
+            log.info("Launching {} calculation for {} with lease token {}", type, snapshotDate, fencingToken.getAsLong());
             jobLauncher.run(regulatoryCalculationJob, params);
 
         } catch (Exception e) {
             log.error("Failed to launch {} calculation job", type, e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The lease, waiting up to one ttl for it in case the holder died just before the trigger
+     */
+    private OptionalLong awaitLease() throws InterruptedException {
+        long deadline = System.nanoTime() + leaseTtl.toNanos() + Duration.ofSeconds(1).toNanos();
+        while (true) {
+            OptionalLong fencingToken = leaseLock.tryAcquire(SCHEDULER_LEASE, leaseTtl);
+            if (fencingToken.isPresent() || System.nanoTime() >= deadline) {
+                return fencingToken;
+            }
+            Thread.sleep(1000);
+        }
+    }
+}
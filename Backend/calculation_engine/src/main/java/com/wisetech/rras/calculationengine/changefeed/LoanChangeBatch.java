@@ -0,0 +1,19 @@
+package com.wisetech.rras.calculationengine.changefeed;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * Application event with the distinct loans changed since the previous batch
+ */
+@Data
+@AllArgsConstructor
+public class LoanChangeBatch {
+
+    private long[] loanIds;          // distinct, ascending
+    private int changeCount;         // log rows consumed, before de-duplication
+    private Instant firstChangedAt;
+    private Instant lastChangedAt;
+}
@@ -0,0 +1,238 @@
+package com.wisetech.rras.calculationengine.changefeed;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Loan Change Feed Listener
+ *
+ * Holds one connection on LISTEN loan_changes (see db/change_feed.sql). A
+ * notification starts a debounce window: the log is drained once no further
+ * notification arrived for change-feed.debounce-ms, or after
+ * change-feed.max-delay-ms at the latest, so bursts of updates become one batch.
+ *
+ * Draining deletes the consumed rows, commits, and only then publishes a
+ * LoanChangeBatch. A consumer that fails is logged with the batch and does not
+ * hold the rows back, so one bad change cannot stall the feed; the changes it
+ * missed are applied by its next full reseed. Rows of uncommitted transactions
+ * are not visible yet and are simply left for a later drain.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "change-feed.enabled", havingValue = "true")
+public class LoanChangeFeedListener implements SmartLifecycle {
+
+    private static final String CHANNEL = "loan_changes";
+
+    private static final String DRAIN_SQL = """
+            DELETE FROM cbs.loan_change_log
+            WHERE change_id IN (
+                SELECT change_id
+                FROM cbs.loan_change_log
+                ORDER BY change_id
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING loan_id, changed_at
+            """;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${change-feed.debounce-ms:200}")
+    private int debounceMs;
+
+    @Value("${change-feed.max-delay-ms:2000}")
+    private int maxDelayMs;
+
+    @Value("${change-feed.batch-size:10000}")
+    private int batchSize;
+
+    @Value("${change-feed.poll-interval-ms:30000}")
+    private int pollIntervalMs;
+
+    @Value("${change-feed.reconnect-delay-ms:5000}")
+    private long reconnectDelayMs;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public LoanChangeFeedListener(DataSource dataSource,
+                                  JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  ApplicationEventPublisher eventPublisher) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        worker = new Thread(this::listen, "loan-change-feed");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                log.info("Listening for loan changes on channel {}", CHANNEL);
+
+                // Catch up on anything logged while we were not listening
+                drain();
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollIntervalMs);
+                    if (notifications != null && notifications.length > 0) {
+                        debounce(pgConnection);
+                    }
+                    // Also drains on the poll interval, in case a notification was lost
+                    drain();
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Loan change feed connection failed, reconnecting in {} ms", reconnectDelayMs, e);
+                try {
+                    Thread.sleep(reconnectDelayMs);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait until notifications stop for debounceMs, but no longer than maxDelayMs
+     */
+    private void debounce(PGConnection pgConnection) throws SQLException {
+        long start = System.currentTimeMillis();
+        long quietUntil = start + debounceMs;
+        long deadline = start + maxDelayMs;
+
+        long now = start;
+        while (running && now < quietUntil && now < deadline) {
+            int wait = (int) Math.max(1, Math.min(quietUntil, deadline) - now);
+            PGNotification[] more = pgConnection.getNotifications(wait);
+            now = System.currentTimeMillis();
+            if (more != null && more.length > 0) {
+                quietUntil = now + debounceMs;
+            }
+        }
+    }
+
+    private void drain() {
+        int consumed;
+        do {
+            LoanChangeBatch batch = transactionTemplate.execute(status -> drainBatch());
+            if (batch == null) {
+                return;
+            }
+            consumed = batch.getChangeCount();
+            publish(batch);
+        } while (running && consumed == batchSize);
+    }
+
+    /**
+     * Hands a committed batch to the consumers; their failures are not retried
+     */
+    private void publish(LoanChangeBatch batch) {
+        try {
+            eventPublisher.publishEvent(batch);
+            log.debug("Published {} changed loans from {} change log rows",
+                    batch.getLoanIds().length, batch.getChangeCount());
+        } catch (RuntimeException e) {
+            long[] loanIds = batch.getLoanIds();
+            log.error("Consumer failed on a batch of {} changed loans (first {}, changed {} - {}), "
+                            + "these changes are not retried",
+                    loanIds.length, Arrays.toString(Arrays.copyOf(loanIds, Math.min(10, loanIds.length))),
+                    batch.getFirstChangedAt(), batch.getLastChangedAt(), e);
+        }
+    }
+
+    private LoanChangeBatch drainBatch() {
+        long[][] loanIds = {new long[1024]};
+        int[] count = {0};
+        Instant[] range = new Instant[2];
+
+        jdbcTemplate.query(DRAIN_SQL, rs -> {
+            if (count[0] == loanIds[0].length) {
+                loanIds[0] = Arrays.copyOf(loanIds[0], count[0] << 1);
+            }
+            loanIds[0][count[0]++] = rs.getLong("loan_id");
+
+            Timestamp changedAt = rs.getTimestamp("changed_at");
+            if (changedAt != null) {
+                Instant instant = changedAt.toInstant();
+                if (range[0] == null || instant.isBefore(range[0])) {
+                    range[0] = instant;
+                }
+                if (range[1] == null || instant.isAfter(range[1])) {
+                    range[1] = instant;
+                }
+            }
+        }, batchSize);
+
+        if (count[0] == 0) {
+            return null;
+        }
+        return new LoanChangeBatch(distinct(loanIds[0], count[0]), count[0], range[0], range[1]);
+    }
+
+    private static long[] distinct(long[] values, int length) {
+        long[] sorted = Arrays.copyOf(values, length);
+        Arrays.sort(sorted);
+
+        int unique = 0;
+        for (int i = 0; i < length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, unique);
+    }
+}
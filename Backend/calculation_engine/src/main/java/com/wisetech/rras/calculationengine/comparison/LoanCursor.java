@@ -0,0 +1,16 @@
+package com.wisetech.rras.calculationengine.comparison;
+
+import java.sql.SQLException;
+
+/**
+ * Forward-only view of a snapshot's loans in ascending loan_id order
+ */
+interface LoanCursor {
+
+    /**
+     * Move to the next loan, returning false once the snapshot is exhausted
+     */
+    boolean next() throws SQLException;
+
+    LoanState current();
+}
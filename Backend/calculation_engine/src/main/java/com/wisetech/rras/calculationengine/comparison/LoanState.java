@@ -0,0 +1,29 @@
+package com.wisetech.rras.calculationengine.comparison;
+
+import com.wisetech.rras.calculationengine.enums.AssetClassification;
+import com.wisetech.rras.calculationengine.service.NPLCalculationService;
+
+import java.math.BigDecimal;
+
+/**
+ * One loan of one snapshot, as seen by the merge join. A cursor reuses a single
+ * instance for every row, so nothing here may be retained past the next advance.
+ */
+final class LoanState {
+
+    long loanId;
+    BigDecimal balance = BigDecimal.ZERO;
+    AssetClassification assetClass = AssetClassification.STANDARD;
+    int daysPastDue;
+    int stage = 1;
+    BigDecimal exposure = BigDecimal.ZERO;
+    BigDecimal riskWeight = BigDecimal.ZERO;
+    BigDecimal rwa = BigDecimal.ZERO;
+
+    /**
+     * The NPL_AMOUNT rule, so the waterfall opens and closes on the stored NPL
+     */
+    boolean isNonPerforming() {
+        return NPLCalculationService.isNonPerforming(daysPastDue);
+    }
+}
@@ -0,0 +1,157 @@
+package com.wisetech.rras.calculationengine.comparison;
+
+import com.wisetech.rras.calculationengine.enums.AssetClassification;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Folds the merge join of two snapshots into NPL and RWA waterfalls and stage and
+ * classification transition matrices. State is a fixed set of accumulators, so
+ * memory does not grow with the number of loans.
+ *
+ * A loan missing from the target snapshot is a write-off when it was LOSS in the
+ * base snapshot and a repayment otherwise.
+ */
+final class MovementAccumulator {
+
+    static final String NEW_LOANS = "new_loans";
+    static final String RECLASSIFIED_IN = "reclassified_in";
+    static final String RECLASSIFIED_OUT = "reclassified_out";
+    static final String DRAWDOWNS = "drawdowns";
+    static final String REPAYMENTS = "repayments";
+    static final String WRITE_OFFS = "write_offs";
+    static final String RISK_WEIGHT_CHANGES = "risk_weight_changes";
+
+    private static final int STAGES = 3;
+
+    final MovementWaterfall npl = new MovementWaterfall(
+            NEW_LOANS, RECLASSIFIED_IN, RECLASSIFIED_OUT, DRAWDOWNS, REPAYMENTS, WRITE_OFFS);
+    final MovementWaterfall rwa = new MovementWaterfall(
+            NEW_LOANS, DRAWDOWNS, REPAYMENTS, WRITE_OFFS, RISK_WEIGHT_CHANGES);
+    final TransitionMatrix stages = new TransitionMatrix(List.of("STAGE_1", "STAGE_2", "STAGE_3"));
+    final TransitionMatrix classifications = new TransitionMatrix(
+            Arrays.stream(AssetClassification.values()).map(AssetClassification::getValue).toList());
+
+    long matchedLoans;
+    long newLoans;
+    long exitedLoans;
+
+    /**
+     * Walk both cursors once in loan_id order. Each loan is seen exactly once,
+     * as new, exited or matched.
+     */
+    static MovementAccumulator mergeJoin(LoanCursor base, LoanCursor target) throws SQLException {
+        MovementAccumulator accumulator = new MovementAccumulator();
+
+        boolean hasBase = base.next();
+        boolean hasTarget = target.next();
+        long lastBase = Long.MIN_VALUE;
+        long lastTarget = Long.MIN_VALUE;
+
+        while (hasBase || hasTarget) {
+            LoanState b = base.current();
+            LoanState t = target.current();
+
+            if (hasBase && (!hasTarget || b.loanId < t.loanId)) {
+                lastBase = checkOrder(b.loanId, lastBase);
+                accumulator.exited(b);
+                hasBase = base.next();
+
+            } else if (hasTarget && (!hasBase || t.loanId < b.loanId)) {
+                lastTarget = checkOrder(t.loanId, lastTarget);
+                accumulator.added(t);
+                hasTarget = target.next();
+
+            } else {
+                lastBase = checkOrder(b.loanId, lastBase);
+                lastTarget = checkOrder(t.loanId, lastTarget);
+                accumulator.matched(b, t);
+                hasBase = base.next();
+                hasTarget = target.next();
+            }
+        }
+
+        return accumulator;
+    }
+
+    void added(LoanState t) {
+        newLoans++;
+
+        if (t.isNonPerforming()) {
+            npl.addClosing(t.balance);
+            npl.addMovement(NEW_LOANS, t.balance);
+        }
+
+        rwa.addClosing(t.rwa);
+        rwa.addMovement(NEW_LOANS, t.rwa);
+
+        stages.record(-1, stageIndex(t), t.balance);
+        classifications.record(-1, t.assetClass.ordinal(), t.balance);
+    }
+
+    void exited(LoanState b) {
+        exitedLoans++;
+        String movement = b.assetClass == AssetClassification.LOSS ? WRITE_OFFS : REPAYMENTS;
+
+        if (b.isNonPerforming()) {
+            npl.addOpening(b.balance);
+            npl.addMovement(movement, b.balance.negate());
+        }
+
+        rwa.addOpening(b.rwa);
+        rwa.addMovement(movement, b.rwa.negate());
+
+        stages.record(stageIndex(b), -1, b.balance);
+        classifications.record(b.assetClass.ordinal(), -1, b.balance);
+    }
+
+    void matched(LoanState b, LoanState t) {
+        matchedLoans++;
+
+        if (b.isNonPerforming()) {
+            npl.addOpening(b.balance);
+        }
+        if (t.isNonPerforming()) {
+            npl.addClosing(t.balance);
+        }
+
+        if (b.isNonPerforming() && t.isNonPerforming()) {
+            BigDecimal change = t.balance.subtract(b.balance);
+            npl.addMovement(change.signum() > 0 ? DRAWDOWNS : REPAYMENTS, change);
+        } else if (t.isNonPerforming()) {
+            npl.addMovement(RECLASSIFIED_IN, t.balance);
+        } else if (b.isNonPerforming()) {
+            npl.addMovement(RECLASSIFIED_OUT, b.balance.negate());
+        }
+
+        // Exposure effect at the old risk weight; whatever is left of the RWA
+        // change is down to the risk weight moving
+        rwa.addOpening(b.rwa);
+        rwa.addClosing(t.rwa);
+
+        BigDecimal exposureEffect = t.exposure.subtract(b.exposure)
+                .multiply(b.riskWeight)
+                .setScale(2, RoundingMode.HALF_UP);
+        BigDecimal riskWeightEffect = t.rwa.subtract(b.rwa).subtract(exposureEffect);
+        rwa.addMovement(exposureEffect.signum() > 0 ? DRAWDOWNS : REPAYMENTS, exposureEffect);
+        rwa.addMovement(RISK_WEIGHT_CHANGES, riskWeightEffect);
+
+        stages.record(stageIndex(b), stageIndex(t), b.balance);
+        classifications.record(b.assetClass.ordinal(), t.assetClass.ordinal(), b.balance);
+    }
+
+    private static int stageIndex(LoanState loan) {
+        return Math.min(Math.max(loan.stage, 1), STAGES) - 1;
+    }
+
+    private static long checkOrder(long loanId, long previous) {
+        if (loanId <= previous) {
+            throw new IllegalStateException("Snapshot rows are not in ascending loan_id order at loan " + loanId);
+        }
+        return loanId;
+    }
+}
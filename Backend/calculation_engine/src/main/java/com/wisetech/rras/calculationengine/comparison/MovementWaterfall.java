@@ -0,0 +1,45 @@
+package com.wisetech.rras.calculationengine.comparison;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Opening balance, signed movements and closing balance of one measure between
+ * two snapshots. The movements sum exactly to closing - opening.
+ */
+@Data
+public class MovementWaterfall {
+
+    private BigDecimal opening = BigDecimal.ZERO;
+    private BigDecimal closing = BigDecimal.ZERO;
+    private Map<String, BigDecimal> movements = new LinkedHashMap<>();
+
+    public MovementWaterfall(String... movementNames) {
+        for (String name : movementNames) {
+            movements.put(name, BigDecimal.ZERO);
+        }
+    }
+
+    void addOpening(BigDecimal amount) {
+        opening = opening.add(amount);
+    }
+
+    void addClosing(BigDecimal amount) {
+        closing = closing.add(amount);
+    }
+
+    void addMovement(String name, BigDecimal amount) {
+        movements.merge(name, amount, BigDecimal::add);
+    }
+
+    /**
+     * Difference between the movements and closing - opening; zero unless a row was missed
+     */
+    public BigDecimal getUnexplained() {
+        BigDecimal explained = movements.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+        return closing.subtract(opening).subtract(explained);
+    }
+}
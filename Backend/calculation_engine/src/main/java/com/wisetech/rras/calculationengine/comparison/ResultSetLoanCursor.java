@@ -0,0 +1,56 @@
+package com.wisetech.rras.calculationengine.comparison;
+
+import com.wisetech.rras.calculationengine.enums.AssetClassification;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reads an open, loan_id ordered result set into a single reused LoanState
+ */
+class ResultSetLoanCursor implements LoanCursor {
+
+    private final ResultSet rs;
+    private final LoanState state = new LoanState();
+
+    ResultSetLoanCursor(ResultSet rs) {
+        this.rs = rs;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        if (!rs.next()) {
+            return false;
+        }
+
+        state.loanId = rs.getLong("loan_id");
+        state.balance = orZero(rs.getBigDecimal("outstanding_balance"));
+
+        String assetClass = rs.getString("asset_class");
+        state.assetClass = assetClass != null
+                ? AssetClassification.fromValue(assetClass)
+                : AssetClassification.STANDARD;
+
+        // NULL reads as 0, as it does for the NPL calculation
+        state.daysPastDue = rs.getInt("days_past_due");
+
+        int stage = rs.getInt("stage");
+        state.stage = rs.wasNull() ? 1 : stage;
+
+        // Loans without a metric component row were not risk weighted
+        state.exposure = orZero(rs.getBigDecimal("exposure_amount"));
+        state.riskWeight = orZero(rs.getBigDecimal("risk_weight"));
+        state.rwa = orZero(rs.getBigDecimal("rwa_value"));
+        return true;
+    }
+
+    @Override
+    public LoanState current() {
+        return state;
+    }
+
+    private static BigDecimal orZero(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+}
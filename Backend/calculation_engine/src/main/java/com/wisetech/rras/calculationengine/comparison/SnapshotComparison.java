@@ -0,0 +1,27 @@
+package com.wisetech.rras.calculationengine.comparison;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SnapshotComparison {
+
+    private int baseSnapshotId;
+    private int targetSnapshotId;
+
+    private long matchedLoans;
+    private long newLoans;
+    private long exitedLoans;
+
+    private MovementWaterfall nplMovements;
+    private MovementWaterfall rwaMovements;
+    private TransitionMatrix stageTransitions;
+    private TransitionMatrix classificationTransitions;
+
+    private long executionTimeMs;
+}
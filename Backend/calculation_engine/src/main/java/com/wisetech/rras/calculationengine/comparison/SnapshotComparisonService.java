@@ -0,0 +1,109 @@
+package com.wisetech.rras.calculationengine.comparison;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Snapshot Comparison Service
+ *
+ * Explains how NPL and RWA moved between two snapshots. Both snapshots are read
+ * as server-side cursors in loan_id order (the primary key order of both tables)
+ * and merge-joined as they stream, so the comparison is a single linear pass and
+ * holds one row per snapshot in memory at a time.
+ */
+@Service
+@Slf4j
+public class SnapshotComparisonService {
+
+    private static final String LOANS_SQL = """
+            SELECT les.loan_id, les.outstanding_balance, les.asset_class, les.days_past_due,
+                   COALESCE(mc.ecl_stage, les.stage) AS stage,
+                   mc.exposure_amount, mc.risk_weight, mc.rwa_value
+            FROM snapshots.loan_exposures_snapshot les
+            LEFT JOIN metrics.metric_components mc
+                   ON mc.snapshot_id = les.snapshot_id AND mc.loan_id = les.loan_id
+            WHERE les.snapshot_id = ?
+            ORDER BY les.loan_id
+            """;
+
+    private final JdbcTemplate comparisonJdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int fetchSize;
+
+    public SnapshotComparisonService(DataSource dataSource,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${regulatory.comparison.fetch-size:5000}") int fetchSize) {
+        this.comparisonJdbcTemplate = new JdbcTemplate(dataSource);
+        this.fetchSize = fetchSize;
+
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Compare a target snapshot against an earlier base snapshot
+     */
+    public SnapshotComparison compare(int baseSnapshotId, int targetSnapshotId) {
+        if (baseSnapshotId == targetSnapshotId) {
+            throw new IllegalArgumentException("Cannot compare snapshot " + baseSnapshotId + " with itself");
+        }
+
+        long startTime = System.currentTimeMillis();
+        log.info("Comparing snapshot {} against snapshot {}", targetSnapshotId, baseSnapshotId);
+
+        // Both cursors stay open on one connection, which needs the transaction
+        MovementAccumulator movements = readOnlyTransaction.execute(status ->
+                comparisonJdbcTemplate.execute((ConnectionCallback<MovementAccumulator>) connection ->
+                        mergeJoin(connection, baseSnapshotId, targetSnapshotId)));
+
+        long executionTime = System.currentTimeMillis() - startTime;
+        log.info("Compared snapshots {} -> {} in {} ms: {} matched, {} new, {} exited loans, NPL {} -> {}, RWA {} -> {}",
+                baseSnapshotId, targetSnapshotId, executionTime,
+                movements.matchedLoans, movements.newLoans, movements.exitedLoans,
+                movements.npl.getOpening(), movements.npl.getClosing(),
+                movements.rwa.getOpening(), movements.rwa.getClosing());
+
+        return SnapshotComparison.builder()
+                .baseSnapshotId(baseSnapshotId)
+                .targetSnapshotId(targetSnapshotId)
+                .matchedLoans(movements.matchedLoans)
+                .newLoans(movements.newLoans)
+                .exitedLoans(movements.exitedLoans)
+                .nplMovements(movements.npl)
+                .rwaMovements(movements.rwa)
+                .stageTransitions(movements.stages)
+                .classificationTransitions(movements.classifications)
+                .executionTimeMs(executionTime)
+                .build();
+    }
+
+    private MovementAccumulator mergeJoin(Connection connection, int baseSnapshotId, int targetSnapshotId)
+            throws SQLException {
+        try (PreparedStatement baseStatement = openCursor(connection, baseSnapshotId);
+             PreparedStatement targetStatement = openCursor(connection, targetSnapshotId);
+             ResultSet base = baseStatement.executeQuery();
+             ResultSet target = targetStatement.executeQuery()) {
+
+            return MovementAccumulator.mergeJoin(new ResultSetLoanCursor(base), new ResultSetLoanCursor(target));
+        }
+    }
+
+    private PreparedStatement openCursor(Connection connection, int snapshotId) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(
+                LOANS_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(fetchSize);
+        statement.setInt(1, snapshotId);
+        return statement;
+    }
+}
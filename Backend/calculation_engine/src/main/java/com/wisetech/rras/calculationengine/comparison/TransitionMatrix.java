@@ -0,0 +1,57 @@
+package com.wisetech.rras.calculationengine.comparison;
+
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Count and opening balance of loans moving from one state to another between
+ * two snapshots. Rows are the base state plus NEW, columns the target state plus
+ * EXITED, so originations and exits appear alongside migrations.
+ */
+@Getter
+public class TransitionMatrix {
+
+    public static final String NEW = "NEW";
+    public static final String EXITED = "EXITED";
+
+    private final List<String> fromStates;
+    private final List<String> toStates;
+    private final long[][] counts;
+    private final BigDecimal[][] amounts;
+
+    public TransitionMatrix(List<String> states) {
+        this.fromStates = new ArrayList<>(states);
+        this.fromStates.add(NEW);
+        this.toStates = new ArrayList<>(states);
+        this.toStates.add(EXITED);
+
+        this.counts = new long[fromStates.size()][toStates.size()];
+        this.amounts = new BigDecimal[fromStates.size()][toStates.size()];
+        for (BigDecimal[] row : amounts) {
+            Arrays.fill(row, BigDecimal.ZERO);
+        }
+    }
+
+    /**
+     * Record one loan; pass -1 as from for a new loan or as to for an exited one
+     */
+    void record(int from, int to, BigDecimal amount) {
+        int row = from < 0 ? fromStates.size() - 1 : from;
+        int column = to < 0 ? toStates.size() - 1 : to;
+
+        counts[row][column]++;
+        amounts[row][column] = amounts[row][column].add(amount);
+    }
+
+    public long getCount(String from, String to) {
+        return counts[fromStates.indexOf(from)][toStates.indexOf(to)];
+    }
+
+    public BigDecimal getAmount(String from, String to) {
+        return amounts[fromStates.indexOf(from)][toStates.indexOf(to)];
+    }
+}
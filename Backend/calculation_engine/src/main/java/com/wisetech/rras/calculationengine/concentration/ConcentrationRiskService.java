@@ -0,0 +1,309 @@
+package com.wisetech.rras.calculationengine.concentration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wisetech.rras.calculationengine.domain.CalculationAudit;
+import com.wisetech.rras.calculationengine.domain.RegulatoryMetric;
+import com.wisetech.rras.calculationengine.repository.CalculationAuditRepository;
+import com.wisetech.rras.calculationengine.repository.RegulatoryMetricRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Concentration Risk Calculation Service
+ *
+ * Computes large exposure and concentration metrics in a single streaming pass
+ * over the loan snapshot:
+ * - Top 20 obligors by gross exposure
+ * - HHI by customer, country, product and currency
+ * - Obligors above 10% (large exposure) and 25% (limit) of Tier 1 capital
+ *
+ * Obligor totals are kept in a primitive open addressing map, so the pass does
+ * not box a key or value per loan. Loans without a customer_id cannot be
+ * attributed to an obligor: they count towards total exposure and the
+ * dimension HHIs, but not towards any obligor metric.
+ */
+@Service
+@Slf4j
+public class ConcentrationRiskService {
+
+    private static final String LOANS_SQL = """
+            SELECT customer_id, outstanding_balance, country, product_type, currency
+            FROM snapshots.loan_exposures_snapshot
+            WHERE snapshot_id = ?
+            """;
+
+    private static final String TIER1_SQL = """
+            SELECT COALESCE(SUM(amount), 0)
+            FROM snapshots.capital_snapshot
+            WHERE snapshot_id = ? AND component_type IN ('CET1', 'AT1')
+            """;
+
+    private static final int TOP_OBLIGORS = 20;
+
+    private final RegulatoryMetricRepository regulatoryMetricRepository;
+    private final CalculationAuditRepository auditRepository;
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate concentrationJdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    @Value("${regulatory.concentration.large-exposure-pct:10.0}")
+    private double largeExposurePct;
+
+    @Value("${regulatory.concentration.limit-pct:25.0}")
+    private double limitPct;
+
+    @Value("${regulatory.concentration.expected-customers:300000}")
+    private int expectedCustomers;
+
+    public ConcentrationRiskService(RegulatoryMetricRepository regulatoryMetricRepository,
+                                    CalculationAuditRepository auditRepository,
+                                    ObjectMapper objectMapper,
+                                    DataSource dataSource,
+                                    PlatformTransactionManager transactionManager,
+                                    @Value("${regulatory.concentration.fetch-size:5000}") int fetchSize) {
+        this.regulatoryMetricRepository = regulatoryMetricRepository;
+        this.auditRepository = auditRepository;
+        this.objectMapper = objectMapper;
+
+        this.concentrationJdbcTemplate = new JdbcTemplate(dataSource);
+        this.concentrationJdbcTemplate.setFetchSize(fetchSize);
+
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Calculate concentration metrics for a snapshot
+     */
+    public Map<String, BigDecimal> calculateConcentration(int snapshotId) {
+        long startTime = System.currentTimeMillis();
+        log.info("Starting concentration calculation for snapshot {}", snapshotId);
+
+        Totals totals = readOnlyTransaction.execute(status -> aggregate(snapshotId));
+        Double tier1 = concentrationJdbcTemplate.queryForObject(TIER1_SQL, Double.class, snapshotId);
+        double tier1Capital = tier1 != null ? tier1 : 0.0;
+
+        if (totals.loanCount == 0) {
+            throw new IllegalStateException("No loan data found for snapshot " + snapshotId);
+        }
+
+        // Second walk is over the obligor map only, not the loans
+        double total = totals.totalExposure;
+        double largeThreshold = tier1Capital * largeExposurePct / 100.0;
+        double limitThreshold = tier1Capital * limitPct / 100.0;
+        TopExposures top = new TopExposures(TOP_OBLIGORS);
+        double[] customerSquares = {0.0};
+        int[] largeCount = {0};
+        int[] breachCount = {0};
+        double[] largeAmount = {0.0};
+        double[] breachAmount = {0.0};
+
+        totals.byCustomer.forEach((customerId, exposure) -> {
+            top.offer(customerId, exposure);
+            customerSquares[0] += exposure * exposure;
+
+            if (tier1Capital > 0 && exposure >= largeThreshold) {
+                largeCount[0]++;
+                largeAmount[0] += exposure;
+            }
+            if (tier1Capital > 0 && exposure > limitThreshold) {
+                breachCount[0]++;
+                breachAmount[0] += exposure;
+            }
+        });
+        top.sortDescending();
+
+        double top20Exposure = 0;
+        List<Map<String, Object>> topObligors = new ArrayList<>(top.size());
+        for (int i = 0; i < top.size(); i++) {
+            top20Exposure += top.valueAt(i);
+
+            Map<String, Object> obligor = new LinkedHashMap<>();
+            obligor.put("customer_id", top.keyAt(i));
+            obligor.put("exposure", round(top.valueAt(i)));
+            obligor.put("pct_of_portfolio", round(percent(top.valueAt(i), total)));
+            if (tier1Capital > 0) {
+                obligor.put("pct_of_tier1", round(percent(top.valueAt(i), tier1Capital)));
+            }
+            topObligors.add(obligor);
+        }
+
+        if (tier1Capital <= 0) {
+            log.warn("No Tier 1 capital for snapshot {}, large exposure metrics will be zero", snapshotId);
+        }
+        if (totals.unidentifiedCount > 0) {
+            log.warn("{} loans of snapshot {} ({} exposure) have no customer_id and are left out of the obligor metrics",
+                    totals.unidentifiedCount, snapshotId, round(totals.unidentifiedExposure));
+        }
+
+        Map<String, BigDecimal> results = new LinkedHashMap<>();
+        results.put("CONC_TOP20_EXPOSURE", round(top20Exposure));
+        results.put("CONC_TOP20_PCT", round(percent(top20Exposure, total)));
+        results.put("CONC_LARGEST_EXPOSURE_PCT_T1", round(top.size() > 0 ? percent(top.valueAt(0), tier1Capital) : 0));
+        results.put("CONC_HHI_CUSTOMER", round(total > 0 ? customerSquares[0] / (total * total) * 10_000 : 0));
+        results.put("CONC_HHI_COUNTRY", round(totals.byCountry.hhi(total)));
+        results.put("CONC_HHI_PRODUCT", round(totals.byProduct.hhi(total)));
+        results.put("CONC_HHI_CURRENCY", round(totals.byCurrency.hhi(total)));
+        results.put("CONC_LARGE_EXPOSURE_COUNT", BigDecimal.valueOf(largeCount[0]));
+        results.put("CONC_LARGE_EXPOSURE_AMOUNT", round(largeAmount[0]));
+        results.put("CONC_LIMIT_BREACH_COUNT", BigDecimal.valueOf(breachCount[0]));
+        results.put("CONC_LIMIT_BREACH_AMOUNT", round(breachAmount[0]));
+
+        saveMetrics(snapshotId, results, topObligors, totals, tier1Capital);
+
+        long executionTime = System.currentTimeMillis() - startTime;
+        auditCalculation(snapshotId, totals, tier1Capital, results, executionTime);
+
+        log.info("Completed concentration calculation for snapshot {}: {} loans, {} customers, "
+                        + "customer HHI = {}, {} limit breaches in {} ms",
+                snapshotId, totals.loanCount, totals.byCustomer.size(),
+                results.get("CONC_HHI_CUSTOMER"), breachCount[0], executionTime);
+
+        return results;
+    }
+
+    private Totals aggregate(int snapshotId) {
+        Totals totals = new Totals(expectedCustomers);
+
+        concentrationJdbcTemplate.query(LOANS_SQL, rs -> {
+            BigDecimal balance = rs.getBigDecimal("outstanding_balance");
+            double exposure = balance != null ? balance.doubleValue() : 0.0;
+
+            totals.loanCount++;
+            totals.totalExposure += exposure;
+            long customerId = rs.getLong("customer_id");
+            if (rs.wasNull()) {
+                totals.unidentifiedCount++;
+                totals.unidentifiedExposure += exposure;
+            } else {
+                totals.byCustomer.add(customerId, exposure);
+            }
+            totals.byCountry.add(rs.getString("country"), exposure);
+            totals.byProduct.add(rs.getString("product_type"), exposure);
+            totals.byCurrency.add(rs.getString("currency"), exposure);
+        }, snapshotId);
+
+        return totals;
+    }
+
+    private void saveMetrics(int snapshotId, Map<String, BigDecimal> results,
+                             List<Map<String, Object>> topObligors, Totals totals, double tier1Capital) {
+        String topMetadata = createMetadata(Map.of(
+                "description", "Top " + TOP_OBLIGORS + " obligors by gross exposure",
+                "obligors", topObligors,
+                "unidentified_loan_count", totals.unidentifiedCount,
+                "unidentified_exposure", round(totals.unidentifiedExposure)));
+        String hhiMetadata = createMetadata(Map.of(
+                "description", "Herfindahl-Hirschman index, 0 - 10,000",
+                "country_shares_pct", totals.byCountry.shares(totals.totalExposure),
+                "product_shares_pct", totals.byProduct.shares(totals.totalExposure),
+                "currency_shares_pct", totals.byCurrency.shares(totals.totalExposure)));
+        String largeMetadata = createMetadata(Map.of(
+                "description", "Obligors at or above " + largeExposurePct + "% / above " + limitPct
+                        + "% of Tier 1 capital",
+                "tier1_capital", round(tier1Capital)));
+
+        for (Map.Entry<String, BigDecimal> entry : results.entrySet()) {
+            String code = entry.getKey();
+            String unit;
+            String metadata;
+            if (code.startsWith("CONC_HHI")) {
+                unit = "INDEX";
+                metadata = hhiMetadata;
+            } else if (code.startsWith("CONC_TOP20")) {
+                unit = code.endsWith("_PCT") ? "PERCENTAGE" : "CURRENCY";
+                metadata = topMetadata;
+            } else {
+                unit = code.endsWith("_COUNT") ? "COUNT" : code.endsWith("_AMOUNT") ? "CURRENCY" : "PERCENTAGE";
+                metadata = largeMetadata;
+            }
+            saveMetric(snapshotId, code, entry.getValue(), unit, metadata);
+        }
+    }
+
+    private void saveMetric(int snapshotId, String metricCode, BigDecimal value, String unit, String metadata) {
+        RegulatoryMetric metric = RegulatoryMetric.builder()
+                .snapshotId(snapshotId)
+                .metricCode(metricCode)
+                .value(value)
+                .unit(unit)
+                .metadata(metadata)
+                .build();
+
+        regulatoryMetricRepository.save(metric);
+    }
+
+    private String createMetadata(Map<String, Object> metadata) {
+        try {
+            return objectMapper.writeValueAsString(metadata);
+        } catch (Exception e) {
+            log.error("Error creating metadata", e);
+            return "{}";
+        }
+    }
+
+    private void auditCalculation(int snapshotId, Totals totals, double tier1Capital,
+                                  Map<String, BigDecimal> results, long executionTime) {
+        try {
+            Map<String, Object> inputData = new HashMap<>();
+            inputData.put("loan_count", totals.loanCount);
+            inputData.put("customer_count", totals.byCustomer.size());
+            inputData.put("unidentified_loan_count", totals.unidentifiedCount);
+            inputData.put("unidentified_exposure", round(totals.unidentifiedExposure));
+            inputData.put("total_exposure", round(totals.totalExposure));
+            inputData.put("tier1_capital", round(tier1Capital));
+
+            CalculationAudit audit = CalculationAudit.builder()
+                    .snapshotId(snapshotId)
+                    .calculationStep("CONCENTRATION_CALCULATION")
+                    .inputData(objectMapper.writeValueAsString(inputData))
+                    .outputData(objectMapper.writeValueAsString(results))
+                    .calculationRule("Basel large exposures framework: " + largeExposurePct
+                            + "% reporting and " + limitPct + "% limit on Tier 1, HHI by dimension")
+                    .executionTimeMs((int) executionTime)
+                    .build();
+
+            auditRepository.save(audit);
+        } catch (Exception e) {
+            log.error("Error creating audit record", e);
+        }
+    }
+
+    private static double percent(double part, double whole) {
+        return whole > 0 ? part * 100.0 / whole : 0.0;
+    }
+
+    private static BigDecimal round(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static class Totals {
+        final LongDoubleHashMap byCustomer;
+        final DimensionTotals byCountry = new DimensionTotals();
+        final DimensionTotals byProduct = new DimensionTotals();
+        final DimensionTotals byCurrency = new DimensionTotals();
+        long loanCount;
+        double totalExposure;
+
+        // Loans without a customer_id, kept out of byCustomer
+        long unidentifiedCount;
+        double unidentifiedExposure;
+
+        Totals(int expectedCustomers) {
+            this.byCustomer = new LongDoubleHashMap(expectedCustomers);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.wisetech.rras.calculationengine.concentration;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exposure totals for a low cardinality dimension (country, product, currency).
+ * Each distinct value is given a dense code once; totals accumulate in a double[].
+ */
+public class DimensionTotals {
+
+    private static final String UNKNOWN = "UNKNOWN";
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private String[] names = new String[16];
+    private double[] totals = new double[16];
+
+    public void add(String value, double exposure) {
+        String key = value != null ? value : UNKNOWN;
+        Integer code = codes.get(key);
+        if (code == null) {
+            code = codes.size();
+            codes.put(key, code);
+            if (code == totals.length) {
+                names = Arrays.copyOf(names, code << 1);
+                totals = Arrays.copyOf(totals, code << 1);
+            }
+            names[code] = key;
+        }
+        totals[code] += exposure;
+    }
+
+    public int size() {
+        return codes.size();
+    }
+
+    /**
+     * Herfindahl-Hirschman index of the shares, on the 0 - 10,000 scale
+     */
+    public double hhi(double totalExposure) {
+        if (totalExposure <= 0) {
+            return 0.0;
+        }
+        double sumOfSquares = 0;
+        for (int i = 0; i < codes.size(); i++) {
+            double share = totals[i] / totalExposure;
+            sumOfSquares += share * share;
+        }
+        return sumOfSquares * 10_000;
+    }
+
+    /**
+     * Share of total exposure per value, in percent
+     */
+    public Map<String, Double> shares(double totalExposure) {
+        Map<String, Double> shares = new HashMap<>();
+        for (int i = 0; i < codes.size(); i++) {
+            shares.put(names[i], totalExposure > 0 ? totals[i] * 100.0 / totalExposure : 0.0);
+        }
+        return shares;
+    }
+}
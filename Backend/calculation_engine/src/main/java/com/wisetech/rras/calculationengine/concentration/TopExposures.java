@@ -0,0 +1,99 @@
+package com.wisetech.rras.calculationengine.concentration;
+
+/**
+ * Keeps the n largest (key, value) pairs seen, using a primitive min-heap
+ */
+public class TopExposures {
+
+    private final long[] keys;
+    private final double[] values;
+    private int size;
+
+    public TopExposures(int n) {
+        this.keys = new long[n];
+        this.values = new double[n];
+    }
+
+    public void offer(long key, double value) {
+        if (size < keys.length) {
+            keys[size] = key;
+            values[size] = value;
+            siftUp(size++);
+        } else if (value > values[0]) {
+            keys[0] = key;
+            values[0] = value;
+            siftDown(0);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long keyAt(int i) {
+        return keys[i];
+    }
+
+    public double valueAt(int i) {
+        return values[i];
+    }
+
+    /**
+     * Reorders the entries by descending value so keyAt(0) is the largest.
+     * Call once all values have been offered; the heap order is lost.
+     */
+    public void sortDescending() {
+        // n is small (top 20), insertion sort is plenty
+        for (int i = 1; i < size; i++) {
+            long k = keys[i];
+            double v = values[i];
+            int j = i - 1;
+            while (j >= 0 && values[j] < v) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = k;
+            values[j + 1] = v;
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (values[parent] <= values[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && values[left] < values[smallest]) {
+                smallest = left;
+            }
+            if (right < size && values[right] < values[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long k = keys[a];
+        keys[a] = keys[b];
+        keys[b] = k;
+        double v = values[a];
+        values[a] = values[b];
+        values[b] = v;
+    }
+}
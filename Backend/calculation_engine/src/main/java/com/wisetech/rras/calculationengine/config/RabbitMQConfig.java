@@ -1,15 +1,22 @@
 package com.wisetech.rras.calculationengine.config;
 
+import com.wisetech.rras.calculationengine.partition.PartitionManager;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+
+@Slf4j
 @Configuration
 public class RabbitMQConfig {
 
@@ -31,12 +38,21 @@ public class RabbitMQConfig {
     @Value("${rabbitmq.queue.calculation.ecl}")
     private String eclQueue;
 
+    @Value("${rabbitmq.queue.calculation.concentration}")
+    private String concentrationQueue;
+
+    @Value("${rabbitmq.queue.calculation.simulation}")
+    private String simulationQueue;
+
     @Value("${rabbitmq.queue.snapshot}")
     private String snapshotQueue;
 
     @Value("${rabbitmq.queue.notification}")
     private String notificationQueue;
 
+    @Value("${partitioning.request-queue}")
+    private String partitionRequestQueue;
+
     // Exchange
     @Bean
     public TopicExchange calculationExchange() {
@@ -79,6 +95,20 @@ public class RabbitMQConfig {
                 .build();
     }
 
+    @Bean
+    public Queue concentrationQueue() {
+        return QueueBuilder.durable(concentrationQueue)
+                .withArgument("x-message-ttl", 3600000)
+                .build();
+    }
+
+    @Bean
+    public Queue simulationQueue() {
+        return QueueBuilder.durable(simulationQueue)
+                .withArgument("x-message-ttl", 3600000)
+                .build();
+    }
+
     @Bean
     public Queue snapshotQueue() {
         return QueueBuilder.durable(snapshotQueue)
@@ -93,40 +123,69 @@ public class RabbitMQConfig {
                 .build();
     }
 
-    // Bindings
+    /**
+     * Shared by all partition workers; no TTL, the manager retries what is not answered in time
+     */
+    @Bean
+    public Queue partitionRequestQueue() {
+        return QueueBuilder.durable(partitionRequestQueue).build();
+    }
+
+    // Bindings: each calculation queue receives the events that trigger it (PipelineCalculation)
     @Bean
     public Binding rwaBinding() {
         return BindingBuilder.bind(rwaQueue())
                 .to(calculationExchange())
-                .with("calculation.rwa");
+                .with("snapshot.validated");
     }
 
     @Bean
-    public Binding carBinding() {
-        return BindingBuilder.bind(carQueue())
+    public Binding nplBinding() {
+        return BindingBuilder.bind(nplQueue())
                 .to(calculationExchange())
-                .with("calculation.car");
+                .with("snapshot.validated");
     }
 
     @Bean
     public Binding lcrBinding() {
         return BindingBuilder.bind(lcrQueue())
                 .to(calculationExchange())
-                .with("calculation.lcr");
+                .with("snapshot.validated");
     }
 
     @Bean
-    public Binding nplBinding() {
-        return BindingBuilder.bind(nplQueue())
+    public Binding concentrationBinding() {
+        return BindingBuilder.bind(concentrationQueue())
                 .to(calculationExchange())
-                .with("calculation.npl");
+                .with("snapshot.validated");
+    }
+
+    @Bean
+    public Binding simulationBinding() {
+        return BindingBuilder.bind(simulationQueue())
+                .to(calculationExchange())
+                .with("snapshot.validated");
+    }
+
+    @Bean
+    public Binding carBinding() {
+        return BindingBuilder.bind(carQueue())
+                .to(calculationExchange())
+                .with("calculation.rwa");
     }
 
     @Bean
-    public Binding eclBinding() {
+    public Binding eclRwaBinding() {
         return BindingBuilder.bind(eclQueue())
                 .to(calculationExchange())
-                .with("calculation.ecl");
+                .with("calculation.rwa");
+    }
+
+    @Bean
+    public Binding eclNplBinding() {
+        return BindingBuilder.bind(eclQueue())
+                .to(calculationExchange())
+                .with("calculation.npl");
     }
 
     @Bean
@@ -143,6 +202,42 @@ public class RabbitMQConfig {
                 .with("notification.#");
     }
 
+    @Bean
+    public Binding partitionRequestBinding() {
+        return BindingBuilder.bind(partitionRequestQueue())
+                .to(calculationExchange())
+                .with(PartitionManager.REQUEST_ROUTING_KEY);
+    }
+
+    /**
+     * The calculation queues used to be bound to their own completion events
+     * (calculation.rwa to the RWA queue, and so on), which with the pipeline would
+     * trigger a calculation by its own completion. Declaring the new bindings does
+     * not remove those on a broker that already has them, so they are unbound on
+     * every new connection, after RabbitAdmin's declarations. Unbinding a binding
+     * that does not exist is a no-op.
+     */
+    @Bean
+    public SmartInitializingSingleton obsoleteBindingsRemover(ConnectionFactory connectionFactory, AmqpAdmin amqpAdmin) {
+        List<Binding> obsolete = List.of(
+                obsoleteBinding(rwaQueue, "calculation.rwa"),
+                obsoleteBinding(carQueue, "calculation.car"),
+                obsoleteBinding(lcrQueue, "calculation.lcr"),
+                obsoleteBinding(nplQueue, "calculation.npl"),
+                obsoleteBinding(eclQueue, "calculation.ecl"));
+        return () -> connectionFactory.addConnectionListener(connection -> obsolete.forEach(binding -> {
+            try {
+                amqpAdmin.removeBinding(binding);
+            } catch (AmqpException e) {
+                log.warn("Could not remove binding {} -> {}", binding.getRoutingKey(), binding.getDestination(), e);
+            }
+        }));
+    }
+
+    private Binding obsoleteBinding(String queue, String routingKey) {
+        return new Binding(queue, Binding.DestinationType.QUEUE, calculationExchange, routingKey, null);
+    }
+
     // Message converter for JSON
     @Bean
     public MessageConverter jsonMessageConverter() {
@@ -0,0 +1,32 @@
+package com.wisetech.rras.calculationengine.context;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Results of earlier steps of one snapshot's calculation, held in memory
+ */
+public class CalculationContext {
+
+    private final int snapshotId;
+    private final Map<ContextKey<?>, Object> values = new ConcurrentHashMap<>();
+
+    CalculationContext(int snapshotId) {
+        this.snapshotId = snapshotId;
+    }
+
+    public int getSnapshotId() {
+        return snapshotId;
+    }
+
+    public <T> void put(ContextKey<T> key, T value) {
+        if (value != null) {
+            values.put(key, value);
+        }
+    }
+
+    public <T> Optional<T> get(ContextKey<T> key) {
+        return Optional.ofNullable(values.get(key)).map(key::cast);
+    }
+}
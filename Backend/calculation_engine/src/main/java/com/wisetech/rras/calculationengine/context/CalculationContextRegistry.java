@@ -0,0 +1,97 @@
+package com.wisetech.rras.calculationengine.context;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Calculation contexts by snapshot id.
+ *
+ * A step stores what it computed (TOTAL_RWA, NPL_AMOUNT, ...) and later steps
+ * of the same job read it from memory. When the value is missing, because the
+ * job was restarted after the producing step or the step ran on its own, the
+ * caller's database fallback is used. A value put inside a transaction is
+ * published only once that transaction commits, so a rolled back step never
+ * leaves totals in memory that the database does not have. Contexts are
+ * removed when the job ends (CalculationContextJobListener); size and idle
+ * limits bound anything left behind by calls outside a job.
+ */
+@Component
+@Slf4j
+public class CalculationContextRegistry {
+
+    private final Cache<Integer, CalculationContext> contexts = CacheBuilder.newBuilder()
+            .maximumSize(32)
+            .expireAfterAccess(6, TimeUnit.HOURS)
+            .build();
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong databaseFallbacks = new AtomicLong();
+
+    public CalculationContext context(int snapshotId) {
+        try {
+            return contexts.get(snapshotId, () -> new CalculationContext(snapshotId));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Stores a step's result, after the surrounding transaction commits if there is one
+     */
+    public <T> void put(int snapshotId, ContextKey<T> key, T value) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            context(snapshotId).put(key, value);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                context(snapshotId).put(key, value);
+            }
+        });
+    }
+
+    /**
+     * Value from an earlier step, or from the database when it is not in memory
+     */
+    public <T> T get(int snapshotId, ContextKey<T> key, Supplier<T> databaseFallback) {
+        CalculationContext context = context(snapshotId);
+        return context.get(key)
+                .map(value -> {
+                    memoryHits.incrementAndGet();
+                    return value;
+                })
+                .orElseGet(() -> {
+                    databaseFallbacks.incrementAndGet();
+                    log.info("{} for snapshot {} not in the calculation context, reading it from the database",
+                            key, snapshotId);
+                    T value = databaseFallback.get();
+                    context.put(key, value);
+                    return value;
+                });
+    }
+
+    public void remove(int snapshotId) {
+        contexts.invalidate(snapshotId);
+    }
+
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("memoryHits", memoryHits.get());
+        stats.put("databaseFallbacks", databaseFallbacks.get());
+        stats.put("activeContexts", contexts.size());
+        return stats;
+    }
+}
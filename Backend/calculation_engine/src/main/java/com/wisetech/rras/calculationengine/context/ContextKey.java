@@ -0,0 +1,35 @@
+package com.wisetech.rras.calculationengine.context;
+
+import java.math.BigDecimal;
+
+/**
+ * Typed key of a value carried between calculation steps
+ */
+public final class ContextKey<T> {
+
+    public static final ContextKey<BigDecimal> TOTAL_RWA = new ContextKey<>("TOTAL_RWA", BigDecimal.class);
+    public static final ContextKey<BigDecimal> TOTAL_LOANS = new ContextKey<>("TOTAL_LOANS", BigDecimal.class);
+    public static final ContextKey<BigDecimal> NPL_AMOUNT = new ContextKey<>("NPL_AMOUNT", BigDecimal.class);
+    public static final ContextKey<BigDecimal> TOTAL_ECL = new ContextKey<>("TOTAL_ECL", BigDecimal.class);
+
+    private final String name;
+    private final Class<T> type;
+
+    private ContextKey(String name, Class<T> type) {
+        this.name = name;
+        this.type = type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    T cast(Object value) {
+        return type.cast(value);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,75 @@
+package com.wisetech.rras.calculationengine.controller;
+
+import com.wisetech.rras.calculationengine.jfr.JobFlightRecorder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/regulatory-engine/recordings")
+@RequiredArgsConstructor
+@Slf4j
+public class FlightRecordingController {
+
+    private final JobFlightRecorder jobFlightRecorder;
+
+    /**
+     * Start recording a running job execution; the file is written when the job ends
+     */
+    @PostMapping("/{jobExecutionId}")
+    public ResponseEntity<Map<String, Object>> startRecording(@PathVariable Long jobExecutionId) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            if (!jobFlightRecorder.start(jobExecutionId)) {
+                response.put("status", "ERROR");
+                response.put("message", "Job execution " + jobExecutionId + " is not running");
+                return ResponseEntity.badRequest().body(response);
+            }
+
+            response.put("status", "RECORDING");
+            response.put("jobExecutionId", jobExecutionId);
+            response.put("message", "Flight recording started");
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            log.error("Failed to start flight recording for job {}", jobExecutionId, e);
+
+            response.put("status", "ERROR");
+            response.put("message", "Failed to start flight recording: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    /**
+     * Download the recording of a job execution, dumping what has been recorded so far if it is still running
+     */
+    @GetMapping("/{jobExecutionId}")
+    public ResponseEntity<Resource> downloadRecording(@PathVariable Long jobExecutionId) {
+        try {
+            Optional<Path> file = jobFlightRecorder.recordingFor(jobExecutionId);
+            if (file.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                            "attachment; filename=\"" + file.get().getFileName() + "\"")
+                    .body(new FileSystemResource(file.get()));
+
+        } catch (Exception e) {
+            log.error("Failed to read flight recording for job {}", jobExecutionId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+}
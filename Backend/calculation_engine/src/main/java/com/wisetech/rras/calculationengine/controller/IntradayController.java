@@ -0,0 +1,53 @@
+package com.wisetech.rras.calculationengine.controller;
+
+import com.wisetech.rras.calculationengine.intraday.IntradayPosition;
+import com.wisetech.rras.calculationengine.intraday.IntradayPositionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/regulatory-engine/intraday")
+@RequiredArgsConstructor
+@Slf4j
+public class IntradayController {
+
+    private final IntradayPositionService positionService;
+
+    /**
+     * Live NPL, RWA and stage totals since the last calculated snapshot
+     */
+    @GetMapping
+    public ResponseEntity<IntradayPosition> getPosition() {
+        return ResponseEntity.ok(positionService.getPosition());
+    }
+
+    /**
+     * Rebuild the running totals from the latest CALCULATED snapshot
+     */
+    @PostMapping("/reseed")
+    public ResponseEntity<Map<String, Object>> reseed() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("status", "SUCCESS");
+            response.put("position", positionService.reseed());
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalStateException e) {
+            response.put("status", "ERROR");
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+
+        } catch (Exception e) {
+            log.error("Failed to reseed intraday positions", e);
+
+            response.put("status", "ERROR");
+            response.put("message", "Failed to reseed intraday positions: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.wisetech.rras.calculationengine.controller;
+
+import com.wisetech.rras.calculationengine.reference.ReferenceDataCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/regulatory-engine/reference-cache")
+@RequiredArgsConstructor
+public class ReferenceDataController {
+
+    private final ReferenceDataCache referenceDataCache;
+
+    /**
+     * Hits (source queries saved), misses and load time per reference data type
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(referenceDataCache.getStats());
+    }
+
+    /**
+     * Drop the cached reference data of a date after a source data correction
+     */
+    @DeleteMapping("/{asOfDate}")
+    public ResponseEntity<Map<String, Object>> evict(
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate asOfDate) {
+        referenceDataCache.evict(asOfDate);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "SUCCESS");
+        response.put("message", "Reference data for " + asOfDate + " evicted");
+        return ResponseEntity.ok(response);
+    }
+}
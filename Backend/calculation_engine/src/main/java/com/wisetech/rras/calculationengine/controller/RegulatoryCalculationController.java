@@ -1,11 +1,21 @@
 package com.wisetech.rras.calculationengine.controller;
 
 import com.wisetech.rras.calculationengine.batch.ScheduledCalculationLauncher;
+import com.wisetech.rras.calculationengine.comparison.SnapshotComparison;
+import com.wisetech.rras.calculationengine.comparison.SnapshotComparisonService;
 import com.wisetech.rras.calculationengine.domain.RegulatoryMetric;
 import com.wisetech.rras.calculationengine.domain.SnapshotRun;
+import com.wisetech.rras.calculationengine.domain.StepResourceUsage;
 import com.wisetech.rras.calculationengine.enums.CalculationType;
+import com.wisetech.rras.calculationengine.enums.RunStatus;
+import com.wisetech.rras.calculationengine.repository.LoanExposureSnapshotRepository;
 import com.wisetech.rras.calculationengine.repository.RegulatoryMetricRepository;
 import com.wisetech.rras.calculationengine.repository.SnapshotRunRepository;
+import com.wisetech.rras.calculationengine.repository.StepResourceUsageRepository;
+import com.wisetech.rras.calculationengine.returns.ReturnGenerationService;
+import com.wisetech.rras.calculationengine.returns.ReturnGenerationService.GeneratedSchedule;
+import com.wisetech.rras.calculationengine.simulation.CreditLossSimulationService;
+import com.wisetech.rras.calculationengine.simulation.LossDistribution;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -27,6 +37,11 @@ public class RegulatoryCalculationController {
     private final ScheduledCalculationLauncher jobLauncher;
     private final SnapshotRunRepository snapshotRunRepository;
     private final RegulatoryMetricRepository metricRepository;
+    private final ReturnGenerationService returnGenerationService;
+    private final CreditLossSimulationService creditLossSimulationService;
+    private final SnapshotComparisonService snapshotComparisonService;
+    private final StepResourceUsageRepository stepResourceUsageRepository;
+    private final LoanExposureSnapshotRepository loanExposureSnapshotRepository;
 
     /**
      * Trigger a regulatory calculation job manually
@@ -63,5 +78,143 @@ public class RegulatoryCalculationController {
         }
     }
 
+    /**
+     * Generate the configured regulatory returns for a calculated snapshot
+     */
+    @PostMapping("/returns/{snapshotId}")
+    public ResponseEntity<Map<String, Object>> generateReturns(@PathVariable int snapshotId) {
+        SnapshotRun snapshot = snapshotRunRepository.findById(snapshotId).orElse(null);
+        if (snapshot == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        if (snapshot.getStatus() != RunStatus.CALCULATED && snapshot.getStatus() != RunStatus.APPROVED) {
+            response.put("status", "ERROR");
+            response.put("message", "Snapshot " + snapshotId + " is " + snapshot.getStatus()
+                    + ", returns can only be generated once it is CALCULATED");
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        try {
+            List<GeneratedSchedule> generated = returnGenerationService.generateReturns(snapshotId);
+
+            response.put("status", "SUCCESS");
+            response.put("snapshotId", snapshotId);
+            response.put("files", generated);
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            log.error("Failed to generate returns for snapshot {}", snapshotId, e);
+
+            response.put("status", "ERROR");
+            response.put("message", "Failed to generate returns: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    /**
+     * Simulate the credit loss distribution of a snapshot that is still being calculated
+     * again, e.g. with other trials or seed; simulateCreditLossStep runs it with the defaults
+     */
+    @PostMapping("/simulation/{snapshotId}")
+    public ResponseEntity<Map<String, Object>> simulateCreditLoss(
+            @PathVariable int snapshotId,
+            @RequestParam(required = false) Integer trials,
+            @RequestParam(required = false) Long seed) {
+        SnapshotRun snapshot = snapshotRunRepository.findById(snapshotId).orElse(null);
+        if (snapshot == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        try {
+            LossDistribution distribution = creditLossSimulationService.simulate(snapshotId, trials, seed);
+
+            response.put("status", "SUCCESS");
+            response.put("distribution", distribution);
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            response.put("status", "ERROR");
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+
+        } catch (Exception e) {
+            log.error("Failed to simulate credit losses for snapshot {}", snapshotId, e);
+
+            response.put("status", "ERROR");
+            response.put("message", "Failed to simulate credit losses: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    /**
+     * Explain NPL and RWA movements and stage/classification migrations between two snapshots
+     */
+    @GetMapping("/comparison/{baseSnapshotId}/{targetSnapshotId}")
+    public ResponseEntity<Map<String, Object>> compareSnapshots(
+            @PathVariable int baseSnapshotId,
+            @PathVariable int targetSnapshotId) {
+        Map<String, Object> response = new HashMap<>();
+        for (int snapshotId : new int[]{baseSnapshotId, targetSnapshotId}) {
+            SnapshotRun snapshot = snapshotRunRepository.findById(snapshotId).orElse(null);
+            if (snapshot == null) {
+                return ResponseEntity.notFound().build();
+            }
+            if (snapshot.getStatus() != RunStatus.CALCULATED && snapshot.getStatus() != RunStatus.APPROVED) {
+                response.put("status", "ERROR");
+                response.put("message", "Snapshot " + snapshotId + " is " + snapshot.getStatus()
+                        + ", only CALCULATED or APPROVED snapshots can be compared");
+                return ResponseEntity.badRequest().body(response);
+            }
+        }
+
+        try {
+            SnapshotComparison comparison = snapshotComparisonService.compare(baseSnapshotId, targetSnapshotId);
+
+            response.put("status", "SUCCESS");
+            response.put("comparison", comparison);
+            return ResponseEntity.ok(response);
 
-}
\ No newline at end of file
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            response.put("status", "ERROR");
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+
+        } catch (Exception e) {
+            log.error("Failed to compare snapshots {} and {}", baseSnapshotId, targetSnapshotId, e);
+
+            response.put("status", "ERROR");
+            response.put("message", "Failed to compare snapshots: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    /**
+     * CPU time and allocation per step of a snapshot's job runs, with the cost per loan, and
+     * the process-level GC and heap figures recorded alongside each step
+     */
+    @GetMapping("/snapshots/{snapshotId}/resource-usage")
+    public ResponseEntity<Map<String, Object>> getResourceUsage(@PathVariable int snapshotId) {
+        if (!snapshotRunRepository.existsById(snapshotId)) {
+            return ResponseEntity.notFound().build();
+        }
+
+        List<StepResourceUsage> steps = stepResourceUsageRepository.findBySnapshotIdOrderByRecordedAtAsc(snapshotId);
+        long loanCount = loanExposureSnapshotRepository.countBySnapshotId(snapshotId);
+        long cpuTimeMs = steps.stream().mapToLong(step -> Math.max(0, step.getCpuTimeMs())).sum();
+        long allocatedBytes = steps.stream().mapToLong(step -> Math.max(0, step.getAllocatedBytes())).sum();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "SUCCESS");
+        response.put("snapshotId", snapshotId);
+        response.put("loanCount", loanCount);
+        response.put("cpuTimeMs", cpuTimeMs);
+        response.put("allocatedBytes", allocatedBytes);
+        response.put("cpuNsPerLoan", loanCount > 0 ? cpuTimeMs * 1_000_000 / loanCount : null);
+        response.put("bytesPerLoan", loanCount > 0 ? allocatedBytes / loanCount : null);
+        response.put("steps", steps);
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,49 @@
+package com.wisetech.rras.calculationengine.controller;
+
+import com.wisetech.rras.calculationengine.stress.StressGrid;
+import com.wisetech.rras.calculationengine.stress.StressTestReport;
+import com.wisetech.rras.calculationengine.stress.StressTestingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/regulatory-engine/stress/")
+@Slf4j
+@RequiredArgsConstructor
+public class StressTestController {
+
+    private final StressTestingService stressTestingService;
+
+    /**
+     * Evaluate a scenario grid against a calculated snapshot, without writing metrics
+     */
+    @PostMapping("/{snapshotId}")
+    public ResponseEntity<?> runScenarios(@PathVariable int snapshotId, @RequestBody StressGrid grid) {
+        try {
+            StressTestReport report = stressTestingService.runScenarios(snapshotId, grid.expand());
+            return ResponseEntity.ok(report);
+
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            log.warn("Rejected stress test for snapshot {}: {}", snapshotId, e.getMessage());
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "ERROR");
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * Drop the in-memory copy of a snapshot
+     */
+    @DeleteMapping("/{snapshotId}/cache")
+    public ResponseEntity<Void> evict(@PathVariable int snapshotId) {
+        stressTestingService.evict(snapshotId);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,70 @@
+package com.wisetech.rras.calculationengine.domain;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.ZonedDateTime;
+
+/**
+ * CPU, allocation, GC and heap cost of one job step for a snapshot
+ */
+@Entity
+@Table(name = "step_resource_usage", schema = "metrics")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StepResourceUsage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "usage_id")
+    private long usageId;
+
+    @Column(name = "snapshot_id", nullable = false)
+    private int snapshotId;
+
+    @Column(name = "job_execution_id")
+    private Long jobExecutionId;
+
+    @Column(name = "step_name", nullable = false, length = 100)
+    private String stepName;
+
+    @Column(name = "status", length = 20)
+    private String status;
+
+    @Column(name = "wall_time_ms")
+    private Long wallTimeMs;
+
+    @Column(name = "cpu_time_ms")
+    private Long cpuTimeMs;
+
+    @Column(name = "user_time_ms")
+    private Long userTimeMs;
+
+    @Column(name = "allocated_bytes")
+    private Long allocatedBytes;
+
+    // Process-level: the whole JVM, including anything running alongside the step
+    @Column(name = "jvm_gc_pause_ms")
+    private Long jvmGcPauseMs;
+
+    @Column(name = "jvm_gc_count")
+    private Integer jvmGcCount;
+
+    @Column(name = "jvm_heap_used_bytes")
+    private Long jvmHeapUsedBytes;
+
+    @Column(name = "app_version", length = 50)
+    private String appVersion;
+
+    @Column(name = "host_name", length = 100)
+    private String hostName;
+
+    @Column(name = "recorded_at")
+    @Builder.Default
+    private ZonedDateTime recordedAt = ZonedDateTime.now();
+}
@@ -0,0 +1,22 @@
+package com.wisetech.rras.calculationengine.enums;
+
+public enum LoanChangeType {
+
+    NEW("NEW"),         // loan booked since the base snapshot
+    UPDATE("UPDATE"),   // balance, DPD, classification or collateral change
+    CLOSED("CLOSED");   // repaid, sold or written off
+
+    private final String value;
+
+    LoanChangeType(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static LoanChangeType fromValue(String value) {
+        return LoanChangeType.valueOf(value);
+    }
+}
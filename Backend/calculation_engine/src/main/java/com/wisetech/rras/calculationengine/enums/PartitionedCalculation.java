@@ -0,0 +1,21 @@
+package com.wisetech.rras.calculationengine.enums;
+
+public enum PartitionedCalculation {
+
+    RWA("RWA"),     // inserts the metric components of the partition's loans
+    ECL("ECL");     // updates them with ECL and stage, after RWA
+
+    private final String value;
+
+    PartitionedCalculation(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static PartitionedCalculation fromValue(String value) {
+        return PartitionedCalculation.valueOf(value);
+    }
+}
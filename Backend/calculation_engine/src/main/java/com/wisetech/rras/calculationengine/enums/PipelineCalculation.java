@@ -0,0 +1,43 @@
+package com.wisetech.rras.calculationengine.enums;
+
+import java.util.List;
+
+public enum PipelineCalculation {
+
+    RWA("RWA", "calculateRWA"),
+    NPL("NPL", "calculateNPL"),
+    LCR("LCR", "calculateLCR"),
+    CONCENTRATION("CONCENTRATION", "calculateConcentration"),
+    CAR("CAR", "calculateCAR", RWA),                // needs TOTAL_RWA
+    ECL("ECL", "calculateECL", RWA, NPL),           // updates RWA's metric components, coverage needs NPL_AMOUNT
+    SIMULATION("SIMULATION", "simulateCreditLoss"); // reads the loans only
+
+    private final String value;
+    private final String stepName;
+    private final List<PipelineCalculation> dependsOn;
+
+    PipelineCalculation(String value, String stepName, PipelineCalculation... dependsOn) {
+        this.value = value;
+        this.stepName = stepName;
+        this.dependsOn = List.of(dependsOn);
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * The job step doing the same calculation, as its resource usage is recorded
+     */
+    public String getStepName() {
+        return stepName;
+    }
+
+    public List<PipelineCalculation> getDependsOn() {
+        return dependsOn;
+    }
+
+    public static PipelineCalculation fromValue(String value) {
+        return PipelineCalculation.valueOf(value);
+    }
+}
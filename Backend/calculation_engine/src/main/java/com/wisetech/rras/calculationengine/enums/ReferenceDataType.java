@@ -0,0 +1,22 @@
+package com.wisetech.rras.calculationengine.enums;
+
+public enum ReferenceDataType {
+
+    CAPITAL_COMPONENTS("CAPITAL_COMPONENTS"),     // cbs.capital_components
+    LIQUIDITY_POSITIONS("LIQUIDITY_POSITIONS"),   // source_read.liquidity_positions
+    LIQUIDITY_LADDER("LIQUIDITY_LADDER");         // cbs.cash_flows + cbs.liquidity_assets
+
+    private final String value;
+
+    ReferenceDataType(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static ReferenceDataType fromValue(String value) {
+        return ReferenceDataType.valueOf(value);
+    }
+}
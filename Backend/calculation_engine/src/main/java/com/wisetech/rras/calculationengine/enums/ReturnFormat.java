@@ -0,0 +1,28 @@
+package com.wisetech.rras.calculationengine.enums;
+
+public enum ReturnFormat {
+
+    FIXED_WIDTH("FIXED_WIDTH", ".txt"),
+    CSV("CSV", ".csv"),
+    XML("XML", ".xml");
+
+    private final String value;
+    private final String fileExtension;
+
+    ReturnFormat(String value, String fileExtension) {
+        this.value = value;
+        this.fileExtension = fileExtension;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    public static ReturnFormat fromValue(String value) {
+        return ReturnFormat.valueOf(value);
+    }
+}
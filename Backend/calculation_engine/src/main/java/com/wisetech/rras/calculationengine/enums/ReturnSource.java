@@ -0,0 +1,39 @@
+package com.wisetech.rras.calculationengine.enums;
+
+import java.util.Set;
+
+public enum ReturnSource {
+
+    // One row per aggregate metric of the snapshot
+    REGULATORY_METRICS("REGULATORY_METRICS", Set.of(
+            "metric_code", "value", "unit", "calculated_at")),
+
+    // One row per loan, components joined to the loan snapshot
+    METRIC_COMPONENTS("METRIC_COMPONENTS", Set.of(
+            "loan_id", "exposure_amount", "risk_weight", "rwa_value", "ecl_amount",
+            "ecl_stage", "provision_amount", "customer_id", "customer_type", "country",
+            "product_type", "asset_class", "days_past_due", "currency", "maturity_date"));
+
+    private final String value;
+    private final Set<String> fields;
+
+    ReturnSource(String value, Set<String> fields) {
+        this.value = value;
+        this.fields = fields;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Columns a return template may reference for this source
+     */
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    public static ReturnSource fromValue(String value) {
+        return ReturnSource.valueOf(value);
+    }
+}
@@ -0,0 +1,106 @@
+package com.wisetech.rras.calculationengine.intraday;
+
+import com.wisetech.rras.calculationengine.changefeed.LoanChangeBatch;
+import com.wisetech.rras.calculationengine.enums.AssetClassification;
+import com.wisetech.rras.calculationengine.enums.CustomerCategory;
+import com.wisetech.rras.calculationengine.enums.LoanChangeType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Feeds database change batches into the intraday book.
+ * Only the changed loans are re-read from source_read.loan_exposures; a loan
+ * that is no longer in the view is treated as closed. A loan whose row cannot
+ * be applied is logged and skipped, the rest of the batch still applies.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = {"intraday.enabled", "change-feed.enabled"}, havingValue = "true")
+public class IntradayChangeFeedBridge {
+
+    private static final String CHANGED_LOANS_SQL = """
+            SELECT loan_id, customer_type, country, is_financial_inst, is_public_sector, product_type,
+                   loan_purpose, ltv_ratio, outstanding_balance, days_past_due, asset_class,
+                   is_restructured, is_forborne
+            FROM source_read.loan_exposures
+            WHERE loan_id = ANY (?)
+            ORDER BY loan_id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IntradayPositionService positionService;
+
+    @EventListener
+    public void onLoanChanges(LoanChangeBatch batch) {
+        long[] loanIds = batch.getLoanIds();
+        long eventTime = System.currentTimeMillis();
+        boolean[] found = new boolean[loanIds.length];
+        int[] skipped = {0};
+
+        Long[] boxed = Arrays.stream(loanIds).boxed().toArray(Long[]::new);
+        jdbcTemplate.query(con -> {
+            var statement = con.prepareStatement(CHANGED_LOANS_SQL);
+            statement.setArray(1, con.createArrayOf("bigint", boxed));
+            return statement;
+        }, rs -> {
+            long loanId = rs.getLong("loan_id");
+            found[Arrays.binarySearch(loanIds, loanId)] = true;
+
+            try {
+                applyRow(rs, loanId, eventTime);
+            } catch (RuntimeException e) {
+                skipped[0]++;
+                log.warn("Skipped intraday change of loan {}: {}", loanId, e.getMessage());
+            }
+        });
+
+        int closed = 0;
+        for (int i = 0; i < loanIds.length; i++) {
+            if (!found[i]) {
+                positionService.apply(LoanChangeEvent.builder()
+                        .loanId(loanIds[i])
+                        .changeType(LoanChangeType.CLOSED)
+                        .eventTime(eventTime)
+                        .build());
+                closed++;
+            }
+        }
+
+        log.debug("Applied {} changed loans to intraday positions ({} closed, {} skipped)",
+                loanIds.length, closed, skipped[0]);
+    }
+
+    private void applyRow(ResultSet rs, long loanId, long eventTime) throws SQLException {
+        String customerType = rs.getString("customer_type");
+        String assetClass = rs.getString("asset_class");
+        int daysPastDue = rs.getInt("days_past_due");
+
+        // Full state, so NEW and UPDATE are handled the same way
+        positionService.apply(LoanChangeEvent.builder()
+                .loanId(loanId)
+                .changeType(LoanChangeType.UPDATE)
+                .eventTime(eventTime)
+                .customerType(customerType != null ? CustomerCategory.fromValue(customerType) : null)
+                .country(rs.getString("country"))
+                .isFinancialInstitution(rs.getBoolean("is_financial_inst"))
+                .isPublicSector(rs.getBoolean("is_public_sector"))
+                .productType(rs.getString("product_type"))
+                .loanPurpose(rs.getString("loan_purpose"))
+                .ltvRatio(rs.getBigDecimal("ltv_ratio"))
+                .outstandingBalance(rs.getBigDecimal("outstanding_balance"))
+                .daysPastDue(daysPastDue)
+                .assetClass(assetClass != null ? AssetClassification.fromValue(assetClass) : null)
+                .isRestructured(rs.getBoolean("is_restructured"))
+                .isForborne(rs.getBoolean("is_forborne"))
+                .build());
+    }
+}
@@ -0,0 +1,36 @@
+package com.wisetech.rras.calculationengine.intraday;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Consumes loan change events from RabbitMQ when intraday.enabled is true.
+ * A single consumer keeps the events of a loan in publish order.
+ */
+@Configuration
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "intraday.enabled", havingValue = "true")
+public class IntradayChangeListener {
+
+    private final IntradayPositionService positionService;
+
+    @Bean
+    public Queue intradayLoanChangeQueue(@Value("${intraday.queue}") String queueName) {
+        return QueueBuilder.durable(queueName).build();
+    }
+
+    @RabbitListener(queues = "${intraday.queue}", ackMode = "AUTO", concurrency = "1")
+    public void onLoanChange(LoanChangeEvent event) {
+        if (!positionService.apply(event)) {
+            log.debug("Ignored out of order change for loan {} at {}", event.getLoanId(), event.getEventTime());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.wisetech.rras.calculationengine.intraday;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Point in time view of the intraday running totals
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IntradayPosition {
+
+    private Integer baseSnapshotId;
+    private LocalDate baseSnapshotDate;
+    private Instant seededAt;
+
+    private long loanCount;
+    private BigDecimal totalLoans;
+    private BigDecimal totalRwa;
+    private long nplCount;
+    private BigDecimal nplAmount;
+    private BigDecimal nplRatio;
+
+    private long stage1Count;
+    private long stage2Count;
+    private long stage3Count;
+    private BigDecimal stage1Exposure;
+    private BigDecimal stage2Exposure;
+    private BigDecimal stage3Exposure;
+
+    private long eventsApplied;
+    private long eventsIgnored;
+    private Instant lastAppliedAt;
+    private Long lastEventLagMs;     // lastAppliedAt - eventTime of that event
+}
@@ -0,0 +1,274 @@
+package com.wisetech.rras.calculationengine.intraday;
+
+import com.wisetech.rras.calculationengine.domain.LoanExposureSnapshot;
+import com.wisetech.rras.calculationengine.enums.AssetClassification;
+import com.wisetech.rras.calculationengine.enums.CustomerCategory;
+import com.wisetech.rras.calculationengine.enums.LoanChangeType;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Running NPL, RWA and stage totals, maintained by applying per loan deltas.
+ *
+ * Each loan keeps the inputs of the risk weight and staging rules plus its
+ * current contribution. A change removes the old contribution and adds the new
+ * one, so the cost of an event does not depend on the portfolio size.
+ * Amounts are kept in whole cents, so adding and removing a contribution any
+ * number of times leaves no rounding residue in the totals.
+ *
+ * Not thread safe; IntradayPositionService serialises access.
+ */
+public class IntradayPositionBook {
+
+    private static final int NPL_DPD_THRESHOLD = 90;
+
+    private final Function<LoanExposureSnapshot, BigDecimal> rwaRule;
+    private final ToIntFunction<LoanExposureSnapshot> stageRule;
+
+    private final Map<Long, LoanPosition> positions = new HashMap<>();
+    private final Map<String, String> dictionary = new HashMap<>();
+
+    // In cents
+    private long totalLoans;
+    private long totalRwa;
+    private long nplAmount;
+    private long nplCount;
+    private final long[] stageCounts = new long[4];
+    private final long[] stageExposure = new long[4];
+
+    private long eventsApplied;
+    private long eventsIgnored;
+    private Instant lastAppliedAt;
+    private Long lastEventLagMs;
+
+    /**
+     * @param rwaRule   the loan's RWA amount, as the RWA step stores it
+     * @param stageRule the loan's IFRS 9 stage
+     */
+    public IntradayPositionBook(Function<LoanExposureSnapshot, BigDecimal> rwaRule,
+                                ToIntFunction<LoanExposureSnapshot> stageRule) {
+        this.rwaRule = rwaRule;
+        this.stageRule = stageRule;
+    }
+
+    /**
+     * Add a loan from the base snapshot
+     */
+    public void seed(LoanExposureSnapshot loan) {
+        LoanPosition position = new LoanPosition();
+        position.customerType = loan.getCustomerType();
+        position.country = intern(loan.getCountry());
+        position.isFinancialInstitution = Boolean.TRUE.equals(loan.getIsFinancialInstitution());
+        position.isPublicSector = Boolean.TRUE.equals(loan.getIsPublicSector());
+        position.productType = intern(loan.getProductType());
+        position.loanPurpose = intern(loan.getLoanPurpose());
+        position.ltvRatio = loan.getLtvRatio();
+        position.outstandingBalance = loan.getOutstandingBalance() != null ? loan.getOutstandingBalance() : BigDecimal.ZERO;
+        position.daysPastDue = loan.getDaysPastDue() != null ? loan.getDaysPastDue() : 0;
+        position.assetClass = loan.getAssetClass();
+        position.isRestructured = Boolean.TRUE.equals(loan.getIsRestructured());
+        position.isForborne = Boolean.TRUE.equals(loan.getIsForborne());
+
+        LoanPosition previous = positions.put(loan.getLoanId(), position);
+        if (previous != null) {
+            remove(previous);
+        }
+        evaluate(position);
+        add(position);
+    }
+
+    /**
+     * Apply a change event; returns false when it is older than the loan's last change
+     */
+    public boolean apply(LoanChangeEvent event) {
+        if (event.getLoanId() == null || event.getChangeType() == null) {
+            throw new IllegalArgumentException("Loan change event needs a loanId and a changeType");
+        }
+
+        LoanPosition position = positions.get(event.getLoanId());
+        if (position != null && event.getEventTime() <= position.lastEventTime) {
+            eventsIgnored++;
+            return false;
+        }
+
+        if (event.getChangeType() == LoanChangeType.CLOSED) {
+            if (position != null) {
+                remove(position);
+                positions.remove(event.getLoanId());
+            }
+        } else {
+            if (position == null) {
+                position = new LoanPosition();
+                position.outstandingBalance = BigDecimal.ZERO;
+                positions.put(event.getLoanId(), position);
+            } else {
+                remove(position);
+            }
+            merge(position, event);
+            evaluate(position);
+            add(position);
+        }
+
+        if (position != null) {
+            position.lastEventTime = event.getEventTime();
+        }
+
+        eventsApplied++;
+        lastAppliedAt = Instant.now();
+        lastEventLagMs = event.getEventTime() > 0 ? lastAppliedAt.toEpochMilli() - event.getEventTime() : null;
+        return true;
+    }
+
+    public int size() {
+        return positions.size();
+    }
+
+    public IntradayPosition view() {
+        return IntradayPosition.builder()
+                .loanCount(positions.size())
+                .totalLoans(fromCents(totalLoans))
+                .totalRwa(fromCents(totalRwa))
+                .nplCount(nplCount)
+                .nplAmount(fromCents(nplAmount))
+                .nplRatio(totalLoans > 0
+                        ? BigDecimal.valueOf(nplAmount * 100).divide(BigDecimal.valueOf(totalLoans), 2, RoundingMode.HALF_UP)
+                        : new BigDecimal("0.00"))
+                .stage1Count(stageCounts[1])
+                .stage2Count(stageCounts[2])
+                .stage3Count(stageCounts[3])
+                .stage1Exposure(fromCents(stageExposure[1]))
+                .stage2Exposure(fromCents(stageExposure[2]))
+                .stage3Exposure(fromCents(stageExposure[3]))
+                .eventsApplied(eventsApplied)
+                .eventsIgnored(eventsIgnored)
+                .lastAppliedAt(lastAppliedAt)
+                .lastEventLagMs(lastEventLagMs)
+                .build();
+    }
+
+    private void merge(LoanPosition position, LoanChangeEvent event) {
+        if (event.getCustomerType() != null) {
+            position.customerType = event.getCustomerType();
+        }
+        if (event.getCountry() != null) {
+            position.country = intern(event.getCountry());
+        }
+        if (event.getIsFinancialInstitution() != null) {
+            position.isFinancialInstitution = event.getIsFinancialInstitution();
+        }
+        if (event.getIsPublicSector() != null) {
+            position.isPublicSector = event.getIsPublicSector();
+        }
+        if (event.getProductType() != null) {
+            position.productType = intern(event.getProductType());
+        }
+        if (event.getLoanPurpose() != null) {
+            position.loanPurpose = intern(event.getLoanPurpose());
+        }
+        if (event.getLtvRatio() != null) {
+            position.ltvRatio = event.getLtvRatio();
+        }
+        if (event.getOutstandingBalance() != null) {
+            position.outstandingBalance = event.getOutstandingBalance();
+        }
+        if (event.getDaysPastDue() != null) {
+            position.daysPastDue = event.getDaysPastDue();
+        }
+        if (event.getAssetClass() != null) {
+            position.assetClass = event.getAssetClass();
+        }
+        if (event.getIsRestructured() != null) {
+            position.isRestructured = event.getIsRestructured();
+        }
+        if (event.getIsForborne() != null) {
+            position.isForborne = event.getIsForborne();
+        }
+    }
+
+    /**
+     * Re-run the batch rules for one loan
+     */
+    private void evaluate(LoanPosition position) {
+        LoanExposureSnapshot loan = LoanExposureSnapshot.builder()
+                .customerType(position.customerType)
+                .country(position.country)
+                .isFinancialInstitution(position.isFinancialInstitution)
+                .isPublicSector(position.isPublicSector)
+                .productType(position.productType)
+                .loanPurpose(position.loanPurpose)
+                .ltvRatio(position.ltvRatio)
+                .outstandingBalance(position.outstandingBalance)
+                .daysPastDue(position.daysPastDue)
+                .assetClass(position.assetClass)
+                .isRestructured(position.isRestructured)
+                .isForborne(position.isForborne)
+                .build();
+
+        position.balance = toCents(position.outstandingBalance);
+        position.rwa = toCents(rwaRule.apply(loan));
+        position.stage = stageRule.applyAsInt(loan);
+        position.npl = position.daysPastDue >= NPL_DPD_THRESHOLD;
+    }
+
+    private void add(LoanPosition position) {
+        accumulate(position, 1);
+    }
+
+    private void remove(LoanPosition position) {
+        accumulate(position, -1);
+    }
+
+    private void accumulate(LoanPosition position, int sign) {
+        totalLoans += sign * position.balance;
+        totalRwa += sign * position.rwa;
+        if (position.npl) {
+            nplAmount += sign * position.balance;
+            nplCount += sign;
+        }
+        stageCounts[position.stage] += sign;
+        stageExposure[position.stage] += sign * position.balance;
+    }
+
+    private String intern(String value) {
+        return value == null ? null : dictionary.computeIfAbsent(value, v -> v);
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    /**
+     * Rule inputs and current contribution of one loan
+     */
+    private static class LoanPosition {
+        CustomerCategory customerType;
+        String country;
+        boolean isFinancialInstitution;
+        boolean isPublicSector;
+        String productType;
+        String loanPurpose;
+        BigDecimal ltvRatio;
+        BigDecimal outstandingBalance;
+        int daysPastDue;
+        AssetClassification assetClass;
+        boolean isRestructured;
+        boolean isForborne;
+        long lastEventTime;
+
+        // In cents
+        long balance;
+        long rwa;
+        int stage;
+        boolean npl;
+    }
+}
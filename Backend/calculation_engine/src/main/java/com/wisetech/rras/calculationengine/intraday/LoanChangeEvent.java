@@ -0,0 +1,43 @@
+package com.wisetech.rras.calculationengine.intraday;
+
+import com.wisetech.rras.calculationengine.enums.AssetClassification;
+import com.wisetech.rras.calculationengine.enums.CustomerCategory;
+import com.wisetech.rras.calculationengine.enums.LoanChangeType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * A loan level change published to the intraday queue.
+ *
+ * NEW events carry the full loan. UPDATE events only need the fields that
+ * changed; null fields keep their current value. eventTime (epoch millis) orders
+ * the changes of one loan, so redelivered or late events are ignored.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LoanChangeEvent {
+
+    private Long loanId;
+    private LoanChangeType changeType;
+    private long eventTime;
+
+    private CustomerCategory customerType;
+    private String country;
+    private Boolean isFinancialInstitution;
+    private Boolean isPublicSector;
+    private String productType;
+    private String loanPurpose;
+    private BigDecimal ltvRatio;
+
+    private BigDecimal outstandingBalance;
+    private Integer daysPastDue;
+    private AssetClassification assetClass;
+    private Boolean isRestructured;
+    private Boolean isForborne;
+}
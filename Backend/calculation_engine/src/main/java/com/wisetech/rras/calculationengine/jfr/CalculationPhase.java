@@ -0,0 +1,24 @@
+package com.wisetech.rras.calculationengine.jfr;
+
+public enum CalculationPhase {
+
+    LOAD("LOAD"),          // read snapshot rows and reference data
+    COMPUTE("COMPUTE"),    // apply the regulatory rules
+    PERSIST("PERSIST"),    // write components and metrics
+    AUDIT("AUDIT"),        // audit trail
+    PUBLISH("PUBLISH");    // RabbitMQ events
+
+    private final String value;
+
+    CalculationPhase(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static CalculationPhase fromValue(String value) {
+        return CalculationPhase.valueOf(value);
+    }
+}
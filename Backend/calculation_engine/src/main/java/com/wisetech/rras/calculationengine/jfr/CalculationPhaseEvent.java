@@ -0,0 +1,63 @@
+package com.wisetech.rras.calculationengine.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One phase (load, compute, persist, audit, publish) of a calculation or step.
+ * When no recording has the event enabled, begin and end only check a flag.
+ */
+@Name("com.wisetech.rras.CalculationPhase")
+@Label("Calculation Phase")
+@Category({"RRAS", "Calculation"})
+@Description("Time, rows and allocation of one phase of a regulatory calculation")
+@StackTrace(false)
+public class CalculationPhaseEvent extends Event {
+
+    @Label("Calculation")
+    String calculation;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Snapshot Id")
+    int snapshotId;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Allocated")
+    @DataAmount
+    long bytesAllocated;
+
+    private transient long allocatedAtBegin;
+
+    public static CalculationPhaseEvent begin(String calculation, CalculationPhase phase, int snapshotId) {
+        CalculationPhaseEvent event = new CalculationPhaseEvent();
+        if (event.isEnabled()) {
+            event.calculation = calculation;
+            event.phase = phase.getValue();
+            event.snapshotId = snapshotId;
+            event.allocatedAtBegin = ThreadAllocation.current();
+            event.begin();
+        }
+        return event;
+    }
+
+    public void end(long rows) {
+        if (!isEnabled()) {
+            return;
+        }
+        end();
+        if (shouldCommit()) {
+            this.rows = rows;
+            this.bytesAllocated = allocatedAtBegin < 0 ? -1 : ThreadAllocation.current() - allocatedAtBegin;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.wisetech.rras.calculationengine.jfr;
+
+import com.wisetech.rras.calculationengine.batch.RegulatoryCalculationJobConfig;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.listener.JobExecutionListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Records calculation jobs with Java Flight Recorder: every job when jfr.per-job
+ * is on, otherwise a running job on request. The recording (the JVM settings plus
+ * the RRAS phase and step events) is written to output-dir/job-{executionId}.jfr
+ * when the job ends; only the newest max-recordings files are kept.
+ *
+ * JFR recordings are JVM-wide: a job's recording also holds the events of any
+ * other job, partition or queued calculation running in this instance at the
+ * same time. Every RRAS event carries its snapshot id (step events also the job
+ * execution id), so filter on it when more than one job was running.
+ *
+ * A job that hands its snapshot to the pipeline ends before the calculations
+ * run, so its recording goes on until the pipeline finalizes or fails the
+ * snapshot on this instance, or for at most jfr.pipeline-timeout when another
+ * instance does.
+ */
+@Component
+@Slf4j
+public class JobFlightRecorder implements JobExecutionListener {
+
+    private final Set<Long> runningJobs = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Recording> active = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> pipelineRecordings = new ConcurrentHashMap<>();
+
+    @Value("${jfr.per-job:false}")
+    private boolean perJob;
+
+    @Value("${jfr.settings:default}")
+    private String settings;
+
+    @Value("${jfr.output-dir:recordings}")
+    private String outputDir;
+
+    @Value("${jfr.max-recordings:20}")
+    private int maxRecordings;
+
+    @Value("${jfr.pipeline-timeout:2h}")
+    private Duration pipelineTimeout;
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        // Pipeline recordings that timed out have been written; release them
+        pipelineRecordings.values().removeIf(id -> {
+            Recording recording = active.get(id);
+            if (recording != null && recording.getState() == RecordingState.RUNNING) {
+                return false;
+            }
+            write(id);
+            return true;
+        });
+        runningJobs.add(jobExecution.getId());
+        if (perJob) {
+            try {
+                start(jobExecution.getId());
+            } catch (Exception e) {
+                log.warn("Could not start flight recording for job {}", jobExecution.getId(), e);
+            }
+        }
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        runningJobs.remove(jobExecution.getId());
+        Recording recording = active.get(jobExecution.getId());
+        if (recording == null) {
+            return;
+        }
+        if (RegulatoryCalculationJobConfig.handedToPipeline(jobExecution)
+                && jobExecution.getExecutionContext().containsKey("snapshotId")) {
+            int snapshotId = jobExecution.getExecutionContext().getInt("snapshotId");
+            try {
+                // Written when stopped, by snapshotEnded or once the timeout is up
+                Path file = recordingFile(jobExecution.getId());
+                Files.createDirectories(file.getParent());
+                recording.setDestination(file);
+                recording.setDuration(Duration.between(recording.getStartTime(), Instant.now()).plus(pipelineTimeout));
+                pipelineRecordings.put(snapshotId, jobExecution.getId());
+                log.info("Flight recording for job {} continues while the pipeline calculates snapshot {}",
+                        jobExecution.getId(), snapshotId);
+                return;
+            } catch (IOException e) {
+                log.warn("Could not keep flight recording for job {} running", jobExecution.getId(), e);
+            }
+        }
+        write(jobExecution.getId());
+    }
+
+    /**
+     * Ends the recording of the job that handed this snapshot to the pipeline, once
+     * the pipeline has finalized or failed it
+     */
+    public void snapshotEnded(int snapshotId) {
+        Long jobExecutionId = pipelineRecordings.remove(snapshotId);
+        if (jobExecutionId != null) {
+            write(jobExecutionId);
+        }
+    }
+
+    private void write(long jobExecutionId) {
+        Recording recording = active.remove(jobExecutionId);
+        if (recording == null) {
+            return;
+        }
+        try (recording) {
+            if (recording.getState() == RecordingState.RUNNING) {
+                recording.stop();
+            }
+            Path file = recordingFile(jobExecutionId);
+            if (recording.getDestination() == null) {
+                Files.createDirectories(file.getParent());
+                recording.dump(file);
+            }
+            Files.deleteIfExists(partialFile(jobExecutionId));
+            log.info("Flight recording for job {} written to {}", jobExecutionId, file);
+            prune();
+        } catch (IOException e) {
+            log.warn("Could not write flight recording for job {}", jobExecutionId, e);
+        }
+    }
+
+    /**
+     * Starts recording a running job, from now until it ends
+     *
+     * @return false when the job is not running in this instance
+     */
+    public boolean start(long jobExecutionId) {
+        if (!runningJobs.contains(jobExecutionId)) {
+            return false;
+        }
+        active.computeIfAbsent(jobExecutionId, id -> {
+            Recording recording = new Recording(configuration());
+            recording.setName("rras-job-" + id);
+            recording.enable(CalculationPhaseEvent.class);
+            recording.enable(JobStepEvent.class);
+            recording.start();
+            return recording;
+        });
+        return true;
+    }
+
+    /**
+     * The recording of a job execution. For a job still running, the events so far
+     * are dumped to a separate .partial.jfr file.
+     */
+    public Optional<Path> recordingFor(long jobExecutionId) throws IOException {
+        Recording running = active.get(jobExecutionId);
+        if (running != null && running.getState() == RecordingState.RUNNING) {
+            Path partial = partialFile(jobExecutionId);
+            Files.createDirectories(partial.getParent());
+            running.dump(partial);
+            return Optional.of(partial);
+        }
+        Path file = recordingFile(jobExecutionId);
+        return Files.exists(file) ? Optional.of(file) : Optional.empty();
+    }
+
+    private Configuration configuration() {
+        try {
+            return Configuration.getConfiguration(settings);
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("Unknown JFR settings: " + settings, e);
+        }
+    }
+
+    private Path recordingFile(long jobExecutionId) {
+        return Paths.get(outputDir, "job-" + jobExecutionId + ".jfr");
+    }
+
+    private Path partialFile(long jobExecutionId) {
+        return Paths.get(outputDir, "job-" + jobExecutionId + ".partial.jfr");
+    }
+
+    private void prune() throws IOException {
+        List<Path> recordings;
+        try (Stream<Path> files = Files.list(Paths.get(outputDir))) {
+            recordings = files
+                    .filter(path -> path.getFileName().toString().matches("job-\\d+(\\.partial)?\\.jfr"))
+                    .sorted(Comparator.comparing(this::lastModified).reversed())
+                    .toList();
+        }
+        for (Path old : recordings.subList(Math.min(maxRecordings, recordings.size()), recordings.size())) {
+            Files.deleteIfExists(old);
+        }
+    }
+
+    private long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
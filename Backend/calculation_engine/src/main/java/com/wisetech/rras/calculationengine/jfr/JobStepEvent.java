@@ -0,0 +1,69 @@
+package com.wisetech.rras.calculationengine.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One step of the calculation job, the parent of the phase events emitted inside it
+ */
+@Name("com.wisetech.rras.JobStep")
+@Label("Job Step")
+@Category({"RRAS", "Calculation"})
+@Description("A step of the regulatory calculation job")
+@StackTrace(false)
+public class JobStepEvent extends Event {
+
+    @Label("Job Execution Id")
+    long jobExecutionId;
+
+    @Label("Step")
+    String step;
+
+    @Label("Snapshot Id")
+    int snapshotId;
+
+    @Label("Status")
+    String status;
+
+    @Label("Rows Written")
+    long rowsWritten;
+
+    @Label("Allocated")
+    @DataAmount
+    long bytesAllocated;
+
+    private transient long allocatedAtBegin;
+
+    public static JobStepEvent begin(long jobExecutionId, String step) {
+        JobStepEvent event = new JobStepEvent();
+        if (event.isEnabled()) {
+            event.jobExecutionId = jobExecutionId;
+            event.step = step;
+            event.allocatedAtBegin = ThreadAllocation.current();
+            event.begin();
+        }
+        return event;
+    }
+
+    /**
+     * @param snapshotId 0 when the step ran before the snapshot was created
+     */
+    public void end(int snapshotId, String status, long rowsWritten) {
+        if (!isEnabled()) {
+            return;
+        }
+        end();
+        if (shouldCommit()) {
+            this.snapshotId = snapshotId;
+            this.status = status;
+            this.rowsWritten = rowsWritten;
+            this.bytesAllocated = allocatedAtBegin < 0 ? -1 : ThreadAllocation.current() - allocatedAtBegin;
+            commit();
+        }
+    }
+}
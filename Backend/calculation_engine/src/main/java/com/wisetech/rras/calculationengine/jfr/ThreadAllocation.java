@@ -0,0 +1,28 @@
+package com.wisetech.rras.calculationengine.jfr;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Bytes allocated so far by the current thread, or -1 where the JVM does not
+ * support allocation accounting
+ */
+public final class ThreadAllocation {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private ThreadAllocation() {
+    }
+
+    public static long current() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        return null;
+    }
+}
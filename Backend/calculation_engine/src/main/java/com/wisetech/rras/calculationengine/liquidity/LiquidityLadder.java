@@ -0,0 +1,194 @@
+package com.wisetech.rras.calculationengine.liquidity;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maturity ladder for one as-of date, built from the grouped LCR query.
+ *
+ * Holds run-off / inflow weighted cash flows per 30, 60 and 90 day bucket and
+ * counterparty type, and post-haircut HQLA per level. LCR and the liquidity gap
+ * profile are derived from it without going back to the database.
+ * Immutable once built, so one instance is shared by every snapshot of the date.
+ */
+public class LiquidityLadder {
+
+    public static final int[] BUCKET_DAYS = {30, 60, 90};
+
+    private static final BigDecimal INFLOW_CAP = BigDecimal.valueOf(0.75);
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+
+    private final LocalDate asOfDate;
+    private final BigDecimal[] outflows = zeros();
+    private final BigDecimal[] inflows = zeros();
+    private final Map<String, BigDecimal[]> outflowsByCounterparty = new TreeMap<>();
+    private final Map<String, BigDecimal[]> inflowsByCounterparty = new TreeMap<>();
+
+    private BigDecimal level1 = BigDecimal.ZERO;
+    private BigDecimal level2A = BigDecimal.ZERO;
+    private BigDecimal level2B = BigDecimal.ZERO;
+
+    public LiquidityLadder(LocalDate asOfDate) {
+        this.asOfDate = asOfDate;
+    }
+
+    /**
+     * Add a weighted cash flow group; bucketDays is 30, 60 or 90
+     */
+    void addCashFlow(String flowType, String counterpartyType, int bucketDays, BigDecimal weightedAmount) {
+        int bucket = bucketIndex(bucketDays);
+        String counterparty = counterpartyType != null ? counterpartyType : "UNSPECIFIED";
+
+        if ("OUTFLOW".equals(flowType)) {
+            outflows[bucket] = outflows[bucket].add(weightedAmount);
+            add(outflowsByCounterparty, counterparty, bucket, weightedAmount);
+        } else if ("INFLOW".equals(flowType)) {
+            inflows[bucket] = inflows[bucket].add(weightedAmount);
+            add(inflowsByCounterparty, counterparty, bucket, weightedAmount);
+        }
+    }
+
+    /**
+     * Add post-haircut HQLA; level is 1, 2 / 2A or 3 / 2B
+     */
+    void addHqla(String level, BigDecimal adjustedValue) {
+        String normalized = level != null ? level.trim().toUpperCase() : "";
+        switch (normalized) {
+            case "1" -> level1 = level1.add(adjustedValue);
+            case "2", "2A" -> level2A = level2A.add(adjustedValue);
+            case "3", "2B" -> level2B = level2B.add(adjustedValue);
+            default -> {
+                // Not HQLA eligible
+            }
+        }
+    }
+
+    public LocalDate getAsOfDate() {
+        return asOfDate;
+    }
+
+    /**
+     * Stock of HQLA after the Basel 15% (Level 2B) and 40% (Level 2) caps
+     */
+    public BigDecimal getHqla() {
+        BigDecimal l1AndL2A = level1.add(level2A);
+
+        // Level 2B may be at most 15% of HQLA, i.e. 15/85 of Level 1 + 2A
+        BigDecimal adjust15 = max(BigDecimal.ZERO, level2B.subtract(
+                l1AndL2A.multiply(BigDecimal.valueOf(15)).divide(BigDecimal.valueOf(85), 2, RoundingMode.HALF_UP)));
+        BigDecimal level2 = level2A.add(level2B).subtract(adjust15);
+
+        // Level 2 may be at most 40% of HQLA, i.e. 2/3 of Level 1
+        BigDecimal adjust40 = max(BigDecimal.ZERO, level2.subtract(
+                level1.multiply(BigDecimal.valueOf(2)).divide(BigDecimal.valueOf(3), 2, RoundingMode.HALF_UP)));
+
+        return level1.add(level2).subtract(adjust40);
+    }
+
+    public BigDecimal getLevel1() {
+        return level1;
+    }
+
+    public BigDecimal getLevel2A() {
+        return level2A;
+    }
+
+    public BigDecimal getLevel2B() {
+        return level2B;
+    }
+
+    /**
+     * Weighted outflows falling due within horizonDays
+     */
+    public BigDecimal getOutflows(int horizonDays) {
+        return cumulative(outflows, horizonDays);
+    }
+
+    public BigDecimal getInflows(int horizonDays) {
+        return cumulative(inflows, horizonDays);
+    }
+
+    /**
+     * Outflows less inflows, with inflows capped at 75% of outflows
+     */
+    public BigDecimal getNetCashOutflows(int horizonDays) {
+        BigDecimal out = getOutflows(horizonDays);
+        BigDecimal cappedInflows = getInflows(horizonDays).min(out.multiply(INFLOW_CAP));
+        return out.subtract(cappedInflows);
+    }
+
+    /**
+     * LCR = HQLA / 30 day net cash outflows x 100
+     */
+    public BigDecimal getLcr() {
+        BigDecimal netOutflows = getNetCashOutflows(30);
+        if (netOutflows.compareTo(BigDecimal.ZERO) == 0) {
+            return BigDecimal.ZERO;
+        }
+        return getHqla().multiply(HUNDRED).divide(netOutflows, 2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Cumulative liquidity gap (inflows - outflows) at 30, 60 and 90 days.
+     * Adding getHqla() to a gap gives the counterbalancing capacity left at that horizon.
+     */
+    public Map<Integer, BigDecimal> getGapProfile() {
+        Map<Integer, BigDecimal> gaps = new LinkedHashMap<>();
+        for (int days : BUCKET_DAYS) {
+            gaps.put(days, getInflows(days).subtract(getOutflows(days)));
+        }
+        return gaps;
+    }
+
+    /**
+     * 30 day weighted outflows per counterparty type
+     */
+    public Map<String, BigDecimal> getOutflowsByCounterparty(int horizonDays) {
+        return byCounterparty(outflowsByCounterparty, horizonDays);
+    }
+
+    public Map<String, BigDecimal> getInflowsByCounterparty(int horizonDays) {
+        return byCounterparty(inflowsByCounterparty, horizonDays);
+    }
+
+    private static Map<String, BigDecimal> byCounterparty(Map<String, BigDecimal[]> source, int horizonDays) {
+        Map<String, BigDecimal> result = new LinkedHashMap<>();
+        source.forEach((counterparty, buckets) -> result.put(counterparty, cumulative(buckets, horizonDays)));
+        return result;
+    }
+
+    private static BigDecimal cumulative(BigDecimal[] buckets, int horizonDays) {
+        int last = bucketIndex(horizonDays);
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i <= last; i++) {
+            total = total.add(buckets[i]);
+        }
+        return total;
+    }
+
+    private static void add(Map<String, BigDecimal[]> target, String counterparty, int bucket, BigDecimal amount) {
+        BigDecimal[] buckets = target.computeIfAbsent(counterparty, k -> zeros());
+        buckets[bucket] = buckets[bucket].add(amount);
+    }
+
+    private static int bucketIndex(int days) {
+        for (int i = 0; i < BUCKET_DAYS.length; i++) {
+            if (days == BUCKET_DAYS[i]) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported ladder horizon: " + days + " days");
+    }
+
+    private static BigDecimal[] zeros() {
+        return new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO};
+    }
+
+    private static BigDecimal max(BigDecimal a, BigDecimal b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+}
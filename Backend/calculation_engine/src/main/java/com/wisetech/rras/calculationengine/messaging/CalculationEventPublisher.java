@@ -1,6 +1,9 @@
 package com.wisetech.rras.calculationengine.messaging;
 
 
+import com.wisetech.rras.calculationengine.jfr.CalculationPhase;
+import com.wisetech.rras.calculationengine.jfr.CalculationPhaseEvent;
+import com.wisetech.rras.calculationengine.metrics.CalculationMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
@@ -18,6 +21,7 @@ import java.util.Map;
 public class CalculationEventPublisher {
 
     private final RabbitTemplate rabbitTemplate;
+    private final CalculationMetrics calculationMetrics;
 
     @Value("${rabbitmq.exchange.calculation}")
     private String exchange;
@@ -29,7 +33,7 @@ public class CalculationEventPublisher {
         event.put("snapshotDate", snapshotDate.toString());
         event.put("timestamp", ZonedDateTime.now().toString());
 
-        rabbitTemplate.convertAndSend(exchange, "snapshot.created", event);
+        send(snapshotId, "snapshot.created", event);
         log.info("Published snapshot created event for snapshot {}", snapshotId);
     }
 
@@ -39,7 +43,7 @@ public class CalculationEventPublisher {
         event.put("snapshotId", snapshotId);
         event.put("timestamp", ZonedDateTime.now().toString());
 
-        rabbitTemplate.convertAndSend(exchange, "snapshot.validated", event);
+        send(snapshotId, "snapshot.validated", event);
         log.info("Published snapshot validated event for snapshot {}", snapshotId);
     }
 
@@ -51,7 +55,7 @@ public class CalculationEventPublisher {
         event.put("timestamp", ZonedDateTime.now().toString());
 
         String routingKey = "calculation." + calculationType.toLowerCase();
-        rabbitTemplate.convertAndSend(exchange, routingKey, event);
+        send(snapshotId, routingKey, event);
         log.info("Published {} calculation completed event for snapshot {}",
                 calculationType, snapshotId);
     }
@@ -62,8 +66,8 @@ public class CalculationEventPublisher {
         event.put("snapshotId", snapshotId);
         event.put("timestamp", ZonedDateTime.now().toString());
 
-        rabbitTemplate.convertAndSend(exchange, "snapshot.completed", event);
-        rabbitTemplate.convertAndSend(exchange, "notification.snapshot.completed", event);
+        send(snapshotId, "snapshot.completed", event);
+        send(snapshotId, "notification.snapshot.completed", event);
         log.info("Published snapshot completed event for snapshot {}", snapshotId);
     }
 
@@ -75,8 +79,19 @@ public class CalculationEventPublisher {
         event.put("error", error);
         event.put("timestamp", ZonedDateTime.now().toString());
 
-        rabbitTemplate.convertAndSend(exchange, "notification.calculation.failed", event);
+        send(snapshotId, "notification.calculation.failed", event);
         log.error("Published calculation failed event for snapshot {}, type: {}",
                 snapshotId, calculationType);
     }
-}
\ No newline at end of file
+
+    /**
+     * Publish with the send timed as a metric and as the PUBLISH phase of the snapshot
+     */
+    private void send(Number snapshotId, String routingKey, Map<String, Object> event) {
+        CalculationPhaseEvent phase = CalculationPhaseEvent.begin(routingKey, CalculationPhase.PUBLISH,
+                snapshotId != null ? snapshotId.intValue() : 0);
+        calculationMetrics.recordPublish(routingKey,
+                () -> rabbitTemplate.convertAndSend(exchange, routingKey, event));
+        phase.end(1);
+    }
+}
@@ -0,0 +1,131 @@
+package com.wisetech.rras.calculationengine.metrics;
+
+import com.google.common.util.concurrent.AtomicDouble;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Micrometer meters for the calculation job, exposed on /actuator/metrics and
+ * /actuator/prometheus.
+ *
+ * Steps are tagged by step and calculation type, calculations by calculation.
+ * The snapshot id only appears on rras.step.last.duration, which keeps one series
+ * per step (the latest run), so the number of series does not grow with every run.
+ */
+@Component
+@RequiredArgsConstructor
+public class CalculationMetrics {
+
+    private final MeterRegistry registry;
+
+    private final Map<String, AtomicDouble> throughput = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> heapAfterStep = new ConcurrentHashMap<>();
+    private final Map<String, Meter> lastStepRun = new ConcurrentHashMap<>();
+
+    /**
+     * Starts timing a calculation on the current thread
+     */
+    public CalculationTimer start(String calculation) {
+        return new CalculationTimer(this, calculation);
+    }
+
+    void recordCalculation(String calculation, long wallNanos, JdbcActivity.Snapshot jdbc, int loans) {
+        timer("rras.calculation.duration", "Wall time of a calculation", "calculation", calculation)
+                .record(wallNanos, TimeUnit.NANOSECONDS);
+        timer("rras.calculation.db.time", "Time spent executing SQL", "calculation", calculation)
+                .record(jdbc.dbNanos(), TimeUnit.NANOSECONDS);
+        timer("rras.calculation.compute.time", "Wall time outside SQL execution", "calculation", calculation)
+                .record(Math.max(0, wallNanos - jdbc.dbNanos()), TimeUnit.NANOSECONDS);
+        Counter.builder("rras.calculation.rows.written")
+                .description("Rows inserted or updated")
+                .tag("calculation", calculation)
+                .register(registry)
+                .increment(jdbc.rowsWritten());
+        Counter.builder("rras.calculation.statements")
+                .description("SQL statements executed, a JDBC batch counting once")
+                .tag("calculation", calculation)
+                .register(registry)
+                .increment(jdbc.statements());
+
+        if (loans > 0) {
+            Counter.builder("rras.calculation.loans")
+                    .description("Loans processed")
+                    .tag("calculation", calculation)
+                    .register(registry)
+                    .increment(loans);
+            throughput.computeIfAbsent(calculation, key -> registry.gauge("rras.calculation.throughput",
+                            Tags.of("calculation", key), new AtomicDouble()))
+                    .set(loans / Math.max(wallNanos / 1e9, 1e-9));
+        }
+    }
+
+    void recordStep(String step, String calculationType, String status, Integer snapshotId,
+                    long wallNanos, JdbcActivity.Snapshot jdbc, long heapUsed) {
+        Timer.builder("rras.step.duration")
+                .description("Wall time of a job step")
+                .tags("step", step, "calculation_type", calculationType, "status", status)
+                .register(registry)
+                .record(wallNanos, TimeUnit.NANOSECONDS);
+        timer("rras.step.db.time", "Time a job step spent executing SQL",
+                "step", step, "calculation_type", calculationType)
+                .record(jdbc.dbNanos(), TimeUnit.NANOSECONDS);
+        Counter.builder("rras.step.rows.written")
+                .description("Rows inserted or updated by a job step")
+                .tags("step", step, "calculation_type", calculationType)
+                .register(registry)
+                .increment(jdbc.rowsWritten());
+        Counter.builder("rras.step.statements")
+                .description("SQL statements executed by a job step, a JDBC batch counting once")
+                .tags("step", step, "calculation_type", calculationType)
+                .register(registry)
+                .increment(jdbc.statements());
+        Counter.builder("rras.step.batches")
+                .description("JDBC batches executed by a job step")
+                .tags("step", step, "calculation_type", calculationType)
+                .register(registry)
+                .increment(jdbc.batches());
+
+        heapAfterStep.computeIfAbsent(step, key -> registry.gauge("rras.step.heap.after",
+                        Tags.of("step", key), new AtomicLong()))
+                .set(heapUsed);
+
+        // Replace the previous run's series, registering an existing id would keep its old value
+        double seconds = wallNanos / 1e9;
+        Meter previous = lastStepRun.remove(step);
+        if (previous != null) {
+            registry.remove(previous);
+        }
+        lastStepRun.put(step, Gauge.builder("rras.step.last.duration", () -> seconds)
+                .description("Wall time of the latest run of a job step")
+                .baseUnit("seconds")
+                .tags("step", step, "calculation_type", calculationType,
+                        "snapshot", snapshotId != null ? snapshotId.toString() : "none")
+                .register(registry));
+    }
+
+    /**
+     * Publishes and records how long the broker took to accept the message
+     */
+    public void recordPublish(String routingKey, Runnable publish) {
+        timer("rras.event.publish", "Time to hand a calculation event to the broker", "routing_key", routingKey)
+                .record(publish);
+    }
+
+    private Timer timer(String name, String description, String... tags) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .register(registry);
+    }
+}
@@ -0,0 +1,33 @@
+package com.wisetech.rras.calculationengine.metrics;
+
+/**
+ * Times one calculation. Database time comes from the SQL the thread executed in
+ * between, compute time is the rest of the wall time.
+ */
+public final class CalculationTimer {
+
+    private final CalculationMetrics metrics;
+    private final String calculation;
+    private final long startNanos;
+    private final JdbcActivity.Snapshot startJdbc;
+
+    CalculationTimer(CalculationMetrics metrics, String calculation) {
+        this.metrics = metrics;
+        this.calculation = calculation;
+        this.startJdbc = JdbcActivity.snapshot();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Records the calculation and returns its wall time in milliseconds for the audit trail
+     */
+    public long finish(int loans) {
+        long wallNanos = System.nanoTime() - startNanos;
+        metrics.recordCalculation(calculation, wallNanos, JdbcActivity.snapshot().since(startJdbc), loans);
+        return wallNanos / 1_000_000;
+    }
+
+    public long finish() {
+        return finish(0);
+    }
+}
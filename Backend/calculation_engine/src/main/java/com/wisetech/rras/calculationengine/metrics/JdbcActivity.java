@@ -0,0 +1,47 @@
+package com.wisetech.rras.calculationengine.metrics;
+
+/**
+ * JDBC time, statements, batches and rows written by the current thread,
+ * accumulated by {@link TimedDataSource}. Steps and calculations run on one
+ * thread, so the difference between two snapshots is the database share of
+ * that work.
+ */
+public final class JdbcActivity {
+
+    private static final ThreadLocal<JdbcActivity> CURRENT = ThreadLocal.withInitial(JdbcActivity::new);
+
+    private long dbNanos;
+    private long statements;
+    private long batches;
+    private long rowsWritten;
+
+    private JdbcActivity() {
+    }
+
+    /**
+     * @param statements round trips: every execute call, a whole batch counting once
+     * @param batches    executeBatch calls among those statements
+     */
+    public record Snapshot(long dbNanos, long statements, long batches, long rowsWritten) {
+
+        public Snapshot since(Snapshot start) {
+            return new Snapshot(dbNanos - start.dbNanos, statements - start.statements,
+                    batches - start.batches, rowsWritten - start.rowsWritten);
+        }
+    }
+
+    public static Snapshot snapshot() {
+        JdbcActivity activity = CURRENT.get();
+        return new Snapshot(activity.dbNanos, activity.statements, activity.batches, activity.rowsWritten);
+    }
+
+    static void record(long nanos, boolean batch, long rows) {
+        JdbcActivity activity = CURRENT.get();
+        activity.dbNanos += nanos;
+        activity.statements++;
+        if (batch) {
+            activity.batches++;
+        }
+        activity.rowsWritten += rows;
+    }
+}
@@ -0,0 +1,62 @@
+package com.wisetech.rras.calculationengine.metrics;
+
+import com.wisetech.rras.calculationengine.jfr.JobStepEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.listener.StepExecutionListener;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records wall time, SQL time, rows written and heap after the step for every
+ * step of the calculation job. Tasklet steps run beforeStep, the tasklet and
+ * afterStep on one thread, which is what the JDBC accounting relies on.
+ * Each step is also emitted as a JFR event for flight recordings of the job.
+ */
+@Component
+@RequiredArgsConstructor
+public class StepMetricsListener implements StepExecutionListener {
+
+    private final CalculationMetrics calculationMetrics;
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final Map<Long, StepStart> started = new ConcurrentHashMap<>();
+
+    private record StepStart(long nanos, JdbcActivity.Snapshot jdbc, JobStepEvent event) {
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        started.put(stepExecution.getId(), new StepStart(System.nanoTime(), JdbcActivity.snapshot(),
+                JobStepEvent.begin(stepExecution.getJobExecution().getId(), stepExecution.getStepName())));
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        StepStart start = started.remove(stepExecution.getId());
+        if (start == null) {
+            return stepExecution.getExitStatus();
+        }
+
+        String calculationType = stepExecution.getJobExecution().getJobParameters().getString("calculationType");
+        var jobContext = stepExecution.getJobExecution().getExecutionContext();
+        Integer snapshotId = jobContext.containsKey("snapshotId") ? jobContext.getInt("snapshotId") : null;
+
+        JdbcActivity.Snapshot jdbc = JdbcActivity.snapshot().since(start.jdbc());
+        start.event().end(snapshotId != null ? snapshotId : 0, stepExecution.getStatus().name(), jdbc.rowsWritten());
+
+        calculationMetrics.recordStep(
+                stepExecution.getStepName(),
+                calculationType != null ? calculationType : "MONTHLY",
+                stepExecution.getStatus().name(),
+                snapshotId,
+                System.nanoTime() - start.nanos(),
+                jdbc,
+                memory.getHeapMemoryUsage().getUsed());
+        return stepExecution.getExitStatus();
+    }
+}
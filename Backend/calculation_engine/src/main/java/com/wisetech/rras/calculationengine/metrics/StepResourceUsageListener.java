@@ -0,0 +1,157 @@
+package com.wisetech.rras.calculationengine.metrics;
+
+import com.wisetech.rras.calculationengine.domain.StepResourceUsage;
+import com.wisetech.rras.calculationengine.jfr.ThreadAllocation;
+import com.wisetech.rras.calculationengine.repository.StepResourceUsageRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.listener.StepExecutionListener;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Writes the CPU time and allocation of the step thread of every step to
+ * metrics.step_resource_usage, next to the audit trail, with process-level GC
+ * and heap figures.
+ *
+ * CPU and allocation are exact for tasklet steps, which run on one thread. GC
+ * pauses and heap in use are the whole JVM's: they include whatever else ran in
+ * the instance meanwhile (other jobs, pipeline consumers, partition workers),
+ * so they are recorded as jvm_* context for the step, not as its own cost. No
+ * per-step peak heap is kept, since resetting the pool peaks would disturb any
+ * step running alongside.
+ *
+ * In pipeline mode the job ends after validation, and the pipeline records each
+ * calculation under its job step's name (without a job execution id) through
+ * measure, so a pipeline snapshot has the same rows as a batch one.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StepResourceUsageListener implements StepExecutionListener {
+
+    private static final String APP_VERSION = appVersion();
+    private static final String HOST_NAME = hostName();
+
+    private final StepResourceUsageRepository usageRepository;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final Map<Long, StepStart> started = new ConcurrentHashMap<>();
+
+    // Concurrent collectors (G1 Concurrent GC, ZGC / Shenandoah Cycles) do not stop the application
+    private final List<GarbageCollectorMXBean> pauseCollectors = ManagementFactory.getGarbageCollectorMXBeans().stream()
+            .filter(gc -> !gc.getName().contains("Concurrent") && !gc.getName().contains("Cycles"))
+            .toList();
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    private record StepStart(long nanos, long cpuNanos, long userNanos, long allocated,
+                             long gcMillis, long gcCount) {
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        started.put(stepExecution.getId(), start());
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        StepStart start = started.remove(stepExecution.getId());
+        var jobContext = stepExecution.getJobExecution().getExecutionContext();
+        if (start == null || !jobContext.containsKey("snapshotId")) {
+            return stepExecution.getExitStatus();
+        }
+
+        record(start, jobContext.getInt("snapshotId"), stepExecution.getJobExecution().getId(),
+                stepExecution.getStepName(), stepExecution.getStatus().name());
+        return stepExecution.getExitStatus();
+    }
+
+    /**
+     * Runs a calculation outside the job on this thread and records it as stepName.
+     * Nothing is recorded when it returns false, i.e. did not run.
+     */
+    public boolean measure(int snapshotId, String stepName, BooleanSupplier calculation) {
+        StepStart start = start();
+        boolean ran;
+        try {
+            ran = calculation.getAsBoolean();
+        } catch (RuntimeException e) {
+            record(start, snapshotId, null, stepName, BatchStatus.FAILED.name());
+            throw e;
+        }
+        if (ran) {
+            record(start, snapshotId, null, stepName, BatchStatus.COMPLETED.name());
+        }
+        return ran;
+    }
+
+    private StepStart start() {
+        return new StepStart(System.nanoTime(),
+                threads.getCurrentThreadCpuTime(), threads.getCurrentThreadUserTime(),
+                ThreadAllocation.current(), gcMillis(), gcCount());
+    }
+
+    private void record(StepStart start, int snapshotId, Long jobExecutionId, String stepName, String status) {
+        try {
+            long allocated = ThreadAllocation.current();
+            StepResourceUsage usage = StepResourceUsage.builder()
+                    .snapshotId(snapshotId)
+                    .jobExecutionId(jobExecutionId)
+                    .stepName(stepName)
+                    .status(status)
+                    .wallTimeMs((System.nanoTime() - start.nanos()) / 1_000_000)
+                    .cpuTimeMs(elapsedMillis(start.cpuNanos(), threads.getCurrentThreadCpuTime()))
+                    .userTimeMs(elapsedMillis(start.userNanos(), threads.getCurrentThreadUserTime()))
+                    .allocatedBytes(start.allocated() < 0 ? -1 : allocated - start.allocated())
+                    .jvmGcPauseMs(gcMillis() - start.gcMillis())
+                    .jvmGcCount((int) (gcCount() - start.gcCount()))
+                    .jvmHeapUsedBytes(memory.getHeapMemoryUsage().getUsed())
+                    .appVersion(APP_VERSION)
+                    .hostName(HOST_NAME)
+                    .build();
+
+            usageRepository.save(usage);
+        } catch (Exception e) {
+            log.error("Error recording resource usage of step {}", stepName, e);
+        }
+    }
+
+    /** Thread CPU time is -1 where the JVM does not measure it */
+    private static long elapsedMillis(long startNanos, long endNanos) {
+        return startNanos < 0 || endNanos < 0 ? -1 : (endNanos - startNanos) / 1_000_000;
+    }
+
+    private long gcMillis() {
+        return pauseCollectors.stream().mapToLong(gc -> Math.max(0, gc.getCollectionTime())).sum();
+    }
+
+    private long gcCount() {
+        return pauseCollectors.stream().mapToLong(gc -> Math.max(0, gc.getCollectionCount())).sum();
+    }
+
+    private static String appVersion() {
+        String version = StepResourceUsageListener.class.getPackage().getImplementationVersion();
+        return version != null ? version : "dev";
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
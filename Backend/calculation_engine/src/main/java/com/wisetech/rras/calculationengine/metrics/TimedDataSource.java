@@ -0,0 +1,93 @@
+package com.wisetech.rras.calculationengine.metrics;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Times and counts every statement execution and adds it, with the update
+ * counts, to the calling thread's {@link JdbcActivity}. Covers JdbcTemplate and
+ * JPA alike.
+ */
+public class TimedDataSource extends DelegatingDataSource {
+
+    public TimedDataSource(DataSource target) {
+        super(target);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return timedConnection(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return timedConnection(super.getConnection(username, password));
+    }
+
+    private Connection timedConnection(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    // createStatement, prepareStatement and prepareCall
+                    if (result instanceof Statement statement && method.getReturnType().isInterface()) {
+                        return timedStatement(statement, method.getReturnType());
+                    }
+                    return result;
+                });
+    }
+
+    private Object timedStatement(Statement statement, Class<?> type) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (!method.getName().startsWith("execute")) {
+                        return invoke(statement, method, args);
+                    }
+                    long start = System.nanoTime();
+                    Object result = null;
+                    try {
+                        result = invoke(statement, method, args);
+                        return result;
+                    } finally {
+                        // executeBatch and executeLargeBatch
+                        JdbcActivity.record(System.nanoTime() - start, method.getName().endsWith("Batch"),
+                                rowsWritten(result));
+                    }
+                });
+    }
+
+    /** executeUpdate returns a count, executeBatch one per statement (negative when unknown) */
+    private static long rowsWritten(Object result) {
+        if (result instanceof Integer count) {
+            return Math.max(0, count);
+        }
+        if (result instanceof Long count) {
+            return Math.max(0, count);
+        }
+        long rows = 0;
+        if (result instanceof int[] counts) {
+            for (int count : counts) {
+                rows += Math.max(0, count);
+            }
+        } else if (result instanceof long[] counts) {
+            for (long count : counts) {
+                rows += Math.max(0, count);
+            }
+        }
+        return rows;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
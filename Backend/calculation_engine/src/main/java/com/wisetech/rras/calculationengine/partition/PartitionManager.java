@@ -0,0 +1,189 @@
+package com.wisetech.rras.calculationengine.partition;
+
+import com.wisetech.rras.calculationengine.enums.PartitionedCalculation;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manager side of remote partitioning. Splits a snapshot into loan_id ranges of
+ * about equal size, publishes one request per range and sums the workers' partial
+ * totals. A partition that fails, or gets no reply within the timeout, is sent
+ * again until max-attempts. Workers overwrite a partition's rows, so a late reply
+ * from an earlier attempt is as good as the current one.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PartitionManager {
+
+    public static final String REQUEST_ROUTING_KEY = "partition.request";
+
+    /**
+     * Equal count loan_id ranges of a snapshot, using the primary key index
+     */
+    private static final String RANGES_SQL = """
+            SELECT MIN(loan_id) AS from_loan_id, MAX(loan_id) AS to_loan_id
+            FROM (
+                SELECT loan_id, NTILE(?) OVER (ORDER BY loan_id) AS partition_no
+                FROM snapshots.loan_exposures_snapshot
+                WHERE snapshot_id = ?
+            ) p
+            GROUP BY partition_no
+            ORDER BY partition_no
+            """;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<String, BlockingQueue<PartitionReply>> runs = new ConcurrentHashMap<>();
+
+    /** Exclusive to this node, declared by {@link PartitionReplyListener} */
+    @Getter
+    private final String replyQueue = "calculation.partition.replies." + UUID.randomUUID();
+
+    @Value("${partitioning.enabled:false}")
+    private boolean enabled;
+
+    @Value("${partitioning.partitions:16}")
+    private int partitions;
+
+    @Value("${partitioning.timeout:5m}")
+    private Duration timeout;
+
+    @Value("${partitioning.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${rabbitmq.exchange.calculation}")
+    private String exchange;
+
+    public record LoanRange(long fromLoanId, long toLoanId) {
+    }
+
+    /**
+     * Whether the per-loan calculations are sent to partition workers
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Runs the calculation on the workers and returns the summed totals. Blocks for
+     * as long as the workers take, so callers must not hold a transaction around it.
+     */
+    public Map<String, BigDecimal> run(PartitionedCalculation calculation, int snapshotId) {
+        List<LoanRange> ranges = jdbcTemplate.query(RANGES_SQL,
+                (rs, rowNum) -> new LoanRange(rs.getLong("from_loan_id"), rs.getLong("to_loan_id")),
+                partitions, snapshotId);
+        return run(calculation, snapshotId, ranges);
+    }
+
+    Map<String, BigDecimal> run(PartitionedCalculation calculation, int snapshotId, List<LoanRange> ranges) {
+        String runId = UUID.randomUUID().toString();
+        BlockingQueue<PartitionReply> replies = new LinkedBlockingQueue<>();
+        runs.put(runId, replies);
+
+        try {
+            Map<Integer, PartitionRequest> outstanding = new HashMap<>();
+            Map<Integer, Long> deadlines = new HashMap<>();
+            for (int partitionId = 0; partitionId < ranges.size(); partitionId++) {
+                LoanRange range = ranges.get(partitionId);
+                send(PartitionRequest.builder()
+                        .runId(runId)
+                        .calculation(calculation)
+                        .snapshotId(snapshotId)
+                        .partitionId(partitionId)
+                        .fromLoanId(range.fromLoanId())
+                        .toLoanId(range.toLoanId())
+                        .attempt(1)
+                        .replyTo(replyQueue)
+                        .build(), outstanding, deadlines);
+            }
+            log.info("Sent {} {} partitions of snapshot {}", ranges.size(), calculation, snapshotId);
+
+            Map<String, BigDecimal> totals = new HashMap<>();
+            while (!outstanding.isEmpty()) {
+                long nextDeadline = deadlines.values().stream().mapToLong(Long::longValue).min().orElseThrow();
+                PartitionReply reply = replies.poll(Math.max(0, nextDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+
+                if (reply != null) {
+                    PartitionRequest request = outstanding.get(reply.getPartitionId());
+                    if (request == null) {
+                        continue; // duplicate of a partition already counted
+                    }
+                    if (reply.getError() == null) {
+                        reply.getTotals().forEach((code, value) -> totals.merge(code, value, BigDecimal::add));
+                        outstanding.remove(reply.getPartitionId());
+                        deadlines.remove(reply.getPartitionId());
+                        log.debug("Partition {} of snapshot {} done by {} in {} ms",
+                                reply.getPartitionId(), snapshotId, reply.getWorkerId(), reply.getElapsedMs());
+                    } else if (reply.getAttempt() == request.getAttempt()) {
+                        retry(request, "failed on " + reply.getWorkerId() + ": " + reply.getError(),
+                                outstanding, deadlines);
+                    }
+                    continue;
+                }
+
+                long now = System.nanoTime();
+                for (PartitionRequest request : List.copyOf(outstanding.values())) {
+                    if (deadlines.get(request.getPartitionId()) <= now) {
+                        retry(request, "no reply within " + timeout, outstanding, deadlines);
+                    }
+                }
+            }
+            return totals;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for " + calculation + " partitions", e);
+        } finally {
+            runs.remove(runId);
+        }
+    }
+
+    /**
+     * Hands a worker's reply to the run waiting for it
+     */
+    public void onReply(PartitionReply reply) {
+        BlockingQueue<PartitionReply> replies = runs.get(reply.getRunId());
+        if (replies == null) {
+            log.debug("Ignored reply for finished run {}", reply.getRunId());
+            return;
+        }
+        replies.add(reply);
+    }
+
+    private void retry(PartitionRequest request, String reason,
+                       Map<Integer, PartitionRequest> outstanding, Map<Integer, Long> deadlines) {
+        if (request.getAttempt() >= maxAttempts) {
+            throw new IllegalStateException(String.format("%s partition %d of snapshot %d (loans %d-%d) %s after %d attempts",
+                    request.getCalculation(), request.getPartitionId(), request.getSnapshotId(),
+                    request.getFromLoanId(), request.getToLoanId(), reason, request.getAttempt()));
+        }
+        log.warn("Retrying {} partition {} of snapshot {}, attempt {} {}", request.getCalculation(),
+                request.getPartitionId(), request.getSnapshotId(), request.getAttempt(), reason);
+        send(request.toBuilder().attempt(request.getAttempt() + 1).build(), outstanding, deadlines);
+    }
+
+    private void send(PartitionRequest request,
+                      Map<Integer, PartitionRequest> outstanding, Map<Integer, Long> deadlines) {
+        outstanding.put(request.getPartitionId(), request);
+        deadlines.put(request.getPartitionId(), System.nanoTime() + timeout.toNanos());
+        rabbitTemplate.convertAndSend(exchange, REQUEST_ROUTING_KEY, request);
+    }
+}
@@ -0,0 +1,29 @@
+package com.wisetech.rras.calculationengine.partition;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * A worker's partial totals for one partition, keyed by metric code (TOTAL_RWA,
+ * STAGE1_ECL, LOAN_COUNT, ...) so the manager can sum them. error is set
+ * instead when the partition failed.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PartitionReply {
+
+    private String runId;
+    private int partitionId;
+    private int attempt;
+    private String workerId;
+    private Map<String, BigDecimal> totals;
+    private String error;
+    private long elapsedMs;
+}
@@ -0,0 +1,30 @@
+package com.wisetech.rras.calculationengine.partition;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Receives partition replies on a queue of this node's own, which is deleted
+ * when the node disconnects. Only managers (partitioning.enabled) declare it.
+ */
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "partitioning.enabled", havingValue = "true")
+public class PartitionReplyListener {
+
+    private final PartitionManager partitionManager;
+
+    @Bean
+    public Queue partitionReplyQueue() {
+        return new Queue(partitionManager.getReplyQueue(), false, true, true);
+    }
+
+    @RabbitListener(queues = "#{partitionManager.replyQueue}", ackMode = "AUTO")
+    public void onReply(PartitionReply reply) {
+        partitionManager.onReply(reply);
+    }
+}
@@ -0,0 +1,28 @@
+package com.wisetech.rras.calculationengine.partition;
+
+import com.wisetech.rras.calculationengine.enums.PartitionedCalculation;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Asks a worker to calculate the loans of a snapshot from fromLoanId to toLoanId
+ * (inclusive) and reply to the manager's queue. A retried partition is sent again
+ * with the next attempt number.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder = true)
+public class PartitionRequest {
+
+    private String runId;
+    private PartitionedCalculation calculation;
+    private int snapshotId;
+    private int partitionId;
+    private long fromLoanId;
+    private long toLoanId;
+    private int attempt;
+    private String replyTo;
+}
@@ -0,0 +1,92 @@
+package com.wisetech.rras.calculationengine.partition;
+
+import com.wisetech.rras.calculationengine.service.ECLCalculationService;
+import com.wisetech.rras.calculationengine.service.RWACalculationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.util.Map;
+
+/**
+ * Worker side of remote partitioning. Stateless: each request names its snapshot
+ * and loan range, the worker writes that range's metric components and replies
+ * with the partial totals. Any number of nodes, each with worker-concurrency
+ * consumers, share the request queue; a prefetch of one keeps a slow partition
+ * from holding back others queued behind it.
+ *
+ * A worker that dies mid-partition leaves its request unacknowledged, so the
+ * broker hands it to another worker; the manager's timeout covers anything lost.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "partitioning.worker-enabled", havingValue = "true")
+public class PartitionWorker {
+
+    private static final String WORKER_ID = workerHost();
+
+    private final RWACalculationService rwaService;
+    private final ECLCalculationService eclService;
+    private final RabbitTemplate rabbitTemplate;
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory partitionWorkerContainerFactory(
+            ConnectionFactory connectionFactory, MessageConverter jsonMessageConverter) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(jsonMessageConverter);
+        factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        factory.setPrefetchCount(1);
+        return factory;
+    }
+
+    @RabbitListener(queues = "${partitioning.request-queue}", containerFactory = "partitionWorkerContainerFactory",
+            concurrency = "${partitioning.worker-concurrency:2}")
+    public void onRequest(PartitionRequest request) {
+        long start = System.nanoTime();
+        PartitionReply.PartitionReplyBuilder reply = PartitionReply.builder()
+                .runId(request.getRunId())
+                .partitionId(request.getPartitionId())
+                .attempt(request.getAttempt())
+                .workerId(WORKER_ID + "/" + Thread.currentThread().getName());
+
+        try {
+            reply.totals(calculate(request));
+        } catch (Exception e) {
+            log.error("{} partition {} of snapshot {} failed", request.getCalculation(),
+                    request.getPartitionId(), request.getSnapshotId(), e);
+            reply.error(e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+
+        reply.elapsedMs((System.nanoTime() - start) / 1_000_000);
+        rabbitTemplate.convertAndSend("", request.getReplyTo(), reply.build());
+    }
+
+    private Map<String, BigDecimal> calculate(PartitionRequest request) {
+        return switch (request.getCalculation()) {
+            case RWA -> rwaService.calculateRWAPartition(request.getSnapshotId(),
+                    request.getFromLoanId(), request.getToLoanId());
+            case ECL -> eclService.calculateECLPartition(request.getSnapshotId(),
+                    request.getFromLoanId(), request.getToLoanId());
+        };
+    }
+
+    private static String workerHost() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.wisetech.rras.calculationengine.pipeline;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * Idempotency records of the calculation pipeline in metrics.calculation_claims.
+ * Each (snapshot, calculation) is done once however often its trigger is
+ * delivered, by however many instances.
+ */
+@Component
+@RequiredArgsConstructor
+public class CalculationClaims {
+
+    /**
+     * Written inside the calculation's transaction. A concurrent claim of the same
+     * calculation blocks on the row until that transaction ends, then either
+     * inserts (the other rolled back) or finds it COMPLETED and updates nothing.
+     */
+    private static final String CLAIM_SQL = """
+            INSERT INTO metrics.calculation_claims (snapshot_id, calculation, status, claimed_by, updated_at)
+            VALUES (?, ?, 'COMPLETED', ?, CURRENT_TIMESTAMP)
+            ON CONFLICT (snapshot_id, calculation) DO UPDATE
+            SET status = 'COMPLETED', claimed_by = EXCLUDED.claimed_by, error = NULL, updated_at = EXCLUDED.updated_at
+            WHERE calculation_claims.status = 'FAILED'
+            """;
+
+    private static final String FAIL_SQL = """
+            INSERT INTO metrics.calculation_claims (snapshot_id, calculation, status, claimed_by, failures, error, updated_at)
+            VALUES (?, ?, 'FAILED', ?, 1, ?, CURRENT_TIMESTAMP)
+            ON CONFLICT (snapshot_id, calculation) DO UPDATE
+            SET status = 'FAILED', claimed_by = EXCLUDED.claimed_by, failures = calculation_claims.failures + 1,
+                error = EXCLUDED.error, updated_at = EXCLUDED.updated_at
+            WHERE calculation_claims.status = 'FAILED'
+            RETURNING failures
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Claims a calculation in the current transaction; false when it is already done
+     */
+    public boolean claim(int snapshotId, String calculation, String claimedBy) {
+        return jdbcTemplate.update(CLAIM_SQL, snapshotId, calculation, claimedBy) == 1;
+    }
+
+    /**
+     * Records a failed attempt, outside the rolled back transaction, and returns the failures so far
+     */
+    public int fail(int snapshotId, String calculation, String claimedBy, String error) {
+        return jdbcTemplate.query(FAIL_SQL, rs -> rs.next() ? rs.getInt("failures") : 0,
+                snapshotId, calculation, claimedBy, error);
+    }
+
+    public boolean allCompleted(int snapshotId, Collection<String> calculations) {
+        if (calculations.isEmpty()) {
+            return true;
+        }
+        Integer completed = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM metrics.calculation_claims WHERE snapshot_id = ? AND status = 'COMPLETED'"
+                        + " AND calculation = ANY (?)",
+                Integer.class, snapshotId, calculations.toArray(String[]::new));
+        return completed != null && completed == calculations.size();
+    }
+}
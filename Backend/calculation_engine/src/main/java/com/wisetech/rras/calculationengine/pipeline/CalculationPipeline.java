@@ -0,0 +1,295 @@
+package com.wisetech.rras.calculationengine.pipeline;
+
+import com.wisetech.rras.calculationengine.concentration.ConcentrationRiskService;
+import com.wisetech.rras.calculationengine.context.CalculationContextRegistry;
+import com.wisetech.rras.calculationengine.domain.SnapshotRun;
+import com.wisetech.rras.calculationengine.enums.PipelineCalculation;
+import com.wisetech.rras.calculationengine.enums.RunStatus;
+import com.wisetech.rras.calculationengine.jfr.JobFlightRecorder;
+import com.wisetech.rras.calculationengine.messaging.CalculationEventPublisher;
+import com.wisetech.rras.calculationengine.metrics.StepResourceUsageListener;
+import com.wisetech.rras.calculationengine.repository.SnapshotRunRepository;
+import com.wisetech.rras.calculationengine.returns.ReturnGenerationService;
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties;
+import com.wisetech.rras.calculationengine.service.*;
+import com.wisetech.rras.calculationengine.simulation.CreditLossSimulationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Event-driven calculation workers, used instead of the job's calculation steps
+ * when pipeline.enabled is true. snapshot.validated reaches the RWA, NPL, LCR,
+ * concentration and simulation queues; each completion (calculation.rwa, calculation.npl)
+ * reaches the queues of its dependents, so CAR starts once RWA is done and ECL
+ * once RWA and NPL are. The last calculation to complete finalizes the snapshot.
+ *
+ * Any number of instances consume the queues. A delivery is acknowledged only
+ * after its calculation committed, and calculation_claims makes a redelivered or
+ * duplicate trigger a no-op. A failed calculation is requeued until it has failed
+ * pipeline.max-attempts times, then the snapshot is marked FAILED.
+ *
+ * Finalizing is claimed twice: FINALIZE with the CALCULATED status, PUBLISH once
+ * snapshot.completed is published and the returns are rendered. A finalizing
+ * delivery that fails or dies in between is redelivered and publishes again.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "pipeline.enabled", havingValue = "true")
+public class CalculationPipeline {
+
+    private static final String FINALIZE = "FINALIZE";
+    private static final String PUBLISH = "PUBLISH";
+    private static final String WORKER_ID = workerHost();
+
+    private final CalculationClaims claims;
+    private final SnapshotRunRepository snapshotRunRepository;
+    private final RWACalculationService rwaService;
+    private final NPLCalculationService nplService;
+    private final LCRCalculationService lcrService;
+    private final ConcentrationRiskService concentrationService;
+    private final CARCalculationService carService;
+    private final ECLCalculationService eclService;
+    private final CreditLossSimulationService simulationService;
+    private final ReturnGenerationService returnGenerationService;
+    private final ReturnTemplateProperties returnTemplateProperties;
+    private final CalculationContextRegistry contextRegistry;
+    private final CalculationEventPublisher eventPublisher;
+    private final StepResourceUsageListener resourceUsage;
+    private final JobFlightRecorder jobFlightRecorder;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${pipeline.max-attempts:3}")
+    private int maxAttempts;
+
+    /**
+     * Calculations run for minutes, so each consumer holds one delivery at a time
+     * and an idle instance picks up the next one instead of it waiting in a busy
+     * consumer's prefetch buffer.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory pipelineContainerFactory(
+            ConnectionFactory connectionFactory, MessageConverter jsonMessageConverter,
+            @Value("${pipeline.prefetch:1}") int prefetch) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(jsonMessageConverter);
+        factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        factory.setPrefetchCount(prefetch);
+        return factory;
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.calculation.rwa}", containerFactory = "pipelineContainerFactory",
+            concurrency = "${pipeline.concurrency:1}")
+    public void onRWA(Map<String, Object> event, @Header(AmqpHeaders.REDELIVERED) boolean redelivered) {
+        handle(PipelineCalculation.RWA, event, redelivered);
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.calculation.npl}", containerFactory = "pipelineContainerFactory",
+            concurrency = "${pipeline.concurrency:1}")
+    public void onNPL(Map<String, Object> event, @Header(AmqpHeaders.REDELIVERED) boolean redelivered) {
+        handle(PipelineCalculation.NPL, event, redelivered);
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.calculation.lcr}", containerFactory = "pipelineContainerFactory",
+            concurrency = "${pipeline.concurrency:1}")
+    public void onLCR(Map<String, Object> event, @Header(AmqpHeaders.REDELIVERED) boolean redelivered) {
+        handle(PipelineCalculation.LCR, event, redelivered);
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.calculation.concentration}", containerFactory = "pipelineContainerFactory",
+            concurrency = "${pipeline.concurrency:1}")
+    public void onConcentration(Map<String, Object> event, @Header(AmqpHeaders.REDELIVERED) boolean redelivered) {
+        handle(PipelineCalculation.CONCENTRATION, event, redelivered);
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.calculation.car}", containerFactory = "pipelineContainerFactory",
+            concurrency = "${pipeline.concurrency:1}")
+    public void onCAR(Map<String, Object> event, @Header(AmqpHeaders.REDELIVERED) boolean redelivered) {
+        handle(PipelineCalculation.CAR, event, redelivered);
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.calculation.ecl}", containerFactory = "pipelineContainerFactory",
+            concurrency = "${pipeline.concurrency:1}")
+    public void onECL(Map<String, Object> event, @Header(AmqpHeaders.REDELIVERED) boolean redelivered) {
+        handle(PipelineCalculation.ECL, event, redelivered);
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.calculation.simulation}", containerFactory = "pipelineContainerFactory",
+            concurrency = "${pipeline.concurrency:1}")
+    public void onSimulation(Map<String, Object> event, @Header(AmqpHeaders.REDELIVERED) boolean redelivered) {
+        handle(PipelineCalculation.SIMULATION, event, redelivered);
+    }
+
+    private void handle(PipelineCalculation calculation, Map<String, Object> event, boolean redelivered) {
+        int snapshotId = ((Number) event.get("snapshotId")).intValue();
+
+        List<String> prerequisites = calculation.getDependsOn().stream().map(PipelineCalculation::getValue).toList();
+        if (!claims.allCompleted(snapshotId, prerequisites)) {
+            // The completion of the missing prerequisite triggers this calculation again
+            log.debug("{} for snapshot {} is waiting for {}", calculation, snapshotId, prerequisites);
+            return;
+        }
+
+        boolean calculated;
+        try {
+            calculated = !claims.allCompleted(snapshotId, List.of(calculation.getValue()))
+                    && resourceUsage.measure(snapshotId, calculation.getStepName(), () -> calculate(calculation, snapshotId));
+        } catch (RuntimeException e) {
+            int failures = claims.fail(snapshotId, calculation.getValue(), WORKER_ID,
+                    e.getClass().getSimpleName() + ": " + e.getMessage());
+            if (failures < maxAttempts) {
+                log.warn("{} for snapshot {} failed ({} of {} attempts), requeueing",
+                        calculation, snapshotId, failures, maxAttempts, e);
+                throw e;
+            }
+            markFailed(snapshotId);
+            eventPublisher.publishCalculationFailed((long) snapshotId, calculation.getValue(), e.getMessage());
+            throw new AmqpRejectAndDontRequeueException(
+                    calculation + " for snapshot " + snapshotId + " failed " + failures + " times", e);
+        }
+
+        if (calculated) {
+            eventPublisher.publishCalculationCompleted(snapshotId, calculation.getValue());
+        } else if (redelivered) {
+            // The instance that calculated it may have died before publishing the completion
+            eventPublisher.publishCalculationCompleted(snapshotId, calculation.getValue());
+        } else {
+            log.debug("{} for snapshot {} already done, skipping", calculation, snapshotId);
+            return;
+        }
+
+        List<String> all = Arrays.stream(PipelineCalculation.values()).map(PipelineCalculation::getValue).toList();
+        if (claims.allCompleted(snapshotId, all)) {
+            finalizeSnapshot(snapshotId, redelivered);
+        }
+    }
+
+    /**
+     * Claims and runs the calculation; false when another delivery already did it.
+     * RWA and ECL run their own transactions, so that with partitioning none is
+     * open while the workers are awaited, and claim in the one writing the totals;
+     * the simulation likewise claims only once its trials are done.
+     */
+    private boolean calculate(PipelineCalculation calculation, int snapshotId) {
+        BooleanSupplier claim = () -> claim(calculation, snapshotId);
+        return switch (calculation) {
+            case RWA -> rwaService.calculateRWA(snapshotId, claim).isPresent();
+            case ECL -> eclService.calculateECL(snapshotId, claim).isPresent();
+            case SIMULATION -> simulationService.simulate(snapshotId, null, null, claim).isPresent();
+            default -> Boolean.TRUE.equals(new TransactionTemplate(transactionManager).execute(status -> {
+                if (!claim.getAsBoolean()) {
+                    return false;
+                }
+                switch (calculation) {
+                    case NPL -> nplService.calculateNPL(snapshotId);
+                    case LCR -> lcrService.calculateLCR(snapshotId, snapshot(snapshotId).getSnapshotDate());
+                    case CONCENTRATION -> concentrationService.calculateConcentration(snapshotId);
+                    case CAR -> carService.calculateCAR(snapshotId, snapshot(snapshotId).getSnapshotDate());
+                    default -> throw new IllegalStateException("Unexpected calculation " + calculation);
+                }
+                return true;
+            }));
+        };
+    }
+
+    private boolean claim(PipelineCalculation calculation, int snapshotId) {
+        if (!claims.claim(snapshotId, calculation.getValue(), WORKER_ID)) {
+            return false;
+        }
+        log.info("Claimed {} Calculation for Snapshot {} on {}", calculation, snapshotId, WORKER_ID);
+        return true;
+    }
+
+    /**
+     * What finalizeSnapshotStep and generateReturnsStep do in the job, once per snapshot.
+     * A redelivered trigger finds FINALIZE claimed and publishes again unless PUBLISH
+     * is; a first delivery leaves that to the instance that claimed FINALIZE.
+     */
+    private void finalizeSnapshot(int snapshotId, boolean redelivered) {
+        boolean finalized = Boolean.TRUE.equals(new TransactionTemplate(transactionManager).execute(status -> {
+            if (!claims.claim(snapshotId, FINALIZE, WORKER_ID)) {
+                return false;
+            }
+            SnapshotRun snapshot = snapshot(snapshotId);
+            snapshot.setStatus(RunStatus.CALCULATED);
+            snapshot.setCalculatedAt(ZonedDateTime.now());
+            snapshotRunRepository.save(snapshot);
+            return true;
+        }));
+
+        if (finalized) {
+            contextRegistry.remove(snapshotId);
+            jobFlightRecorder.snapshotEnded(snapshotId);
+            log.info("Pipeline completed snapshot {}", snapshotId);
+        } else if (!redelivered || claims.allCompleted(snapshotId, List.of(PUBLISH))) {
+            return;
+        }
+        publish(snapshotId);
+    }
+
+    private void publish(int snapshotId) {
+        try {
+            eventPublisher.publishSnapshotCompleted(snapshotId);
+            if (returnTemplateProperties.isEnabled()) {
+                returnGenerationService.generateReturns(snapshotId);
+            }
+            claims.claim(snapshotId, PUBLISH, WORKER_ID);
+        } catch (RuntimeException e) {
+            int failures = claims.fail(snapshotId, PUBLISH, WORKER_ID,
+                    e.getClass().getSimpleName() + ": " + e.getMessage());
+            if (failures < maxAttempts) {
+                log.warn("Publishing snapshot {} failed ({} of {} attempts), requeueing",
+                        snapshotId, failures, maxAttempts, e);
+                throw e;
+            }
+            // The snapshot stays CALCULATED; its PUBLISH claim records the failure
+            eventPublisher.publishCalculationFailed((long) snapshotId, PUBLISH, e.getMessage());
+            throw new AmqpRejectAndDontRequeueException(
+                    "Publishing snapshot " + snapshotId + " failed " + failures + " times", e);
+        }
+    }
+
+    private void markFailed(int snapshotId) {
+        snapshotRunRepository.findById(snapshotId).ifPresent(snapshot -> {
+            snapshot.setStatus(RunStatus.FAILED);
+            snapshotRunRepository.save(snapshot);
+        });
+        contextRegistry.remove(snapshotId);
+        jobFlightRecorder.snapshotEnded(snapshotId);
+    }
+
+    private SnapshotRun snapshot(int snapshotId) {
+        return snapshotRunRepository.findById(snapshotId)
+                .orElseThrow(() -> new IllegalStateException("Snapshot " + snapshotId + " not found"));
+    }
+
+    private static String workerHost() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
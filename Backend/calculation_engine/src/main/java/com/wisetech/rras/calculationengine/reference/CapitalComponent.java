@@ -0,0 +1,21 @@
+package com.wisetech.rras.calculationengine.reference;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * A cbs.capital_components row, amount net of its regulatory adjustment
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CapitalComponent {
+
+    private String componentType;    // CET1, AT1, T2
+    private String componentName;
+    private BigDecimal amount;
+    private String currency;
+}
@@ -0,0 +1,22 @@
+package com.wisetech.rras.calculationengine.reference;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * A source_read.liquidity_positions row
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LiquidityPosition {
+
+    private Long assetId;
+    private String assetType;
+    private BigDecimal hqlaValue;
+    private String hqlaLevel;
+    private String currency;
+}
@@ -0,0 +1,165 @@
+package com.wisetech.rras.calculationengine.reference;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.wisetech.rras.calculationengine.enums.ReferenceDataType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Reference data aggregates keyed by type, run and as-of date.
+ *
+ * Capital, liquidity and other date based source data is read by several steps
+ * of a run (the copy step and CAR both read capital), so it is loaded once per
+ * run and shared by its steps. Keying by the run's snapshot means every run reads
+ * the source afresh: a correction made after an earlier run of the same date is
+ * picked up, and instances never serve another run's copy. Two instances working
+ * on one run each load their own copy, so they disagree only if the source
+ * changes while that run is calculating.
+ *
+ * Shared entries (getShared) are keyed by type and date only and serve every
+ * run of the date, so the daily, monthly and ad hoc snapshots of one date build
+ * them once. The trade-off is that a correction to their source is not seen by
+ * later runs until the date is evicted or the entry expires.
+ *
+ * Entries expire after reference-cache.expire-minutes. A run's entries and the
+ * shared entries of its date are evicted when its job fails, so a restart reads
+ * the corrected rows, and a date is evicted on request.
+ *
+ * Hits are counted per type: each hit is a source query that was not run.
+ */
+@Component
+@Slf4j
+public class ReferenceDataCache {
+
+    /** Snapshot ids start at 1, so no run uses this key */
+    private static final int SHARED = 0;
+
+    private final Cache<Key, Object> cache;
+    private final Map<ReferenceDataType, Counters> counters = new EnumMap<>(ReferenceDataType.class);
+
+    public ReferenceDataCache(@Value("${reference-cache.max-entries:64}") int maxEntries,
+                              @Value("${reference-cache.expire-minutes:60}") int expireMinutes) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(expireMinutes, TimeUnit.MINUTES)
+                .build();
+
+        for (ReferenceDataType type : ReferenceDataType.values()) {
+            counters.put(type, new Counters());
+        }
+    }
+
+    /**
+     * Cached value for type and date within a run, loading it on the run's first use
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(ReferenceDataType type, int snapshotId, LocalDate asOfDate, Supplier<T> loader) {
+        Counters typeCounters = counters.get(type);
+        boolean[] loaded = {false};
+
+        try {
+            T value = (T) cache.get(new Key(type, snapshotId, asOfDate), () -> {
+                loaded[0] = true;
+                long startTime = System.nanoTime();
+                T result = loader.get();
+                typeCounters.loadNanos.addAndGet(System.nanoTime() - startTime);
+                return result;
+            });
+
+            if (loaded[0]) {
+                typeCounters.misses.incrementAndGet();
+            } else {
+                typeCounters.hits.incrementAndGet();
+            }
+            return value;
+
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Failed to load " + type + " for " + asOfDate, e.getCause());
+        }
+    }
+
+    /**
+     * Cached value for type and date shared by every run of the date
+     */
+    public <T> T getShared(ReferenceDataType type, LocalDate asOfDate, Supplier<T> loader) {
+        return get(type, SHARED, asOfDate, loader);
+    }
+
+    /**
+     * Drop every cached aggregate of a date, for all runs and shared
+     */
+    public void evict(LocalDate asOfDate) {
+        cache.asMap().keySet().removeIf(key -> key.asOfDate().equals(asOfDate));
+        log.info("Evicted reference data for {}", asOfDate);
+    }
+
+    /**
+     * Drop every cached aggregate of a run, leaving the shared entries
+     */
+    public void evictRun(int snapshotId) {
+        cache.asMap().keySet().removeIf(key -> key.snapshotId() == snapshotId);
+        log.info("Evicted reference data of snapshot {}", snapshotId);
+    }
+
+    /**
+     * Drop the shared aggregates of a date, leaving the runs' own entries
+     */
+    public void evictShared(LocalDate asOfDate) {
+        cache.asMap().keySet().removeIf(key -> key.snapshotId() == SHARED && key.asOfDate().equals(asOfDate));
+        log.info("Evicted shared reference data for {}", asOfDate);
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Per type hits (source queries saved), misses (queries run) and load time
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long totalSaved = 0;
+
+        for (Map.Entry<ReferenceDataType, Counters> entry : counters.entrySet()) {
+            Counters c = entry.getValue();
+            long hits = c.hits.get();
+            long misses = c.misses.get();
+            totalSaved += hits;
+
+            Map<String, Object> typeStats = new LinkedHashMap<>();
+            typeStats.put("hits", hits);
+            typeStats.put("misses", misses);
+            typeStats.put("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+            typeStats.put("loadTimeMs", TimeUnit.NANOSECONDS.toMillis(c.loadNanos.get()));
+            stats.put(entry.getKey().getValue(), typeStats);
+        }
+
+        stats.put("queriesSaved", totalSaved);
+        stats.put("cachedEntries", cache.size());
+        return stats;
+    }
+
+    private record Key(ReferenceDataType type, int snapshotId, LocalDate asOfDate) {
+    }
+
+    private static class Counters {
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong loadNanos = new AtomicLong();
+    }
+}
@@ -0,0 +1,85 @@
+package com.wisetech.rras.calculationengine.reference;
+
+import com.wisetech.rras.calculationengine.enums.ReferenceDataType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed access to date based reference data through ReferenceDataCache, shared
+ * by the steps of one run
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ReferenceDataService {
+
+    private static final String CAPITAL_SQL = """
+            SELECT component_type, component_name,
+                   amount + COALESCE(regulatory_adjustment, 0) AS amount, currency
+            FROM cbs.capital_components
+            WHERE as_of_date = ?
+            """;
+
+    private static final String LIQUIDITY_SQL = """
+            SELECT asset_id, asset_type, hqla_value, hqla_level, currency
+            FROM source_read.liquidity_positions
+            WHERE as_of_date = ?
+            """;
+
+    private final ReferenceDataCache cache;
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<CapitalComponent> getCapitalComponents(int snapshotId, LocalDate asOfDate) {
+        return cache.get(ReferenceDataType.CAPITAL_COMPONENTS, snapshotId, asOfDate, () -> List.copyOf(
+                jdbcTemplate.query(CAPITAL_SQL, (rs, rowNum) -> new CapitalComponent(
+                        rs.getString("component_type"),
+                        rs.getString("component_name"),
+                        rs.getBigDecimal("amount"),
+                        rs.getString("currency")), asOfDate)));
+    }
+
+    /**
+     * CET1, AT1, TIER1, TIER2 and TOTAL capital for a date
+     */
+    public Map<String, BigDecimal> getCapitalTotals(int snapshotId, LocalDate asOfDate) {
+        BigDecimal cet1 = BigDecimal.ZERO;
+        BigDecimal at1 = BigDecimal.ZERO;
+        BigDecimal t2 = BigDecimal.ZERO;
+
+        for (CapitalComponent component : getCapitalComponents(snapshotId, asOfDate)) {
+            BigDecimal amount = component.getAmount() != null ? component.getAmount() : BigDecimal.ZERO;
+            switch (component.getComponentType()) {
+                case "CET1" -> cet1 = cet1.add(amount);
+                case "AT1" -> at1 = at1.add(amount);
+                case "T2" -> t2 = t2.add(amount);
+                default -> log.warn("Ignoring capital component of unknown type {}", component.getComponentType());
+            }
+        }
+
+        Map<String, BigDecimal> components = new HashMap<>();
+        components.put("CET1", cet1);
+        components.put("AT1", at1);
+        components.put("TIER1", cet1.add(at1));
+        components.put("TIER2", t2);
+        components.put("TOTAL", cet1.add(at1).add(t2));
+        return components;
+    }
+
+    public List<LiquidityPosition> getLiquidityPositions(int snapshotId, LocalDate asOfDate) {
+        return cache.get(ReferenceDataType.LIQUIDITY_POSITIONS, snapshotId, asOfDate, () -> List.copyOf(
+                jdbcTemplate.query(LIQUIDITY_SQL, (rs, rowNum) -> new LiquidityPosition(
+                        rs.getLong("asset_id"),
+                        rs.getString("asset_type"),
+                        rs.getBigDecimal("hqla_value"),
+                        rs.getString("hqla_level"),
+                        rs.getString("currency")), asOfDate)));
+    }
+}
@@ -16,6 +16,10 @@ public interface LoanExposureSnapshotRepository extends
 
     List<LoanExposureSnapshot> findBySnapshotId(int snapshotId);
 
+    long countBySnapshotId(int snapshotId);
+
+    List<LoanExposureSnapshot> findBySnapshotIdAndLoanIdBetween(int snapshotId, Long fromLoanId, Long toLoanId);
+
     @Query("SELECT l FROM LoanExposureSnapshot l WHERE l.snapshotId = :snapshotId " +
             "AND l.assetClass IN :classifications")
     List<LoanExposureSnapshot> findBySnapshotIdAndAssetClassIn(
@@ -13,7 +13,10 @@ public interface RegulatoryMetricRepository extends JpaRepository<RegulatoryMetr
 
     List<RegulatoryMetric> findBySnapshotId(int snapshotId);
 
-    Optional<RegulatoryMetric> findBySnapshotIdAndMetricCode(int snapshotId, String metricCode);
+    /**
+     * The latest row of a metric; a restarted step may have written it more than once
+     */
+    Optional<RegulatoryMetric> findFirstBySnapshotIdAndMetricCodeOrderByMetricIdDesc(int snapshotId, String metricCode);
 
     @Query("SELECT r FROM RegulatoryMetric r WHERE r.metricCode = :metricCode " +
             "ORDER BY r.snapshotId DESC")
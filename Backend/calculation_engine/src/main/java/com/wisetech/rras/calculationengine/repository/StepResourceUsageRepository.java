@@ -0,0 +1,13 @@
+package com.wisetech.rras.calculationengine.repository;
+
+import com.wisetech.rras.calculationengine.domain.StepResourceUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface StepResourceUsageRepository extends JpaRepository<StepResourceUsage, Long> {
+
+    List<StepResourceUsage> findBySnapshotIdOrderByRecordedAtAsc(int snapshotId);
+}
@@ -0,0 +1,65 @@
+package com.wisetech.rras.calculationengine.returns;
+
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties.ReturnColumn;
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties.ReturnSchedule;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+class CsvReturnWriter implements ReturnRowWriter {
+
+    private final ReturnSchedule schedule;
+    private final List<ReturnColumn> columns;
+    private final Writer out;
+
+    CsvReturnWriter(ReturnSchedule schedule, Writer out) {
+        this.schedule = schedule;
+        this.columns = schedule.getColumns();
+        this.out = out;
+    }
+
+    @Override
+    public void begin() throws IOException {
+        if (!schedule.isIncludeHeader()) {
+            return;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeValue(columns.get(i).getHeader());
+        }
+        out.write('\n');
+    }
+
+    @Override
+    public void writeRow(ResultSet rs) throws SQLException, IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeValue(rs.getString(columns.get(i).getField()));
+        }
+        out.write('\n');
+    }
+
+    @Override
+    public void end() {
+    }
+
+    private void writeValue(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
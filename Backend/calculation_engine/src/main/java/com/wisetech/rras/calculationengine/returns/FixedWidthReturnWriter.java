@@ -0,0 +1,74 @@
+package com.wisetech.rras.calculationengine.returns;
+
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties.Alignment;
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties.ReturnColumn;
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties.ReturnSchedule;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Space padded records. A value longer than its column fails the schedule:
+ * truncating an amount would file a wrong number.
+ */
+class FixedWidthReturnWriter implements ReturnRowWriter {
+
+    private final ReturnSchedule schedule;
+    private final List<ReturnColumn> columns;
+    private final Writer out;
+
+    FixedWidthReturnWriter(ReturnSchedule schedule, Writer out) {
+        this.schedule = schedule;
+        this.columns = schedule.getColumns();
+        this.out = out;
+    }
+
+    @Override
+    public void begin() throws IOException {
+        if (!schedule.isIncludeHeader()) {
+            return;
+        }
+        for (ReturnColumn column : columns) {
+            writeField(column, column.getHeader(), Alignment.LEFT);
+        }
+        out.write('\n');
+    }
+
+    @Override
+    public void writeRow(ResultSet rs) throws SQLException, IOException {
+        for (ReturnColumn column : columns) {
+            writeField(column, rs.getString(column.getField()), column.getAlign());
+        }
+        out.write('\n');
+    }
+
+    @Override
+    public void end() {
+    }
+
+    private void writeField(ReturnColumn column, String value, Alignment align) throws IOException {
+        String text = value != null ? value : "";
+        if (text.length() > column.getWidth()) {
+            throw new IllegalStateException("Value '" + text + "' of column " + column.getHeader() + " in schedule "
+                    + schedule.getName() + " does not fit its width of " + column.getWidth());
+        }
+
+        int padding = column.getWidth() - text.length();
+        if (align == Alignment.RIGHT) {
+            pad(padding);
+            out.write(text);
+        } else {
+            out.write(text);
+            pad(padding);
+        }
+    }
+
+    private void pad(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.write(' ');
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.wisetech.rras.calculationengine.returns;
+
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties.ReturnSchedule;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Renders one schedule of a return, one source row at a time
+ */
+public interface ReturnRowWriter {
+
+    void begin() throws IOException;
+
+    void writeRow(ResultSet rs) throws SQLException, IOException;
+
+    void end() throws IOException;
+
+    static ReturnRowWriter create(String returnCode, int snapshotId,
+                                  ReturnSchedule schedule, Writer out) throws IOException {
+        return switch (schedule.getFormat()) {
+            case CSV -> new CsvReturnWriter(schedule, out);
+            case FIXED_WIDTH -> new FixedWidthReturnWriter(schedule, out);
+            case XML -> new XmlReturnWriter(returnCode, snapshotId, schedule, out);
+        };
+    }
+}
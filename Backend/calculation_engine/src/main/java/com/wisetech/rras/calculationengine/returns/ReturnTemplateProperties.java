@@ -0,0 +1,72 @@
+package com.wisetech.rras.calculationengine.returns;
+
+import com.wisetech.rras.calculationengine.enums.ReturnFormat;
+import com.wisetech.rras.calculationengine.enums.ReturnSource;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Regulatory return templates, configured under {@code returns.*}
+ *
+ * A return (e.g. a CBL prudential return) is made of independent schedules,
+ * each rendered to its own file from one source table.
+ */
+@Component
+@ConfigurationProperties(prefix = "returns")
+@Data
+public class ReturnTemplateProperties {
+
+    private boolean enabled = false;
+
+    private String outputDir = "returns";
+
+    // Schedules rendered concurrently, each holding one database connection
+    private int parallelism = 4;
+
+    private int fetchSize = 5000;
+
+    private List<ReturnTemplate> templates = new ArrayList<>();
+
+    @Data
+    public static class ReturnTemplate {
+        private String code;
+        private List<ReturnSchedule> schedules = new ArrayList<>();
+    }
+
+    @Data
+    public static class ReturnSchedule {
+        private String name;
+        private ReturnFormat format = ReturnFormat.CSV;
+        private ReturnSource source = ReturnSource.REGULATORY_METRICS;
+
+        // Optional filter for REGULATORY_METRICS schedules
+        private List<String> metricCodes = new ArrayList<>();
+
+        private boolean includeHeader = true;
+        private String recordElement = "record";
+        private List<ReturnColumn> columns = new ArrayList<>();
+    }
+
+    @Data
+    public static class ReturnColumn {
+        private String header;
+        private String field;
+
+        // Only used by FIXED_WIDTH schedules
+        private int width = 20;
+        private Alignment align = Alignment.LEFT;
+
+        public String getHeader() {
+            return header != null ? header : field;
+        }
+    }
+
+    public enum Alignment {
+        LEFT,
+        RIGHT
+    }
+}
@@ -0,0 +1,103 @@
+package com.wisetech.rras.calculationengine.returns;
+
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties.ReturnColumn;
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties.ReturnSchedule;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * StAX based writer, so the document is never held in memory
+ */
+class XmlReturnWriter implements ReturnRowWriter {
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+    /** The XML names a template may use: StAX writes any string as an element name, valid or not */
+    private static final Pattern ELEMENT_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_.-]*");
+
+    private final String returnCode;
+    private final int snapshotId;
+    private final ReturnSchedule schedule;
+    private final List<ReturnColumn> columns;
+    private final XMLStreamWriter xml;
+
+    XmlReturnWriter(String returnCode, int snapshotId, ReturnSchedule schedule, Writer out) throws IOException {
+        this.returnCode = returnCode;
+        this.snapshotId = snapshotId;
+        this.schedule = schedule;
+        this.columns = schedule.getColumns();
+
+        checkElementName(schedule.getRecordElement(), "record element");
+        for (ReturnColumn column : columns) {
+            checkElementName(column.getHeader(), "column header");
+        }
+        try {
+            this.xml = OUTPUT_FACTORY.createXMLStreamWriter(out);
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to create XML writer", e);
+        }
+    }
+
+    private void checkElementName(String name, String what) {
+        if (name == null || !ELEMENT_NAME.matcher(name).matches() || name.regionMatches(true, 0, "xml", 0, 3)) {
+            throw new IllegalArgumentException("Schedule " + schedule.getName() + " has " + what + " '" + name
+                    + "', which is not a valid XML element name");
+        }
+    }
+
+    @Override
+    public void begin() throws IOException {
+        try {
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("return");
+            xml.writeAttribute("code", returnCode);
+            xml.writeAttribute("schedule", schedule.getName());
+            xml.writeAttribute("snapshotId", Integer.toString(snapshotId));
+            xml.writeCharacters("\n");
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void writeRow(ResultSet rs) throws SQLException, IOException {
+        try {
+            xml.writeCharacters("  ");
+            xml.writeStartElement(schedule.getRecordElement());
+            for (ReturnColumn column : columns) {
+                String value = rs.getString(column.getField());
+                if (value == null) {
+                    xml.writeEmptyElement(column.getHeader());
+                } else {
+                    xml.writeStartElement(column.getHeader());
+                    xml.writeCharacters(value);
+                    xml.writeEndElement();
+                }
+            }
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        try {
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+}
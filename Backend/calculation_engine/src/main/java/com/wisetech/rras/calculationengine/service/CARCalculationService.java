@@ -3,15 +3,21 @@ package com.wisetech.rras.calculationengine.service;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wisetech.rras.calculationengine.context.CalculationContextRegistry;
+import com.wisetech.rras.calculationengine.context.ContextKey;
 import com.wisetech.rras.calculationengine.domain.CalculationAudit;
 import com.wisetech.rras.calculationengine.domain.RegulatoryMetric;
+import com.wisetech.rras.calculationengine.jfr.CalculationPhase;
+import com.wisetech.rras.calculationengine.jfr.CalculationPhaseEvent;
+import com.wisetech.rras.calculationengine.metrics.CalculationMetrics;
+import com.wisetech.rras.calculationengine.metrics.CalculationTimer;
+import com.wisetech.rras.calculationengine.reference.ReferenceDataService;
 import com.wisetech.rras.calculationengine.repository.CalculationAuditRepository;
 import com.wisetech.rras.calculationengine.repository.MetricComponentRepository;
 import com.wisetech.rras.calculationengine.repository.RegulatoryMetricRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -41,8 +47,10 @@ public class CARCalculationService {
     private final MetricComponentRepository metricComponentRepository;
     private final RegulatoryMetricRepository regulatoryMetricRepository;
     private final CalculationAuditRepository auditRepository;
-    private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataService referenceDataService;
     private final ObjectMapper objectMapper;
+    private final CalculationContextRegistry contextRegistry;
+    private final CalculationMetrics calculationMetrics;
 
     @Value("${regulatory.lesotho.min-car:15.0}")
     private BigDecimal minCAR;
@@ -61,29 +69,37 @@ public class CARCalculationService {
      */
     @Transactional
     public Map<String, BigDecimal> calculateCAR(int snapshotId, LocalDate snapshotDate) {
-        long startTime = System.currentTimeMillis();
+        CalculationTimer timer = calculationMetrics.start("CAR");
         log.info("Starting CAR calculation for snapshot {}", snapshotId);
 
-        // Get total RWA
-        BigDecimal totalRWA = metricComponentRepository.getTotalRWA(snapshotId);
+        // Total RWA from the RWA step; after a restart, the stored metric or the component sum
+        CalculationPhaseEvent phase = CalculationPhaseEvent.begin("CAR", CalculationPhase.LOAD, snapshotId);
+        BigDecimal totalRWA = contextRegistry.get(snapshotId, ContextKey.TOTAL_RWA, () ->
+                regulatoryMetricRepository.findFirstBySnapshotIdAndMetricCodeOrderByMetricIdDesc(snapshotId, "TOTAL_RWA")
+                        .map(RegulatoryMetric::getValue)
+                        .orElseGet(() -> metricComponentRepository.getTotalRWA(snapshotId)));
 
         if (totalRWA == null || totalRWA.compareTo(BigDecimal.ZERO) == 0) {
             throw new IllegalStateException("RWA must be calculated before CAR");
         }
 
-        // Get capital components from snapshot
-        Map<String, BigDecimal> capitalComponents = getCapitalComponents(snapshotDate);
+        // Capital components, shared with copyCapitalData through the reference cache
+        Map<String, BigDecimal> capitalComponents = referenceDataService.getCapitalTotals(snapshotId, snapshotDate);
 
         BigDecimal cet1Capital = capitalComponents.get("CET1");
         BigDecimal tier1Capital = capitalComponents.get("TIER1");
         BigDecimal totalCapital = capitalComponents.get("TOTAL");
+        phase.end(capitalComponents.size());
 
         // Calculate ratios
+        phase = CalculationPhaseEvent.begin("CAR", CalculationPhase.COMPUTE, snapshotId);
         BigDecimal cet1Ratio = calculateRatio(cet1Capital, totalRWA);
         BigDecimal tier1Ratio = calculateRatio(tier1Capital, totalRWA);
         BigDecimal totalCARRatio = calculateRatio(totalCapital, totalRWA);
+        phase.end(3);
 
         // Save metrics
+        phase = CalculationPhaseEvent.begin("CAR", CalculationPhase.PERSIST, snapshotId);
         saveMetric(snapshotId, "CET1_CAPITAL", cet1Capital, "CURRENCY");
         saveMetric(snapshotId, "TIER1_CAPITAL", tier1Capital, "CURRENCY");
         saveMetric(snapshotId, "TOTAL_CAPITAL", totalCapital, "CURRENCY");
@@ -101,17 +117,18 @@ public class CARCalculationService {
         saveMetric(snapshotId, "CAR_SURPLUS", carSurplus, "PERCENTAGE");
 
         // Check compliance
-        boolean isCompliant = cet1Ratio.compareTo(minCET1Ratio) >= 0 &&
-                tier1Ratio.compareTo(minTier1Ratio) >= 0 &&
-                totalCARRatio.compareTo(minCAR) >= 0;
+        boolean isCompliant = isCompliant(cet1Ratio, tier1Ratio, totalCARRatio);
 
         saveMetric(snapshotId, "CAR_COMPLIANT",
                 isCompliant ? BigDecimal.ONE : BigDecimal.ZERO, "BOOLEAN");
+        phase.end(10);
 
         // Audit
-        long executionTime = System.currentTimeMillis() - startTime;
+        long executionTime = timer.finish();
+        phase = CalculationPhaseEvent.begin("CAR", CalculationPhase.AUDIT, snapshotId);
         auditCalculation(snapshotId, "CAR_CALCULATION", capitalComponents,
                 totalRWA, totalCARRatio, isCompliant, executionTime);
+        phase.end(1);
 
         log.info("Completed CAR calculation for snapshot {}: CAR = {}%, Compliant = {}",
                 snapshotId, totalCARRatio, isCompliant);
@@ -126,35 +143,18 @@ public class CARCalculationService {
     }
 
     /**
-     * Get capital components from the capital snapshot
+     * Whether the ratios meet the Lesotho CBL minimums
      */
-    private Map<String, BigDecimal> getCapitalComponents(LocalDate snapshotDate) {
-        String sql = """
-            SELECT 
-                SUM(CASE WHEN component_type = 'CET1' THEN amount ELSE 0 END) as cet1,
-                SUM(CASE WHEN component_type = 'AT1' THEN amount ELSE 0 END) as at1,
-                SUM(CASE WHEN component_type = 'T2' THEN amount ELSE 0 END) as t2
-            FROM cbs.capital_components
-            WHERE as_of_date = ?
-            """;
-
-        return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
-            BigDecimal cet1 = rs.getBigDecimal("cet1");
-            BigDecimal at1 = rs.getBigDecimal("at1");
-            BigDecimal t2 = rs.getBigDecimal("t2");
-
-            Map<String, BigDecimal> components = new HashMap<>();
-            components.put("CET1", cet1 != null ? cet1 : BigDecimal.ZERO);
-            components.put("AT1", at1 != null ? at1 : BigDecimal.ZERO);
-            components.put("TIER1", components.get("CET1").add(components.get("AT1")));
-            components.put("TIER2", t2 != null ? t2 : BigDecimal.ZERO);
-            components.put("TOTAL", components.get("TIER1").add(components.get("TIER2")));
-
-            return components;
-        }, snapshotDate);
+    public boolean isCompliant(BigDecimal cet1Ratio, BigDecimal tier1Ratio, BigDecimal totalCARRatio) {
+        return cet1Ratio.compareTo(minCET1Ratio) >= 0 &&
+                tier1Ratio.compareTo(minTier1Ratio) >= 0 &&
+                totalCARRatio.compareTo(minCAR) >= 0;
     }
 
-    private BigDecimal calculateRatio(BigDecimal capital, BigDecimal rwa) {
+    /**
+     * Capital as a percentage of RWA, to two decimals
+     */
+    public BigDecimal calculateRatio(BigDecimal capital, BigDecimal rwa) {
         if (rwa.compareTo(BigDecimal.ZERO) == 0) {
             return BigDecimal.ZERO;
         }
@@ -1,26 +1,38 @@
 package com.wisetech.rras.calculationengine.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wisetech.rras.calculationengine.context.CalculationContextRegistry;
+import com.wisetech.rras.calculationengine.context.ContextKey;
 import com.wisetech.rras.calculationengine.domain.CalculationAudit;
 import com.wisetech.rras.calculationengine.domain.LoanExposureSnapshot;
-import com.wisetech.rras.calculationengine.domain.MetricComponentId;
 import com.wisetech.rras.calculationengine.domain.RegulatoryMetric;
 import com.wisetech.rras.calculationengine.enums.AssetClassification;
+import com.wisetech.rras.calculationengine.enums.PartitionedCalculation;
+import com.wisetech.rras.calculationengine.jfr.CalculationPhase;
+import com.wisetech.rras.calculationengine.jfr.CalculationPhaseEvent;
+import com.wisetech.rras.calculationengine.metrics.CalculationMetrics;
+import com.wisetech.rras.calculationengine.metrics.CalculationTimer;
+import com.wisetech.rras.calculationengine.partition.PartitionManager;
 import com.wisetech.rras.calculationengine.repository.CalculationAuditRepository;
 import com.wisetech.rras.calculationengine.repository.LoanExposureSnapshotRepository;
-import com.wisetech.rras.calculationengine.repository.MetricComponentRepository;
 import com.wisetech.rras.calculationengine.repository.RegulatoryMetricRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
 
 /**
  * Expected Credit Loss (ECL) Calculation Service
@@ -43,11 +55,24 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class ECLCalculationService {
 
+    private static final String UPDATE_COMPONENT_SQL = """
+            UPDATE metrics.metric_components
+            SET ecl_amount = ?, ecl_stage = ?, provision_amount = ?
+            WHERE snapshot_id = ? AND loan_id = ?
+            """;
+
     private final LoanExposureSnapshotRepository loanRepository;
-    private final MetricComponentRepository metricComponentRepository;
     private final RegulatoryMetricRepository regulatoryMetricRepository;
     private final CalculationAuditRepository auditRepository;
     private final ObjectMapper objectMapper;
+    private final CalculationContextRegistry contextRegistry;
+    private final CalculationMetrics calculationMetrics;
+    private final JdbcTemplate jdbcTemplate;
+    private final PartitionManager partitionManager;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${calculation.write-batch-size:1000}")
+    private int writeBatchSize;
 
     @Value("${ecl.stage1.general-provision:1.0}")
     private BigDecimal stage1MinProvision;
@@ -58,13 +83,59 @@ public class ECLCalculationService {
     @Value("${ecl.stage3.loss-provision:100.0}")
     private BigDecimal stage3MinProvision;
 
-    @Transactional
     public BigDecimal calculateECL(int snapshotId) {
-        long startTime = System.currentTimeMillis();
+        return calculateECL(snapshotId, () -> true).orElseThrow();
+    }
+
+    /**
+     * Calculate ECL, writing the totals only if beforeSave, run first in the
+     * transaction that writes them, returns true. As for RWA, partition replies
+     * are awaited outside any transaction.
+     *
+     * @return the total ECL, empty when beforeSave returned false
+     */
+    public Optional<BigDecimal> calculateECL(int snapshotId, BooleanSupplier beforeSave) {
+        CalculationTimer timer = calculationMetrics.start("ECL");
         log.info("Starting ECL calculation for snapshot {}", snapshotId);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        if (partitionManager.isEnabled()) {
+            Map<String, BigDecimal> totals = partitionManager.run(PartitionedCalculation.ECL, snapshotId);
+            return Optional.ofNullable(transaction.execute(status ->
+                    beforeSave.getAsBoolean() ? saveTotals(snapshotId, totals, timer) : null));
+        }
+
+        return Optional.ofNullable(transaction.execute(status -> {
+            if (!beforeSave.getAsBoolean()) {
+                return null;
+            }
+            CalculationPhaseEvent phase = CalculationPhaseEvent.begin("ECL", CalculationPhase.LOAD, snapshotId);
+            List<LoanExposureSnapshot> loans = loanRepository.findBySnapshotId(snapshotId);
+            phase.end(loans.size());
 
-        List<LoanExposureSnapshot> loans = loanRepository.findBySnapshotId(snapshotId);
+            return saveTotals(snapshotId, calculateAndSaveECL(snapshotId, loans), timer);
+        }));
+    }
+
+    /**
+     * ECL of the loans from fromLoanId to toLoanId, for a partition worker. Updating
+     * the components again is harmless, so a partition can be retried.
+     */
+    @Transactional
+    public Map<String, BigDecimal> calculateECLPartition(int snapshotId, long fromLoanId, long toLoanId) {
+        CalculationPhaseEvent phase = CalculationPhaseEvent.begin("ECL", CalculationPhase.LOAD, snapshotId);
+        List<LoanExposureSnapshot> loans = loanRepository.findBySnapshotIdAndLoanIdBetween(snapshotId, fromLoanId, toLoanId);
+        phase.end(loans.size());
 
+        return calculateAndSaveECL(snapshotId, loans);
+    }
+
+    /**
+     * Stage and ECL per loan, written to the components one write batch at a time so
+     * no more than a batch is held, and their totals by metric code. Each batch
+     * records its own compute and persist phase.
+     */
+    private Map<String, BigDecimal> calculateAndSaveECL(int snapshotId, List<LoanExposureSnapshot> loans) {
         BigDecimal totalECL = BigDecimal.ZERO;
         BigDecimal stage1ECL = BigDecimal.ZERO;
         BigDecimal stage2ECL = BigDecimal.ZERO;
@@ -74,57 +145,91 @@ public class ECLCalculationService {
         int stage2Count = 0;
         int stage3Count = 0;
 
-        for (LoanExposureSnapshot loan : loans) {
-            // Determine IFRS 9 stage
-            Integer stage = determineStage(loan);
-
-            // Calculate ECL
-            BigDecimal eclAmount = calculateLoanECL(loan, stage);
-            totalECL = totalECL.add(eclAmount);
-
-            // Update metric component with ECL
-            updateMetricComponentWithECL(snapshotId, loan.getLoanId(), eclAmount, stage);
-
-            // Aggregate by stage
-            switch (stage) {
-                case 1:
-                    stage1ECL = stage1ECL.add(eclAmount);
-                    stage1Count++;
-                    break;
-                case 2:
-                    stage2ECL = stage2ECL.add(eclAmount);
-                    stage2Count++;
-                    break;
-                case 3:
-                    stage3ECL = stage3ECL.add(eclAmount);
-                    stage3Count++;
-                    break;
+        for (int from = 0; from < loans.size(); from += writeBatchSize) {
+            List<LoanExposureSnapshot> batch = loans.subList(from, Math.min(from + writeBatchSize, loans.size()));
+
+            CalculationPhaseEvent phase = CalculationPhaseEvent.begin("ECL", CalculationPhase.COMPUTE, snapshotId);
+            List<LoanECL> loanECLs = new ArrayList<>(batch.size());
+            for (LoanExposureSnapshot loan : batch) {
+                // Determine IFRS 9 stage
+                Integer stage = determineStage(loan);
+
+                // Calculate ECL
+                BigDecimal eclAmount = calculateLoanECL(loan, stage);
+                totalECL = totalECL.add(eclAmount);
+                loanECLs.add(new LoanECL(loan.getLoanId(), eclAmount, stage));
+
+                // Aggregate by stage
+                switch (stage) {
+                    case 1:
+                        stage1ECL = stage1ECL.add(eclAmount);
+                        stage1Count++;
+                        break;
+                    case 2:
+                        stage2ECL = stage2ECL.add(eclAmount);
+                        stage2Count++;
+                        break;
+                    case 3:
+                        stage3ECL = stage3ECL.add(eclAmount);
+                        stage3Count++;
+                        break;
+                }
             }
+            phase.end(batch.size());
+
+            // Update metric components with ECL
+            phase = CalculationPhaseEvent.begin("ECL", CalculationPhase.PERSIST, snapshotId);
+            updateMetricComponentsWithECL(snapshotId, loanECLs);
+            phase.end(loanECLs.size());
         }
 
+        Map<String, BigDecimal> totals = new HashMap<>();
+        totals.put("TOTAL_ECL", totalECL);
+        totals.put("STAGE1_ECL", stage1ECL);
+        totals.put("STAGE2_ECL", stage2ECL);
+        totals.put("STAGE3_ECL", stage3ECL);
+        totals.put("STAGE1_COUNT", BigDecimal.valueOf(stage1Count));
+        totals.put("STAGE2_COUNT", BigDecimal.valueOf(stage2Count));
+        totals.put("STAGE3_COUNT", BigDecimal.valueOf(stage3Count));
+        totals.put("LOAN_COUNT", BigDecimal.valueOf(loans.size()));
+        return totals;
+    }
+
+    /**
+     * Stage metrics, coverage ratio and audit trail, the same whether or not the loans were partitioned
+     */
+    private BigDecimal saveTotals(int snapshotId, Map<String, BigDecimal> totals, CalculationTimer timer) {
+        BigDecimal totalECL = totals.getOrDefault("TOTAL_ECL", BigDecimal.ZERO);
+        int loanCount = totals.getOrDefault("LOAN_COUNT", BigDecimal.ZERO).intValue();
+
         // Save metrics
-        saveMetric(snapshotId, "TOTAL_ECL", totalECL, "CURRENCY");
-        saveMetric(snapshotId, "STAGE1_ECL", stage1ECL, "CURRENCY");
-        saveMetric(snapshotId, "STAGE2_ECL", stage2ECL, "CURRENCY");
-        saveMetric(snapshotId, "STAGE3_ECL", stage3ECL, "CURRENCY");
+        CalculationPhaseEvent phase = CalculationPhaseEvent.begin("ECL", CalculationPhase.PERSIST, snapshotId);
+        for (String metricCode : List.of("TOTAL_ECL", "STAGE1_ECL", "STAGE2_ECL", "STAGE3_ECL")) {
+            saveMetric(snapshotId, metricCode, totals.getOrDefault(metricCode, BigDecimal.ZERO), "CURRENCY");
+        }
+        for (String metricCode : List.of("STAGE1_COUNT", "STAGE2_COUNT", "STAGE3_COUNT")) {
+            saveMetric(snapshotId, metricCode, totals.getOrDefault(metricCode, BigDecimal.ZERO), "COUNT");
+        }
 
-        saveMetric(snapshotId, "STAGE1_COUNT", BigDecimal.valueOf(stage1Count), "COUNT");
-        saveMetric(snapshotId, "STAGE2_COUNT", BigDecimal.valueOf(stage2Count), "COUNT");
-        saveMetric(snapshotId, "STAGE3_COUNT", BigDecimal.valueOf(stage3Count), "COUNT");
+        contextRegistry.put(snapshotId, ContextKey.TOTAL_ECL, totalECL);
 
-        // Calculate NPL coverage ratio
-        BigDecimal nplAmount = regulatoryMetricRepository
-                .findBySnapshotIdAndMetricCode(snapshotId, "NPL_AMOUNT")
-                .map(RegulatoryMetric::getValue)
-                .orElse(BigDecimal.ZERO);
+        // Calculate NPL coverage ratio; NPL_AMOUNT comes from the NPL step
+        BigDecimal nplAmount = contextRegistry.get(snapshotId, ContextKey.NPL_AMOUNT, () ->
+                regulatoryMetricRepository
+                        .findFirstBySnapshotIdAndMetricCodeOrderByMetricIdDesc(snapshotId, "NPL_AMOUNT")
+                        .map(RegulatoryMetric::getValue)
+                        .orElse(BigDecimal.ZERO));
 
         BigDecimal coverageRatio = calculateCoverageRatio(totalECL, nplAmount);
         saveMetric(snapshotId, "NPL_COVERAGE_RATIO", coverageRatio, "PERCENTAGE");
+        phase.end(8);
 
         // Audit
-        long executionTime = System.currentTimeMillis() - startTime;
-        auditCalculation(snapshotId, "ECL_CALCULATION", loans.size(),
+        long executionTime = timer.finish(loanCount);
+        phase = CalculationPhaseEvent.begin("ECL", CalculationPhase.AUDIT, snapshotId);
+        auditCalculation(snapshotId, "ECL_CALCULATION", loanCount,
                 totalECL, coverageRatio, executionTime);
+        phase.end(1);
 
         log.info("Completed ECL calculation for snapshot {}: Total ECL = {}, Coverage = {}%",
                 snapshotId, totalECL, coverageRatio);
@@ -134,8 +239,9 @@ public class ECLCalculationService {
 
     /**
      * Determine IFRS 9 staging based on loan performance
+     * Also applied per loan change by the intraday position book
      */
-    private Integer determineStage(LoanExposureSnapshot loan) {
+    public Integer determineStage(LoanExposureSnapshot loan) {
         // Stage 3: Credit-impaired (90+ DPD or NPL classification)
         if (loan.getDaysPastDue() != null && loan.getDaysPastDue() >= 90) {
             return 3;
@@ -163,15 +269,14 @@ public class ECLCalculationService {
     /**
      * Calculate ECL for individual loan
      */
-    private BigDecimal calculateLoanECL(LoanExposureSnapshot loan, Integer stage) {
-        BigDecimal exposureAmount = loan.getOutstandingBalance();
-
-        // Get PD and LGD
-        BigDecimal pd = loan.getPdValue() != null ?
-                loan.getPdValue() : getDefaultPD(stage);
-        BigDecimal lgd = loan.getLgdValue() != null ?
-                loan.getLgdValue() : getDefaultLGD(loan);
+    public BigDecimal calculateLoanECL(LoanExposureSnapshot loan, Integer stage) {
+        return calculateLoanECL(loan.getOutstandingBalance(), effectivePD(loan, stage), effectiveLGD(loan), stage);
+    }
 
+    /**
+     * ECL from its parameters, as stress scenarios shock them
+     */
+    public BigDecimal calculateLoanECL(BigDecimal exposureAmount, BigDecimal pd, BigDecimal lgd, Integer stage) {
         // ECL = EAD × PD × LGD
         BigDecimal modelECL = exposureAmount
                 .multiply(pd)
@@ -184,6 +289,20 @@ public class ECLCalculationService {
         return modelECL.max(minProvision);
     }
 
+    /**
+     * The loan's PD, or the default PD of its stage
+     */
+    public BigDecimal effectivePD(LoanExposureSnapshot loan, Integer stage) {
+        return loan.getPdValue() != null ? loan.getPdValue() : getDefaultPD(stage);
+    }
+
+    /**
+     * The loan's LGD, or one derived from its collateral
+     */
+    public BigDecimal effectiveLGD(LoanExposureSnapshot loan) {
+        return loan.getLgdValue() != null ? loan.getLgdValue() : getDefaultLGD(loan);
+    }
+
     /**
      * Get default PD based on stage
      */
@@ -229,14 +348,16 @@ public class ECLCalculationService {
         return exposure.multiply(rate).divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
     }
 
-    private void updateMetricComponentWithECL(int snapshotId, Long loanId,
-                                              BigDecimal eclAmount, Integer stage) {
-        MetricComponentId id = new MetricComponentId(snapshotId, loanId);
-        metricComponentRepository.findById(id).ifPresent(component -> {
-            component.setEclAmount(eclAmount);
-            component.setEclStage(stage);
-            component.setProvisionAmount(eclAmount);
-            metricComponentRepository.save(component);
+    /**
+     * Updates the RWA step's components as one JDBC batch; loans without a component are skipped
+     */
+    private void updateMetricComponentsWithECL(int snapshotId, List<LoanECL> loanECLs) {
+        jdbcTemplate.batchUpdate(UPDATE_COMPONENT_SQL, loanECLs, loanECLs.size(), (ps, loanECL) -> {
+            ps.setBigDecimal(1, loanECL.eclAmount());
+            ps.setInt(2, loanECL.stage());
+            ps.setBigDecimal(3, loanECL.eclAmount());
+            ps.setInt(4, snapshotId);
+            ps.setLong(5, loanECL.loanId());
         });
     }
 
@@ -284,4 +405,7 @@ public class ECLCalculationService {
             log.error("Error creating audit record", e);
         }
     }
-}
\ No newline at end of file
+
+    private record LoanECL(Long loanId, BigDecimal eclAmount, int stage) {
+    }
+}
@@ -3,6 +3,13 @@ package com.wisetech.rras.calculationengine.service;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wisetech.rras.calculationengine.domain.CalculationAudit;
 import com.wisetech.rras.calculationengine.domain.RegulatoryMetric;
+import com.wisetech.rras.calculationengine.enums.ReferenceDataType;
+import com.wisetech.rras.calculationengine.jfr.CalculationPhase;
+import com.wisetech.rras.calculationengine.jfr.CalculationPhaseEvent;
+import com.wisetech.rras.calculationengine.liquidity.LiquidityLadder;
+import com.wisetech.rras.calculationengine.metrics.CalculationMetrics;
+import com.wisetech.rras.calculationengine.metrics.CalculationTimer;
+import com.wisetech.rras.calculationengine.reference.ReferenceDataCache;
 import com.wisetech.rras.calculationengine.repository.CalculationAuditRepository;
 import com.wisetech.rras.calculationengine.repository.RegulatoryMetricRepository;
 import lombok.RequiredArgsConstructor;
@@ -13,7 +20,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.Map;
@@ -30,52 +36,96 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class LCRCalculationService {
 
+    /**
+     * Cash flows grouped by type, counterparty and ladder bucket, plus post-haircut
+     * HQLA by level, in one statement. Cash flows are weighted by their run-off
+     * (outflows, default 100%) or inflow rate (inflows, default 50%).
+     */
+    private static final String LADDER_SQL = """
+            SELECT 'CASH_FLOW' AS record_type,
+                   flow_type,
+                   counterparty_type,
+                   CASE
+                       WHEN expected_date <= CAST(? AS date) + 30 THEN 30
+                       WHEN expected_date <= CAST(? AS date) + 60 THEN 60
+                       ELSE 90
+                   END AS bucket_days,
+                   NULL AS hqla_level,
+                   SUM(contractual_amount * CASE
+                           WHEN flow_type = 'OUTFLOW' THEN COALESCE(run_off_rate, 1.0)
+                           ELSE COALESCE(inflow_rate, 0.5)
+                       END) AS weighted_amount
+            FROM cbs.cash_flows
+            WHERE as_of_date = ?
+            AND expected_date BETWEEN ? AND CAST(? AS date) + 90
+            GROUP BY flow_type, counterparty_type, bucket_days
+
+            UNION ALL
+
+            SELECT 'HQLA', NULL, NULL, NULL,
+                   CAST(hqla_level AS VARCHAR),
+                   SUM(market_value * (1 - COALESCE(haircut_percentage, 0)))
+            FROM cbs.liquidity_assets
+            WHERE as_of_date = ? AND is_unencumbered = true
+            GROUP BY hqla_level
+            """;
+
     private final RegulatoryMetricRepository regulatoryMetricRepository;
     private final CalculationAuditRepository auditRepository;
     private final JdbcTemplate jdbcTemplate;
     private final ObjectMapper objectMapper;
+    private final ReferenceDataCache referenceDataCache;
+    private final CalculationMetrics calculationMetrics;
 
     @Value("${regulatory.lesotho.min-lcr:100.0}")
     private BigDecimal minLCR;
 
     @Transactional
     public Map<String, BigDecimal> calculateLCR(int snapshotId, LocalDate snapshotDate) {
-        long startTime = System.currentTimeMillis();
+        CalculationTimer timer = calculationMetrics.start("LCR");
         log.info("Starting LCR calculation for snapshot {}", snapshotId);
 
-        // Calculate HQLA (High Quality Liquid Assets)
-        BigDecimal totalHQLA = calculateHQLA(snapshotDate);
+        CalculationPhaseEvent phase = CalculationPhaseEvent.begin("LCR", CalculationPhase.LOAD, snapshotId);
+        LiquidityLadder ladder = getLadder(snapshotDate);
+        phase.end(1);
 
-        // Calculate Net Cash Outflows
-        Map<String, BigDecimal> cashFlows = calculateNetCashOutflows(snapshotDate);
-        BigDecimal totalOutflows = cashFlows.get("TOTAL_OUTFLOWS");
-        BigDecimal totalInflows = cashFlows.get("TOTAL_INFLOWS");
-        BigDecimal netCashOutflows = totalOutflows.subtract(totalInflows);
+        phase = CalculationPhaseEvent.begin("LCR", CalculationPhase.COMPUTE, snapshotId);
 
-        // Cap inflows at 75% of outflows (Basel III rule)
-        BigDecimal cappedInflows = totalOutflows.multiply(BigDecimal.valueOf(0.75));
-        if (totalInflows.compareTo(cappedInflows) > 0) {
-            netCashOutflows = totalOutflows.subtract(cappedInflows);
-        }
+        BigDecimal totalHQLA = ladder.getHqla();
+        BigDecimal totalOutflows = ladder.getOutflows(30);
+        BigDecimal totalInflows = ladder.getInflows(30);
 
-        // Calculate LCR
-        BigDecimal lcr = calculateRatio(totalHQLA, netCashOutflows);
+        // Inflows are capped at 75% of outflows (Basel III rule)
+        BigDecimal netCashOutflows = ladder.getNetCashOutflows(30);
+        BigDecimal lcr = ladder.getLcr();
+        phase.end(1);
 
         // Save metrics
+        phase = CalculationPhaseEvent.begin("LCR", CalculationPhase.PERSIST, snapshotId);
         saveMetric(snapshotId, "HQLA_TOTAL", totalHQLA, "CURRENCY");
+        saveMetric(snapshotId, "HQLA_LEVEL1", ladder.getLevel1(), "CURRENCY");
+        saveMetric(snapshotId, "HQLA_LEVEL2A", ladder.getLevel2A(), "CURRENCY");
+        saveMetric(snapshotId, "HQLA_LEVEL2B", ladder.getLevel2B(), "CURRENCY");
         saveMetric(snapshotId, "CASH_OUTFLOWS", totalOutflows, "CURRENCY");
         saveMetric(snapshotId, "CASH_INFLOWS", totalInflows, "CURRENCY");
         saveMetric(snapshotId, "NET_CASH_OUTFLOWS", netCashOutflows, "CURRENCY");
         saveMetric(snapshotId, "LCR", lcr, "PERCENTAGE");
 
+        // Cumulative liquidity gap per ladder bucket
+        ladder.getGapProfile().forEach((days, gap) ->
+                saveMetric(snapshotId, "LIQUIDITY_GAP_" + days + "D", gap, "CURRENCY"));
+
         boolean isCompliant = lcr.compareTo(minLCR) >= 0;
         saveMetric(snapshotId, "LCR_COMPLIANT",
                 isCompliant ? BigDecimal.ONE : BigDecimal.ZERO, "BOOLEAN");
+        phase.end(9 + ladder.getGapProfile().size());
 
         // Audit
-        long executionTime = System.currentTimeMillis() - startTime;
-        auditCalculation(snapshotId, "LCR_CALCULATION", totalHQLA,
+        long executionTime = timer.finish();
+        phase = CalculationPhaseEvent.begin("LCR", CalculationPhase.AUDIT, snapshotId);
+        auditCalculation(snapshotId, "LCR_CALCULATION", ladder,
                 netCashOutflows, lcr, isCompliant, executionTime);
+        phase.end(1);
 
         log.info("Completed LCR calculation for snapshot {}: LCR = {}%, Compliant = {}",
                 snapshotId, lcr, isCompliant);
@@ -90,62 +140,36 @@ public class LCRCalculationService {
     }
 
     /**
-     * Calculate High Quality Liquid Assets
+     * Maturity ladder for a date, built once and shared by every run of the date.
+     * A cash flow or HQLA correction reaches later runs once the date is evicted.
      */
-    private BigDecimal calculateHQLA(LocalDate snapshotDate) {
-        String sql = """
-            SELECT SUM(hqla_level) as total_hqla
-            FROM cbs.liquidity_assets
-            WHERE as_of_date = ? AND is_unencumbered = true
-            """;
-
-        BigDecimal hqla = jdbcTemplate.queryForObject(sql, BigDecimal.class, snapshotDate);
-        return hqla != null ? hqla : BigDecimal.ZERO;
+    public LiquidityLadder getLadder(LocalDate asOfDate) {
+        return referenceDataCache.getShared(ReferenceDataType.LIQUIDITY_LADDER, asOfDate,
+                () -> loadLadder(asOfDate));
     }
 
     /**
-     * Calculate Net Cash Outflows over 30-day stressed period
+     * One grouped pass over cash flows and liquidity assets
      */
-    private Map<String, BigDecimal> calculateNetCashOutflows(LocalDate snapshotDate) {
-        LocalDate endDate = snapshotDate.plusDays(30);
-
-        // Calculate outflows with run-off rates
-        String outflowSql = """
-            SELECT SUM(contractual_amount * COALESCE(run_off_rate, 1.0)) as total_outflows
-            FROM cbs.cash_flows
-            WHERE as_of_date = ? 
-            AND flow_type = 'OUTFLOW'
-            AND expected_date BETWEEN ? AND ?
-            """;
-
-        BigDecimal outflows = jdbcTemplate.queryForObject(outflowSql, BigDecimal.class,
-                snapshotDate, snapshotDate, endDate);
-
-        // Calculate inflows with inflow rates
-        String inflowSql = """
-            SELECT SUM(contractual_amount * COALESCE(inflow_rate, 0.5)) as total_inflows
-            FROM cbs.cash_flows
-            WHERE as_of_date = ? 
-            AND flow_type = 'INFLOW'
-            AND expected_date BETWEEN ? AND ?
-            """;
-
-        BigDecimal inflows = jdbcTemplate.queryForObject(inflowSql, BigDecimal.class,
-                snapshotDate, snapshotDate, endDate);
-
-        Map<String, BigDecimal> result = new HashMap<>();
-        result.put("TOTAL_OUTFLOWS", outflows != null ? outflows : BigDecimal.ZERO);
-        result.put("TOTAL_INFLOWS", inflows != null ? inflows : BigDecimal.ZERO);
-
-        return result;
-    }
-
-    private BigDecimal calculateRatio(BigDecimal numerator, BigDecimal denominator) {
-        if (denominator.compareTo(BigDecimal.ZERO) == 0) {
-            return BigDecimal.ZERO;
-        }
-        return numerator.multiply(BigDecimal.valueOf(100))
-                .divide(denominator, 2, RoundingMode.HALF_UP);
+    private LiquidityLadder loadLadder(LocalDate asOfDate) {
+        LiquidityLadder ladder = new LiquidityLadder(asOfDate);
+
+        jdbcTemplate.query(LADDER_SQL, rs -> {
+            BigDecimal amount = rs.getBigDecimal("weighted_amount");
+            if (amount == null) {
+                return;
+            }
+            if ("HQLA".equals(rs.getString("record_type"))) {
+                ladder.addHqla(rs.getString("hqla_level"), amount);
+            } else {
+                ladder.addCashFlow(rs.getString("flow_type"), rs.getString("counterparty_type"),
+                        rs.getInt("bucket_days"), amount);
+            }
+        }, asOfDate, asOfDate, asOfDate, asOfDate, asOfDate, asOfDate);
+
+        log.info("Loaded liquidity ladder for {}: HQLA = {}, 30 day net outflows = {}",
+                asOfDate, ladder.getHqla(), ladder.getNetCashOutflows(30));
+        return ladder;
     }
 
     private void saveMetric(int snapshotId, String metricCode, BigDecimal value, String unit) {
@@ -159,13 +183,16 @@ public class LCRCalculationService {
         regulatoryMetricRepository.save(metric);
     }
 
-    private void auditCalculation(int snapshotId, String step, BigDecimal hqla,
+    private void auditCalculation(int snapshotId, String step, LiquidityLadder ladder,
                                   BigDecimal netOutflows, BigDecimal lcr,
                                   boolean compliant, long executionTime) {
         try {
             Map<String, Object> inputData = new HashMap<>();
-            inputData.put("hqla", hqla);
+            inputData.put("hqla", ladder.getHqla());
             inputData.put("net_outflows", netOutflows);
+            inputData.put("outflows_by_counterparty", ladder.getOutflowsByCounterparty(30));
+            inputData.put("inflows_by_counterparty", ladder.getInflowsByCounterparty(30));
+            inputData.put("gap_profile", ladder.getGapProfile());
 
             Map<String, Object> outputData = new HashMap<>();
             outputData.put("lcr", lcr);
@@ -177,7 +204,7 @@ public class LCRCalculationService {
                     .calculationStep(step)
                     .inputData(objectMapper.writeValueAsString(inputData))
                     .outputData(objectMapper.writeValueAsString(outputData))
-                    .calculationRule("Basel III LCR with 30-day stress scenario")
+                    .calculationRule("Basel III LCR with 30-day stress scenario, HQLA after haircuts and Level 2 caps")
                     .executionTimeMs((int) executionTime)
                     .build();
 
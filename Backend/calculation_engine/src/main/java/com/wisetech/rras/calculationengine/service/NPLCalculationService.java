@@ -1,13 +1,20 @@
 package com.wisetech.rras.calculationengine.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wisetech.rras.calculationengine.context.CalculationContextRegistry;
+import com.wisetech.rras.calculationengine.context.ContextKey;
 import com.wisetech.rras.calculationengine.domain.CalculationAudit;
 import com.wisetech.rras.calculationengine.domain.LoanExposureSnapshot;
 import com.wisetech.rras.calculationengine.domain.RegulatoryMetric;
 import com.wisetech.rras.calculationengine.enums.AssetClassification;
+import com.wisetech.rras.calculationengine.jfr.CalculationPhase;
+import com.wisetech.rras.calculationengine.jfr.CalculationPhaseEvent;
+import com.wisetech.rras.calculationengine.metrics.CalculationMetrics;
+import com.wisetech.rras.calculationengine.metrics.CalculationTimer;
 import com.wisetech.rras.calculationengine.repository.CalculationAuditRepository;
 import com.wisetech.rras.calculationengine.repository.LoanExposureSnapshotRepository;
 import com.wisetech.rras.calculationengine.repository.RegulatoryMetricRepository;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -40,60 +47,47 @@ public class NPLCalculationService {
     private final RegulatoryMetricRepository regulatoryMetricRepository;
     private final CalculationAuditRepository auditRepository;
     private final ObjectMapper objectMapper;
+    private final CalculationContextRegistry contextRegistry;
+    private final CalculationMetrics calculationMetrics;
 
     @Transactional
     public Map<String, BigDecimal> calculateNPL(int snapshotId) {
-        long startTime = System.currentTimeMillis();
+        CalculationTimer timer = calculationMetrics.start("NPL");
         log.info("Starting NPL calculation for snapshot {}", snapshotId);
 
+        CalculationPhaseEvent phase = CalculationPhaseEvent.begin("NPL", CalculationPhase.LOAD, snapshotId);
         List<LoanExposureSnapshot> allLoans = loanRepository.findBySnapshotId(snapshotId);
+        phase.end(allLoans.size());
 
-        BigDecimal totalLoans = BigDecimal.ZERO;
-        BigDecimal nplLoans = BigDecimal.ZERO;
-        BigDecimal substandardLoans = BigDecimal.ZERO;
-        BigDecimal doubtfulLoans = BigDecimal.ZERO;
-        BigDecimal lossLoans = BigDecimal.ZERO;
+        phase = CalculationPhaseEvent.begin("NPL", CalculationPhase.COMPUTE, snapshotId);
+        NplTotals totals = classify(allLoans);
 
-        int totalCount = 0;
-        int nplCount = 0;
+        BigDecimal totalLoans = totals.getTotalLoans();
+        BigDecimal nplLoans = totals.getNplLoans();
+        BigDecimal substandardLoans = totals.getSubstandardLoans();
+        BigDecimal doubtfulLoans = totals.getDoubtfulLoans();
+        BigDecimal lossLoans = totals.getLossLoans();
 
-        for (LoanExposureSnapshot loan : allLoans) {
-            BigDecimal balance = loan.getOutstandingBalance();
-            totalLoans = totalLoans.add(balance);
-            totalCount++;
-
-            AssetClassification classification = loan.getAssetClass();
-
-            if (loan.getDaysPastDue() >= 90) {
-                nplLoans = nplLoans.add(balance);
-                nplCount++;
-
-                switch (classification) {
-                    case SUBSTANDARD:
-                        substandardLoans = substandardLoans.add(balance);
-                        break;
-                    case DOUBTFUL:
-                        doubtfulLoans = doubtfulLoans.add(balance);
-                        break;
-                    case LOSS:
-                        lossLoans = lossLoans.add(balance);
-                        break;
-                }
-            }
-        }
+        int totalCount = totals.getTotalCount();
+        int nplCount = totals.getNplCount();
 
         // Calculate ratios
         BigDecimal nplRatio = calculatePercentage(nplLoans, totalLoans);
         BigDecimal substandardRatio = calculatePercentage(substandardLoans, totalLoans);
         BigDecimal doubtfulRatio = calculatePercentage(doubtfulLoans, totalLoans);
         BigDecimal lossRatio = calculatePercentage(lossLoans, totalLoans);
+        phase.end(totalCount);
 
         // Save metrics
+        phase = CalculationPhaseEvent.begin("NPL", CalculationPhase.PERSIST, snapshotId);
         saveMetric(snapshotId, "TOTAL_LOANS", totalLoans, "CURRENCY");
         saveMetric(snapshotId, "NPL_AMOUNT", nplLoans, "CURRENCY");
         saveMetric(snapshotId, "NPL_RATIO", nplRatio, "PERCENTAGE");
         saveMetric(snapshotId, "NPL_COUNT", BigDecimal.valueOf(nplCount), "COUNT");
 
+        contextRegistry.put(snapshotId, ContextKey.TOTAL_LOANS, totalLoans);
+        contextRegistry.put(snapshotId, ContextKey.NPL_AMOUNT, nplLoans);
+
         saveMetric(snapshotId, "SUBSTANDARD_AMOUNT", substandardLoans, "CURRENCY");
         saveMetric(snapshotId, "SUBSTANDARD_RATIO", substandardRatio, "PERCENTAGE");
 
@@ -105,11 +99,14 @@ public class NPLCalculationService {
 
         // Coverage ratio (will be calculated after ECL)
         saveMetric(snapshotId, "LOAN_COUNT", BigDecimal.valueOf(totalCount), "COUNT");
+        phase.end(11);
 
         // Audit
-        long executionTime = System.currentTimeMillis() - startTime;
+        long executionTime = timer.finish(totalCount);
+        phase = CalculationPhaseEvent.begin("NPL", CalculationPhase.AUDIT, snapshotId);
         auditCalculation(snapshotId, "NPL_CALCULATION", totalCount, nplCount,
                 nplLoans, totalLoans, nplRatio, executionTime);
+        phase.end(1);
 
         log.info("Completed NPL calculation for snapshot {}: NPL Ratio = {}%",
                 snapshotId, nplRatio);
@@ -122,7 +119,39 @@ public class NPLCalculationService {
         return results;
     }
 
-    private BigDecimal calculatePercentage(BigDecimal numerator, BigDecimal denominator) {
+    /**
+     * Sum balances by NPL classification
+     */
+    public NplTotals classify(List<LoanExposureSnapshot> loans) {
+        NplTotals totals = new NplTotals();
+        for (LoanExposureSnapshot loan : loans) {
+            totals.add(loan);
+        }
+        return totals;
+    }
+
+    /**
+     * Whether a loan counts towards NPL_AMOUNT: 90 or more days past due
+     */
+    public static boolean isNonPerforming(int daysPastDue) {
+        return daysPastDue >= 90;
+    }
+
+    /**
+     * Lesotho CBL classification of a loan by days past due
+     */
+    public static AssetClassification classifyByDaysPastDue(int daysPastDue) {
+        if (daysPastDue <= 30) return AssetClassification.STANDARD;
+        if (daysPastDue <= 60) return AssetClassification.WATCH;
+        if (daysPastDue <= 90) return AssetClassification.SUBSTANDARD;
+        if (daysPastDue <= 180) return AssetClassification.DOUBTFUL;
+        return AssetClassification.LOSS;
+    }
+
+    /**
+     * Numerator as a percentage of denominator, to two decimals
+     */
+    public BigDecimal calculatePercentage(BigDecimal numerator, BigDecimal denominator) {
         if (denominator.compareTo(BigDecimal.ZERO) == 0) {
             return BigDecimal.ZERO;
         }
@@ -169,4 +198,42 @@ public class NPLCalculationService {
             log.error("Error creating audit record", e);
         }
     }
-}
\ No newline at end of file
+
+    @Getter
+    public static class NplTotals {
+
+        private BigDecimal totalLoans = BigDecimal.ZERO;
+        private BigDecimal nplLoans = BigDecimal.ZERO;
+        private BigDecimal substandardLoans = BigDecimal.ZERO;
+        private BigDecimal doubtfulLoans = BigDecimal.ZERO;
+        private BigDecimal lossLoans = BigDecimal.ZERO;
+
+        private int totalCount;
+        private int nplCount;
+
+        public void add(LoanExposureSnapshot loan) {
+            BigDecimal balance = loan.getOutstandingBalance();
+            totalLoans = totalLoans.add(balance);
+            totalCount++;
+
+            AssetClassification classification = loan.getAssetClass();
+
+            if (isNonPerforming(loan.getDaysPastDue())) {
+                nplLoans = nplLoans.add(balance);
+                nplCount++;
+
+                switch (classification) {
+                    case SUBSTANDARD:
+                        substandardLoans = substandardLoans.add(balance);
+                        break;
+                    case DOUBTFUL:
+                        doubtfulLoans = doubtfulLoans.add(balance);
+                        break;
+                    case LOSS:
+                        lossLoans = lossLoans.add(balance);
+                        break;
+                }
+            }
+        }
+    }
+}
@@ -2,27 +2,40 @@ package com.wisetech.rras.calculationengine.service;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wisetech.rras.calculationengine.context.CalculationContextRegistry;
+import com.wisetech.rras.calculationengine.context.ContextKey;
 import com.wisetech.rras.calculationengine.domain.CalculationAudit;
 import com.wisetech.rras.calculationengine.domain.LoanExposureSnapshot;
 import com.wisetech.rras.calculationengine.domain.MetricComponent;
 import com.wisetech.rras.calculationengine.domain.RegulatoryMetric;
 import com.wisetech.rras.calculationengine.enums.CustomerCategory;
+import com.wisetech.rras.calculationengine.enums.PartitionedCalculation;
+import com.wisetech.rras.calculationengine.jfr.CalculationPhase;
+import com.wisetech.rras.calculationengine.jfr.CalculationPhaseEvent;
+import com.wisetech.rras.calculationengine.metrics.CalculationMetrics;
+import com.wisetech.rras.calculationengine.metrics.CalculationTimer;
+import com.wisetech.rras.calculationengine.partition.PartitionManager;
 import com.wisetech.rras.calculationengine.repository.CalculationAuditRepository;
 import com.wisetech.rras.calculationengine.repository.LoanExposureSnapshotRepository;
-import com.wisetech.rras.calculationengine.repository.MetricComponentRepository;
 import com.wisetech.rras.calculationengine.repository.RegulatoryMetricRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
 
 /**
  * Risk Weighted Assets (RWA) Calculation Service
@@ -33,11 +46,29 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class RWACalculationService {
 
+    private static final String INSERT_COMPONENT_SQL = """
+            INSERT INTO metrics.metric_components (
+                snapshot_id, loan_id, exposure_amount, risk_weight, rwa_value
+            )
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (snapshot_id, loan_id) DO UPDATE
+            SET exposure_amount = EXCLUDED.exposure_amount,
+                risk_weight = EXCLUDED.risk_weight,
+                rwa_value = EXCLUDED.rwa_value
+            """;
+
     private final LoanExposureSnapshotRepository loanRepository;
-    private final MetricComponentRepository metricComponentRepository;
     private final RegulatoryMetricRepository regulatoryMetricRepository;
     private final CalculationAuditRepository auditRepository;
     private final ObjectMapper objectMapper;
+    private final CalculationContextRegistry contextRegistry;
+    private final CalculationMetrics calculationMetrics;
+    private final JdbcTemplate jdbcTemplate;
+    private final PartitionManager partitionManager;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${calculation.write-batch-size:1000}")
+    private int writeBatchSize;
 
     // Basel III Standard Risk Weights
     @Value("${basel.standard.retail-mortgage-rw:35.0}")
@@ -59,67 +90,169 @@ public class RWACalculationService {
      * Calculate RWA for all loans in a snapshot
      * This is the main entry point called by the batch job
      */
-    @Transactional
     public BigDecimal calculateRWA(int snapshotId) {
-        long startTime = System.currentTimeMillis();
+        return calculateRWA(snapshotId, () -> true).orElseThrow();
+    }
+
+    /**
+     * Calculate RWA, writing the totals only if beforeSave, run first in the
+     * transaction that writes them, returns true; the pipeline claims the
+     * calculation there. With partitioning the workers' replies are awaited
+     * outside any transaction, so only the totals are written in one.
+     *
+     * @return the total RWA, empty when beforeSave returned false
+     */
+    public Optional<BigDecimal> calculateRWA(int snapshotId, BooleanSupplier beforeSave) {
+        CalculationTimer timer = calculationMetrics.start("RWA");
         log.info("Starting RWA calculation for snapshot {}", snapshotId);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        if (partitionManager.isEnabled()) {
+            Map<String, BigDecimal> totals = partitionManager.run(PartitionedCalculation.RWA, snapshotId);
+            BigDecimal totalRWA = totals.getOrDefault("TOTAL_RWA", BigDecimal.ZERO);
+            int loanCount = totals.getOrDefault("LOAN_COUNT", BigDecimal.ZERO).intValue();
+            return Optional.ofNullable(transaction.execute(status -> {
+                if (!beforeSave.getAsBoolean()) {
+                    return null;
+                }
+                saveTotals(snapshotId, totalRWA, loanCount, timer);
+                return totalRWA;
+            }));
+        }
+
+        return Optional.ofNullable(transaction.execute(status -> {
+            if (!beforeSave.getAsBoolean()) {
+                return null;
+            }
+            CalculationPhaseEvent phase = CalculationPhaseEvent.begin("RWA", CalculationPhase.LOAD, snapshotId);
+            List<LoanExposureSnapshot> loans = loanRepository.findBySnapshotId(snapshotId);
+            phase.end(loans.size());
+
+            BigDecimal totalRWA = calculateAndSaveComponents(snapshotId, loans);
+
+            saveTotals(snapshotId, totalRWA, loans.size(), timer);
+            return totalRWA;
+        }));
+    }
 
-        List<LoanExposureSnapshot> loans = loanRepository.findBySnapshotId(snapshotId);
+    /**
+     * RWA of the loans from fromLoanId to toLoanId, for a partition worker. Components
+     * are upserted, so a retried partition overwrites what an earlier attempt wrote.
+     */
+    @Transactional
+    public Map<String, BigDecimal> calculateRWAPartition(int snapshotId, long fromLoanId, long toLoanId) {
+        CalculationPhaseEvent phase = CalculationPhaseEvent.begin("RWA", CalculationPhase.LOAD, snapshotId);
+        List<LoanExposureSnapshot> loans = loanRepository.findBySnapshotIdAndLoanIdBetween(snapshotId, fromLoanId, toLoanId);
+        phase.end(loans.size());
+
+        BigDecimal totalRWA = calculateAndSaveComponents(snapshotId, loans);
+
+        Map<String, BigDecimal> totals = new HashMap<>();
+        totals.put("TOTAL_RWA", totalRWA);
+        totals.put("LOAN_COUNT", BigDecimal.valueOf(loans.size()));
+        return totals;
+    }
+
+    /**
+     * Computes and writes the components one write batch at a time, so no more than
+     * a batch of them is held. Each batch records its own compute and persist phase.
+     *
+     * @return the total RWA of the loans
+     */
+    private BigDecimal calculateAndSaveComponents(int snapshotId, List<LoanExposureSnapshot> loans) {
         BigDecimal totalRWA = BigDecimal.ZERO;
 
-        for (LoanExposureSnapshot loan : loans) {
-            MetricComponent component = calculateLoanRWA(snapshotId, loan);
-            metricComponentRepository.save(component);
-            totalRWA = totalRWA.add(component.getRwaValue());
+        for (int from = 0; from < loans.size(); from += writeBatchSize) {
+            List<LoanExposureSnapshot> batch = loans.subList(from, Math.min(from + writeBatchSize, loans.size()));
+
+            CalculationPhaseEvent phase = CalculationPhaseEvent.begin("RWA", CalculationPhase.COMPUTE, snapshotId);
+            List<MetricComponent> components = new ArrayList<>(batch.size());
+            for (LoanExposureSnapshot loan : batch) {
+                MetricComponent component = calculateLoanRWA(snapshotId, loan);
+                components.add(component);
+                totalRWA = totalRWA.add(component.getRwaValue());
+            }
+            phase.end(components.size());
+
+            phase = CalculationPhaseEvent.begin("RWA", CalculationPhase.PERSIST, snapshotId);
+            saveComponents(components);
+            phase.end(components.size());
         }
+        return totalRWA;
+    }
 
-        // Save aggregate metric
+    /**
+     * Aggregate metric, context and audit trail, the same whether or not the loans were partitioned
+     */
+    private void saveTotals(int snapshotId, BigDecimal totalRWA, int loanCount, CalculationTimer timer) {
+        CalculationPhaseEvent phase = CalculationPhaseEvent.begin("RWA", CalculationPhase.PERSIST, snapshotId);
         RegulatoryMetric rwaMetric = RegulatoryMetric.builder()
                 .snapshotId(snapshotId)
                 .metricCode("TOTAL_RWA")
                 .value(totalRWA)
                 .unit("CURRENCY")
-                .metadata(createMetadata("Total Risk Weighted Assets", loans.size()))
+                .metadata(createMetadata("Total Risk Weighted Assets", loanCount))
                 .build();
 
         regulatoryMetricRepository.save(rwaMetric);
+        contextRegistry.put(snapshotId, ContextKey.TOTAL_RWA, totalRWA);
+        phase.end(1);
 
         // Audit trail
-        long executionTime = System.currentTimeMillis() - startTime;
-        auditCalculation(snapshotId, "RWA_CALCULATION", loans.size(), totalRWA, executionTime);
+        long executionTime = timer.finish(loanCount);
+        phase = CalculationPhaseEvent.begin("RWA", CalculationPhase.AUDIT, snapshotId);
+        auditCalculation(snapshotId, "RWA_CALCULATION", loanCount, totalRWA, executionTime);
+        phase.end(1);
 
         log.info("Completed RWA calculation for snapshot {}: Total RWA = {}",
                 snapshotId, totalRWA);
-
-        return totalRWA;
     }
 
     /**
      * Calculate RWA for a single loan
      * Applies appropriate risk weight based on loan characteristics
      */
-    private MetricComponent calculateLoanRWA(int snapshotId, LoanExposureSnapshot loan) {
+    public MetricComponent calculateLoanRWA(int snapshotId, LoanExposureSnapshot loan) {
         BigDecimal exposureAmount = loan.getOutstandingBalance();
         BigDecimal riskWeight = determineRiskWeight(loan);
 
-        // RWA = Exposure × Risk Weight
-        BigDecimal rwaValue = exposureAmount
-                .multiply(riskWeight)
-                .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
-
         return MetricComponent.builder()
                 .snapshotId(snapshotId)
                 .loanId(loan.getLoanId())
                 .exposureAmount(exposureAmount)
                 .riskWeight(riskWeight.divide(BigDecimal.valueOf(100), 4, RoundingMode.HALF_UP))
-                .rwaValue(rwaValue)
+                .rwaValue(riskWeightedAmount(exposureAmount, riskWeight))
                 .build();
     }
 
+    /**
+     * RWA = Exposure × Risk Weight, rounded to cents as stored per loan
+     */
+    public BigDecimal riskWeightedAmount(BigDecimal exposureAmount, BigDecimal riskWeight) {
+        return exposureAmount
+                .multiply(riskWeight)
+                .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * The configured basel.standard.* risk weights
+     */
+    public RiskWeights getRiskWeights() {
+        return new RiskWeights(retailMortgageRW, retailOtherRW, corporateRW, sovereignRW, bankRW);
+    }
+
     /**
      * Determine risk weight based on Basel III + Lesotho CBL rules
+     * Also applied per loan change by the intraday position book
      */
-    private BigDecimal determineRiskWeight(LoanExposureSnapshot loan) {
+    public BigDecimal determineRiskWeight(LoanExposureSnapshot loan) {
+        return determineRiskWeight(loan, getRiskWeights());
+    }
+
+    /**
+     * The same rules with other standard weights, as stress scenarios set them
+     */
+    public BigDecimal determineRiskWeight(LoanExposureSnapshot loan, RiskWeights weights) {
         CustomerCategory customerType = loan.getCustomerType();
         String productType = loan.getProductType();
         String loanPurpose = loan.getLoanPurpose();
@@ -127,13 +260,13 @@ public class RWACalculationService {
 
         // Lesotho CBL Override: Sovereign exposures to Lesotho government = 0%
         if (customerType == CustomerCategory.SOVEREIGN && "Lesotho".equalsIgnoreCase(loan.getCountry())) {
-            return sovereignRW;
+            return weights.sovereign();
         }
 
         // Bank exposures
         if (customerType == CustomerCategory.BANK ||
                 (loan.getIsFinancialInstitution() != null && loan.getIsFinancialInstitution())) {
-            return bankRW;
+            return weights.bank();
         }
 
         // Corporate exposures
@@ -142,7 +275,7 @@ public class RWACalculationService {
             if (loan.getIsPublicSector() != null && loan.getIsPublicSector()) {
                 return BigDecimal.valueOf(50.0); // 50% risk weight
             }
-            return corporateRW;
+            return weights.corporate();
         }
 
         // Retail exposures - Residential mortgages
@@ -152,7 +285,7 @@ public class RWACalculationService {
 
             // Basel III: LTV <= 80% gets lower risk weight
             if (ltvRatio != null && ltvRatio.compareTo(BigDecimal.valueOf(0.80)) <= 0) {
-                return retailMortgageRW; // 35%
+                return weights.retailMortgage(); // 35%
             } else {
                 // Lesotho CBL: Higher risk weight for high LTV mortgages
                 return BigDecimal.valueOf(50.0); // 50% instead of 35%
@@ -163,19 +296,32 @@ public class RWACalculationService {
         if (customerType == CustomerCategory.SME) {
             BigDecimal smeThreshold = BigDecimal.valueOf(5_000_000); // LSL 5M
             if (loan.getOutstandingBalance().compareTo(smeThreshold) < 0) {
-                return retailOtherRW; // 75%
+                return weights.retailOther(); // 75%
             } else {
-                return corporateRW; // 100%
+                return weights.corporate(); // 100%
             }
         }
 
         // Other retail exposures
         if (customerType == CustomerCategory.RETAIL) {
-            return retailOtherRW; // 75%
+            return weights.retailOther(); // 75%
         }
 
         // Default to 100% for any unclassified exposure
-        return corporateRW;
+        return weights.corporate();
+    }
+
+    /**
+     * Inserts the components as one JDBC batch; saveAll would select each composite key first
+     */
+    private void saveComponents(List<MetricComponent> components) {
+        jdbcTemplate.batchUpdate(INSERT_COMPONENT_SQL, components, components.size(), (ps, component) -> {
+            ps.setInt(1, component.getSnapshotId());
+            ps.setLong(2, component.getLoanId());
+            ps.setBigDecimal(3, component.getExposureAmount());
+            ps.setBigDecimal(4, component.getRiskWeight());
+            ps.setBigDecimal(5, component.getRwaValue());
+        });
     }
 
     private String createMetadata(String description, int loanCount) {
@@ -0,0 +1,42 @@
+package com.wisetech.rras.calculationengine.service;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The configurable basel.standard.* risk weights, in percent
+ */
+public record RiskWeights(BigDecimal retailMortgage, BigDecimal retailOther, BigDecimal corporate,
+                          BigDecimal sovereign, BigDecimal bank) {
+
+    /** Override keys, as the basel.standard.* properties are named */
+    public static final Set<String> KEYS = Set.of(
+            "retail-mortgage-rw", "retail-other-rw", "corporate-rw", "sovereign-rw", "bank-rw");
+
+    /**
+     * These weights with some replaced, keyed like the basel.standard.* properties
+     */
+    public RiskWeights withOverrides(Map<String, Double> overrides) {
+        if (overrides.isEmpty()) {
+            return this;
+        }
+        for (String key : overrides.keySet()) {
+            if (!KEYS.contains(key)) {
+                throw new IllegalArgumentException("Unknown risk weight '" + key
+                        + "', expected one of the basel.standard.* keys");
+            }
+        }
+        return new RiskWeights(
+                override(overrides, "retail-mortgage-rw", retailMortgage),
+                override(overrides, "retail-other-rw", retailOther),
+                override(overrides, "corporate-rw", corporate),
+                override(overrides, "sovereign-rw", sovereign),
+                override(overrides, "bank-rw", bank));
+    }
+
+    private static BigDecimal override(Map<String, Double> overrides, String key, BigDecimal configured) {
+        Double value = overrides.get(key);
+        return value != null ? BigDecimal.valueOf(value) : configured;
+    }
+}
@@ -0,0 +1,497 @@
+package com.wisetech.rras.calculationengine.simulation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wisetech.rras.calculationengine.domain.CalculationAudit;
+import com.wisetech.rras.calculationengine.domain.LoanExposureSnapshot;
+import com.wisetech.rras.calculationengine.domain.RegulatoryMetric;
+import com.wisetech.rras.calculationengine.domain.SnapshotRun;
+import com.wisetech.rras.calculationengine.enums.AssetClassification;
+import com.wisetech.rras.calculationengine.enums.RunStatus;
+import com.wisetech.rras.calculationengine.repository.CalculationAuditRepository;
+import com.wisetech.rras.calculationengine.repository.RegulatoryMetricRepository;
+import com.wisetech.rras.calculationengine.repository.SnapshotRunRepository;
+import com.wisetech.rras.calculationengine.service.ECLCalculationService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Monte Carlo Credit Loss Simulation Service
+ *
+ * Simulates the portfolio loss distribution under the Vasicek single-factor
+ * model: loan i defaults when sqrt(rho) * Z + sqrt(1 - rho) * e_i < N^-1(PD_i),
+ * losing EAD_i x LGD_i.
+ *
+ * The largest exposures (by EAD x LGD) are simulated loan by loan, with their
+ * own idiosyncratic draw. The remaining granular book is grouped into PD
+ * buckets, and each bucket's loss is taken as its expected loss conditional on
+ * the systematic factor Z (the large pool limit). That keeps the cost of a
+ * trial independent of the book size.
+ *
+ * Trials are split into fixed blocks, each with its own SplittableRandom split
+ * off one seeded root in order. A seed therefore gives the same distribution
+ * whatever the number of cores.
+ *
+ * Each loan is staged and takes its PD and LGD exactly as ECLCalculationService
+ * does, so the simulated expected loss is the model ECL before the regulatory
+ * minimum provisions.
+ *
+ * The simulation is one of the snapshot's calculations (simulateCreditLossStep,
+ * or the pipeline's SIMULATION stage): its MC_* metrics are written only while
+ * the snapshot is VALIDATED, and a repeated simulation replaces them.
+ */
+@Service
+@Slf4j
+public class CreditLossSimulationService {
+
+    private static final String LOANS_SQL = """
+            SELECT outstanding_balance, collateral_value, pd_value, lgd_value, days_past_due,
+                   asset_class, is_restructured, is_forborne
+            FROM snapshots.loan_exposures_snapshot
+            WHERE snapshot_id = ?
+            """;
+
+    private static final String LOCK_SNAPSHOT_SQL = """
+            SELECT status FROM snapshots.snapshot_runs WHERE snapshot_id = ? FOR UPDATE
+            """;
+
+    private static final String DELETE_METRICS_SQL = """
+            DELETE FROM metrics.regulatory_metrics
+            WHERE snapshot_id = ?
+              AND metric_code IN ('MC_EXPECTED_LOSS', 'MC_LOSS_P50', 'MC_LOSS_P95', 'MC_LOSS_P99',
+                                  'MC_VAR_999', 'MC_ES_999', 'MC_UNEXPECTED_LOSS')
+            """;
+
+    private static final int TRIALS_PER_BLOCK = 8192;
+    private static final double MIN_BUCKET_PD = 1e-6;
+
+    private final SnapshotRunRepository snapshotRunRepository;
+    private final RegulatoryMetricRepository regulatoryMetricRepository;
+    private final CalculationAuditRepository auditRepository;
+    private final ObjectMapper objectMapper;
+    private final ECLCalculationService eclService;
+    private final JdbcTemplate simulationJdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TransactionTemplate writeTransaction;
+
+    @Value("${montecarlo.trials:1000000}")
+    private int defaultTrials;
+
+    @Value("${montecarlo.seed:20240101}")
+    private long defaultSeed;
+
+    @Value("${montecarlo.asset-correlation:0.12}")
+    private double assetCorrelation;
+
+    @Value("${montecarlo.granular-loans:1000}")
+    private int granularLoans;
+
+    @Value("${montecarlo.pd-buckets:200}")
+    private int pdBuckets;
+
+    public CreditLossSimulationService(SnapshotRunRepository snapshotRunRepository,
+                                       RegulatoryMetricRepository regulatoryMetricRepository,
+                                       CalculationAuditRepository auditRepository,
+                                       ObjectMapper objectMapper,
+                                       ECLCalculationService eclService,
+                                       DataSource dataSource,
+                                       PlatformTransactionManager transactionManager,
+                                       @Value("${montecarlo.fetch-size:5000}") int fetchSize) {
+        this.snapshotRunRepository = snapshotRunRepository;
+        this.regulatoryMetricRepository = regulatoryMetricRepository;
+        this.auditRepository = auditRepository;
+        this.objectMapper = objectMapper;
+        this.eclService = eclService;
+
+        this.simulationJdbcTemplate = new JdbcTemplate(dataSource);
+        this.simulationJdbcTemplate.setFetchSize(fetchSize);
+
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Simulate the loss distribution of a snapshot that is still being calculated
+     * and store its percentiles, replacing those of an earlier simulation
+     */
+    public LossDistribution simulate(int snapshotId, Integer trialsOverride, Long seedOverride) {
+        return simulate(snapshotId, trialsOverride, seedOverride, () -> true).orElseThrow();
+    }
+
+    /**
+     * As simulate, with beforeSave called in the transaction that stores the
+     * metrics; when it returns false nothing is stored and the result is empty
+     */
+    public Optional<LossDistribution> simulate(int snapshotId, Integer trialsOverride, Long seedOverride,
+                                               BooleanSupplier beforeSave) {
+        long startTime = System.currentTimeMillis();
+        int trials = trialsOverride != null ? trialsOverride : defaultTrials;
+        long seed = seedOverride != null ? seedOverride : defaultSeed;
+
+        if (trials < 1000) {
+            throw new IllegalArgumentException("At least 1000 trials are required for a 99.9% quantile");
+        }
+
+        SnapshotRun snapshot = snapshotRunRepository.findById(snapshotId)
+                .orElseThrow(() -> new IllegalArgumentException("Snapshot " + snapshotId + " not found"));
+        requireBeingCalculated(snapshotId, snapshot.getStatus());
+
+        Portfolio portfolio = loadPortfolio(snapshotId);
+        if (portfolio.size == 0) {
+            throw new IllegalStateException("No loan data found for snapshot " + snapshotId);
+        }
+
+        log.info("Starting Monte Carlo simulation for snapshot {}: {} loans, {} trials, rho = {}",
+                snapshotId, portfolio.size, trials, assetCorrelation);
+
+        LossModel model = buildModel(portfolio);
+        double[] losses = new double[trials];
+        runTrials(model, losses, seed);
+
+        // Each trial fills its own slot, so the sorted losses and their sum
+        // in that order are the same for a seed on any number of cores
+        Arrays.parallelSort(losses);
+        double totalLoss = 0;
+        for (double loss : losses) {
+            totalLoss += loss;
+        }
+
+        double expectedLoss = totalLoss / trials;
+        double var999 = quantile(losses, 0.999);
+
+        LossDistribution distribution = LossDistribution.builder()
+                .snapshotId(snapshotId)
+                .loanCount(portfolio.size)
+                .trials(trials)
+                .seed(seed)
+                .assetCorrelation(assetCorrelation)
+                .expectedLoss(expectedLoss)
+                .analyticExpectedLoss(model.analyticExpectedLoss)
+                .p50(quantile(losses, 0.50))
+                .p95(quantile(losses, 0.95))
+                .p99(quantile(losses, 0.99))
+                .var999(var999)
+                .es999(expectedShortfall(losses, 0.999))
+                .unexpectedLoss(var999 - expectedLoss)
+                .executionTimeMs(System.currentTimeMillis() - startTime)
+                .build();
+
+        boolean saved = Boolean.TRUE.equals(writeTransaction.execute(status -> {
+            lockBeingCalculated(snapshotId);
+            if (!beforeSave.getAsBoolean()) {
+                return false;
+            }
+            saveMetrics(distribution, model);
+            auditSimulation(distribution, model);
+            return true;
+        }));
+        if (!saved) {
+            return Optional.empty();
+        }
+
+        log.info("Completed Monte Carlo simulation for snapshot {}: EL = {}, VaR 99.9% = {}, ES 99.9% = {} in {} ms",
+                snapshotId, expectedLoss, var999, distribution.getEs999(), distribution.getExecutionTimeMs());
+
+        return Optional.of(distribution);
+    }
+
+    private Portfolio loadPortfolio(int snapshotId) {
+        return readOnlyTransaction.execute(status -> {
+            Integer loanCount = simulationJdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM snapshots.loan_exposures_snapshot WHERE snapshot_id = ?",
+                    Integer.class, snapshotId);
+
+            Portfolio portfolio = new Portfolio(loanCount != null ? loanCount : 0);
+            int[] row = {0};
+
+            simulationJdbcTemplate.query(LOANS_SQL, rs -> {
+                int i = row[0]++;
+                if (i >= portfolio.size) {
+                    throw new IllegalStateException("Snapshot " + snapshotId + " changed while loading");
+                }
+
+                BigDecimal ead = rs.getBigDecimal("outstanding_balance");
+                if (ead == null || ead.signum() <= 0) {
+                    // Nothing to lose; left at zero, which buildModel skips
+                    return;
+                }
+                String assetClass = rs.getString("asset_class");
+                LoanExposureSnapshot loan = LoanExposureSnapshot.builder()
+                        .outstandingBalance(ead)
+                        .collateralValue(rs.getBigDecimal("collateral_value"))
+                        .pdValue(rs.getBigDecimal("pd_value"))
+                        .lgdValue(rs.getBigDecimal("lgd_value"))
+                        .daysPastDue((Integer) rs.getObject("days_past_due"))
+                        .assetClass(assetClass != null ? AssetClassification.fromValue(assetClass) : null)
+                        .isRestructured((Boolean) rs.getObject("is_restructured"))
+                        .isForborne((Boolean) rs.getObject("is_forborne"))
+                        .build();
+
+                // The stage default PD and the collateral LGD of ECLCalculationService
+                int stage = eclService.determineStage(loan);
+                double loanPd = eclService.effectivePD(loan, stage).doubleValue();
+                double loanLgd = eclService.effectiveLGD(loan).doubleValue();
+
+                portfolio.exposureLoss[i] = ead.doubleValue() * loanLgd;
+                portfolio.pd[i] = Math.max(0.0, Math.min(1.0, loanPd));
+            }, snapshotId);
+
+            return portfolio;
+        });
+    }
+
+    private LossModel buildModel(Portfolio portfolio) {
+        LossModel model = new LossModel();
+        model.sqrtRho = Math.sqrt(assetCorrelation);
+        model.sqrtOneMinusRho = Math.sqrt(1.0 - assetCorrelation);
+
+        // The granularLoans largest EAD x LGD are simulated individually
+        int granularCount = Math.min(granularLoans, portfolio.size);
+        double cutoff = Double.POSITIVE_INFINITY;
+        if (granularCount > 0) {
+            double[] sorted = portfolio.exposureLoss.clone();
+            Arrays.sort(sorted);
+            cutoff = sorted[portfolio.size - granularCount];
+        }
+
+        model.granularLoss = new double[granularCount];
+        model.granularThreshold = new double[granularCount];
+        double[] bucketLoss = new double[pdBuckets];
+        double[] bucketPdLoss = new double[pdBuckets];
+        double logMinPd = Math.log(MIN_BUCKET_PD);
+        int granular = 0;
+
+        for (int i = 0; i < portfolio.size; i++) {
+            double exposureLoss = portfolio.exposureLoss[i];
+            double pd = portfolio.pd[i];
+            if (exposureLoss <= 0 || pd <= 0) {
+                continue;
+            }
+            model.analyticExpectedLoss += exposureLoss * pd;
+
+            if (pd >= 1.0) {
+                model.certainLoss += exposureLoss;
+            } else if (exposureLoss >= cutoff && granular < granularCount) {
+                model.granularLoss[granular] = exposureLoss;
+                model.granularThreshold[granular] = NormalDistribution.inverseCdf(pd);
+                granular++;
+            } else {
+                int bucket = (int) ((Math.log(Math.max(pd, MIN_BUCKET_PD)) - logMinPd) / -logMinPd * pdBuckets);
+                bucket = Math.min(pdBuckets - 1, Math.max(0, bucket));
+                bucketLoss[bucket] += exposureLoss;
+                bucketPdLoss[bucket] += exposureLoss * pd;
+            }
+        }
+        model.granularCount = granular;
+
+        // Each bucket uses its loss weighted PD, which keeps its expected loss exact
+        int used = 0;
+        for (int b = 0; b < pdBuckets; b++) {
+            if (bucketLoss[b] > 0) {
+                used++;
+            }
+        }
+        model.bucketLoss = new double[used];
+        model.bucketThreshold = new double[used];
+        int k = 0;
+        for (int b = 0; b < pdBuckets; b++) {
+            if (bucketLoss[b] > 0) {
+                model.bucketLoss[k] = bucketLoss[b];
+                model.bucketThreshold[k] = NormalDistribution.inverseCdf(bucketPdLoss[b] / bucketLoss[b])
+                        / model.sqrtOneMinusRho;
+                k++;
+            }
+        }
+        model.factorLoading = model.sqrtRho / model.sqrtOneMinusRho;
+
+        return model;
+    }
+
+    private void runTrials(LossModel model, double[] losses, long seed) {
+        int trials = losses.length;
+        int blocks = (trials + TRIALS_PER_BLOCK - 1) / TRIALS_PER_BLOCK;
+
+        // Split every stream up front, in block order, before any parallel work
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] streams = new SplittableRandom[blocks];
+        for (int b = 0; b < blocks; b++) {
+            streams[b] = root.split();
+        }
+
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            SplittableRandom random = streams[b];
+            int from = b * TRIALS_PER_BLOCK;
+            int to = Math.min(trials, from + TRIALS_PER_BLOCK);
+
+            for (int t = from; t < to; t++) {
+                double z = random.nextGaussian();
+                double loss = model.certainLoss;
+
+                double shift = model.factorLoading * z;
+                for (int k = 0; k < model.bucketLoss.length; k++) {
+                    loss += model.bucketLoss[k] * NormalDistribution.cdf(model.bucketThreshold[k] - shift);
+                }
+
+                double systematic = model.sqrtRho * z;
+                for (int g = 0; g < model.granularCount; g++) {
+                    if (systematic + model.sqrtOneMinusRho * random.nextGaussian() < model.granularThreshold[g]) {
+                        loss += model.granularLoss[g];
+                    }
+                }
+
+                losses[t] = loss;
+            }
+        });
+    }
+
+    private static double quantile(double[] sortedLosses, double level) {
+        int index = (int) Math.ceil(level * sortedLosses.length) - 1;
+        return sortedLosses[Math.max(0, Math.min(sortedLosses.length - 1, index))];
+    }
+
+    private static double expectedShortfall(double[] sortedLosses, double level) {
+        int from = Math.max(0, (int) Math.ceil(level * sortedLosses.length) - 1);
+        double tail = 0;
+        for (int i = from; i < sortedLosses.length; i++) {
+            tail += sortedLosses[i];
+        }
+        return tail / (sortedLosses.length - from);
+    }
+
+    private static void requireBeingCalculated(int snapshotId, RunStatus status) {
+        if (status != RunStatus.VALIDATED) {
+            throw new IllegalStateException("Snapshot " + snapshotId + " is " + status
+                    + ", credit losses can only be simulated while it is VALIDATED");
+        }
+    }
+
+    /**
+     * Locks the snapshot row until commit, so the status cannot move on and
+     * concurrent simulations take turns
+     */
+    private void lockBeingCalculated(int snapshotId) {
+        String status = simulationJdbcTemplate.queryForObject(LOCK_SNAPSHOT_SQL, String.class, snapshotId);
+        requireBeingCalculated(snapshotId, RunStatus.fromValue(status));
+    }
+
+    /**
+     * Replaces the snapshot's MC_* metrics, under the lock of lockBeingCalculated
+     */
+    private void saveMetrics(LossDistribution distribution, LossModel model) {
+        int snapshotId = distribution.getSnapshotId();
+        simulationJdbcTemplate.update(DELETE_METRICS_SQL, snapshotId);
+
+        String metadata = createMetadata(distribution, model);
+
+        saveMetric(snapshotId, "MC_EXPECTED_LOSS", distribution.getExpectedLoss(), "CURRENCY", metadata);
+        saveMetric(snapshotId, "MC_LOSS_P50", distribution.getP50(), "CURRENCY", metadata);
+        saveMetric(snapshotId, "MC_LOSS_P95", distribution.getP95(), "CURRENCY", metadata);
+        saveMetric(snapshotId, "MC_LOSS_P99", distribution.getP99(), "CURRENCY", metadata);
+        saveMetric(snapshotId, "MC_VAR_999", distribution.getVar999(), "CURRENCY", metadata);
+        saveMetric(snapshotId, "MC_ES_999", distribution.getEs999(), "CURRENCY", metadata);
+        saveMetric(snapshotId, "MC_UNEXPECTED_LOSS", distribution.getUnexpectedLoss(), "CURRENCY", metadata);
+    }
+
+    private void saveMetric(int snapshotId, String metricCode, double value, String unit, String metadata) {
+        RegulatoryMetric metric = RegulatoryMetric.builder()
+                .snapshotId(snapshotId)
+                .metricCode(metricCode)
+                .value(BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP))
+                .unit(unit)
+                .metadata(metadata)
+                .build();
+
+        regulatoryMetricRepository.save(metric);
+    }
+
+    private String createMetadata(LossDistribution distribution, LossModel model) {
+        try {
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("description", "Monte Carlo credit loss distribution");
+            metadata.put("loan_count", distribution.getLoanCount());
+            metadata.put("trials", distribution.getTrials());
+            metadata.put("seed", distribution.getSeed());
+            metadata.put("asset_correlation", distribution.getAssetCorrelation());
+            metadata.put("individually_simulated_loans", model.granularCount);
+            metadata.put("pd_buckets", model.bucketLoss.length);
+            metadata.put("methodology", "Vasicek single-factor model, hybrid granular / large pool simulation");
+            return objectMapper.writeValueAsString(metadata);
+        } catch (Exception e) {
+            log.error("Error creating metadata", e);
+            return "{}";
+        }
+    }
+
+    private void auditSimulation(LossDistribution distribution, LossModel model) {
+        try {
+            Map<String, Object> inputData = new HashMap<>();
+            inputData.put("loan_count", distribution.getLoanCount());
+            inputData.put("trials", distribution.getTrials());
+            inputData.put("seed", distribution.getSeed());
+            inputData.put("asset_correlation", distribution.getAssetCorrelation());
+            inputData.put("individually_simulated_loans", model.granularCount);
+
+            Map<String, Object> outputData = new HashMap<>();
+            outputData.put("expected_loss", distribution.getExpectedLoss());
+            outputData.put("analytic_expected_loss", distribution.getAnalyticExpectedLoss());
+            outputData.put("var_999", distribution.getVar999());
+            outputData.put("es_999", distribution.getEs999());
+
+            CalculationAudit audit = CalculationAudit.builder()
+                    .snapshotId(distribution.getSnapshotId())
+                    .calculationStep("MONTE_CARLO_SIMULATION")
+                    .inputData(objectMapper.writeValueAsString(inputData))
+                    .outputData(objectMapper.writeValueAsString(outputData))
+                    .calculationRule("Vasicek single-factor credit loss simulation, 99.9% VaR and ES")
+                    .executionTimeMs((int) distribution.getExecutionTimeMs())
+                    .build();
+
+            auditRepository.save(audit);
+        } catch (Exception e) {
+            log.error("Error creating audit record", e);
+        }
+    }
+
+    private static class Portfolio {
+        final int size;
+        final double[] exposureLoss;
+        final double[] pd;
+
+        Portfolio(int size) {
+            this.size = size;
+            this.exposureLoss = new double[size];
+            this.pd = new double[size];
+        }
+    }
+
+    private static class LossModel {
+        double sqrtRho;
+        double sqrtOneMinusRho;
+        double factorLoading;
+        double certainLoss;
+        double analyticExpectedLoss;
+
+        int granularCount;
+        double[] granularLoss;
+        double[] granularThreshold;
+
+        double[] bucketLoss;
+        double[] bucketThreshold;
+    }
+}
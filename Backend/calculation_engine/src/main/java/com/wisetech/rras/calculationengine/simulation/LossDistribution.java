@@ -0,0 +1,30 @@
+package com.wisetech.rras.calculationengine.simulation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LossDistribution {
+
+    private int snapshotId;
+    private int loanCount;
+    private int trials;
+    private long seed;
+    private double assetCorrelation;
+
+    private double expectedLoss;
+    private double analyticExpectedLoss;
+    private double p50;
+    private double p95;
+    private double p99;
+    private double var999;
+    private double es999;
+    private double unexpectedLoss;
+
+    private long executionTimeMs;
+}
@@ -0,0 +1,59 @@
+package com.wisetech.rras.calculationengine.stress;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scenario grid request. Explicit scenarios are evaluated as given and the
+ * shock axes are expanded into their cartesian product.
+ */
+@Data
+public class StressGrid {
+
+    private List<StressScenario> scenarios = new ArrayList<>();
+
+    private List<Double> pdShocksPct = new ArrayList<>();
+    private List<Double> lgdShocksPct = new ArrayList<>();
+    private List<Double> collateralShocksPct = new ArrayList<>();
+    private List<Integer> dpdShiftsDays = new ArrayList<>();
+    private List<Map<String, Double>> riskWeightSets = new ArrayList<>();
+
+    public List<StressScenario> expand() {
+        List<StressScenario> expanded = new ArrayList<>(scenarios);
+
+        boolean hasAxes = !pdShocksPct.isEmpty() || !lgdShocksPct.isEmpty() || !collateralShocksPct.isEmpty()
+                || !dpdShiftsDays.isEmpty() || !riskWeightSets.isEmpty();
+        if (!hasAxes) {
+            return expanded;
+        }
+
+        for (double pd : orZero(pdShocksPct)) {
+            for (double lgd : orZero(lgdShocksPct)) {
+                for (double collateral : orZero(collateralShocksPct)) {
+                    for (int dpd : dpdShiftsDays.isEmpty() ? List.of(0) : dpdShiftsDays) {
+                        for (Map<String, Double> weights : riskWeightSets.isEmpty() ? List.of(Map.<String, Double>of()) : riskWeightSets) {
+                            expanded.add(StressScenario.builder()
+                                    .name(String.format("PD%+.0f%% LGD%+.0f%% COLL%+.0f%% DPD%+d%s",
+                                            pd, lgd, collateral, dpd, weights.isEmpty() ? "" : " RW" + weights))
+                                    .pdShockPct(pd)
+                                    .lgdShockPct(lgd)
+                                    .collateralShockPct(collateral)
+                                    .dpdShiftDays(dpd)
+                                    .riskWeights(new HashMap<>(weights))
+                                    .build());
+                        }
+                    }
+                }
+            }
+        }
+        return expanded;
+    }
+
+    private static List<Double> orZero(List<Double> axis) {
+        return axis.isEmpty() ? List.of(0.0) : axis;
+    }
+}
@@ -0,0 +1,27 @@
+package com.wisetech.rras.calculationengine.stress;
+
+import com.wisetech.rras.calculationengine.domain.LoanExposureSnapshot;
+
+import java.math.BigDecimal;
+
+/**
+ * Read-only copy of a snapshot's loans and capital, so many scenarios can sweep
+ * it concurrently without touching the database. Loans carry only the fields the
+ * calculation rules read.
+ */
+class StressPortfolio {
+
+    final int snapshotId;
+    final int size;
+    final LoanExposureSnapshot[] loans;
+
+    BigDecimal cet1Capital = BigDecimal.ZERO;
+    BigDecimal tier1Capital = BigDecimal.ZERO;
+    BigDecimal totalCapital = BigDecimal.ZERO;
+
+    StressPortfolio(int snapshotId, int size) {
+        this.snapshotId = snapshotId;
+        this.size = size;
+        this.loans = new LoanExposureSnapshot[size];
+    }
+}
@@ -0,0 +1,32 @@
+package com.wisetech.rras.calculationengine.stress;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StressResult {
+
+    private StressScenario scenario;
+
+    private double totalRwa;
+    private double totalEcl;
+    private double nplAmount;
+    private double nplRatio;
+
+    private int stage1Count;
+    private int stage2Count;
+    private int stage3Count;
+
+    private double cet1Ratio;
+    private double tier1Ratio;
+    private double car;
+    private boolean carCompliant;
+
+    // Change against the unshocked snapshot, in percentage points
+    private double carDelta;
+}
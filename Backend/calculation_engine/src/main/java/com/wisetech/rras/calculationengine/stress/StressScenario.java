@@ -0,0 +1,39 @@
+package com.wisetech.rras.calculationengine.stress;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A set of shocks applied on top of a calculated snapshot.
+ * Percentage shocks are relative: pdShockPct = 50 turns a PD of 2% into 3%.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StressScenario {
+
+    private String name;
+
+    @Builder.Default
+    private double pdShockPct = 0.0;
+
+    @Builder.Default
+    private double lgdShockPct = 0.0;
+
+    @Builder.Default
+    private double collateralShockPct = 0.0;
+
+    // Days added to every loan's days past due, reclassifying it accordingly
+    @Builder.Default
+    private int dpdShiftDays = 0;
+
+    // basel.standard.* risk weight overrides in percent, e.g. corporate-rw -> 150.0
+    @Builder.Default
+    private Map<String, Double> riskWeights = new HashMap<>();
+}
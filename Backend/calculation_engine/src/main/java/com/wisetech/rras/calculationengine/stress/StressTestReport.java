@@ -0,0 +1,19 @@
+package com.wisetech.rras.calculationengine.stress;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StressTestReport {
+
+    private int snapshotId;
+    private int loanCount;
+    private StressResult baseline;
+    private List<StressResult> results;
+    private long executionTimeMs;
+}
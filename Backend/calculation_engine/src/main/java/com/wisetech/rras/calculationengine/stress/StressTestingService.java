@@ -0,0 +1,345 @@
+package com.wisetech.rras.calculationengine.stress;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.wisetech.rras.calculationengine.domain.LoanExposureSnapshot;
+import com.wisetech.rras.calculationengine.domain.SnapshotRun;
+import com.wisetech.rras.calculationengine.enums.AssetClassification;
+import com.wisetech.rras.calculationengine.enums.CustomerCategory;
+import com.wisetech.rras.calculationengine.enums.RunStatus;
+import com.wisetech.rras.calculationengine.repository.SnapshotRunRepository;
+import com.wisetech.rras.calculationengine.service.CARCalculationService;
+import com.wisetech.rras.calculationengine.service.ECLCalculationService;
+import com.wisetech.rras.calculationengine.service.NPLCalculationService;
+import com.wisetech.rras.calculationengine.service.NPLCalculationService.NplTotals;
+import com.wisetech.rras.calculationengine.service.RWACalculationService;
+import com.wisetech.rras.calculationengine.service.RiskWeights;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What-if Stress Testing Service
+ *
+ * Loads a calculated snapshot into memory once and re-evaluates the RWA, ECL,
+ * NPL and CAR rules under shocked PD, LGD, collateral, DPD and risk weights.
+ * Scenarios run in parallel and nothing is written to the metrics schema.
+ *
+ * The rules are those of RWACalculationService, ECLCalculationService,
+ * NPLCalculationService and CARCalculationService, called with the shocked
+ * inputs, so an unshocked scenario reproduces the snapshot's stored metrics.
+ */
+@Service
+@Slf4j
+public class StressTestingService {
+
+    private static final String LOANS_SQL = """
+            SELECT loan_id, customer_type, country, is_financial_inst, is_public_sector, product_type,
+                   loan_purpose, ltv_ratio, outstanding_balance, collateral_value, pd_value,
+                   lgd_value, days_past_due, asset_class, is_restructured, is_forborne
+            FROM snapshots.loan_exposures_snapshot
+            WHERE snapshot_id = ?
+            """;
+
+    private static final String CAPITAL_SQL = """
+            SELECT
+                COALESCE(SUM(CASE WHEN component_type = 'CET1' THEN amount END), 0) as cet1,
+                COALESCE(SUM(CASE WHEN component_type = 'AT1' THEN amount END), 0) as at1,
+                COALESCE(SUM(CASE WHEN component_type = 'T2' THEN amount END), 0) as t2
+            FROM snapshots.capital_snapshot
+            WHERE snapshot_id = ?
+            """;
+
+    private static final int MAX_SCENARIOS = 10_000;
+
+    private final SnapshotRunRepository snapshotRunRepository;
+    private final RWACalculationService rwaService;
+    private final ECLCalculationService eclService;
+    private final NPLCalculationService nplService;
+    private final CARCalculationService carService;
+    private final JdbcTemplate stressJdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Cache<Integer, StressPortfolio> portfolios;
+
+    public StressTestingService(SnapshotRunRepository snapshotRunRepository,
+                                RWACalculationService rwaService,
+                                ECLCalculationService eclService,
+                                NPLCalculationService nplService,
+                                CARCalculationService carService,
+                                DataSource dataSource,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${stress.fetch-size:5000}") int fetchSize,
+                                @Value("${stress.cache.max-snapshots:2}") int maxSnapshots,
+                                @Value("${stress.cache.expire-minutes:60}") int expireMinutes) {
+        this.snapshotRunRepository = snapshotRunRepository;
+        this.rwaService = rwaService;
+        this.eclService = eclService;
+        this.nplService = nplService;
+        this.carService = carService;
+
+        this.stressJdbcTemplate = new JdbcTemplate(dataSource);
+        this.stressJdbcTemplate.setFetchSize(fetchSize);
+
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+
+        this.portfolios = CacheBuilder.newBuilder()
+                .maximumSize(maxSnapshots)
+                .expireAfterAccess(expireMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * Evaluate all scenarios against a calculated snapshot
+     */
+    public StressTestReport runScenarios(int snapshotId, List<StressScenario> scenarios) {
+        if (scenarios.isEmpty()) {
+            throw new IllegalArgumentException("At least one scenario is required");
+        }
+        if (scenarios.size() > MAX_SCENARIOS) {
+            throw new IllegalArgumentException("A grid may contain at most " + MAX_SCENARIOS
+                    + " scenarios, got " + scenarios.size());
+        }
+        scenarios.forEach(this::validateScenario);
+
+        StressPortfolio portfolio = getPortfolio(snapshotId);
+
+        long startTime = System.currentTimeMillis();
+
+        StressResult baseline = evaluate(portfolio, StressScenario.builder().name("BASELINE").build(), Double.NaN);
+        double baselineCar = baseline.getCar();
+
+        List<StressResult> results = scenarios.parallelStream()
+                .map(scenario -> evaluate(portfolio, scenario, baselineCar))
+                .toList();
+
+        long executionTime = System.currentTimeMillis() - startTime;
+        log.info("Evaluated {} stress scenarios over {} loans of snapshot {} in {} ms",
+                scenarios.size(), portfolio.size, snapshotId, executionTime);
+
+        return new StressTestReport(snapshotId, portfolio.size, baseline, results, executionTime);
+    }
+
+    public void evict(int snapshotId) {
+        portfolios.invalidate(snapshotId);
+        log.info("Evicted stress portfolio for snapshot {}", snapshotId);
+    }
+
+    private StressPortfolio getPortfolio(int snapshotId) {
+        try {
+            return portfolios.get(snapshotId, () -> loadPortfolio(snapshotId));
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to load snapshot " + snapshotId, e.getCause());
+        }
+    }
+
+    private StressPortfolio loadPortfolio(int snapshotId) {
+        SnapshotRun snapshot = snapshotRunRepository.findById(snapshotId)
+                .orElseThrow(() -> new IllegalArgumentException("Snapshot " + snapshotId + " not found"));
+
+        if (snapshot.getStatus() != RunStatus.CALCULATED && snapshot.getStatus() != RunStatus.APPROVED) {
+            throw new IllegalStateException("Snapshot " + snapshotId + " is " + snapshot.getStatus()
+                    + ", stress tests require a CALCULATED snapshot");
+        }
+
+        long startTime = System.currentTimeMillis();
+
+        StressPortfolio portfolio = readOnlyTransaction.execute(status -> {
+            Integer loanCount = stressJdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM snapshots.loan_exposures_snapshot WHERE snapshot_id = ?",
+                    Integer.class, snapshotId);
+
+            StressPortfolio loaded = new StressPortfolio(snapshotId, loanCount != null ? loanCount : 0);
+            int[] row = {0};
+
+            stressJdbcTemplate.query(LOANS_SQL, rs -> {
+                int i = row[0]++;
+                if (i >= loaded.size) {
+                    // Rows added after the count; a calculated snapshot should not change
+                    throw new IllegalStateException("Snapshot " + snapshotId + " changed while loading");
+                }
+
+                String customerType = rs.getString("customer_type");
+                String assetClass = rs.getString("asset_class");
+                String country = rs.getString("country");
+                String productType = rs.getString("product_type");
+                String loanPurpose = rs.getString("loan_purpose");
+
+                // Low-cardinality strings are interned so a large book holds one copy of each
+                loaded.loans[i] = LoanExposureSnapshot.builder()
+                        .snapshotId(snapshotId)
+                        .loanId(rs.getLong("loan_id"))
+                        .customerType(customerType != null ? CustomerCategory.valueOf(customerType) : null)
+                        .country(country != null ? country.intern() : null)
+                        .isFinancialInstitution(rs.getObject("is_financial_inst", Boolean.class))
+                        .isPublicSector(rs.getObject("is_public_sector", Boolean.class))
+                        .productType(productType != null ? productType.intern() : null)
+                        .loanPurpose(loanPurpose != null ? loanPurpose.intern() : null)
+                        .ltvRatio(rs.getBigDecimal("ltv_ratio"))
+                        .outstandingBalance(rs.getBigDecimal("outstanding_balance"))
+                        .collateralValue(rs.getBigDecimal("collateral_value"))
+                        .pdValue(rs.getBigDecimal("pd_value"))
+                        .lgdValue(rs.getBigDecimal("lgd_value"))
+                        .daysPastDue(rs.getObject("days_past_due", Integer.class))
+                        .assetClass(assetClass != null ? AssetClassification.valueOf(assetClass) : null)
+                        .isRestructured(rs.getObject("is_restructured", Boolean.class))
+                        .isForborne(rs.getObject("is_forborne", Boolean.class))
+                        .build();
+            }, snapshotId);
+
+            stressJdbcTemplate.query(CAPITAL_SQL, rs -> {
+                BigDecimal cet1 = rs.getBigDecimal("cet1");
+                loaded.cet1Capital = cet1;
+                loaded.tier1Capital = cet1.add(rs.getBigDecimal("at1"));
+                loaded.totalCapital = loaded.tier1Capital.add(rs.getBigDecimal("t2"));
+            }, snapshotId);
+
+            return loaded;
+        });
+
+        log.info("Loaded {} loans of snapshot {} for stress testing in {} ms",
+                portfolio.size, snapshotId, System.currentTimeMillis() - startTime);
+        return portfolio;
+    }
+
+    /**
+     * One sequential sweep over the portfolio for a single scenario
+     */
+    private StressResult evaluate(StressPortfolio p, StressScenario scenario, double baselineCar) {
+        BigDecimal pdFactor = factor(scenario.getPdShockPct());
+        BigDecimal lgdFactor = factor(scenario.getLgdShockPct());
+        BigDecimal collateralFactor = factor(scenario.getCollateralShockPct()).max(BigDecimal.ZERO);
+        int dpdShift = scenario.getDpdShiftDays();
+        boolean reshapesLoans = collateralFactor.compareTo(BigDecimal.ONE) != 0 || dpdShift != 0;
+
+        RiskWeights riskWeights = rwaService.getRiskWeights().withOverrides(scenario.getRiskWeights());
+
+        BigDecimal totalRwa = BigDecimal.ZERO;
+        BigDecimal totalEcl = BigDecimal.ZERO;
+        NplTotals npl = new NplTotals();
+        int stage1 = 0;
+        int stage2 = 0;
+        int stage3 = 0;
+
+        for (LoanExposureSnapshot stored : p.loans) {
+            LoanExposureSnapshot loan = reshapesLoans ? shock(stored, collateralFactor, dpdShift) : stored;
+            BigDecimal balance = loan.getOutstandingBalance();
+
+            // RWA
+            BigDecimal riskWeight = rwaService.determineRiskWeight(loan, riskWeights);
+            totalRwa = totalRwa.add(rwaService.riskWeightedAmount(balance, riskWeight));
+
+            // IFRS 9 staging
+            int stage = eclService.determineStage(loan);
+            switch (stage) {
+                case 3 -> stage3++;
+                case 2 -> stage2++;
+                default -> stage1++;
+            }
+
+            // ECL, with PD capped at 100% and LGD kept within [0, 1] once shocked
+            BigDecimal pd = eclService.effectivePD(loan, stage);
+            if (pdFactor.compareTo(BigDecimal.ONE) != 0) {
+                pd = pd.multiply(pdFactor).min(BigDecimal.ONE);
+            }
+            BigDecimal lgd = eclService.effectiveLGD(loan);
+            if (lgdFactor.compareTo(BigDecimal.ONE) != 0) {
+                lgd = lgd.multiply(lgdFactor).max(BigDecimal.ZERO).min(BigDecimal.ONE);
+            }
+            totalEcl = totalEcl.add(eclService.calculateLoanECL(balance, pd, lgd, stage));
+
+            // NPL
+            npl.add(loan);
+        }
+
+        BigDecimal cet1Ratio = carService.calculateRatio(p.cet1Capital, totalRwa);
+        BigDecimal tier1Ratio = carService.calculateRatio(p.tier1Capital, totalRwa);
+        BigDecimal car = carService.calculateRatio(p.totalCapital, totalRwa);
+
+        return StressResult.builder()
+                .scenario(scenario)
+                .totalRwa(totalRwa.doubleValue())
+                .totalEcl(totalEcl.doubleValue())
+                .nplAmount(npl.getNplLoans().doubleValue())
+                .nplRatio(nplService.calculatePercentage(npl.getNplLoans(), npl.getTotalLoans()).doubleValue())
+                .stage1Count(stage1)
+                .stage2Count(stage2)
+                .stage3Count(stage3)
+                .cet1Ratio(cet1Ratio.doubleValue())
+                .tier1Ratio(tier1Ratio.doubleValue())
+                .car(car.doubleValue())
+                .carCompliant(carService.isCompliant(cet1Ratio, tier1Ratio, car))
+                .carDelta(Double.isNaN(baselineCar) ? 0.0 : car.doubleValue() - baselineCar)
+                .build();
+    }
+
+    /**
+     * A scratch copy of the loan with its collateral and days past due shocked.
+     * Falling collateral pushes LTV up; no collateral left means no LTV relief.
+     */
+    private static LoanExposureSnapshot shock(LoanExposureSnapshot loan, BigDecimal collateralFactor, int dpdShift) {
+        BigDecimal collateral = loan.getCollateralValue() != null
+                ? loan.getCollateralValue().multiply(collateralFactor) : null;
+        BigDecimal ltv = loan.getLtvRatio() != null && collateralFactor.signum() > 0
+                ? loan.getLtvRatio().divide(collateralFactor, 6, RoundingMode.HALF_UP) : null;
+
+        Integer daysPastDue = loan.getDaysPastDue();
+        AssetClassification assetClass = loan.getAssetClass();
+        if (dpdShift != 0) {
+            daysPastDue = Math.max(0, (daysPastDue != null ? daysPastDue : 0) + dpdShift);
+            assetClass = NPLCalculationService.classifyByDaysPastDue(daysPastDue);
+        }
+
+        return LoanExposureSnapshot.builder()
+                .snapshotId(loan.getSnapshotId())
+                .loanId(loan.getLoanId())
+                .customerType(loan.getCustomerType())
+                .country(loan.getCountry())
+                .isFinancialInstitution(loan.getIsFinancialInstitution())
+                .isPublicSector(loan.getIsPublicSector())
+                .productType(loan.getProductType())
+                .loanPurpose(loan.getLoanPurpose())
+                .ltvRatio(ltv)
+                .outstandingBalance(loan.getOutstandingBalance())
+                .collateralValue(collateral)
+                .pdValue(loan.getPdValue())
+                .lgdValue(loan.getLgdValue())
+                .daysPastDue(daysPastDue)
+                .assetClass(assetClass)
+                .isRestructured(loan.getIsRestructured())
+                .isForborne(loan.getIsForborne())
+                .build();
+    }
+
+    private void validateScenario(StressScenario scenario) {
+        for (String key : scenario.getRiskWeights().keySet()) {
+            if (!RiskWeights.KEYS.contains(key)) {
+                throw new IllegalArgumentException("Unknown risk weight '" + key
+                        + "', expected one of the basel.standard.* keys");
+            }
+        }
+    }
+
+    /**
+     * 1 + shockPct / 100, the multiplier of a relative shock
+     */
+    private static BigDecimal factor(double shockPct) {
+        return BigDecimal.ONE.add(BigDecimal.valueOf(shockPct).movePointLeft(2));
+    }
+}
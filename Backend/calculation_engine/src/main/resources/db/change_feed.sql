@@ -0,0 +1,95 @@
+-- Loan change feed for the calculation engine (change-feed.enabled)
+--
+-- Statement level triggers record the loan_id of every changed loan in
+-- cbs.loan_change_log and signal the engine with NOTIFY loan_changes.
+-- The engine deletes the rows it has consumed, so the log only holds
+-- pending changes.
+--
+-- Apply with: psql -d <db> -f change_feed.sql  (PostgreSQL 11+)
+
+CREATE TABLE IF NOT EXISTS cbs.loan_change_log (
+    change_id    BIGSERIAL PRIMARY KEY,
+    loan_id      INTEGER NOT NULL,
+    source_table VARCHAR(32) NOT NULL,
+    operation    CHAR(1) NOT NULL,                      -- I, U or D
+    changed_at   TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
+
+-- loans and loan_performance are both keyed by loan_id
+CREATE OR REPLACE FUNCTION cbs.log_loan_changes() RETURNS trigger
+LANGUAGE plpgsql AS $$
+DECLARE
+    logged INTEGER;
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        INSERT INTO cbs.loan_change_log (loan_id, source_table, operation)
+        SELECT DISTINCT loan_id, TG_TABLE_NAME, 'D' FROM old_rows;
+    ELSE
+        INSERT INTO cbs.loan_change_log (loan_id, source_table, operation)
+        SELECT DISTINCT loan_id, TG_TABLE_NAME, left(TG_OP, 1) FROM new_rows;
+    END IF;
+
+    GET DIAGNOSTICS logged = ROW_COUNT;
+    IF logged > 0 THEN
+        -- Identical notifications in one transaction are delivered once, at commit
+        PERFORM pg_notify('loan_changes', '');
+    END IF;
+    RETURN NULL;
+END;
+$$;
+
+-- Account changes (status, currency) affect the loan booked on the account
+CREATE OR REPLACE FUNCTION cbs.log_account_changes() RETURNS trigger
+LANGUAGE plpgsql AS $$
+DECLARE
+    logged INTEGER;
+BEGIN
+    INSERT INTO cbs.loan_change_log (loan_id, source_table, operation)
+    SELECT DISTINCT l.loan_id, TG_TABLE_NAME, 'U'
+    FROM new_rows a
+    JOIN cbs.loans l ON l.account_id = a.account_id;
+
+    GET DIAGNOSTICS logged = ROW_COUNT;
+    IF logged > 0 THEN
+        PERFORM pg_notify('loan_changes', '');
+    END IF;
+    RETURN NULL;
+END;
+$$;
+
+-- Transition tables allow a single event per trigger
+
+DROP TRIGGER IF EXISTS loans_change_insert ON cbs.loans;
+CREATE TRIGGER loans_change_insert AFTER INSERT ON cbs.loans
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION cbs.log_loan_changes();
+
+DROP TRIGGER IF EXISTS loans_change_update ON cbs.loans;
+CREATE TRIGGER loans_change_update AFTER UPDATE ON cbs.loans
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION cbs.log_loan_changes();
+
+DROP TRIGGER IF EXISTS loans_change_delete ON cbs.loans;
+CREATE TRIGGER loans_change_delete AFTER DELETE ON cbs.loans
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION cbs.log_loan_changes();
+
+DROP TRIGGER IF EXISTS loan_performance_change_insert ON cbs.loan_performance;
+CREATE TRIGGER loan_performance_change_insert AFTER INSERT ON cbs.loan_performance
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION cbs.log_loan_changes();
+
+DROP TRIGGER IF EXISTS loan_performance_change_update ON cbs.loan_performance;
+CREATE TRIGGER loan_performance_change_update AFTER UPDATE ON cbs.loan_performance
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION cbs.log_loan_changes();
+
+DROP TRIGGER IF EXISTS loan_performance_change_delete ON cbs.loan_performance;
+CREATE TRIGGER loan_performance_change_delete AFTER DELETE ON cbs.loan_performance
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION cbs.log_loan_changes();
+
+DROP TRIGGER IF EXISTS accounts_change_update ON cbs.accounts;
+CREATE TRIGGER accounts_change_update AFTER UPDATE ON cbs.accounts
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION cbs.log_account_changes();
@@ -0,0 +1,347 @@
+-- Calculation engine schema
+--
+-- cbs          core banking source tables (owned by the core banking system)
+-- source_read  read-only views the engine copies from
+-- snapshots    point-in-time copies taken by each calculation run
+-- metrics      calculation results and audit trail
+--
+-- Apply with: psql -d <db> -f schema.sql
+-- then, for the loan change feed: psql -d <db> -f change_feed.sql
+
+CREATE SCHEMA IF NOT EXISTS cbs;
+CREATE SCHEMA IF NOT EXISTS source_read;
+CREATE SCHEMA IF NOT EXISTS snapshots;
+CREATE SCHEMA IF NOT EXISTS metrics;
+
+-- Core banking
+
+CREATE TABLE cbs.customers (
+    customer_id         SERIAL PRIMARY KEY,
+    customer_type       VARCHAR(20) NOT NULL,                -- RETAIL, SME, CORP, SOVEREIGN, BANK
+    country             VARCHAR(100) NOT NULL,
+    country_risk_rating INTEGER,
+    internal_rating     VARCHAR(10),
+    external_rating     VARCHAR(10),
+    pd_value            NUMERIC(7, 6),                       -- customer PD, a loan level PD takes precedence
+    lgd_value           NUMERIC(7, 6),
+    is_financial_inst   BOOLEAN DEFAULT FALSE,
+    is_public_sector    BOOLEAN DEFAULT FALSE,
+    created_at          TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE cbs.accounts (
+    account_id   SERIAL PRIMARY KEY,
+    customer_id  INTEGER NOT NULL REFERENCES cbs.customers(customer_id) ON DELETE CASCADE,
+    account_type VARCHAR(20) NOT NULL,                       -- SAVINGS, CURRENT, LOAN
+    currency     CHAR(3) NOT NULL,
+    balance           NUMERIC(18, 2) DEFAULT 0,
+    available_balance NUMERIC(18, 2) DEFAULT 0,
+    opened_at    TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+    status       VARCHAR(20) DEFAULT 'ACTIVE'
+);
+
+CREATE TABLE cbs.loans (
+    loan_id             SERIAL PRIMARY KEY,
+    account_id          INTEGER NOT NULL UNIQUE REFERENCES cbs.accounts(account_id) ON DELETE RESTRICT,
+    principal_amount    NUMERIC(18, 2) NOT NULL,
+    outstanding_balance NUMERIC(18, 2) NOT NULL,
+    interest_rate       NUMERIC(5, 4) NOT NULL,              -- 0.0525 for 5.25%
+    origination_date    DATE,
+    maturity_date       DATE NOT NULL,
+    original_term_months  INTEGER,
+    remaining_term_months INTEGER,
+    collateral_value    NUMERIC(18, 2),
+    collateral_type     VARCHAR(30),
+    product_type        VARCHAR(50),                         -- MORTGAGE, PERSONAL, TERM_LOAN
+    loan_purpose        VARCHAR(50),                         -- RESIDENTIAL, GENERAL
+    pd_value            NUMERIC(7, 6),                       -- model PD, NULL falls back to the customer's
+    lgd_value           NUMERIC(7, 6),
+    asset_class         VARCHAR(20),                         -- as booked; the source view derives it from DPD
+    stage               INTEGER,
+    is_restructured     BOOLEAN DEFAULT FALSE,
+    is_forborne         BOOLEAN DEFAULT FALSE
+);
+
+CREATE TABLE cbs.loan_performance (
+    loan_id           INTEGER PRIMARY KEY REFERENCES cbs.loans(loan_id) ON DELETE CASCADE,
+    days_past_due     INTEGER DEFAULT 0 CHECK (days_past_due >= 0),
+    last_payment_date   DATE,
+    last_payment_amount NUMERIC(18, 2)
+);
+
+CREATE TABLE cbs.capital_components (
+    component_id          SERIAL PRIMARY KEY,
+    as_of_date            DATE NOT NULL,
+    component_type        VARCHAR(20) NOT NULL,              -- CET1, AT1, T2
+    component_name        VARCHAR(100) NOT NULL,
+    amount                NUMERIC(20, 2) NOT NULL,
+    regulatory_adjustment NUMERIC(20, 2),                    -- signed; deductions are negative
+    currency              CHAR(3) NOT NULL DEFAULT 'LSL'
+);
+
+CREATE INDEX idx_capital_components_date ON cbs.capital_components(as_of_date);
+
+CREATE TABLE cbs.liquidity_assets (
+    asset_id           SERIAL PRIMARY KEY,
+    as_of_date         DATE NOT NULL,
+    asset_type         VARCHAR(50) NOT NULL,
+    hqla_level         VARCHAR(3) NOT NULL,                  -- 1, 2A, 2B (2 and 3 are read as 2A and 2B)
+    market_value       NUMERIC(20, 2) NOT NULL,
+    haircut_percentage NUMERIC(5, 4) DEFAULT 0,              -- 0.15 for 15%
+    is_unencumbered    BOOLEAN DEFAULT TRUE,
+    currency           CHAR(3) NOT NULL DEFAULT 'LSL'
+);
+
+CREATE INDEX idx_liquidity_assets_date ON cbs.liquidity_assets(as_of_date);
+
+CREATE TABLE cbs.cash_flows (
+    cash_flow_id       BIGSERIAL PRIMARY KEY,
+    as_of_date         DATE NOT NULL,
+    flow_type          VARCHAR(10) NOT NULL,                 -- INFLOW, OUTFLOW
+    counterparty_type  VARCHAR(30),
+    expected_date      DATE NOT NULL,
+    contractual_amount NUMERIC(20, 2) NOT NULL,
+    run_off_rate       NUMERIC(5, 4),                        -- outflows, NULL = 100%
+    inflow_rate        NUMERIC(5, 4),                        -- inflows, NULL = 50%
+    currency           CHAR(3) NOT NULL DEFAULT 'LSL'
+);
+
+CREATE INDEX idx_cash_flows_date ON cbs.cash_flows(as_of_date, expected_date);
+
+-- Source views
+
+CREATE OR REPLACE VIEW source_read.loan_exposures AS
+SELECT
+    l.loan_id,
+    c.customer_id,
+    c.customer_type,
+    c.country,
+    c.country_risk_rating,
+    c.internal_rating,
+    COALESCE(l.pd_value, c.pd_value) AS pd_value,
+    COALESCE(l.lgd_value, c.lgd_value) AS lgd_value,
+    c.is_financial_inst,
+    c.is_public_sector,
+    l.principal_amount,
+    l.outstanding_balance,
+    l.collateral_value,
+    l.collateral_type,
+    l.product_type,
+    l.loan_purpose,
+    CASE
+        WHEN l.collateral_value > 0 THEN ROUND(l.outstanding_balance / l.collateral_value, 4)
+    END AS ltv_ratio,
+    COALESCE(lp.days_past_due, 0) AS days_past_due,
+    CASE
+        WHEN COALESCE(lp.days_past_due, 0) > 180 THEN 'LOSS'
+        WHEN COALESCE(lp.days_past_due, 0) > 90 THEN 'DOUBTFUL'
+        WHEN COALESCE(lp.days_past_due, 0) > 60 THEN 'SUBSTANDARD'
+        WHEN COALESCE(lp.days_past_due, 0) > 30 THEN 'WATCH'
+        ELSE 'STANDARD'
+    END AS asset_class,
+    CASE
+        WHEN COALESCE(lp.days_past_due, 0) >= 90 THEN 3
+        WHEN COALESCE(lp.days_past_due, 0) >= 30 OR l.is_restructured OR l.is_forborne THEN 2
+        ELSE 1
+    END AS stage,
+    l.is_restructured,
+    l.is_forborne,
+    l.maturity_date,
+    GREATEST(0, (EXTRACT(YEAR FROM age(l.maturity_date, CURRENT_DATE)) * 12
+        + EXTRACT(MONTH FROM age(l.maturity_date, CURRENT_DATE)))::INTEGER) AS remaining_term_months,
+    a.currency
+FROM cbs.loans l
+INNER JOIN cbs.accounts a ON l.account_id = a.account_id
+INNER JOIN cbs.customers c ON a.customer_id = c.customer_id
+LEFT JOIN cbs.loan_performance lp ON lp.loan_id = l.loan_id
+WHERE a.status = 'ACTIVE';                                   -- closed loans drop out
+
+CREATE OR REPLACE VIEW source_read.liquidity_positions AS
+SELECT
+    asset_id,
+    as_of_date,
+    asset_type,
+    ROUND(market_value * (1 - COALESCE(haircut_percentage, 0)), 2) AS hqla_value,
+    hqla_level,
+    currency
+FROM cbs.liquidity_assets
+WHERE is_unencumbered = TRUE;
+
+-- Snapshots
+
+CREATE TABLE snapshots.snapshot_runs (
+    snapshot_id      SERIAL PRIMARY KEY,
+    snapshot_date    DATE NOT NULL,
+    calculation_type VARCHAR(20) NOT NULL,                   -- BI_WEEKLY, MONTHLY, ANNUAL
+    status           VARCHAR(20) DEFAULT 'DRAFT',            -- DRAFT, VALIDATED, CALCULATED, APPROVED, FAILED
+    initiated_by     VARCHAR(100),
+    created_at       TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+    validated_at     TIMESTAMP WITH TIME ZONE,
+    calculated_at    TIMESTAMP WITH TIME ZONE,
+    approved_at      TIMESTAMP WITH TIME ZONE,
+
+    CONSTRAINT unique_snapshot_date_type UNIQUE (snapshot_date, calculation_type)
+);
+
+-- Leases held by one instance at a time (the scheduler); fencing_token grows with every new holder
+CREATE TABLE snapshots.lease_locks (
+    lock_name     VARCHAR(100) PRIMARY KEY,
+    holder        VARCHAR(100) NOT NULL,
+    fencing_token BIGINT NOT NULL,
+    acquired_at   TIMESTAMP WITH TIME ZONE,
+    expires_at    TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE TABLE snapshots.loan_exposures_snapshot (
+    snapshot_id           INTEGER NOT NULL REFERENCES snapshots.snapshot_runs(snapshot_id) ON DELETE CASCADE,
+    loan_id               BIGINT NOT NULL,
+    customer_id           BIGINT,
+    customer_type         VARCHAR(20),
+    country               VARCHAR(100),
+    country_risk_rating   INTEGER,
+    internal_rating       VARCHAR(10),
+    pd_value              NUMERIC(7, 6),
+    lgd_value             NUMERIC(7, 6),
+    is_financial_inst     BOOLEAN,
+    is_public_sector      BOOLEAN,
+    principal_amount      NUMERIC(18, 2),
+    outstanding_balance   NUMERIC(18, 2),
+    collateral_value      NUMERIC(18, 2),
+    collateral_type       VARCHAR(30),
+    product_type          VARCHAR(50),
+    loan_purpose          VARCHAR(50),
+    ltv_ratio             NUMERIC(9, 4),
+    days_past_due         INTEGER,
+    asset_class           VARCHAR(20),
+    stage                 INTEGER,
+    is_restructured       BOOLEAN,
+    is_forborne           BOOLEAN,
+    maturity_date         DATE,
+    remaining_term_months INTEGER,
+    currency              CHAR(3),
+
+    PRIMARY KEY (snapshot_id, loan_id)
+);
+
+CREATE INDEX idx_snapshot_country ON snapshots.loan_exposures_snapshot(country);
+CREATE INDEX idx_snapshot_dpd ON snapshots.loan_exposures_snapshot(days_past_due);
+
+CREATE TABLE snapshots.capital_snapshot (
+    snapshot_id    INTEGER NOT NULL REFERENCES snapshots.snapshot_runs(snapshot_id) ON DELETE CASCADE,
+    component_type VARCHAR(20) NOT NULL,
+    component_name VARCHAR(100) NOT NULL,
+    amount         NUMERIC(20, 2) NOT NULL,
+    currency       CHAR(3)
+);
+
+CREATE INDEX idx_capital_snapshot ON snapshots.capital_snapshot(snapshot_id);
+
+CREATE TABLE snapshots.liquidity_snapshot (
+    snapshot_id INTEGER NOT NULL REFERENCES snapshots.snapshot_runs(snapshot_id) ON DELETE CASCADE,
+    asset_id    BIGINT NOT NULL,
+    asset_type  VARCHAR(50),
+    hqla_value  NUMERIC(20, 2),
+    hqla_level  VARCHAR(3),
+    currency    CHAR(3),
+
+    PRIMARY KEY (snapshot_id, asset_id)
+);
+
+-- Metrics
+
+CREATE TABLE metrics.regulatory_metrics (
+    metric_id     BIGSERIAL PRIMARY KEY,
+    snapshot_id   INTEGER NOT NULL REFERENCES snapshots.snapshot_runs(snapshot_id) ON DELETE CASCADE,
+    metric_code   VARCHAR(50) NOT NULL,
+    value         NUMERIC(20, 4) NOT NULL,
+    unit          VARCHAR(20),                               -- PERCENTAGE, CURRENCY, COUNT, INDEX
+    metadata      JSONB,
+    calculated_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_metric_history ON metrics.regulatory_metrics(metric_code, snapshot_id);
+-- Dashboard reads (code, value, unit) of one snapshot from the index alone, without the metadata JSON
+CREATE INDEX idx_metric_snapshot ON metrics.regulatory_metrics(snapshot_id) INCLUDE (metric_code, value, unit);
+
+CREATE TABLE metrics.metric_components (
+    snapshot_id      INTEGER NOT NULL,
+    loan_id          BIGINT NOT NULL,
+    exposure_amount  NUMERIC(18, 2) NOT NULL,
+    risk_weight      NUMERIC(7, 4) NOT NULL,                 -- 0.7500 for 75%
+    rwa_value        NUMERIC(18, 2) NOT NULL,
+    ecl_amount       NUMERIC(18, 2),
+    ecl_stage        INTEGER,
+    provision_amount NUMERIC(18, 2),
+
+    PRIMARY KEY (snapshot_id, loan_id),
+    FOREIGN KEY (snapshot_id, loan_id)
+        REFERENCES snapshots.loan_exposures_snapshot(snapshot_id, loan_id) ON DELETE CASCADE
+);
+
+CREATE TABLE metrics.calculation_audit (
+    audit_id          BIGSERIAL PRIMARY KEY,
+    snapshot_id       INTEGER NOT NULL REFERENCES snapshots.snapshot_runs(snapshot_id) ON DELETE CASCADE,
+    calculation_step  VARCHAR(100) NOT NULL,
+    input_data        JSONB,
+    output_data       JSONB,
+    calculation_rule  TEXT,
+    executed_at       TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+    execution_time_ms INTEGER
+);
+
+CREATE INDEX idx_audit_snapshot ON metrics.calculation_audit(snapshot_id, calculation_step);
+
+-- Calculations done by the event-driven pipeline. A worker writes COMPLETED in the
+-- transaction of the calculation, so a duplicate delivery waits on the row lock and
+-- then skips; FAILED rows count the failed attempts and may be claimed again.
+CREATE TABLE metrics.calculation_claims (
+    snapshot_id   INTEGER NOT NULL REFERENCES snapshots.snapshot_runs(snapshot_id) ON DELETE CASCADE,
+    calculation   VARCHAR(30) NOT NULL,                      -- RWA, NPL, ..., FINALIZE
+    status        VARCHAR(20) NOT NULL,                      -- COMPLETED, FAILED
+    claimed_by    VARCHAR(100),
+    failures      INTEGER NOT NULL DEFAULT 0,
+    error         TEXT,
+    updated_at    TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+
+    PRIMARY KEY (snapshot_id, calculation)
+);
+
+-- Resource cost of each job step, written next to the audit trail
+CREATE TABLE metrics.step_resource_usage (
+    usage_id          BIGSERIAL PRIMARY KEY,
+    snapshot_id       INTEGER NOT NULL REFERENCES snapshots.snapshot_runs(snapshot_id) ON DELETE CASCADE,
+    job_execution_id  BIGINT,
+    step_name         VARCHAR(100) NOT NULL,
+    status            VARCHAR(20),
+    wall_time_ms      BIGINT,
+    cpu_time_ms       BIGINT,                                  -- step thread only
+    user_time_ms      BIGINT,
+    allocated_bytes   BIGINT,                                  -- step thread only, -1 when unsupported
+    jvm_gc_pause_ms   BIGINT,                                  -- whole JVM while the step ran, not the step's own
+    jvm_gc_count      INTEGER,
+    jvm_heap_used_bytes BIGINT,                                -- whole JVM heap in use when the step ended
+    app_version       VARCHAR(50),
+    host_name         VARCHAR(100),
+    recorded_at       TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_step_usage_snapshot ON metrics.step_resource_usage(snapshot_id, step_name);
+
+-- Cost per loan, for trending across releases and sizing batch hosts
+CREATE VIEW metrics.step_resource_cost AS
+SELECT u.snapshot_id,
+       u.step_name,
+       u.app_version,
+       u.host_name,
+       l.loan_count,
+       u.wall_time_ms,
+       u.cpu_time_ms,
+       u.jvm_gc_pause_ms,
+       u.jvm_heap_used_bytes,
+       u.cpu_time_ms * 1000000.0 / NULLIF(l.loan_count, 0) AS cpu_ns_per_loan,
+       u.allocated_bytes * 1.0 / NULLIF(l.loan_count, 0)  AS bytes_per_loan,
+       u.recorded_at
+FROM metrics.step_resource_usage u
+LEFT JOIN (SELECT snapshot_id, COUNT(*) AS loan_count
+           FROM snapshots.loan_exposures_snapshot
+           GROUP BY snapshot_id) l ON l.snapshot_id = u.snapshot_id;
@@ -0,0 +1,175 @@
+package com.wisetech.rras.calculationengine.batch;
+
+import com.wisetech.rras.calculationengine.messaging.CalculationEventPublisher;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.parameters.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The lease SQL on PostgreSQL, between this instance's LeaseLock and a second
+ * holder, and the fencing check of createSnapshotStep
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.show-sql=false",
+        "scheduling.enabled=false",
+        "spring.rabbitmq.host=localhost",
+        "spring.rabbitmq.port=5672",
+        "spring.rabbitmq.username=guest",
+        "spring.rabbitmq.password=guest"
+})
+class LeaseLockTest {
+
+    private static final String LEASE = ScheduledCalculationLauncher.SCHEDULER_LEASE;
+    private static final Duration TTL = Duration.ofMinutes(5);
+
+    private static EmbeddedPostgres postgres;
+
+    @MockitoBean
+    private CalculationEventPublisher eventPublisher;
+
+    @Autowired
+    private LeaseLock leaseLock;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job regulatoryCalculationJob;
+
+    private LeaseLock otherInstance;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        new ResourceDatabasePopulator(new ClassPathResource("db/schema.sql")).execute(postgres.getPostgresDatabase());
+
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @BeforeEach
+    void freeLease() {
+        jdbcTemplate.update("DELETE FROM snapshots.lease_locks");
+        otherInstance = new LeaseLock(jdbcTemplate);
+    }
+
+    @Test
+    void renewalKeepsTheToken() {
+        assertEquals(OptionalLong.of(1), leaseLock.tryAcquire(LEASE, TTL));
+        assertEquals(OptionalLong.of(1), leaseLock.tryAcquire(LEASE, TTL));
+        assertTrue(leaseLock.isCurrent(LEASE, 1));
+    }
+
+    @Test
+    void liveLeaseCannotBeTaken() {
+        leaseLock.tryAcquire(LEASE, TTL);
+
+        assertEquals(OptionalLong.empty(), otherInstance.tryAcquire(LEASE, TTL));
+        assertEquals(leaseLock.getHolder(), holder());
+    }
+
+    @Test
+    void takeoverAfterExpiryIncrementsTheToken() {
+        leaseLock.tryAcquire(LEASE, TTL);
+        expire();
+
+        assertEquals(OptionalLong.of(2), otherInstance.tryAcquire(LEASE, TTL));
+        assertEquals(otherInstance.getHolder(), holder());
+
+        // The old holder can neither renew nor pass the fencing check
+        assertEquals(OptionalLong.empty(), leaseLock.tryAcquire(LEASE, TTL));
+        assertFalse(leaseLock.isCurrent(LEASE, 1));
+        assertTrue(leaseLock.isCurrent(LEASE, 2));
+    }
+
+    @Test
+    void releasedLeaseIsTakenWithTheNextToken() {
+        leaseLock.tryAcquire(LEASE, TTL);
+        leaseLock.release(LEASE);
+
+        assertEquals(OptionalLong.of(2), otherInstance.tryAcquire(LEASE, TTL));
+    }
+
+    @Test
+    void createSnapshotRefusesAStaleToken() throws Exception {
+        long stale = leaseLock.tryAcquire(LEASE, TTL).orElseThrow();
+        expire();
+        long current = otherInstance.tryAcquire(LEASE, TTL).orElseThrow();
+
+        JobExecution refused = launch(LocalDate.of(2024, 1, 31), stale);
+        assertEquals(BatchStatus.FAILED, refused.getStatus());
+        assertEquals(BatchStatus.FAILED, createSnapshotStep(refused).getStatus());
+        assertEquals(0, snapshotsOn(LocalDate.of(2024, 1, 31)));
+
+        JobExecution accepted = launch(LocalDate.of(2024, 2, 29), current);
+        assertEquals(BatchStatus.COMPLETED, createSnapshotStep(accepted).getStatus());
+        assertEquals(1, snapshotsOn(LocalDate.of(2024, 2, 29)));
+    }
+
+    private JobExecution launch(LocalDate snapshotDate, long leaseToken) throws Exception {
+        return jobLauncher.run(regulatoryCalculationJob, new JobParametersBuilder()
+                .addString("snapshotDate", snapshotDate.toString())
+                .addString("calculationType", "MONTHLY")
+                .addString("initiatedBy", "SCHEDULER")
+                .addLong("leaseToken", leaseToken, false)
+                .toJobParameters());
+    }
+
+    private static StepExecution createSnapshotStep(JobExecution execution) {
+        return execution.getStepExecutions().stream()
+                .filter(step -> step.getStepName().equals("createSnapshot"))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private int snapshotsOn(LocalDate snapshotDate) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM snapshots.snapshot_runs WHERE snapshot_date = ?",
+                Integer.class, snapshotDate);
+    }
+
+    private void expire() {
+        jdbcTemplate.update("UPDATE snapshots.lease_locks SET expires_at = CURRENT_TIMESTAMP - INTERVAL '1 second'"
+                + " WHERE lock_name = ?", LEASE);
+    }
+
+    private String holder() {
+        return jdbcTemplate.queryForObject("SELECT holder FROM snapshots.lease_locks WHERE lock_name = ?",
+                String.class, LEASE);
+    }
+}
@@ -0,0 +1,199 @@
+package com.wisetech.rras.calculationengine.changefeed;
+
+import com.wisetech.rras.calculationengine.volume.VolumeBookLoader;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The change_feed.sql triggers and the listener's debounce on an embedded PostgreSQL
+ */
+class LoanChangeFeedListenerTest {
+
+    private static final int DEBOUNCE_MS = 300;
+
+    private static EmbeddedPostgres postgres;
+    private static DataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+
+    private final BlockingQueue<LoanChangeBatch> batches = new LinkedBlockingQueue<>();
+    private final AtomicBoolean failNextBatch = new AtomicBoolean();
+    private LoanChangeFeedListener listener;
+
+    @BeforeAll
+    static void installChangeFeed() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        dataSource = postgres.getPostgresDatabase();
+        new ResourceDatabasePopulator(new ClassPathResource("db/schema.sql")).execute(dataSource);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        new VolumeBookLoader(jdbcTemplate).load(100, LocalDate.of(2024, 6, 30));
+
+        // Executed whole: the function bodies contain semicolons
+        jdbcTemplate.execute(new ClassPathResource("db/change_feed.sql").getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @BeforeEach
+    void clearLog() {
+        jdbcTemplate.update("DELETE FROM cbs.loan_change_log");
+    }
+
+    @AfterEach
+    void stopListener() {
+        if (listener != null) {
+            listener.stop();
+        }
+    }
+
+    @Test
+    void triggersLogEveryChangedLoanAndNotifyOncePerTransaction() throws Exception {
+        try (Connection listening = dataSource.getConnection()) {
+            try (Statement statement = listening.createStatement()) {
+                statement.execute("LISTEN loan_changes");
+            }
+
+            jdbcTemplate.update("UPDATE cbs.loans SET outstanding_balance = outstanding_balance + 1 WHERE loan_id IN (1, 2, 3)");
+            jdbcTemplate.update("UPDATE cbs.loan_performance SET days_past_due = 95 WHERE loan_id = 4");
+            jdbcTemplate.update("UPDATE cbs.accounts SET currency = currency WHERE account_id = (SELECT account_id FROM cbs.loans WHERE loan_id = 5)");
+            jdbcTemplate.update("UPDATE cbs.loans SET outstanding_balance = outstanding_balance WHERE loan_id = -1");
+
+            assertEquals(List.of("1 loans U", "2 loans U", "3 loans U", "4 loan_performance U", "5 accounts U"),
+                    jdbcTemplate.queryForList("""
+                            SELECT loan_id || ' ' || source_table || ' ' || operation
+                            FROM cbs.loan_change_log ORDER BY loan_id
+                            """, String.class));
+
+            // One notification per committed statement that logged rows, none for the empty update
+            PGConnection pgConnection = listening.unwrap(PGConnection.class);
+            int notified = 0;
+            PGNotification[] notifications;
+            while ((notifications = pgConnection.getNotifications(500)) != null && notifications.length > 0) {
+                notified += notifications.length;
+            }
+            assertEquals(3, notified);
+        }
+    }
+
+    @Test
+    void debouncesABurstIntoOneBatch() throws Exception {
+        startListener(2_000);
+        awaitFeedLive();
+
+        for (int loanId = 10; loanId < 15; loanId++) {
+            touch(loanId);
+            touch(loanId);
+            Thread.sleep(DEBOUNCE_MS / 6);
+        }
+
+        LoanChangeBatch batch = batches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertArrayEquals(new long[]{10, 11, 12, 13, 14}, batch.getLoanIds());
+        assertEquals(10, batch.getChangeCount());
+        assertNull(batches.poll(DEBOUNCE_MS * 2L, TimeUnit.MILLISECONDS));
+        assertEquals(0, pendingChanges());
+    }
+
+    @Test
+    void continuousChangesAreDrainedAtTheMaxDelay() throws Exception {
+        startListener(DEBOUNCE_MS * 2);
+        awaitFeedLive();
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 30; i++) {
+            touch(20 + i);
+            Thread.sleep(DEBOUNCE_MS / 3);
+        }
+
+        LoanChangeBatch first = batches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        // The burst lasts about 3 s; the first batch may not wait for its end
+        long firstAt = first.getLastChangedAt().toEpochMilli() - start;
+        assertTrue(firstAt < 2_000, "first batch covers changes up to " + firstAt + " ms");
+    }
+
+    @Test
+    void failingConsumerDoesNotStallTheFeed() throws Exception {
+        startListener(2_000);
+        awaitFeedLive();
+
+        failNextBatch.set(true);
+        touch(30);
+        Thread.sleep(DEBOUNCE_MS * 3L);
+        assertEquals(0, pendingChanges());
+
+        touch(31);
+        LoanChangeBatch batch = batches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertArrayEquals(new long[]{31}, batch.getLoanIds());
+    }
+
+    private void startListener(int maxDelayMs) {
+        listener = new LoanChangeFeedListener(dataSource, jdbcTemplate,
+                new DataSourceTransactionManager(dataSource), event -> {
+                    if (event instanceof LoanChangeBatch batch) {
+                        if (failNextBatch.getAndSet(false)) {
+                            throw new IllegalStateException("consumer failed");
+                        }
+                        batches.add(batch);
+                    }
+                });
+        ReflectionTestUtils.setField(listener, "debounceMs", DEBOUNCE_MS);
+        ReflectionTestUtils.setField(listener, "maxDelayMs", maxDelayMs);
+        ReflectionTestUtils.setField(listener, "batchSize", 10_000);
+        ReflectionTestUtils.setField(listener, "pollIntervalMs", 30_000);
+        ReflectionTestUtils.setField(listener, "reconnectDelayMs", 100L);
+        listener.start();
+    }
+
+    /**
+     * A first change round trip, so the listener is known to be LISTENing
+     */
+    private void awaitFeedLive() throws InterruptedException {
+        touch(1);
+        assertNotNull(batches.poll(10, TimeUnit.SECONDS), "change feed did not start");
+        batches.clear();
+    }
+
+    private static void touch(int loanId) {
+        jdbcTemplate.update("UPDATE cbs.loans SET outstanding_balance = outstanding_balance WHERE loan_id = ?", loanId);
+    }
+
+    private static int pendingChanges() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cbs.loan_change_log", Integer.class);
+    }
+}
@@ -0,0 +1,133 @@
+package com.wisetech.rras.calculationengine.comparison;
+
+import com.wisetech.rras.calculationengine.enums.AssetClassification;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MovementAccumulatorTest {
+
+    private static final String[] CLASSES = {"STANDARD", "WATCH", "SUBSTANDARD", "DOUBTFUL", "LOSS"};
+
+    @Test
+    void explainsNplAndRwaMovementsBetweenSnapshots() throws Exception {
+        ListCursor base = new ListCursor()
+                .add(1, "STANDARD", 0, 1, 1_000, "1.00")      // repaid in full
+                .add(2, "LOSS", 200, 3, 500, "1.50")          // written off
+                .add(3, "STANDARD", 0, 1, 2_000, "0.75")      // falls into NPL
+                .add(4, "DOUBTFUL", 100, 3, 800, "1.00")      // cures
+                .add(5, "DOUBTFUL", 120, 3, 600, "1.50")      // stays NPL, partly repaid
+                .add(7, "SUBSTANDARD", 75, 2, 400, "1.00");   // under 90 DPD, never NPL
+        ListCursor target = new ListCursor()
+                .add(3, "DOUBTFUL", 95, 3, 2_100, "1.00")
+                .add(4, "STANDARD", 0, 2, 800, "1.00")
+                .add(5, "DOUBTFUL", 150, 3, 450, "1.50")
+                .add(6, "WATCH", 40, 2, 300, "1.00")          // new loan
+                .add(7, "SUBSTANDARD", 85, 2, 400, "1.00");
+
+        MovementAccumulator movements = MovementAccumulator.mergeJoin(base, target);
+
+        assertEquals(4, movements.matchedLoans);
+        assertEquals(1, movements.newLoans);
+        assertEquals(2, movements.exitedLoans);
+
+        MovementWaterfall npl = movements.npl;
+        assertAmount(1_900, npl.getOpening());
+        assertAmount(2_550, npl.getClosing());
+        assertAmount(0, npl.getMovements().get(MovementAccumulator.NEW_LOANS));
+        assertAmount(2_100, npl.getMovements().get(MovementAccumulator.RECLASSIFIED_IN));
+        assertAmount(-800, npl.getMovements().get(MovementAccumulator.RECLASSIFIED_OUT));
+        assertAmount(-150, npl.getMovements().get(MovementAccumulator.REPAYMENTS));
+        assertAmount(-500, npl.getMovements().get(MovementAccumulator.WRITE_OFFS));
+        assertAmount(0, npl.getUnexplained());
+
+        MovementWaterfall rwa = movements.rwa;
+        assertAmount(5_350, rwa.getOpening());
+        assertAmount(4_275, rwa.getClosing());
+        assertAmount(300, rwa.getMovements().get(MovementAccumulator.NEW_LOANS));
+        assertAmount(-750, rwa.getMovements().get(MovementAccumulator.WRITE_OFFS));
+        // Loan 1 exits (-1000), loan 5 repays 150 at 150% (-225); loan 3 draws 100 at 75%
+        assertAmount(-1_225, rwa.getMovements().get(MovementAccumulator.REPAYMENTS));
+        assertAmount(75, rwa.getMovements().get(MovementAccumulator.DRAWDOWNS));
+        // Loan 3 moves from 75% to 100% on 2,100
+        assertAmount(525, rwa.getMovements().get(MovementAccumulator.RISK_WEIGHT_CHANGES));
+        assertAmount(0, rwa.getUnexplained());
+
+        TransitionMatrix stages = movements.stages;
+        assertEquals(1, stages.getCount("STAGE_1", "STAGE_3"));
+        assertEquals(1, stages.getCount("STAGE_3", "STAGE_2"));
+        assertEquals(1, stages.getCount("STAGE_3", TransitionMatrix.EXITED));
+        assertEquals(1, stages.getCount(TransitionMatrix.NEW, "STAGE_2"));
+
+        TransitionMatrix classes = movements.classifications;
+        assertEquals(1, classes.getCount("STANDARD", "DOUBTFUL"));
+        assertEquals(1, classes.getCount("DOUBTFUL", "DOUBTFUL"));
+        assertEquals(1, classes.getCount("SUBSTANDARD", "SUBSTANDARD"));
+        assertEquals(1, classes.getCount("LOSS", TransitionMatrix.EXITED));
+        assertAmount(800, classes.getAmount("DOUBTFUL", "STANDARD"));
+    }
+
+    @Test
+    void rejectsUnorderedInput() {
+        ListCursor base = new ListCursor().add(2, "STANDARD", 0, 1, 100, "1.00").add(1, "STANDARD", 0, 1, 100, "1.00");
+        ListCursor target = new ListCursor();
+
+        assertThrows(IllegalStateException.class, () -> MovementAccumulator.mergeJoin(base, target));
+    }
+
+    private static void assertAmount(long expected, BigDecimal actual) {
+        assertEquals(0, BigDecimal.valueOf(expected).compareTo(actual), "expected " + expected + " but was " + actual);
+    }
+
+    /**
+     * In-memory cursor reusing one LoanState, like the JDBC cursor does
+     */
+    private static class ListCursor implements LoanCursor {
+
+        private final List<long[]> rows = new ArrayList<>();
+        private final List<String> riskWeights = new ArrayList<>();
+        private final LoanState state = new LoanState();
+        private Iterator<long[]> rowIterator;
+        private Iterator<String> weightIterator;
+
+        ListCursor add(long loanId, String assetClass, int daysPastDue, int stage, long balance, String riskWeight) {
+            rows.add(new long[]{loanId, List.of(CLASSES).indexOf(assetClass), daysPastDue, stage, balance});
+            riskWeights.add(riskWeight);
+            return this;
+        }
+
+        @Override
+        public boolean next() {
+            if (rowIterator == null) {
+                rowIterator = rows.iterator();
+                weightIterator = riskWeights.iterator();
+            }
+            if (!rowIterator.hasNext()) {
+                return false;
+            }
+
+            long[] row = rowIterator.next();
+            BigDecimal riskWeight = new BigDecimal(weightIterator.next());
+            state.loanId = row[0];
+            state.assetClass = AssetClassification.values()[(int) row[1]];
+            state.daysPastDue = (int) row[2];
+            state.stage = (int) row[3];
+            state.balance = BigDecimal.valueOf(row[4]);
+            state.exposure = state.balance;
+            state.riskWeight = riskWeight;
+            state.rwa = state.balance.multiply(riskWeight);
+            return true;
+        }
+
+        @Override
+        public LoanState current() {
+            return state;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.wisetech.rras.calculationengine.concentration;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LongDoubleHashMapTest {
+
+    @Test
+    void keepsEveryEntryAcrossRehashes() {
+        // Sized for 1, so the table rehashes many times and probes through collisions
+        LongDoubleHashMap map = new LongDoubleHashMap(1);
+        Map<Long, Double> expected = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(7);
+
+        for (int i = 0; i < 50_000; i++) {
+            long key = random.nextInt(20_000) - 10_000L;
+            double delta = random.nextInt(1_000);
+            map.add(key, delta);
+            expected.merge(key, delta, Double::sum);
+        }
+
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key), key.toString()));
+
+        Map<Long, Double> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    void absentKeysReadAsZeroInACrowdedTable() {
+        LongDoubleHashMap map = new LongDoubleHashMap(16);
+        for (long key = 0; key < 16; key++) {
+            map.add(key * 1024, 1.0);
+        }
+
+        assertEquals(16, map.size());
+        assertEquals(0.0, map.get(1));
+        assertEquals(0.0, map.get(16 * 1024));
+        assertEquals(1.0, map.get(15 * 1024));
+    }
+
+    @Test
+    void extremeKeysAreOrdinaryKeys() {
+        LongDoubleHashMap map = new LongDoubleHashMap(4);
+        map.add(0, 1.0);
+        map.add(-1, 2.0);
+        map.add(Long.MAX_VALUE, 3.0);
+        map.add(Long.MIN_VALUE + 1, 4.0);
+
+        assertEquals(1.0, map.get(0));
+        assertEquals(2.0, map.get(-1));
+        assertEquals(3.0, map.get(Long.MAX_VALUE));
+        assertEquals(4.0, map.get(Long.MIN_VALUE + 1));
+        assertThrows(IllegalArgumentException.class, () -> map.add(Long.MIN_VALUE, 1.0));
+    }
+}
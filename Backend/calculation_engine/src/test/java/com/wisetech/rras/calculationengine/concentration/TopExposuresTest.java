@@ -0,0 +1,63 @@
+package com.wisetech.rras.calculationengine.concentration;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TopExposuresTest {
+
+    @Test
+    void keepsTheLargestInDescendingOrder() {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 1; key <= 1_000; key++) {
+            keys.add(key);
+        }
+        Collections.shuffle(keys, new Random(3));
+
+        TopExposures top = new TopExposures(20);
+        for (long key : keys) {
+            top.offer(key, key * 10.0);
+        }
+        top.sortDescending();
+
+        assertEquals(20, top.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(1_000 - i, top.keyAt(i));
+            assertEquals((1_000 - i) * 10.0, top.valueAt(i));
+        }
+    }
+
+    @Test
+    void replacesOnlyWhenLargerThanTheSmallestKept() {
+        TopExposures top = new TopExposures(3);
+        top.offer(1, 5.0);
+        top.offer(2, 7.0);
+        top.offer(3, 6.0);
+        top.offer(4, 5.0);  // ties the smallest, not taken
+        top.offer(5, 1.0);
+        top.offer(6, 8.0);  // evicts key 1
+        top.sortDescending();
+
+        assertEquals(3, top.size());
+        assertEquals(6, top.keyAt(0));
+        assertEquals(2, top.keyAt(1));
+        assertEquals(3, top.keyAt(2));
+    }
+
+    @Test
+    void holdsFewerThanNWhenFewerAreOffered() {
+        TopExposures top = new TopExposures(20);
+        top.offer(9, 1.0);
+        top.offer(8, 3.0);
+        top.sortDescending();
+
+        assertEquals(2, top.size());
+        assertEquals(8, top.keyAt(0));
+        assertEquals(9, top.keyAt(1));
+    }
+}
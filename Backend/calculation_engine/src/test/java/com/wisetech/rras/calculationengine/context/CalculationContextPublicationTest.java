@@ -0,0 +1,155 @@
+package com.wisetech.rras.calculationengine.context;
+
+import com.wisetech.rras.calculationengine.messaging.CalculationEventPublisher;
+import com.wisetech.rras.calculationengine.service.CARCalculationService;
+import com.wisetech.rras.calculationengine.service.NPLCalculationService;
+import com.wisetech.rras.calculationengine.volume.VolumeBookLoader;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.parameters.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Totals are carried between steps only once they are committed, and the
+ * database fallback copes with a metric written twice by a restarted step.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.show-sql=false",
+        "scheduling.enabled=false",
+        "montecarlo.trials=20000",
+        "spring.rabbitmq.host=localhost",
+        "spring.rabbitmq.port=5672",
+        "spring.rabbitmq.username=guest",
+        "spring.rabbitmq.password=guest"
+})
+class CalculationContextPublicationTest {
+
+    private static final int LOANS = 500;
+    private static final LocalDate AS_OF = LocalDate.of(2024, 6, 30);
+    private static final BigDecimal NOT_IN_MEMORY = new BigDecimal("-1");
+
+    private static EmbeddedPostgres postgres;
+    private static Integer snapshotId;
+
+    @MockitoBean
+    private CalculationEventPublisher eventPublisher;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job regulatoryCalculationJob;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CalculationContextRegistry contextRegistry;
+
+    @Autowired
+    private NPLCalculationService nplService;
+
+    @Autowired
+    private CARCalculationService carService;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        new ResourceDatabasePopulator(new ClassPathResource("db/schema.sql")).execute(postgres.getPostgresDatabase());
+
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @BeforeEach
+    void calculatedSnapshot() throws Exception {
+        if (snapshotId == null) {
+            new VolumeBookLoader(jdbcTemplate).load(LOANS, AS_OF);
+            JobExecution execution = jobLauncher.run(regulatoryCalculationJob, new JobParametersBuilder()
+                    .addString("snapshotDate", AS_OF.toString())
+                    .addString("calculationType", "MONTHLY")
+                    .addString("initiatedBy", "CONTEXT_TEST")
+                    .toJobParameters());
+            assertEquals(BatchStatus.COMPLETED, execution.getStatus());
+            snapshotId = execution.getExecutionContext().getInt("snapshotId");
+        }
+        contextRegistry.remove(snapshotId);
+    }
+
+    @Test
+    void rolledBackStepPublishesNothing() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            nplService.calculateNPL(snapshotId);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(NOT_IN_MEMORY, contextRegistry.get(snapshotId, ContextKey.NPL_AMOUNT, () -> NOT_IN_MEMORY));
+    }
+
+    @Test
+    void committedStepPublishesItsTotals() {
+        Map<String, BigDecimal> results = nplService.calculateNPL(snapshotId);
+
+        assertEquals(results.get("NPL_AMOUNT"),
+                contextRegistry.get(snapshotId, ContextKey.NPL_AMOUNT, () -> NOT_IN_MEMORY));
+    }
+
+    @Test
+    void carFallbackReadsTheLatestOfDuplicateRwaRows() {
+        BigDecimal storedCar = storedMetric("CAR");
+        jdbcTemplate.update("""
+                INSERT INTO metrics.regulatory_metrics (snapshot_id, metric_code, value, unit)
+                SELECT snapshot_id, metric_code, value * 2, unit
+                FROM metrics.regulatory_metrics
+                WHERE snapshot_id = ? AND metric_code = 'TOTAL_RWA'
+                """, snapshotId);
+
+        Map<String, BigDecimal> results = carService.calculateCAR(snapshotId, AS_OF);
+
+        // Twice the RWA halves the ratio, up to the rounding of the stored one
+        assertEquals(storedCar.doubleValue() / 2, results.get("CAR").doubleValue(), 0.01);
+    }
+
+    private BigDecimal storedMetric(String code) {
+        return jdbcTemplate.queryForObject("""
+                SELECT value FROM metrics.regulatory_metrics
+                WHERE snapshot_id = ? AND metric_code = ?
+                ORDER BY metric_id DESC LIMIT 1
+                """, BigDecimal.class, snapshotId, code);
+    }
+}
@@ -0,0 +1,154 @@
+package com.wisetech.rras.calculationengine.intraday;
+
+import com.wisetech.rras.calculationengine.domain.LoanExposureSnapshot;
+import com.wisetech.rras.calculationengine.enums.CustomerCategory;
+import com.wisetech.rras.calculationengine.enums.LoanChangeType;
+import com.wisetech.rras.calculationengine.service.ECLCalculationService;
+import com.wisetech.rras.calculationengine.service.RWACalculationService;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Feeds the book through the same in-JVM path the Rabbit listener uses
+ */
+class IntradayPositionBookTest {
+
+    private static final RWACalculationService RWA_SERVICE = rwaService();
+    private static final ECLCalculationService ECL_SERVICE =
+            new ECLCalculationService(null, null, null, null, null, null, null, null, null);
+
+    // The batch rules, wired as IntradayPositionService wires them: unsecured
+    // retail at 75%, corporates at 100%, stage from DPD
+    private static IntradayPositionBook newBook() {
+        return new IntradayPositionBook(
+                loan -> RWA_SERVICE.riskWeightedAmount(loan.getOutstandingBalance(), RWA_SERVICE.determineRiskWeight(loan)),
+                ECL_SERVICE::determineStage);
+    }
+
+    private static RWACalculationService rwaService() {
+        RWACalculationService service = new RWACalculationService(null, null, null, null, null, null, null, null, null);
+        ReflectionTestUtils.setField(service, "retailMortgageRW", BigDecimal.valueOf(35.0));
+        ReflectionTestUtils.setField(service, "retailOtherRW", BigDecimal.valueOf(75.0));
+        ReflectionTestUtils.setField(service, "corporateRW", BigDecimal.valueOf(100.0));
+        ReflectionTestUtils.setField(service, "sovereignRW", BigDecimal.valueOf(0.0));
+        ReflectionTestUtils.setField(service, "bankRW", BigDecimal.valueOf(20.0));
+        return service;
+    }
+
+    private static LoanExposureSnapshot loan(long loanId, CustomerCategory type, long balance, int dpd) {
+        return loan(loanId, type, BigDecimal.valueOf(balance), dpd);
+    }
+
+    private static LoanExposureSnapshot loan(long loanId, CustomerCategory type, BigDecimal balance, int dpd) {
+        return LoanExposureSnapshot.builder()
+                .loanId(loanId)
+                .customerType(type)
+                .outstandingBalance(balance)
+                .daysPastDue(dpd)
+                .build();
+    }
+
+    @Test
+    void appliesDeltasForUpdatesNewAndClosedLoans() {
+        IntradayPositionBook book = newBook();
+        book.seed(loan(1, CustomerCategory.RETAIL, 1_000, 0));
+        book.seed(loan(2, CustomerCategory.CORP, 4_000, 45));
+        book.seed(loan(3, CustomerCategory.RETAIL, 5_000, 120));
+
+        IntradayPosition seeded = book.view();
+        assertEquals(new BigDecimal("10000.00"), seeded.getTotalLoans());
+        assertEquals(new BigDecimal("8500.00"), seeded.getTotalRwa());
+        assertEquals(new BigDecimal("5000.00"), seeded.getNplAmount());
+        assertEquals(1, seeded.getStage2Count());
+
+        // Loan 2 rolls into 90+ DPD, loan 1 pays down, loan 4 is booked, loan 3 is written off
+        assertTrue(book.apply(LoanChangeEvent.builder().loanId(2L).changeType(LoanChangeType.UPDATE)
+                .eventTime(10).daysPastDue(91).build()));
+        assertTrue(book.apply(LoanChangeEvent.builder().loanId(1L).changeType(LoanChangeType.UPDATE)
+                .eventTime(11).outstandingBalance(BigDecimal.valueOf(600)).build()));
+        assertTrue(book.apply(LoanChangeEvent.builder().loanId(4L).changeType(LoanChangeType.NEW)
+                .eventTime(12).customerType(CustomerCategory.CORP)
+                .outstandingBalance(BigDecimal.valueOf(2_000)).daysPastDue(0).build()));
+        assertTrue(book.apply(LoanChangeEvent.builder().loanId(3L).changeType(LoanChangeType.CLOSED)
+                .eventTime(13).build()));
+
+        IntradayPosition position = book.view();
+        assertEquals(3, position.getLoanCount());
+        assertEquals(new BigDecimal("6600.00"), position.getTotalLoans());
+        assertEquals(new BigDecimal("6450.00"), position.getTotalRwa());
+        assertEquals(new BigDecimal("4000.00"), position.getNplAmount());
+        assertEquals(1, position.getNplCount());
+        assertEquals(2, position.getStage1Count());
+        assertEquals(0, position.getStage2Count());
+        assertEquals(1, position.getStage3Count());
+        assertEquals(4, position.getEventsApplied());
+    }
+
+    @Test
+    void ignoresRedeliveredAndOutOfOrderEvents() {
+        IntradayPositionBook book = newBook();
+        book.seed(loan(1, CustomerCategory.RETAIL, 1_000, 0));
+
+        LoanChangeEvent late = LoanChangeEvent.builder().loanId(1L).changeType(LoanChangeType.UPDATE)
+                .eventTime(20).daysPastDue(95).build();
+        LoanChangeEvent early = LoanChangeEvent.builder().loanId(1L).changeType(LoanChangeType.UPDATE)
+                .eventTime(10).daysPastDue(0).build();
+
+        assertTrue(book.apply(late));
+        assertFalse(book.apply(late));
+        assertFalse(book.apply(early));
+
+        assertEquals(new BigDecimal("1000.00"), book.view().getNplAmount());
+        assertEquals(2, book.view().getEventsIgnored());
+    }
+
+    @Test
+    void runningTotalsMatchAFreshlySeededBookToTheCent() {
+        IntradayPositionBook live = newBook();
+        BigDecimal[] balances = new BigDecimal[1_000];
+        int[] dpd = new int[1_000];
+        CustomerCategory[] types = new CustomerCategory[1_000];
+
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < balances.length; i++) {
+            balances[i] = BigDecimal.valueOf(100_000 + random.nextInt(10_000_000), 2);
+            types[i] = random.nextBoolean() ? CustomerCategory.CORP : CustomerCategory.RETAIL;
+            live.seed(loan(i, types[i], balances[i], 0));
+        }
+
+        for (int t = 1; t <= 50_000; t++) {
+            int i = random.nextInt(balances.length);
+            if (random.nextBoolean()) {
+                balances[i] = BigDecimal.valueOf(100_000 + random.nextInt(10_000_000), 2);
+                live.apply(LoanChangeEvent.builder().loanId((long) i).changeType(LoanChangeType.UPDATE)
+                        .eventTime(t).outstandingBalance(balances[i]).build());
+            } else {
+                dpd[i] = random.nextInt(180);
+                live.apply(LoanChangeEvent.builder().loanId((long) i).changeType(LoanChangeType.UPDATE)
+                        .eventTime(t).daysPastDue(dpd[i]).build());
+            }
+        }
+
+        IntradayPositionBook fresh = newBook();
+        for (int i = 0; i < balances.length; i++) {
+            fresh.seed(loan(i, types[i], balances[i], dpd[i]));
+        }
+
+        IntradayPosition expected = fresh.view();
+        IntradayPosition actual = live.view();
+        assertEquals(expected.getTotalLoans(), actual.getTotalLoans());
+        assertEquals(expected.getTotalRwa(), actual.getTotalRwa());
+        assertEquals(expected.getNplAmount(), actual.getNplAmount());
+        assertEquals(expected.getNplRatio(), actual.getNplRatio());
+        assertEquals(expected.getNplCount(), actual.getNplCount());
+        assertEquals(expected.getStage2Count(), actual.getStage2Count());
+        assertEquals(expected.getStage3Exposure(), actual.getStage3Exposure());
+    }
+}
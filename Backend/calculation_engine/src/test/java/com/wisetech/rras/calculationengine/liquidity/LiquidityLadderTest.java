@@ -0,0 +1,126 @@
+package com.wisetech.rras.calculationengine.liquidity;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LiquidityLadderTest {
+
+    private static final LocalDate AS_OF = LocalDate.of(2024, 6, 30);
+
+    @Test
+    void hqlaWithinTheCapsIsTakenInFull() {
+        LiquidityLadder ladder = hqla(100, 20, 5);
+
+        assertAmount("125.00", ladder.getHqla());
+    }
+
+    @Test
+    void level2BIsCappedAtFifteenPercentOfHqla() {
+        LiquidityLadder ladder = hqla(100, 0, 100);
+
+        // 15/85 of 100 = 17.65 of Level 2B counts; 17.65 / 117.65 = 15%
+        assertAmount("117.65", ladder.getHqla());
+    }
+
+    @Test
+    void level2IsCappedAtFortyPercentOfHqla() {
+        LiquidityLadder ladder = hqla(60, 100, 0);
+
+        // 2/3 of 60 = 40 of Level 2A counts; 40 / 100 = 40%
+        assertAmount("100.00", ladder.getHqla());
+    }
+
+    @Test
+    void bothCapsApplyInTurn() {
+        LiquidityLadder ladder = hqla(30, 40, 60);
+
+        // Level 2B counts up to 70 x 15/85 = 12.35, so Level 2 is 40 + 12.35 = 52.35,
+        // of which 30 x 2/3 = 20.00 counts
+        assertAmount("50.00", ladder.getHqla());
+    }
+
+    @Test
+    void hqlaLevelsAcceptBothNamings() {
+        LiquidityLadder ladder = new LiquidityLadder(AS_OF);
+        ladder.addHqla("1", amount("10"));
+        ladder.addHqla(" 2a", amount("2"));
+        ladder.addHqla("2", amount("3"));
+        ladder.addHqla("3", amount("1"));
+        ladder.addHqla("2B", amount("1"));
+        ladder.addHqla("4", amount("1000"));
+        ladder.addHqla(null, amount("1000"));
+
+        assertAmount("10", ladder.getLevel1());
+        assertAmount("5", ladder.getLevel2A());
+        assertAmount("2", ladder.getLevel2B());
+    }
+
+    @Test
+    void bucketsAccumulateAcrossHorizons() {
+        LiquidityLadder ladder = new LiquidityLadder(AS_OF);
+        ladder.addCashFlow("OUTFLOW", "RETAIL", 30, amount("100"));
+        ladder.addCashFlow("OUTFLOW", "WHOLESALE", 60, amount("50"));
+        ladder.addCashFlow("OUTFLOW", null, 90, amount("25"));
+        ladder.addCashFlow("INFLOW", "RETAIL", 30, amount("40"));
+        ladder.addCashFlow("INFLOW", "RETAIL", 60, amount("10"));
+
+        assertEquals(amount("100"), ladder.getOutflows(30));
+        assertEquals(amount("150"), ladder.getOutflows(60));
+        assertEquals(amount("175"), ladder.getOutflows(90));
+        assertEquals(amount("50"), ladder.getInflows(90));
+        assertEquals(List.of(30, 60, 90), List.copyOf(ladder.getGapProfile().keySet()));
+        assertEquals(List.of(amount("-60"), amount("-100"), amount("-125")),
+                List.copyOf(ladder.getGapProfile().values()));
+        assertEquals(Map.of("RETAIL", amount("100"), "UNSPECIFIED", amount("25"), "WHOLESALE", amount("50")),
+                ladder.getOutflowsByCounterparty(90));
+        assertThrows(IllegalArgumentException.class, () -> ladder.getOutflows(45));
+        assertThrows(IllegalArgumentException.class, () -> ladder.addCashFlow("OUTFLOW", "RETAIL", 120, BigDecimal.ONE));
+    }
+
+    @Test
+    void inflowsAreCappedAtSeventyFivePercentOfOutflows() {
+        LiquidityLadder capped = new LiquidityLadder(AS_OF);
+        capped.addCashFlow("OUTFLOW", "RETAIL", 30, amount("100"));
+        capped.addCashFlow("INFLOW", "RETAIL", 30, amount("90"));
+        assertAmount("25", capped.getNetCashOutflows(30));
+
+        LiquidityLadder uncapped = new LiquidityLadder(AS_OF);
+        uncapped.addCashFlow("OUTFLOW", "RETAIL", 30, amount("100"));
+        uncapped.addCashFlow("INFLOW", "RETAIL", 30, amount("50"));
+        assertAmount("50", uncapped.getNetCashOutflows(30));
+    }
+
+    @Test
+    void lcrIsHqlaOverThirtyDayNetOutflows() {
+        LiquidityLadder ladder = hqla(100, 0, 0);
+        ladder.addCashFlow("OUTFLOW", "RETAIL", 30, amount("100"));
+        ladder.addCashFlow("INFLOW", "RETAIL", 30, amount("90"));
+        ladder.addCashFlow("OUTFLOW", "RETAIL", 60, amount("1000"));
+
+        assertEquals(amount("400.00"), ladder.getLcr());
+        assertEquals(amount("0"), hqla(100, 0, 0).getLcr());
+    }
+
+    private static LiquidityLadder hqla(long level1, long level2A, long level2B) {
+        LiquidityLadder ladder = new LiquidityLadder(AS_OF);
+        ladder.addHqla("1", BigDecimal.valueOf(level1));
+        ladder.addHqla("2A", BigDecimal.valueOf(level2A));
+        ladder.addHqla("2B", BigDecimal.valueOf(level2B));
+        return ladder;
+    }
+
+    private static void assertAmount(String expected, BigDecimal actual) {
+        assertEquals(0, new BigDecimal(expected).compareTo(actual), () -> "expected " + expected + " but was " + actual);
+    }
+
+    private static BigDecimal amount(String value) {
+        return new BigDecimal(value);
+    }
+}
@@ -0,0 +1,38 @@
+package com.wisetech.rras.calculationengine.metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * Fails a test when a piece of work issues more SQL statements than it is allowed,
+ * which is how an N+1 (a statement per loan) shows up:
+ *
+ *   StatementBudget.assertWithin(20, "calculateRWA on 10k loans", () -> rwaService.calculateRWA(snapshotId));
+ *
+ * Counts what the application DataSource executed on the calling thread, a JDBC
+ * batch counting once, so the work must not hand its queries to another thread.
+ */
+public final class StatementBudget {
+
+    private StatementBudget() {
+    }
+
+    public static <T> T assertWithin(long maxStatements, String description, Supplier<T> work) {
+        JdbcActivity.Snapshot start = JdbcActivity.snapshot();
+        T result = work.get();
+        JdbcActivity.Snapshot used = JdbcActivity.snapshot().since(start);
+
+        if (used.statements() > maxStatements) {
+            throw new AssertionError(String.format(
+                    "%s issued %,d statements (%,d batches, %,d rows written), budget is %,d",
+                    description, used.statements(), used.batches(), used.rowsWritten(), maxStatements));
+        }
+        return result;
+    }
+
+    public static void assertWithin(long maxStatements, String description, Runnable work) {
+        assertWithin(maxStatements, description, () -> {
+            work.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,131 @@
+package com.wisetech.rras.calculationengine.partition;
+
+import com.wisetech.rras.calculationengine.enums.PartitionedCalculation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the manager against in-JVM workers that reply the way PartitionWorker does
+ */
+class PartitionManagerTest {
+
+    private static final List<PartitionManager.LoanRange> RANGES = List.of(
+            new PartitionManager.LoanRange(1, 100),
+            new PartitionManager.LoanRange(101, 200),
+            new PartitionManager.LoanRange(201, 300),
+            new PartitionManager.LoanRange(301, 400));
+
+    private final ExecutorService workers = Executors.newFixedThreadPool(4);
+    private final Queue<PartitionRequest> sent = new ConcurrentLinkedQueue<>();
+
+    @AfterEach
+    void stopWorkers() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * A manager whose requests go to the workers; a worker returning no replies drops the request
+     */
+    private PartitionManager manager(Function<PartitionRequest, List<PartitionReply>> worker) {
+        PartitionManager[] manager = new PartitionManager[1];
+        RabbitTemplate rabbitTemplate = new RabbitTemplate() {
+            @Override
+            public void convertAndSend(String exchange, String routingKey, Object message) {
+                PartitionRequest request = (PartitionRequest) message;
+                sent.add(request);
+                workers.execute(() -> worker.apply(request).forEach(manager[0]::onReply));
+            }
+        };
+
+        manager[0] = new PartitionManager(rabbitTemplate, null);
+        ReflectionTestUtils.setField(manager[0], "timeout", Duration.ofMillis(200));
+        ReflectionTestUtils.setField(manager[0], "maxAttempts", 3);
+        ReflectionTestUtils.setField(manager[0], "exchange", "calculation.exchange");
+        return manager[0];
+    }
+
+    private static PartitionReply totals(PartitionRequest request) {
+        long loans = request.getToLoanId() - request.getFromLoanId() + 1;
+        return PartitionReply.builder()
+                .runId(request.getRunId())
+                .partitionId(request.getPartitionId())
+                .attempt(request.getAttempt())
+                .workerId("worker-" + request.getAttempt())
+                .totals(Map.of("TOTAL_RWA", BigDecimal.valueOf(loans * 1_000), "LOAN_COUNT", BigDecimal.valueOf(loans)))
+                .build();
+    }
+
+    private static PartitionReply failure(PartitionRequest request) {
+        return PartitionReply.builder()
+                .runId(request.getRunId())
+                .partitionId(request.getPartitionId())
+                .attempt(request.getAttempt())
+                .workerId("worker-" + request.getAttempt())
+                .error("connection reset")
+                .build();
+    }
+
+    @Test
+    void sumsTheTotalsOfAllPartitions() {
+        Map<String, BigDecimal> totals = manager(request -> List.of(totals(request)))
+                .run(PartitionedCalculation.RWA, 7, RANGES);
+
+        assertEquals(BigDecimal.valueOf(400_000), totals.get("TOTAL_RWA"));
+        assertEquals(BigDecimal.valueOf(400), totals.get("LOAN_COUNT"));
+        assertEquals(4, sent.size());
+    }
+
+    @Test
+    void resendsFailedAndLostPartitions() {
+        // Partition 1 fails on its first attempt, partition 2's first request is lost
+        Map<String, BigDecimal> totals = manager(request -> {
+            if (request.getAttempt() == 1 && request.getPartitionId() == 1) {
+                return List.of(failure(request));
+            }
+            if (request.getAttempt() == 1 && request.getPartitionId() == 2) {
+                return List.of();
+            }
+            return List.of(totals(request));
+        }).run(PartitionedCalculation.ECL, 7, RANGES);
+
+        assertEquals(BigDecimal.valueOf(400_000), totals.get("TOTAL_RWA"));
+        assertEquals(BigDecimal.valueOf(400), totals.get("LOAN_COUNT"));
+        assertEquals(6, sent.size());
+        assertTrue(sent.stream().allMatch(request -> request.getCalculation() == PartitionedCalculation.ECL));
+    }
+
+    @Test
+    void countsALateDuplicateReplyOnce() {
+        // Every partition is answered twice, as when a slow first attempt and its resend both finish
+        Map<String, BigDecimal> totals = manager(request -> List.of(totals(request), totals(request)))
+                .run(PartitionedCalculation.RWA, 7, RANGES);
+
+        assertEquals(BigDecimal.valueOf(400_000), totals.get("TOTAL_RWA"));
+    }
+
+    @Test
+    void failsAfterMaxAttempts() {
+        IllegalStateException e = assertThrows(IllegalStateException.class, () ->
+                manager(request -> List.of(request.getPartitionId() == 3 ? failure(request) : totals(request)))
+                        .run(PartitionedCalculation.RWA, 7, RANGES));
+
+        assertTrue(e.getMessage().contains("partition 3 of snapshot 7"), e.getMessage());
+        assertEquals(3, sent.stream().filter(request -> request.getPartitionId() == 3).count());
+    }
+}
@@ -0,0 +1,237 @@
+package com.wisetech.rras.calculationengine.pipeline;
+
+import com.wisetech.rras.calculationengine.concentration.ConcentrationRiskService;
+import com.wisetech.rras.calculationengine.context.CalculationContextRegistry;
+import com.wisetech.rras.calculationengine.domain.SnapshotRun;
+import com.wisetech.rras.calculationengine.enums.CalculationType;
+import com.wisetech.rras.calculationengine.enums.RunStatus;
+import com.wisetech.rras.calculationengine.jfr.JobFlightRecorder;
+import com.wisetech.rras.calculationengine.messaging.CalculationEventPublisher;
+import com.wisetech.rras.calculationengine.metrics.StepResourceUsageListener;
+import com.wisetech.rras.calculationengine.repository.SnapshotRunRepository;
+import com.wisetech.rras.calculationengine.repository.StepResourceUsageRepository;
+import com.wisetech.rras.calculationengine.returns.ReturnGenerationService;
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties;
+import com.wisetech.rras.calculationengine.service.CARCalculationService;
+import com.wisetech.rras.calculationengine.service.ECLCalculationService;
+import com.wisetech.rras.calculationengine.service.LCRCalculationService;
+import com.wisetech.rras.calculationengine.service.NPLCalculationService;
+import com.wisetech.rras.calculationengine.service.RWACalculationService;
+import com.wisetech.rras.calculationengine.simulation.CreditLossSimulationService;
+import com.wisetech.rras.calculationengine.simulation.LossDistribution;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Claims, prerequisites, redelivery and finalizing of the pipeline against
+ * metrics.calculation_claims on an embedded PostgreSQL, with the calculations
+ * themselves mocked
+ */
+class CalculationPipelineTest {
+
+    private static final LocalDate AS_OF = LocalDate.of(2024, 6, 30);
+
+    private static EmbeddedPostgres postgres;
+    private static JdbcTemplate jdbcTemplate;
+    private static DataSourceTransactionManager transactionManager;
+    private static int snapshots;
+
+    private final SnapshotRunRepository snapshotRunRepository = mock(SnapshotRunRepository.class);
+    private final RWACalculationService rwaService = mock(RWACalculationService.class);
+    private final NPLCalculationService nplService = mock(NPLCalculationService.class);
+    private final LCRCalculationService lcrService = mock(LCRCalculationService.class);
+    private final ConcentrationRiskService concentrationService = mock(ConcentrationRiskService.class);
+    private final CARCalculationService carService = mock(CARCalculationService.class);
+    private final ECLCalculationService eclService = mock(ECLCalculationService.class);
+    private final CreditLossSimulationService simulationService = mock(CreditLossSimulationService.class);
+    private final ReturnGenerationService returnGenerationService = mock(ReturnGenerationService.class);
+    private final CalculationEventPublisher eventPublisher = mock(CalculationEventPublisher.class);
+
+    private CalculationClaims claims;
+    private CalculationPipeline pipeline;
+    private SnapshotRun snapshot;
+    private int snapshotId;
+
+    @BeforeAll
+    static void database() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        DataSource dataSource = postgres.getPostgresDatabase();
+        new ResourceDatabasePopulator(new ClassPathResource("db/schema.sql")).execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @BeforeEach
+    void pipeline() {
+        // A snapshot per test, so claims of one test do not reach another
+        snapshotId = jdbcTemplate.queryForObject("""
+                INSERT INTO snapshots.snapshot_runs (snapshot_date, calculation_type, status)
+                VALUES (?, 'MONTHLY', 'VALIDATED')
+                RETURNING snapshot_id
+                """, Integer.class, AS_OF.minusDays(snapshots++));
+        snapshot = SnapshotRun.builder()
+                .snapshotId(snapshotId)
+                .snapshotDate(AS_OF)
+                .calculationType(CalculationType.MONTHLY)
+                .status(RunStatus.VALIDATED)
+                .build();
+        when(snapshotRunRepository.findById(snapshotId)).thenReturn(Optional.of(snapshot));
+
+        // The partitioned services claim through the supplier they are given
+        when(rwaService.calculateRWA(anyInt(), any())).thenAnswer(invocation ->
+                invocation.getArgument(1, BooleanSupplier.class).getAsBoolean()
+                        ? Optional.of(BigDecimal.ONE) : Optional.empty());
+        when(eclService.calculateECL(anyInt(), any())).thenAnswer(invocation ->
+                invocation.getArgument(1, BooleanSupplier.class).getAsBoolean()
+                        ? Optional.of(BigDecimal.ONE) : Optional.empty());
+        when(simulationService.simulate(anyInt(), any(), any(), any())).thenAnswer(invocation ->
+                invocation.getArgument(3, BooleanSupplier.class).getAsBoolean()
+                        ? Optional.of(LossDistribution.builder().build()) : Optional.empty());
+
+        claims = new CalculationClaims(jdbcTemplate);
+        pipeline = new CalculationPipeline(claims, snapshotRunRepository, rwaService, nplService, lcrService,
+                concentrationService, carService, eclService, simulationService, returnGenerationService, new ReturnTemplateProperties(),
+                new CalculationContextRegistry(), eventPublisher,
+                new StepResourceUsageListener(mock(StepResourceUsageRepository.class)), new JobFlightRecorder(),
+                transactionManager);
+        ReflectionTestUtils.setField(pipeline, "maxAttempts", 2);
+    }
+
+    @Test
+    void claimIsTakenOnceAndAFailedOneCanBeRetaken() {
+        assertEquals(1, claims.fail(snapshotId, "NPL", "a", "boom"));
+        assertFalse(claims.allCompleted(snapshotId, List.of("NPL")));
+
+        assertTrue(claims.claim(snapshotId, "NPL", "b"));
+        assertFalse(claims.claim(snapshotId, "NPL", "c"));
+        assertTrue(claims.allCompleted(snapshotId, List.of("NPL")));
+
+        // A failure reported after completion does not undo it
+        assertEquals(0, claims.fail(snapshotId, "NPL", "c", "late"));
+        assertTrue(claims.allCompleted(snapshotId, List.of("NPL")));
+    }
+
+    @Test
+    void calculationWaitsForItsPrerequisites() {
+        pipeline.onECL(event(), false);
+        verify(eclService, never()).calculateECL(anyInt(), any());
+
+        pipeline.onRWA(event(), false);
+        pipeline.onECL(event(), false);
+        verify(eclService, never()).calculateECL(anyInt(), any());
+
+        pipeline.onNPL(event(), false);
+        pipeline.onECL(event(), false);
+        verify(eclService).calculateECL(anyInt(), any());
+        verify(eventPublisher).publishCalculationCompleted(snapshotId, "ECL");
+    }
+
+    @Test
+    void duplicateIsSkippedAndRedeliveryRepublishesTheCompletion() {
+        pipeline.onNPL(event(), false);
+        pipeline.onNPL(event(), false);
+
+        verify(nplService, times(1)).calculateNPL(snapshotId);
+        verify(eventPublisher, times(1)).publishCalculationCompleted(snapshotId, "NPL");
+
+        // The instance that calculated it may have died before publishing
+        pipeline.onNPL(event(), true);
+        verify(nplService, times(1)).calculateNPL(snapshotId);
+        verify(eventPublisher, times(2)).publishCalculationCompleted(snapshotId, "NPL");
+    }
+
+    @Test
+    void failedCalculationIsRequeuedThenFailsTheSnapshot() {
+        when(nplService.calculateNPL(snapshotId)).thenThrow(new IllegalStateException("boom"));
+
+        assertThrows(IllegalStateException.class, () -> pipeline.onNPL(event(), false));
+        assertEquals(RunStatus.VALIDATED, snapshot.getStatus());
+
+        assertThrows(AmqpRejectAndDontRequeueException.class, () -> pipeline.onNPL(event(), true));
+        assertEquals(RunStatus.FAILED, snapshot.getStatus());
+        verify(eventPublisher).publishCalculationFailed((long) snapshotId, "NPL", "boom");
+    }
+
+    @Test
+    void snapshotIsFinalizedAndPublishedOnce() {
+        calculateAll();
+
+        assertEquals(RunStatus.CALCULATED, snapshot.getStatus());
+        verify(snapshotRunRepository, times(1)).save(snapshot);
+        verify(eventPublisher, times(1)).publishSnapshotCompleted(snapshotId);
+
+        // Redelivered after everything was done: nothing is finalized or published again
+        pipeline.onECL(event(), true);
+        verify(snapshotRunRepository, times(1)).save(snapshot);
+        verify(eventPublisher, times(1)).publishSnapshotCompleted(snapshotId);
+    }
+
+    @Test
+    void publishingThatFailsAfterFinalizingIsRetriedOnRedelivery() {
+        doThrow(new IllegalStateException("broker down"))
+                .doNothing()
+                .when(eventPublisher).publishSnapshotCompleted(snapshotId);
+
+        assertThrows(IllegalStateException.class, this::calculateAll);
+        assertEquals(RunStatus.CALCULATED, snapshot.getStatus());
+        assertFalse(claims.allCompleted(snapshotId, List.of("PUBLISH")));
+
+        pipeline.onECL(event(), true);
+
+        verify(snapshotRunRepository, times(1)).save(snapshot);
+        verify(eventPublisher, times(2)).publishSnapshotCompleted(snapshotId);
+        assertTrue(claims.allCompleted(snapshotId, List.of("PUBLISH")));
+    }
+
+    private void calculateAll() {
+        pipeline.onRWA(event(), false);
+        pipeline.onNPL(event(), false);
+        pipeline.onLCR(event(), false);
+        pipeline.onConcentration(event(), false);
+        pipeline.onCAR(event(), false);
+        pipeline.onECL(event(), false);
+        pipeline.onSimulation(event(), false);
+    }
+
+    private Map<String, Object> event() {
+        return Map.of("snapshotId", snapshotId);
+    }
+}
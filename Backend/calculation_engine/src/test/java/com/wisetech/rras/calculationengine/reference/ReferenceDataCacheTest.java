@@ -0,0 +1,101 @@
+package com.wisetech.rras.calculationengine.reference;
+
+import com.wisetech.rras.calculationengine.enums.ReferenceDataType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReferenceDataCacheTest {
+
+    private static final LocalDate AS_OF = LocalDate.of(2025, 6, 30);
+
+    private final ReferenceDataCache cache = new ReferenceDataCache(16, 60);
+
+    /** Stands in for the source table: a correction bumps the version */
+    private final AtomicInteger sourceVersion = new AtomicInteger(1);
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Supplier<Integer> loader = () -> {
+        loads.incrementAndGet();
+        return sourceVersion.get();
+    };
+
+    @Test
+    void stepsOfOneRunShareOneLoad() {
+        assertEquals(1, cache.<Integer>get(ReferenceDataType.CAPITAL_COMPONENTS, 10, AS_OF, loader));
+        assertEquals(1, cache.<Integer>get(ReferenceDataType.CAPITAL_COMPONENTS, 10, AS_OF, loader));
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void nextRunOfTheDateReadsACorrectionMadeAfterASuccessfulRun() {
+        assertEquals(1, cache.<Integer>get(ReferenceDataType.CAPITAL_COMPONENTS, 10, AS_OF, loader));
+
+        sourceVersion.set(2);
+
+        assertEquals(2, cache.<Integer>get(ReferenceDataType.CAPITAL_COMPONENTS, 11, AS_OF, loader));
+        // The earlier run keeps the rows it calculated with
+        assertEquals(1, cache.<Integer>get(ReferenceDataType.CAPITAL_COMPONENTS, 10, AS_OF, loader));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void evictRunDropsOnlyThatRun() {
+        cache.get(ReferenceDataType.CAPITAL_COMPONENTS, 10, AS_OF, loader);
+        cache.get(ReferenceDataType.LIQUIDITY_LADDER, 10, AS_OF, loader);
+        cache.get(ReferenceDataType.CAPITAL_COMPONENTS, 11, AS_OF, loader);
+        sourceVersion.set(2);
+
+        cache.evictRun(10);
+
+        assertEquals(2, cache.<Integer>get(ReferenceDataType.CAPITAL_COMPONENTS, 10, AS_OF, loader));
+        assertEquals(1, cache.<Integer>get(ReferenceDataType.CAPITAL_COMPONENTS, 11, AS_OF, loader));
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void evictDateDropsEveryRunOfTheDate() {
+        LocalDate otherDate = AS_OF.plusDays(1);
+        cache.get(ReferenceDataType.CAPITAL_COMPONENTS, 10, AS_OF, loader);
+        cache.get(ReferenceDataType.CAPITAL_COMPONENTS, 11, AS_OF, loader);
+        cache.get(ReferenceDataType.CAPITAL_COMPONENTS, 12, otherDate, loader);
+
+        cache.evict(AS_OF);
+
+        cache.get(ReferenceDataType.CAPITAL_COMPONENTS, 10, AS_OF, loader);
+        cache.get(ReferenceDataType.CAPITAL_COMPONENTS, 11, AS_OF, loader);
+        cache.get(ReferenceDataType.CAPITAL_COMPONENTS, 12, otherDate, loader);
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    void sharedEntryServesEveryRunOfTheDateUntilTheDateIsEvicted() {
+        assertEquals(1, cache.<Integer>getShared(ReferenceDataType.LIQUIDITY_LADDER, AS_OF, loader));
+        sourceVersion.set(2);
+
+        // A later run still sees the ladder built before the correction
+        cache.evictRun(10);
+        assertEquals(1, cache.<Integer>getShared(ReferenceDataType.LIQUIDITY_LADDER, AS_OF, loader));
+        assertEquals(1, loads.get());
+
+        cache.evict(AS_OF);
+        assertEquals(2, cache.<Integer>getShared(ReferenceDataType.LIQUIDITY_LADDER, AS_OF, loader));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void evictSharedKeepsTheRunsOwnEntries() {
+        cache.get(ReferenceDataType.CAPITAL_COMPONENTS, 10, AS_OF, loader);
+        cache.getShared(ReferenceDataType.LIQUIDITY_LADDER, AS_OF, loader);
+
+        cache.evictShared(AS_OF);
+
+        cache.get(ReferenceDataType.CAPITAL_COMPONENTS, 10, AS_OF, loader);
+        cache.getShared(ReferenceDataType.LIQUIDITY_LADDER, AS_OF, loader);
+        assertEquals(3, loads.get());
+    }
+}
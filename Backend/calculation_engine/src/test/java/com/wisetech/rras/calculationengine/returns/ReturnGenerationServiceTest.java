@@ -0,0 +1,131 @@
+package com.wisetech.rras.calculationengine.returns;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wisetech.rras.calculationengine.enums.ReturnSource;
+import com.wisetech.rras.calculationengine.repository.CalculationAuditRepository;
+import com.wisetech.rras.calculationengine.returns.ReturnGenerationService.GeneratedSchedule;
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties.ReturnColumn;
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties.ReturnSchedule;
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties.ReturnTemplate;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * The metrics a return carries, read from an embedded PostgreSQL
+ */
+class ReturnGenerationServiceTest {
+
+    private static EmbeddedPostgres postgres;
+    private static DataSource dataSource;
+    private static int snapshotId;
+
+    @TempDir
+    Path outputDir;
+
+    @BeforeAll
+    static void database() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        dataSource = postgres.getPostgresDatabase();
+        new ResourceDatabasePopulator(new ClassPathResource("db/schema.sql")).execute(dataSource);
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        snapshotId = jdbcTemplate.queryForObject("""
+                INSERT INTO snapshots.snapshot_runs (snapshot_date, calculation_type, status)
+                VALUES (DATE '2024-06-30', 'MONTHLY', 'CALCULATED')
+                RETURNING snapshot_id
+                """, Integer.class);
+        // TOTAL_RWA written twice, as by a restarted step; the second row is current
+        jdbcTemplate.update("""
+                INSERT INTO metrics.regulatory_metrics (snapshot_id, metric_code, value, unit)
+                VALUES (?, 'TOTAL_RWA', 1000, 'CURRENCY'),
+                       (?, 'CAR', 14.25, 'PERCENTAGE'),
+                       (?, 'TOTAL_RWA', 1200, 'CURRENCY'),
+                       (?, 'NPL_RATIO', 3.10, 'PERCENTAGE')
+                """, snapshotId, snapshotId, snapshotId, snapshotId);
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @Test
+    void eachMetricAppearsOnceWithItsLatestValue() throws IOException {
+        List<String> lines = render(metricsSchedule(List.of()));
+
+        assertEquals(List.of("metric_code,value", "CAR,14.2500", "NPL_RATIO,3.1000", "TOTAL_RWA,1200.0000"), lines);
+    }
+
+    @Test
+    void metricCodesAreSelectedInTheQuery() throws IOException {
+        List<String> lines = render(metricsSchedule(List.of("TOTAL_RWA", "CAR")));
+
+        assertEquals(List.of("metric_code,value", "CAR,14.2500", "TOTAL_RWA,1200.0000"), lines);
+    }
+
+    @Test
+    void metricCodesOnAComponentsScheduleAreRejected() {
+        ReturnSchedule schedule = schedule(ReturnSource.METRIC_COMPONENTS, "loan_id");
+        schedule.setMetricCodes(List.of("TOTAL_RWA"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> service(schedule).generateReturns(snapshotId));
+        assertTrue(e.getMessage().contains("metric codes"), e.getMessage());
+    }
+
+    private List<String> render(ReturnSchedule schedule) throws IOException {
+        List<GeneratedSchedule> generated = service(schedule).generateReturns(snapshotId);
+        return Files.readAllLines(Path.of(generated.getFirst().getPath()));
+    }
+
+    private ReturnGenerationService service(ReturnSchedule schedule) {
+        ReturnTemplate template = new ReturnTemplate();
+        template.setCode("PR1");
+        template.setSchedules(List.of(schedule));
+
+        ReturnTemplateProperties properties = new ReturnTemplateProperties();
+        properties.setOutputDir(outputDir.toString());
+        properties.setTemplates(List.of(template));
+
+        return new ReturnGenerationService(properties, mock(CalculationAuditRepository.class), new ObjectMapper(),
+                dataSource, new DataSourceTransactionManager(dataSource));
+    }
+
+    private static ReturnSchedule metricsSchedule(List<String> metricCodes) {
+        ReturnSchedule schedule = schedule(ReturnSource.REGULATORY_METRICS, "metric_code", "value");
+        schedule.setMetricCodes(metricCodes);
+        return schedule;
+    }
+
+    private static ReturnSchedule schedule(ReturnSource source, String... fields) {
+        ReturnSchedule schedule = new ReturnSchedule();
+        schedule.setName("schedule");
+        schedule.setSource(source);
+        for (String field : fields) {
+            ReturnColumn column = new ReturnColumn();
+            column.setField(field);
+            schedule.getColumns().add(column);
+        }
+        return schedule;
+    }
+}
@@ -0,0 +1,115 @@
+package com.wisetech.rras.calculationengine.returns;
+
+import com.wisetech.rras.calculationengine.enums.ReturnFormat;
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties.Alignment;
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties.ReturnColumn;
+import com.wisetech.rras.calculationengine.returns.ReturnTemplateProperties.ReturnSchedule;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReturnRowWriterTest {
+
+    @Test
+    void fixedWidthPadsAndAligns() throws Exception {
+        ReturnSchedule schedule = fixedWidthSchedule();
+
+        String written = write(schedule, Map.of("metric_code", "CAR", "value", "14.2500"));
+
+        assertEquals("CODE  VALUE   \nCAR    14.2500\n", written);
+    }
+
+    @Test
+    void fixedWidthRefusesAValueWiderThanItsColumn() {
+        ReturnSchedule schedule = fixedWidthSchedule();
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> write(schedule, Map.of("metric_code", "CAR", "value", "123456789.00")));
+        assertTrue(e.getMessage().contains("123456789.00"));
+    }
+
+    @Test
+    void csvQuotesDelimitersQuotesAndLineBreaks() throws Exception {
+        ReturnSchedule schedule = schedule(ReturnFormat.CSV,
+                column("metric_code", 0, Alignment.LEFT), column("unit", 0, Alignment.LEFT),
+                column("value", 0, Alignment.LEFT), column("calculated_at", 0, Alignment.LEFT));
+
+        String written = write(schedule, Map.of("metric_code", "A,B", "unit", "say \"hi\"",
+                "value", "line\r\nbreak", "calculated_at", "plain"));
+
+        assertEquals("metric_code,unit,value,calculated_at\n"
+                + "\"A,B\",\"say \"\"hi\"\"\",\"line\r\nbreak\",plain\n", written);
+    }
+
+    @Test
+    void xmlUsesHeadersAsElementNames() throws Exception {
+        ReturnSchedule schedule = schedule(ReturnFormat.XML,
+                column("metric_code", 0, Alignment.LEFT), column("value", 0, Alignment.LEFT));
+        schedule.getColumns().get(1).setHeader("Amount");
+        schedule.setRecordElement("metric");
+
+        String written = write(schedule, Map.of("metric_code", "CAR & co"));
+
+        assertTrue(written.contains("<return code=\"CBL1\" schedule=\"test\" snapshotId=\"7\">"), written);
+        assertTrue(written.contains("<metric><metric_code>CAR &amp; co</metric_code><Amount/></metric>"), written);
+    }
+
+    @Test
+    void xmlRefusesHeadersThatAreNotElementNames() {
+        for (String header : List.of("Exposure Amount", "1st", "xmlValue", "a<b")) {
+            ReturnSchedule schedule = schedule(ReturnFormat.XML, column("value", 0, Alignment.LEFT));
+            schedule.getColumns().getFirst().setHeader(header);
+
+            assertThrows(IllegalArgumentException.class, () -> write(schedule, Map.of()), header);
+        }
+    }
+
+    private static String write(ReturnSchedule schedule, Map<String, String> row) throws IOException, SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString(anyString())).thenAnswer(invocation -> row.get(invocation.<String>getArgument(0)));
+
+        StringWriter out = new StringWriter();
+        ReturnRowWriter writer = ReturnRowWriter.create("CBL1", 7, schedule, out);
+        writer.begin();
+        writer.writeRow(rs);
+        writer.end();
+        return out.toString();
+    }
+
+    private static ReturnSchedule fixedWidthSchedule() {
+        ReturnSchedule schedule = schedule(ReturnFormat.FIXED_WIDTH,
+                column("metric_code", 6, Alignment.LEFT), column("value", 8, Alignment.RIGHT));
+        schedule.getColumns().get(0).setHeader("CODE");
+        schedule.getColumns().get(1).setHeader("VALUE");
+        return schedule;
+    }
+
+    private static ReturnSchedule schedule(ReturnFormat format, ReturnColumn... columns) {
+        ReturnSchedule schedule = new ReturnSchedule();
+        schedule.setName("test");
+        schedule.setFormat(format);
+        schedule.setColumns(new ArrayList<>(List.of(columns)));
+        return schedule;
+    }
+
+    private static ReturnColumn column(String field, int width, Alignment align) {
+        ReturnColumn column = new ReturnColumn();
+        column.setField(field);
+        column.setWidth(width);
+        column.setAlign(align);
+        return column;
+    }
+}
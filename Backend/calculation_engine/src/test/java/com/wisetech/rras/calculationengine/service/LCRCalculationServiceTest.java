@@ -0,0 +1,110 @@
+package com.wisetech.rras.calculationengine.service;
+
+import com.wisetech.rras.calculationengine.liquidity.LiquidityLadder;
+import com.wisetech.rras.calculationengine.reference.ReferenceDataCache;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The ladder query on known cash flows and liquidity assets: bucket edges, default
+ * run-off and inflow rates, haircuts, encumbrance and the Basel caps
+ */
+class LCRCalculationServiceTest {
+
+    private static final LocalDate AS_OF = LocalDate.of(2024, 6, 30);
+
+    private static EmbeddedPostgres postgres;
+    private static LCRCalculationService service;
+
+    @BeforeAll
+    static void loadLiquidityData() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        new ResourceDatabasePopulator(new ClassPathResource("db/schema.sql")).execute(postgres.getPostgresDatabase());
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(postgres.getPostgresDatabase());
+
+        String cashFlow = """
+                INSERT INTO cbs.cash_flows (as_of_date, flow_type, counterparty_type, expected_date,
+                                            contractual_amount, run_off_rate, inflow_rate)
+                VALUES (?, ?, ?, CAST(? AS date) + ?, ?, ?, ?)
+                """;
+        // Outflows: 50 + 200 within 30 days (day 30 included), 100 by day 60, 80 by day 90
+        jdbcTemplate.update(cashFlow, AS_OF, "OUTFLOW", "RETAIL", AS_OF, 10, 1000, 0.05, null);
+        jdbcTemplate.update(cashFlow, AS_OF, "OUTFLOW", "WHOLESALE", AS_OF, 30, 200, null, null);
+        jdbcTemplate.update(cashFlow, AS_OF, "OUTFLOW", "WHOLESALE", AS_OF, 45, 100, 1.0, null);
+        jdbcTemplate.update(cashFlow, AS_OF, "OUTFLOW", null, AS_OF, 90, 80, null, null);
+        // Outside the 90 day window, before the as-of date, or of another date
+        jdbcTemplate.update(cashFlow, AS_OF, "OUTFLOW", "RETAIL", AS_OF, 91, 5000, null, null);
+        jdbcTemplate.update(cashFlow, AS_OF, "OUTFLOW", "RETAIL", AS_OF, -1, 5000, null, null);
+        jdbcTemplate.update(cashFlow, AS_OF.minusDays(1), "OUTFLOW", "RETAIL", AS_OF, 10, 5000, null, null);
+        // Inflows: 400 at the default 50% within 30 days, 100 in full by day 90
+        jdbcTemplate.update(cashFlow, AS_OF, "INFLOW", "RETAIL", AS_OF, 5, 400, null, null);
+        jdbcTemplate.update(cashFlow, AS_OF, "INFLOW", "CORPORATE", AS_OF, 70, 100, null, 1.0);
+
+        String asset = """
+                INSERT INTO cbs.liquidity_assets (as_of_date, asset_type, hqla_level, market_value,
+                                                  haircut_percentage, is_unencumbered)
+                VALUES (?, ?, ?, ?, ?, ?)
+                """;
+        jdbcTemplate.update(asset, AS_OF, "CASH", "1", 100, 0, true);
+        jdbcTemplate.update(asset, AS_OF, "GOVT_BOND", "1", 1000, 0, false);
+        jdbcTemplate.update(asset, AS_OF, "CORP_BOND", "2A", 50, 0.15, true);
+        jdbcTemplate.update(asset, AS_OF, "EQUITY", "2B", 20, 0.50, true);
+
+        service = new LCRCalculationService(null, null, jdbcTemplate, null, new ReferenceDataCache(4, 60), null);
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @Test
+    void bucketsCashFlowsByExpectedDate() {
+        LiquidityLadder ladder = service.getLadder(AS_OF);
+
+        assertAmount("250", ladder.getOutflows(30));
+        assertAmount("350", ladder.getOutflows(60));
+        assertAmount("430", ladder.getOutflows(90));
+        assertAmount("200", ladder.getInflows(30));
+        assertAmount("200", ladder.getInflows(60));
+        assertAmount("300", ladder.getInflows(90));
+        assertAmount("-130", ladder.getGapProfile().get(90));
+    }
+
+    @Test
+    void capsInflowsAtSeventyFivePercent() {
+        LiquidityLadder ladder = service.getLadder(AS_OF);
+
+        // Inflows of 200 are capped at 0.75 x 250 = 187.50
+        assertAmount("62.50", ladder.getNetCashOutflows(30));
+    }
+
+    @Test
+    void appliesHaircutsAndSkipsEncumberedAssets() {
+        LiquidityLadder ladder = service.getLadder(AS_OF);
+
+        assertAmount("100", ladder.getLevel1());
+        assertAmount("42.50", ladder.getLevel2A());
+        assertAmount("10", ladder.getLevel2B());
+        // Level 2B 10 is under 142.50 x 15/85, Level 2 52.50 under 100 x 2/3
+        assertAmount("152.50", ladder.getHqla());
+        assertAmount("244.00", ladder.getLcr());
+    }
+
+    private static void assertAmount(String expected, BigDecimal actual) {
+        assertEquals(0, new BigDecimal(expected).compareTo(actual), () -> "expected " + expected + " but was " + actual);
+    }
+}
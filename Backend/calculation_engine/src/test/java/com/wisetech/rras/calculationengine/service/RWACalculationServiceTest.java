@@ -0,0 +1,150 @@
+package com.wisetech.rras.calculationengine.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wisetech.rras.calculationengine.context.CalculationContextRegistry;
+import com.wisetech.rras.calculationengine.domain.LoanExposureSnapshot;
+import com.wisetech.rras.calculationengine.domain.MetricComponent;
+import com.wisetech.rras.calculationengine.enums.CustomerCategory;
+import com.wisetech.rras.calculationengine.enums.PartitionedCalculation;
+import com.wisetech.rras.calculationengine.jfr.CalculationPhaseEvent;
+import com.wisetech.rras.calculationengine.metrics.CalculationMetrics;
+import com.wisetech.rras.calculationengine.metrics.CalculationTimer;
+import com.wisetech.rras.calculationengine.partition.PartitionManager;
+import com.wisetech.rras.calculationengine.repository.CalculationAuditRepository;
+import com.wisetech.rras.calculationengine.repository.LoanExposureSnapshotRepository;
+import com.wisetech.rras.calculationengine.repository.RegulatoryMetricRepository;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * calculateRWA writes its components a batch at a time as it computes them,
+ * and records a compute and a persist phase per batch. With partitioning no
+ * transaction is open while the workers are awaited.
+ */
+class RWACalculationServiceTest {
+
+    private static final int SNAPSHOT_ID = 4242;
+    private static final int LOANS = 2_500;
+
+    private final LoanExposureSnapshotRepository loanRepository = mock(LoanExposureSnapshotRepository.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final CalculationMetrics calculationMetrics = mock(CalculationMetrics.class);
+    private final RegulatoryMetricRepository metricRepository = mock(RegulatoryMetricRepository.class);
+    private final PartitionManager partitionManager = mock(PartitionManager.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private RWACalculationService service;
+
+    @BeforeEach
+    void service() {
+        service = new RWACalculationService(loanRepository, metricRepository,
+                mock(CalculationAuditRepository.class), new ObjectMapper(), new CalculationContextRegistry(),
+                calculationMetrics, jdbcTemplate, partitionManager, transactionManager);
+        ReflectionTestUtils.setField(service, "writeBatchSize", 1_000);
+        ReflectionTestUtils.setField(service, "retailOtherRW", BigDecimal.valueOf(75.0));
+
+        when(calculationMetrics.start("RWA")).thenReturn(mock(CalculationTimer.class));
+        when(loanRepository.findBySnapshotId(SNAPSHOT_ID)).thenReturn(LongStream.rangeClosed(1, LOANS)
+                .mapToObj(loanId -> LoanExposureSnapshot.builder()
+                        .snapshotId(SNAPSHOT_ID)
+                        .loanId(loanId)
+                        .customerType(CustomerCategory.RETAIL)
+                        .outstandingBalance(BigDecimal.valueOf(100))
+                        .build())
+                .toList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void writesComponentsOneBatchAtATime() {
+        BigDecimal totalRWA = service.calculateRWA(SNAPSHOT_ID);
+
+        assertEquals(0, new BigDecimal("187500").compareTo(totalRWA));
+
+        ArgumentCaptor<Collection<MetricComponent>> batches = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate, times(3)).batchUpdate(anyString(), batches.capture(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(List.of(1_000, 1_000, 500), batches.getAllValues().stream().map(Collection::size).toList());
+    }
+
+    @Test
+    void recordsComputeAndPersistAroundEachBatch(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("rwa.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(CalculationPhaseEvent.class);
+            recording.start();
+            service.calculateRWA(SNAPSHOT_ID);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<String> phases = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("com.wisetech.rras.CalculationPhase"))
+                .filter(event -> event.getInt("snapshotId") == SNAPSHOT_ID)
+                .sorted(Comparator.comparing(RecordedEvent::getStartTime))
+                .map(event -> event.getString("phase") + ":" + event.getLong("rows"))
+                .toList();
+
+        assertEquals(List.of("LOAD:2500",
+                "COMPUTE:1000", "PERSIST:1000",
+                "COMPUTE:1000", "PERSIST:1000",
+                "COMPUTE:500", "PERSIST:500",
+                "PERSIST:1", "AUDIT:1"), phases);
+    }
+
+    @Test
+    void partitionsAreAwaitedBeforeTheTotalsTransactionBegins() {
+        when(partitionManager.isEnabled()).thenReturn(true);
+        when(partitionManager.run(PartitionedCalculation.RWA, SNAPSHOT_ID)).thenReturn(Map.of(
+                "TOTAL_RWA", new BigDecimal("187500"),
+                "LOAN_COUNT", BigDecimal.valueOf(LOANS)));
+
+        BigDecimal totalRWA = service.calculateRWA(SNAPSHOT_ID);
+
+        assertEquals(0, new BigDecimal("187500").compareTo(totalRWA));
+        InOrder order = inOrder(partitionManager, transactionManager, metricRepository);
+        order.verify(partitionManager).run(PartitionedCalculation.RWA, SNAPSHOT_ID);
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(metricRepository).save(any());
+        order.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void declinedClaimWritesNothing() {
+        Optional<BigDecimal> totalRWA = service.calculateRWA(SNAPSHOT_ID, () -> false);
+
+        assertFalse(totalRWA.isPresent());
+        verify(loanRepository, never()).findBySnapshotId(anyInt());
+        verify(metricRepository, never()).save(any());
+    }
+}
@@ -0,0 +1,177 @@
+package com.wisetech.rras.calculationengine.simulation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wisetech.rras.calculationengine.domain.RegulatoryMetric;
+import com.wisetech.rras.calculationengine.domain.SnapshotRun;
+import com.wisetech.rras.calculationengine.enums.RunStatus;
+import com.wisetech.rras.calculationengine.repository.CalculationAuditRepository;
+import com.wisetech.rras.calculationengine.repository.RegulatoryMetricRepository;
+import com.wisetech.rras.calculationengine.repository.SnapshotRunRepository;
+import com.wisetech.rras.calculationengine.service.ECLCalculationService;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CreditLossSimulationServiceTest {
+
+    private static final int TRIALS = 20_000;
+
+    private static EmbeddedPostgres postgres;
+    private static DataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+    private static int snapshotId;
+
+    private final SnapshotRunRepository snapshotRunRepository = mock(SnapshotRunRepository.class);
+    private final RegulatoryMetricRepository regulatoryMetricRepository = mock(RegulatoryMetricRepository.class);
+    private CreditLossSimulationService service;
+
+    @BeforeAll
+    static void loadPortfolio() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        dataSource = postgres.getPostgresDatabase();
+        new ResourceDatabasePopulator(new ClassPathResource("db/schema.sql")).execute(dataSource);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        snapshotId = jdbcTemplate.queryForObject("""
+                INSERT INTO snapshots.snapshot_runs (snapshot_date, calculation_type, status)
+                VALUES (DATE '2024-06-30', 'MONTHLY', 'VALIDATED')
+                RETURNING snapshot_id
+                """, Integer.class);
+        jdbcTemplate.update("""
+                INSERT INTO snapshots.loan_exposures_snapshot
+                    (snapshot_id, loan_id, outstanding_balance, collateral_value, pd_value, days_past_due)
+                SELECT ?, g, 1000 + g % 5000, CASE WHEN g % 3 = 0 THEN 500 END,
+                       0.005 + (g % 50) / 1000.0, CASE WHEN g % 97 = 0 THEN 120 ELSE 0 END
+                FROM generate_series(1, 5000) g
+                """, snapshotId);
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @BeforeEach
+    void createService() {
+        jdbcTemplate.update("UPDATE snapshots.snapshot_runs SET status = 'VALIDATED' WHERE snapshot_id = ?", snapshotId);
+        jdbcTemplate.update("DELETE FROM metrics.regulatory_metrics WHERE snapshot_id = ?", snapshotId);
+        when(snapshotRunRepository.findById(snapshotId)).thenReturn(Optional.of(
+                SnapshotRun.builder().snapshotId(snapshotId).status(RunStatus.VALIDATED).build()));
+
+        // Saves go to the database, in the simulation's transaction
+        when(regulatoryMetricRepository.save(any())).thenAnswer(invocation -> {
+            RegulatoryMetric metric = invocation.getArgument(0);
+            jdbcTemplate.update("INSERT INTO metrics.regulatory_metrics (snapshot_id, metric_code, value, unit) VALUES (?, ?, ?, ?)",
+                    metric.getSnapshotId(), metric.getMetricCode(), metric.getValue(), metric.getUnit());
+            return metric;
+        });
+
+        service = new CreditLossSimulationService(snapshotRunRepository, regulatoryMetricRepository,
+                mock(CalculationAuditRepository.class), new ObjectMapper(),
+                new ECLCalculationService(null, null, null, null, null, null, null, null, null), dataSource,
+                new DataSourceTransactionManager(dataSource), 1000);
+        ReflectionTestUtils.setField(service, "assetCorrelation", 0.12);
+        ReflectionTestUtils.setField(service, "granularLoans", 100);
+        ReflectionTestUtils.setField(service, "pdBuckets", 200);
+    }
+
+    @Test
+    void sameSeedGivesSameDistribution() {
+        LossDistribution first = service.simulate(snapshotId, TRIALS, 42L);
+        LossDistribution second = service.simulate(snapshotId, TRIALS, 42L);
+
+        assertEquals(first.getExpectedLoss(), second.getExpectedLoss());
+        assertEquals(first.getP50(), second.getP50());
+        assertEquals(first.getP95(), second.getP95());
+        assertEquals(first.getP99(), second.getP99());
+        assertEquals(first.getVar999(), second.getVar999());
+        assertEquals(first.getEs999(), second.getEs999());
+        assertTrue(first.getVar999() >= first.getP99());
+    }
+
+    @Test
+    void repeatedSimulationReplacesItsMetrics() {
+        service.simulate(snapshotId, TRIALS, 1L);
+        service.simulate(snapshotId, TRIALS, 2L);
+
+        assertEquals(7, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM metrics.regulatory_metrics WHERE snapshot_id = ? AND metric_code LIKE 'MC%'",
+                Integer.class, snapshotId));
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM metrics.regulatory_metrics WHERE snapshot_id = ? AND metric_code = 'MC_VAR_999'",
+                Integer.class, snapshotId));
+    }
+
+    @Test
+    void loansAreStagedAndTakeTheirParametersAsECLDoes() {
+        int staged = jdbcTemplate.queryForObject("""
+                INSERT INTO snapshots.snapshot_runs (snapshot_date, calculation_type, status)
+                VALUES (DATE '2024-05-31', 'MONTHLY', 'VALIDATED')
+                RETURNING snapshot_id
+                """, Integer.class);
+        // Unsecured, so LGD 45%; without their own PD: stage 1, stage 2 by DPD, stage 3 as DOUBTFUL,
+        // then a stage 3 loan by DPD that keeps its own PD
+        jdbcTemplate.update("""
+                INSERT INTO snapshots.loan_exposures_snapshot
+                    (snapshot_id, loan_id, outstanding_balance, pd_value, days_past_due, asset_class)
+                VALUES (?, 1, 1000, NULL, 0, 'STANDARD'),
+                       (?, 2, 1000, NULL, 45, 'WATCH'),
+                       (?, 3, 1000, NULL, 0, 'DOUBTFUL'),
+                       (?, 4, 1000, 0.2, 120, 'DOUBTFUL')
+                """, staged, staged, staged, staged);
+        when(snapshotRunRepository.findById(staged)).thenReturn(Optional.of(
+                SnapshotRun.builder().snapshotId(staged).status(RunStatus.VALIDATED).build()));
+
+        LossDistribution distribution = service.simulate(staged, TRIALS, 42L);
+
+        // 450 x (0.01 + 0.15 + 1.00 + 0.20)
+        assertEquals(612.0, distribution.getAnalyticExpectedLoss(), 1e-6);
+    }
+
+    @Test
+    void declinedClaimStoresNothing() {
+        assertTrue(service.simulate(snapshotId, TRIALS, 42L, () -> false).isEmpty());
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM metrics.regulatory_metrics WHERE snapshot_id = ?", Integer.class, snapshotId));
+    }
+
+    @Test
+    void calculatedSnapshotIsNotChanged() {
+        when(snapshotRunRepository.findById(snapshotId)).thenReturn(Optional.of(
+                SnapshotRun.builder().snapshotId(snapshotId).status(RunStatus.CALCULATED).build()));
+
+        assertThrows(IllegalStateException.class, () -> service.simulate(snapshotId, TRIALS, 42L));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM metrics.regulatory_metrics WHERE snapshot_id = ?", Integer.class, snapshotId));
+    }
+
+    @Test
+    void snapshotCalculatedDuringTheSimulationIsNotChanged() {
+        // The repository still reports VALIDATED; the row locked at write time does not
+        jdbcTemplate.update("UPDATE snapshots.snapshot_runs SET status = 'CALCULATED' WHERE snapshot_id = ?", snapshotId);
+
+        assertThrows(IllegalStateException.class, () -> service.simulate(snapshotId, TRIALS, 42L));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM metrics.regulatory_metrics WHERE snapshot_id = ?", Integer.class, snapshotId));
+    }
+}
@@ -0,0 +1,136 @@
+package com.wisetech.rras.calculationengine.stress;
+
+import com.wisetech.rras.calculationengine.messaging.CalculationEventPublisher;
+import com.wisetech.rras.calculationengine.volume.VolumeBookLoader;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.parameters.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stress scenarios against a snapshot calculated by the job: with no shocks they
+ * must reproduce the metrics the calculation services stored.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.show-sql=false",
+        "scheduling.enabled=false",
+        "montecarlo.trials=20000",
+        "spring.rabbitmq.host=localhost",
+        "spring.rabbitmq.port=5672",
+        "spring.rabbitmq.username=guest",
+        "spring.rabbitmq.password=guest"
+})
+class StressTestingServiceTest {
+
+    private static final int LOANS = 2_000;
+    private static final LocalDate AS_OF = LocalDate.of(2024, 6, 30);
+
+    private static EmbeddedPostgres postgres;
+    private static Integer snapshotId;
+
+    @MockitoBean
+    private CalculationEventPublisher eventPublisher;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job regulatoryCalculationJob;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private StressTestingService stressTestingService;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        new ResourceDatabasePopulator(new ClassPathResource("db/schema.sql")).execute(postgres.getPostgresDatabase());
+
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @BeforeEach
+    void calculatedSnapshot() throws Exception {
+        if (snapshotId == null) {
+            new VolumeBookLoader(jdbcTemplate).load(LOANS, AS_OF);
+            JobExecution execution = jobLauncher.run(regulatoryCalculationJob, new JobParametersBuilder()
+                    .addString("snapshotDate", AS_OF.toString())
+                    .addString("calculationType", "MONTHLY")
+                    .addString("initiatedBy", "STRESS_TEST")
+                    .toJobParameters());
+            assertEquals(BatchStatus.COMPLETED, execution.getStatus());
+            snapshotId = execution.getExecutionContext().getInt("snapshotId");
+        }
+    }
+
+    @Test
+    void unshockedScenarioReproducesTheStoredMetrics() {
+        StressTestReport report = stressTestingService.runScenarios(snapshotId,
+                List.of(StressScenario.builder().name("NO_SHOCK").build()));
+
+        for (StressResult result : List.of(report.getBaseline(), report.getResults().getFirst())) {
+            assertEquals(storedMetric("TOTAL_RWA"), cents(result.getTotalRwa()));
+            assertEquals(storedMetric("TOTAL_ECL"), cents(result.getTotalEcl()));
+            assertEquals(storedMetric("CAR"), cents(result.getCar()));
+            assertEquals(storedMetric("NPL_AMOUNT"), cents(result.getNplAmount()));
+            assertEquals(0.0, result.getCarDelta(), 1e-9);
+        }
+    }
+
+    @Test
+    void higherCorporateWeightLowersCar() {
+        StressTestReport report = stressTestingService.runScenarios(snapshotId, List.of(
+                StressScenario.builder().name("CORP_150").riskWeights(new HashMap<>(
+                        Map.of("corporate-rw", 150.0))).build()));
+
+        StressResult shocked = report.getResults().getFirst();
+        assertTrue(shocked.getTotalRwa() > report.getBaseline().getTotalRwa());
+        assertTrue(shocked.getCarDelta() < 0);
+    }
+
+    private BigDecimal storedMetric(String code) {
+        return jdbcTemplate.queryForObject(
+                "SELECT value FROM metrics.regulatory_metrics WHERE snapshot_id = ? AND metric_code = ?",
+                BigDecimal.class, snapshotId, code).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal cents(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
+    }
+}
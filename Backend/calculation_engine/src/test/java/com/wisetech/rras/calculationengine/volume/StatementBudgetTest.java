@@ -0,0 +1,135 @@
+package com.wisetech.rras.calculationengine.volume;
+
+import com.wisetech.rras.calculationengine.messaging.CalculationEventPublisher;
+import com.wisetech.rras.calculationengine.metrics.StatementBudget;
+import com.wisetech.rras.calculationengine.service.ECLCalculationService;
+import com.wisetech.rras.calculationengine.service.NPLCalculationService;
+import com.wisetech.rras.calculationengine.service.RWACalculationService;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.parameters.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Statement budgets for the per-loan calculations on a 10,000 loan book. The
+ * budgets do not depend on the book size, so a statement per loan (an N+1)
+ * overshoots them by thousands. Runs in the default build on an embedded
+ * PostgreSQL; the volume benchmark checks the same at scale against its baseline.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.show-sql=false",
+        "scheduling.enabled=false",
+        "montecarlo.trials=20000",
+        "calculation.write-batch-size=1000",
+        "spring.rabbitmq.host=localhost",
+        "spring.rabbitmq.port=5672",
+        "spring.rabbitmq.username=guest",
+        "spring.rabbitmq.password=guest"
+})
+class StatementBudgetTest {
+
+    private static final int LOANS = 10_000;
+    private static final LocalDate AS_OF = LocalDate.of(2024, 6, 30);
+
+    private static EmbeddedPostgres postgres;
+    private static Integer snapshotId;
+
+    @MockitoBean
+    private CalculationEventPublisher eventPublisher;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job regulatoryCalculationJob;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RWACalculationService rwaService;
+
+    @Autowired
+    private NPLCalculationService nplService;
+
+    @Autowired
+    private ECLCalculationService eclService;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        new ResourceDatabasePopulator(new ClassPathResource("db/schema.sql")).execute(postgres.getPostgresDatabase());
+
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    /**
+     * One job run provides the snapshot; each test then recalculates on a clean slate
+     */
+    @BeforeEach
+    void calculatedSnapshot() throws Exception {
+        if (snapshotId == null) {
+            new VolumeBookLoader(jdbcTemplate).load(LOANS, AS_OF);
+            JobExecution execution = jobLauncher.run(regulatoryCalculationJob, new JobParametersBuilder()
+                    .addString("snapshotDate", AS_OF.toString())
+                    .addString("calculationType", "MONTHLY")
+                    .addString("initiatedBy", "STATEMENT_BUDGET")
+                    .toJobParameters());
+            assertEquals(BatchStatus.COMPLETED, execution.getStatus());
+            snapshotId = execution.getExecutionContext().getInt("snapshotId");
+        }
+        jdbcTemplate.update("DELETE FROM metrics.regulatory_metrics WHERE snapshot_id = ?", snapshotId);
+        jdbcTemplate.update("DELETE FROM metrics.metric_components WHERE snapshot_id = ?", snapshotId);
+    }
+
+    @Test
+    void rwaIsWithinBudget() {
+        StatementBudget.assertWithin(20, "calculateRWA on 10k loans", () -> rwaService.calculateRWA(snapshotId));
+    }
+
+    @Test
+    void nplIsWithinBudget() {
+        StatementBudget.assertWithin(20, "calculateNPL on 10k loans", () -> nplService.calculateNPL(snapshotId));
+    }
+
+    @Test
+    void eclIsWithinBudget() {
+        rwaService.calculateRWA(snapshotId);
+        nplService.calculateNPL(snapshotId);
+
+        StatementBudget.assertWithin(25, "calculateECL on 10k loans", () -> eclService.calculateECL(snapshotId));
+        assertEquals(
+                jdbcTemplate.queryForObject("SELECT COUNT(*) FROM snapshots.loan_exposures_snapshot WHERE snapshot_id = ?",
+                        Integer.class, snapshotId),
+                jdbcTemplate.queryForObject("SELECT COUNT(*) FROM metrics.metric_components WHERE snapshot_id = ? AND ecl_stage IS NOT NULL",
+                        Integer.class, snapshotId));
+    }
+}
@@ -0,0 +1,8 @@
+package com.wisetech.rras.calculationengine.volume;
+
+/**
+ * Cost of one step of one run. Peak heap is the sum of the heap pools' peaks
+ * while the step ran, so it includes garbage not yet collected.
+ */
+record StepMeasurement(long wallMs, long peakHeapMb, long statements) {
+}
@@ -0,0 +1,67 @@
+package com.wisetech.rras.calculationengine.volume;
+
+import com.wisetech.rras.calculationengine.metrics.JdbcActivity;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.listener.StepExecutionListener;
+import org.springframework.batch.core.step.AbstractStep;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Attaches itself to every step of the job, recording wall time, peak heap and
+ * statement count per step. Steps run one after another on the launching thread,
+ * whose statements the application DataSource already counts in {@link JdbcActivity}.
+ */
+class StepMeasurementRecorder implements StepExecutionListener, BeanPostProcessor {
+
+    private static final long MB = 1024 * 1024;
+
+    private final List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .toList();
+
+    private final Map<String, StepMeasurement> steps = new LinkedHashMap<>();
+    private long stepStartNanos;
+    private JdbcActivity.Snapshot stepStartJdbc;
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof AbstractStep step) {
+            step.registerStepExecutionListener(this);
+        }
+        return bean;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        stepStartJdbc = JdbcActivity.snapshot();
+        stepStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        long wallMs = (System.nanoTime() - stepStartNanos) / 1_000_000;
+        long statements = JdbcActivity.snapshot().since(stepStartJdbc).statements();
+        long peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+
+        steps.put(stepExecution.getStepName(), new StepMeasurement(wallMs, peakHeap / MB, statements));
+        return stepExecution.getExitStatus();
+    }
+
+    /**
+     * Measurements since the last call, in step order
+     */
+    Map<String, StepMeasurement> drain() {
+        Map<String, StepMeasurement> measured = new LinkedHashMap<>(steps);
+        steps.clear();
+        return measured;
+    }
+}
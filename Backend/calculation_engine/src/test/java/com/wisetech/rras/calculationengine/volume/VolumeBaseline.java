@@ -0,0 +1,90 @@
+package com.wisetech.rras.calculationengine.volume;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-step measurements keyed by book size, then step name, as stored in
+ * volume/baseline.json. A step regresses when its wall time exceeds the baseline
+ * by more than the tolerance (and by more than the noise floor, so 20 ms steps
+ * cannot fail the build), or when it issues more statements than the baseline.
+ * A size or step of the run that the baseline does not cover fails the gate as
+ * well, as does a baseline step the run no longer has: the baseline is then out
+ * of date and must be recorded again. Peak heap is recorded for reading, not gated.
+ */
+class VolumeBaseline {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final Map<Integer, Map<String, StepMeasurement>> steps;
+
+    VolumeBaseline(Map<Integer, Map<String, StepMeasurement>> steps) {
+        this.steps = steps;
+    }
+
+    static VolumeBaseline read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            throw new IllegalStateException("No volume baseline at " + file
+                    + "; record one on the reference machine with -Dvolume.update-baseline=true");
+        }
+        return new VolumeBaseline(MAPPER.readValue(file.toFile(),
+                new TypeReference<TreeMap<Integer, Map<String, StepMeasurement>>>() {
+                }));
+    }
+
+    void write(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        MAPPER.writeValue(file.toFile(), steps);
+    }
+
+    /**
+     * Describe every step of the given run that regressed against this baseline
+     */
+    List<String> regressions(VolumeBaseline run, double tolerancePct, long noiseFloorMs) {
+        List<String> regressions = new ArrayList<>();
+
+        run.steps.forEach((loans, measured) -> {
+            Map<String, StepMeasurement> expected = steps.get(loans);
+            if (expected == null) {
+                regressions.add(String.format("%,d loans: no baseline for this size", loans));
+                return;
+            }
+
+            expected.keySet().stream()
+                    .filter(step -> !measured.containsKey(step))
+                    .forEach(step -> regressions.add(String.format(
+                            "%,d loans, %s: in the baseline but not measured", loans, step)));
+
+            measured.forEach((step, actual) -> {
+                StepMeasurement base = expected.get(step);
+                if (base == null) {
+                    regressions.add(String.format("%,d loans, %s: no baseline for this step", loans, step));
+                    return;
+                }
+
+                long allowedMs = Math.max((long) (base.wallMs() * (1 + tolerancePct / 100.0)),
+                        base.wallMs() + noiseFloorMs);
+                if (actual.wallMs() > allowedMs) {
+                    regressions.add(String.format("%,d loans, %s: %,d ms vs baseline %,d ms (+%.0f%%, limit %.0f%%)",
+                            loans, step, actual.wallMs(), base.wallMs(),
+                            100.0 * (actual.wallMs() - base.wallMs()) / Math.max(1, base.wallMs()), tolerancePct));
+                }
+                if (actual.statements() > base.statements()) {
+                    regressions.add(String.format("%,d loans, %s: %,d statements vs baseline %,d",
+                            loans, step, actual.statements(), base.statements()));
+                }
+            });
+        });
+
+        return regressions;
+    }
+}
@@ -0,0 +1,79 @@
+package com.wisetech.rras.calculationengine.volume;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VolumeBaselineTest {
+
+    private static final VolumeBaseline BASELINE = baseline(10_000, Map.of(
+            "calculateRWA", new StepMeasurement(1_000, 200, 10),
+            "calculateNPL", new StepMeasurement(500, 100, 5)));
+
+    @Test
+    void runWithinToleranceAndBudgetPasses() {
+        VolumeBaseline run = baseline(10_000, Map.of(
+                "calculateRWA", new StepMeasurement(1_150, 400, 10),
+                "calculateNPL", new StepMeasurement(700, 100, 5)));
+
+        assertEquals(List.of(), BASELINE.regressions(run, 20, 250));
+    }
+
+    @Test
+    void slowerStepAndExtraStatementsRegress() {
+        VolumeBaseline run = baseline(10_000, Map.of(
+                "calculateRWA", new StepMeasurement(1_300, 200, 10),
+                "calculateNPL", new StepMeasurement(500, 100, 6)));
+
+        List<String> regressions = BASELINE.regressions(run, 20, 250);
+
+        assertEquals(2, regressions.size(), regressions::toString);
+        assertTrue(regressions.stream().anyMatch(r -> r.contains("calculateRWA") && r.contains("1,300 ms")));
+        assertTrue(regressions.stream().anyMatch(r -> r.contains("calculateNPL") && r.contains("6 statements")));
+    }
+
+    @Test
+    void sizeOrStepMissingFromTheBaselineFailsTheGate() {
+        Map<Integer, Map<String, StepMeasurement>> steps = new TreeMap<>();
+        steps.put(10_000, Map.of(
+                "calculateRWA", new StepMeasurement(1_000, 200, 10),
+                "calculateECL", new StepMeasurement(10, 10, 1)));
+        steps.put(100_000, Map.of("calculateRWA", new StepMeasurement(1_000, 200, 10)));
+
+        List<String> regressions = BASELINE.regressions(new VolumeBaseline(steps), 20, 250);
+
+        assertEquals(3, regressions.size(), regressions::toString);
+        assertTrue(regressions.contains("100,000 loans: no baseline for this size"));
+        assertTrue(regressions.contains("10,000 loans, calculateECL: no baseline for this step"));
+        assertTrue(regressions.contains("10,000 loans, calculateNPL: in the baseline but not measured"));
+    }
+
+    @Test
+    void missingBaselineFileIsAnError(@TempDir Path dir) {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> VolumeBaseline.read(dir.resolve("baseline.json")));
+        assertTrue(e.getMessage().contains("-Dvolume.update-baseline=true"));
+    }
+
+    @Test
+    void writtenBaselineReadsBack(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("baseline.json");
+        BASELINE.write(file);
+
+        assertEquals(List.of(), VolumeBaseline.read(file).regressions(BASELINE, 0, 0));
+    }
+
+    private static VolumeBaseline baseline(int loans, Map<String, StepMeasurement> measured) {
+        Map<Integer, Map<String, StepMeasurement>> steps = new TreeMap<>();
+        steps.put(loans, measured);
+        return new VolumeBaseline(steps);
+    }
+}
@@ -0,0 +1,163 @@
+package com.wisetech.rras.calculationengine.volume;
+
+import com.wisetech.rras.calculationengine.messaging.CalculationEventPublisher;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.parameters.JobParameters;
+import org.springframework.batch.core.job.parameters.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end volume benchmark. Provisions db/schema.sql on an embedded
+ * PostgreSQL, loads synthetic books of increasing size and runs
+ * regulatoryCalculationJob on each, recording wall time, peak heap and SQL
+ * statement count per step to target/volume/results.json.
+ *
+ * Runs in the volume profile only:
+ *   ./mvnw test -Pvolume -Dvolume.sizes=10000,100000,1000000,10000000
+ * and fails when a step regresses against src/test/resources/volume/baseline.json.
+ * -Dvolume.update-baseline=true records the run as the new baseline instead.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.show-sql=false",
+        "scheduling.enabled=false",
+        "spring.rabbitmq.host=localhost",
+        "spring.rabbitmq.port=5672",
+        "spring.rabbitmq.username=guest",
+        "spring.rabbitmq.password=guest"
+})
+class VolumeBenchmarkTest {
+
+    private static final Path BASELINE = Path.of("src/test/resources/volume/baseline.json");
+    private static final Path RESULTS = Path.of("target/volume/results.json");
+    private static final LocalDate FIRST_AS_OF = LocalDate.of(2024, 6, 30);
+
+    private static EmbeddedPostgres postgres;
+
+    @MockitoBean
+    private CalculationEventPublisher eventPublisher;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job regulatoryCalculationJob;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private StepMeasurementRecorder recorder;
+
+    @Value("${volume.sizes:10000,100000}")
+    private String sizes;
+
+    @Value("${volume.tolerance-pct:20}")
+    private double tolerancePct;
+
+    @Value("${volume.noise-floor-ms:250}")
+    private long noiseFloorMs;
+
+    @Value("${volume.update-baseline:false}")
+    private boolean updateBaseline;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        postgres = EmbeddedPostgres.builder()
+                .setServerConfig("max_wal_size", "4GB")
+                .setServerConfig("synchronous_commit", "off")
+                .start();
+        new ResourceDatabasePopulator(new ClassPathResource("db/schema.sql")).execute(postgres.getPostgresDatabase());
+
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @Test
+    void calculationJobStaysWithinBaselineAtVolume() throws Exception {
+        VolumeBookLoader loader = new VolumeBookLoader(jdbcTemplate);
+        Map<Integer, Map<String, StepMeasurement>> measured = new TreeMap<>();
+        List<String> failures = new ArrayList<>();
+        LocalDate asOf = FIRST_AS_OF;
+
+        for (int loans : Arrays.stream(sizes.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray()) {
+            loader.load(loans, asOf);
+            recorder.drain();
+
+            JobExecution execution = jobLauncher.run(regulatoryCalculationJob, parameters(asOf));
+            measured.put(loans, recorder.drain());
+
+            if (execution.getStatus() != BatchStatus.COMPLETED) {
+                failures.add(String.format("%,d loans: job %s, %s", loans, execution.getStatus(),
+                        execution.getExitStatus().getExitDescription()));
+                break;
+            }
+            // A new as-of date per size, so reference data is not served from the cache
+            asOf = asOf.plusDays(1);
+        }
+
+        VolumeBaseline run = new VolumeBaseline(measured);
+        run.write(RESULTS);
+
+        if (updateBaseline) {
+            run.write(BASELINE);
+        } else {
+            failures.addAll(VolumeBaseline.read(BASELINE).regressions(run, tolerancePct, noiseFloorMs));
+        }
+
+        assertTrue(failures.isEmpty(), String.join("\n", failures));
+    }
+
+    private static JobParameters parameters(LocalDate asOf) {
+        return new JobParametersBuilder()
+                .addString("snapshotDate", asOf.toString())
+                .addString("calculationType", "MONTHLY")
+                .addString("initiatedBy", "VOLUME_BENCHMARK")
+                .addLong("timestamp", System.currentTimeMillis())
+                .toJobParameters();
+    }
+
+    @TestConfiguration
+    static class MeasurementConfig {
+
+        @Bean
+        static StepMeasurementRecorder stepMeasurementRecorder() {
+            return new StepMeasurementRecorder();
+        }
+    }
+}
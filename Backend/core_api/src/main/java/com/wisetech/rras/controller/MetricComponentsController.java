@@ -1,7 +1,45 @@
 package com.wisetech.rras.controller;
 
-import org.springframework.web.bind.annotation.RestController;
+import com.wisetech.rras.enums.ExportFormat;
+import com.wisetech.rras.service.MetricComponentsService;
+import com.wisetech.rras.service.SnapshotCaching;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
+@RequestMapping("/api/regulatory/")
+@Slf4j
+@RequiredArgsConstructor
 public class MetricComponentsController {
+
+    private final MetricComponentsService metricComponentsService;
+    private final SnapshotCaching snapshotCaching;
+
+    /**
+     * Export all per-loan components of a snapshot as CSV or gzip'd NDJSON
+     */
+    @GetMapping("/snapshot/{snapshotId}/components/export")
+    public ResponseEntity<StreamingResponseBody> exportComponents(
+            @PathVariable int snapshotId,
+            @RequestParam(required = false, defaultValue = "CSV") ExportFormat format,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        return snapshotCaching.conditionalGet(snapshotId, ifNoneMatch, () -> {
+            String filename = "snapshot-" + snapshotId + "-components" + format.getFileExtension();
+            StreamingResponseBody body = out ->
+                    metricComponentsService.exportComponents(snapshotId, format, out);
+
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(format.getContentType()))
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                            ContentDisposition.attachment().filename(filename).build().toString())
+                    .body(body);
+        });
+    }
 }
@@ -1,21 +1,30 @@
 package com.wisetech.rras.controller;
 
 import com.wisetech.rras.enums.CalculationType;
-import com.wisetech.rras.model.metrics.RegulatoryMetric;
+import com.wisetech.rras.model.metrics.MetricHistoryPoint;
+import com.wisetech.rras.model.metrics.MetricValue;
+import com.wisetech.rras.model.snapshot.SnapshotOverview;
 import com.wisetech.rras.model.snapshot.SnapshotRun;
+import com.wisetech.rras.model.snapshot.SnapshotSummary;
 import com.wisetech.rras.repository.RegulatoryMetricRepository;
 import com.wisetech.rras.repository.SnapshotRepository;
+import com.wisetech.rras.service.SnapshotCaching;
+import com.wisetech.rras.service.SnapshotService;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/regulatory/")
@@ -25,6 +34,8 @@ public class SnapshotsController {
 
     private final SnapshotRepository snapshotRunRepository;
     private final RegulatoryMetricRepository metricRepository;
+    private final SnapshotService snapshotService;
+    private final SnapshotCaching snapshotCaching;
 
     /**
      * Get status of a specific snapshot run
@@ -40,26 +51,22 @@ public class SnapshotsController {
      * Get all snapshots for a specific date
      */
      @GetMapping("/snapshots")
-     public ResponseEntity<List<SnapshotRun>> getSnapshots(
+     public ResponseEntity<List<SnapshotSummary>> getSnapshots(
      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
 
-     List<SnapshotRun> snapshots = snapshotRunRepository.findAll()
-     .stream()
-     .filter(s -> s.getSnapshotDate().equals(date))
-     .toList();
-
-     return ResponseEntity.ok(snapshots);
+     return ResponseEntity.ok(snapshotRunRepository.findSummariesBySnapshotDate(date));
      }
 
     /**
      * Get all metrics for a snapshot
      */
      @GetMapping("/snapshot/{snapshotId}/metrics")
-     public ResponseEntity<List<RegulatoryMetric>> getSnapshotMetrics(
-     @PathVariable int snapshotId) {
+     public ResponseEntity<List<MetricValue>> getSnapshotMetrics(
+     @PathVariable int snapshotId,
+     @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
-     List<RegulatoryMetric> metrics = metricRepository.findBySnapshotId(snapshotId);
-     return ResponseEntity.ok(metrics);
+     return snapshotCaching.conditionalGet(snapshotId, ifNoneMatch,
+     () -> ResponseEntity.ok(metricRepository.findValuesBySnapshotId(snapshotId)));
      }
 
 
@@ -67,52 +74,73 @@ public class SnapshotsController {
      * Get a specific metric across time
      */
      @GetMapping("/metrics/{metricCode}/history")
-     public ResponseEntity<List<RegulatoryMetric>> getMetricHistory(
+     public ResponseEntity<List<MetricHistoryPoint>> getMetricHistory(
      @PathVariable String metricCode,
      @RequestParam(required = false, defaultValue = "10") int limit) {
 
-     List<RegulatoryMetric> metrics = metricRepository
-     .findByMetricCodeOrderBySnapshotIdDesc(metricCode)
-     .stream()
-     .limit(limit)
-     .toList();
-
+     List<MetricHistoryPoint> metrics = metricRepository.findHistory(metricCode, Limit.of(limit));
      return ResponseEntity.ok(metrics);
      }
 
+    /**
+     * Get a snapshot with its metrics, the previous snapshot's metrics and its component totals
+     */
+     @GetMapping("/snapshot/{snapshotId}/overview")
+     public ResponseEntity<Map<String, Object>> getSnapshotOverview(@PathVariable int snapshotId) {
+     return snapshotService.overview(snapshotId)
+     .map(overview -> ResponseEntity.ok(toResponse(overview)))
+     .orElse(ResponseEntity.notFound().build());
+     }
+
     /**
      * Get summary dashboard data for latest snapshot
      */
      @GetMapping("/dashboard")
      public ResponseEntity<Map<String, Object>> getDashboard() {
-     List<SnapshotRun> snapshots = snapshotRunRepository.findAll();
+     Optional<SnapshotOverview> latest = snapshotRunRepository.findLatestSummary()
+     .flatMap(summary -> snapshotService.overview(summary.snapshotId()));
 
-     if (snapshots.isEmpty()) {
+     if (latest.isEmpty()) {
      return ResponseEntity.ok(Map.of("message", "No snapshots available"));
      }
 
-     SnapshotRun latest = snapshots.stream()
-     .max((a, b) -> a.getSnapshotDate().compareTo(b.getSnapshotDate()))
-     .orElseThrow();
-
-     List<RegulatoryMetric> metrics = metricRepository.findBySnapshotId(latest.getSnapshotId());
-
-     Map<String, Object> dashboard = new HashMap<>();
-     dashboard.put("snapshotId", latest.getSnapshotId());
-     dashboard.put("snapshotDate", latest.getSnapshotDate());
-     dashboard.put("status", latest.getStatus());
-
-     Map<String, Object> metricMap = new HashMap<>();
-     for (RegulatoryMetric metric : metrics) {
-     metricMap.put(metric.getMetricCode(), Map.of(
-     "value", metric.getValue(),
-     "unit", metric.getUnit()
-     ));
+     return ResponseEntity.ok(toResponse(latest.get()));
      }
-     dashboard.put("metrics", metricMap);
 
-     return ResponseEntity.ok(dashboard);
-     }
+    private Map<String, Object> toResponse(SnapshotOverview overview) {
+        SnapshotRun snapshot = overview.snapshot();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("snapshotId", snapshot.getSnapshotId());
+        response.put("snapshotDate", snapshot.getSnapshotDate());
+        response.put("status", snapshot.getStatus());
+
+        Map<String, BigDecimal> previousValues = new HashMap<>();
+        for (MetricValue metric : overview.previousMetrics()) {
+            previousValues.put(metric.metricCode(), metric.value());
+        }
+
+        Map<String, Object> metricMap = new HashMap<>();
+        for (MetricValue metric : overview.metrics()) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("value", metric.value());
+            entry.put("unit", metric.unit());
+            BigDecimal previousValue = previousValues.get(metric.metricCode());
+            if (previousValue != null && metric.value() != null) {
+                entry.put("previousValue", previousValue);
+                entry.put("change", metric.value().subtract(previousValue));
+            }
+            metricMap.put(metric.metricCode(), entry);
+        }
+        response.put("metrics", metricMap);
+
+        if (overview.previous() != null) {
+            response.put("previousSnapshotId", overview.previous().snapshotId());
+            response.put("previousSnapshotDate", overview.previous().snapshotDate());
+        }
+        response.put("components", overview.components());
+        return response;
+    }
 
 
     @Data
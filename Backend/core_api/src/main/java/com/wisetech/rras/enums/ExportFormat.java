@@ -0,0 +1,33 @@
+package com.wisetech.rras.enums;
+
+public enum ExportFormat {
+
+    CSV("CSV", "text/csv", ".csv"),
+    NDJSON_GZIP("NDJSON_GZIP", "application/gzip", ".ndjson.gz");
+
+    private final String value;
+    private final String contentType;
+    private final String fileExtension;
+
+    ExportFormat(String value, String contentType, String fileExtension) {
+        this.value = value;
+        this.contentType = contentType;
+        this.fileExtension = fileExtension;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    public static ExportFormat fromValue(String value) {
+        return ExportFormat.valueOf(value);
+    }
+}
@@ -0,0 +1,10 @@
+package com.wisetech.rras.model.metrics;
+
+import java.math.BigDecimal;
+
+/**
+ * Loan-level components of a snapshot summed in the database; the sums are null without components
+ */
+public record ComponentTotals(Long loanCount, BigDecimal exposureAmount, BigDecimal rwaValue,
+                              BigDecimal eclAmount, BigDecimal provisionAmount) {
+}
@@ -0,0 +1,10 @@
+package com.wisetech.rras.model.metrics;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * One snapshot's value of a metric, for trend charts
+ */
+public record MetricHistoryPoint(int snapshotId, LocalDate snapshotDate, BigDecimal value, String unit) {
+}
@@ -0,0 +1,10 @@
+package com.wisetech.rras.model.metrics;
+
+import java.math.BigDecimal;
+
+/**
+ * What the dashboard and metric lists show of a metric. Selected with a JPQL
+ * constructor expression, so neither the metadata JSON nor a managed entity is loaded.
+ */
+public record MetricValue(String metricCode, BigDecimal value, String unit) {
+}
@@ -0,0 +1,15 @@
+package com.wisetech.rras.model.snapshot;
+
+import com.wisetech.rras.model.metrics.ComponentTotals;
+import com.wisetech.rras.model.metrics.MetricValue;
+
+import java.util.List;
+
+/**
+ * A snapshot with its metrics, the previous snapshot of the same type and its
+ * metrics (for deltas), and its component totals. previous is null for the first
+ * snapshot of a type.
+ */
+public record SnapshotOverview(SnapshotRun snapshot, List<MetricValue> metrics, SnapshotSummary previous,
+                               List<MetricValue> previousMetrics, ComponentTotals components) {
+}
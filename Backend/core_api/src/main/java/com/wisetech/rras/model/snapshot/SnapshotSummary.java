@@ -0,0 +1,13 @@
+package com.wisetech.rras.model.snapshot;
+
+import com.wisetech.rras.enums.CalculationType;
+import com.wisetech.rras.enums.RunStatus;
+
+import java.time.LocalDate;
+
+/**
+ * A snapshot run without its workflow timestamps, for lists and the dashboard
+ */
+public record SnapshotSummary(int snapshotId, LocalDate snapshotDate, CalculationType calculationType,
+                              RunStatus status) {
+}
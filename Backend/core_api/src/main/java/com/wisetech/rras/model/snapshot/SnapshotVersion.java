@@ -0,0 +1,10 @@
+package com.wisetech.rras.model.snapshot;
+
+import com.wisetech.rras.enums.RunStatus;
+
+/**
+ * A snapshot's status with the count and last id of its metric rows, which
+ * change whenever a metric is added to or removed from it
+ */
+public record SnapshotVersion(RunStatus status, Long metricCount, Long lastMetricId) {
+}
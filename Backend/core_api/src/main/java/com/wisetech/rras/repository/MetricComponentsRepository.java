@@ -1,7 +1,9 @@
 package com.wisetech.rras.repository;
 
+import com.wisetech.rras.model.metrics.ComponentTotals;
 import com.wisetech.rras.model.metrics.MetricComponent;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -9,4 +11,9 @@ import java.util.List;
 @Repository
 public interface MetricComponentsRepository  extends JpaRepository<MetricComponent, Long> {
     List<MetricComponent> findBySnapshotId(int snapshotId);
+
+    @Query("SELECT new com.wisetech.rras.model.metrics.ComponentTotals(COUNT(c), SUM(c.exposureAmount), " +
+            "SUM(c.rwaValue), SUM(c.eclAmount), SUM(c.provisionAmount)) " +
+            "FROM MetricComponent c WHERE c.snapshotId = :snapshotId")
+    ComponentTotals findTotalsBySnapshotId(int snapshotId);
 }
@@ -1,6 +1,9 @@
 package com.wisetech.rras.repository;
 
+import com.wisetech.rras.model.metrics.MetricHistoryPoint;
+import com.wisetech.rras.model.metrics.MetricValue;
 import com.wisetech.rras.model.metrics.RegulatoryMetric;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -14,4 +17,13 @@ public interface RegulatoryMetricRepository extends JpaRepository<RegulatoryMetr
     @Query("SELECT r FROM RegulatoryMetric r WHERE r.metricCode = :metricCode " +
             "ORDER BY r.snapshotId DESC")
     List<RegulatoryMetric> findByMetricCodeOrderBySnapshotIdDesc(String metricCode);
+
+    @Query("SELECT new com.wisetech.rras.model.metrics.MetricValue(r.metricCode, r.value, r.unit) " +
+            "FROM RegulatoryMetric r WHERE r.snapshotId = :snapshotId")
+    List<MetricValue> findValuesBySnapshotId(int snapshotId);
+
+    @Query("SELECT new com.wisetech.rras.model.metrics.MetricHistoryPoint(r.snapshotId, s.snapshotDate, r.value, r.unit) " +
+            "FROM RegulatoryMetric r JOIN SnapshotRun s ON s.snapshotId = r.snapshotId " +
+            "WHERE r.metricCode = :metricCode ORDER BY r.snapshotId DESC")
+    List<MetricHistoryPoint> findHistory(String metricCode, Limit limit);
 }
@@ -1,9 +1,38 @@
 package com.wisetech.rras.repository;
 
 import com.wisetech.rras.model.snapshot.SnapshotRun;
+import com.wisetech.rras.model.snapshot.SnapshotSummary;
+import com.wisetech.rras.model.snapshot.SnapshotVersion;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface SnapshotRepository extends JpaRepository<SnapshotRun, Integer> {
+
+    @Query("SELECT new com.wisetech.rras.model.snapshot.SnapshotSummary(s.snapshotId, s.snapshotDate, s.calculationType, s.status) " +
+            "FROM SnapshotRun s WHERE s.snapshotDate = :date ORDER BY s.snapshotId")
+    List<SnapshotSummary> findSummariesBySnapshotDate(LocalDate date);
+
+    @Query("SELECT new com.wisetech.rras.model.snapshot.SnapshotSummary(s.snapshotId, s.snapshotDate, s.calculationType, s.status) " +
+            "FROM SnapshotRun s ORDER BY s.snapshotDate DESC, s.snapshotId DESC LIMIT 1")
+    Optional<SnapshotSummary> findLatestSummary();
+
+    @Query("SELECT new com.wisetech.rras.model.snapshot.SnapshotVersion(s.status, COUNT(m), MAX(m.metricId)) " +
+            "FROM SnapshotRun s LEFT JOIN RegulatoryMetric m ON m.snapshotId = s.snapshotId " +
+            "WHERE s.snapshotId = :snapshotId GROUP BY s.status")
+    Optional<SnapshotVersion> findVersionById(int snapshotId);
+
+    /**
+     * The latest snapshot of the same calculation type dated before the given one
+     */
+    @Query("SELECT new com.wisetech.rras.model.snapshot.SnapshotSummary(s.snapshotId, s.snapshotDate, s.calculationType, s.status) " +
+            "FROM SnapshotRun s, SnapshotRun current WHERE current.snapshotId = :snapshotId " +
+            "AND s.calculationType = current.calculationType AND s.snapshotDate < current.snapshotDate " +
+            "ORDER BY s.snapshotDate DESC LIMIT 1")
+    Optional<SnapshotSummary> findPreviousSummary(int snapshotId);
 }
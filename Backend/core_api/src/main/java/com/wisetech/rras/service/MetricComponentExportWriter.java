@@ -0,0 +1,126 @@
+package com.wisetech.rras.service;
+
+import com.wisetech.rras.enums.ExportFormat;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes metric component rows straight to an output stream, one row at a time.
+ * Nothing is retained between rows, so heap use is independent of the row count.
+ */
+public class MetricComponentExportWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String CSV_HEADER =
+            "snapshot_id,loan_id,exposure_amount,risk_weight,rwa_value,ecl_amount,ecl_stage,provision_amount\n";
+
+    private final ExportFormat format;
+    private final Writer out;
+    private long rowCount;
+
+    public MetricComponentExportWriter(OutputStream target, ExportFormat format) throws IOException {
+        this.format = format;
+        OutputStream stream = format == ExportFormat.NDJSON_GZIP
+                ? new GZIPOutputStream(target, BUFFER_SIZE)
+                : target;
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        if (format == ExportFormat.CSV) {
+            out.write(CSV_HEADER);
+        }
+    }
+
+    /**
+     * Write the current row of a metric_components result set
+     */
+    public void write(ResultSet rs) throws SQLException, IOException {
+        int stage = rs.getInt("ecl_stage");
+        Integer eclStage = rs.wasNull() ? null : stage;
+
+        write(rs.getInt("snapshot_id"),
+                rs.getLong("loan_id"),
+                rs.getBigDecimal("exposure_amount"),
+                rs.getBigDecimal("risk_weight"),
+                rs.getBigDecimal("rwa_value"),
+                rs.getBigDecimal("ecl_amount"),
+                eclStage,
+                rs.getBigDecimal("provision_amount"));
+    }
+
+    public void write(int snapshotId, long loanId, BigDecimal exposureAmount, BigDecimal riskWeight,
+                      BigDecimal rwaValue, BigDecimal eclAmount, Integer eclStage,
+                      BigDecimal provisionAmount) throws IOException {
+        if (format == ExportFormat.CSV) {
+            out.write(Integer.toString(snapshotId));
+            out.write(',');
+            out.write(Long.toString(loanId));
+            out.write(',');
+            writeCsvValue(exposureAmount);
+            out.write(',');
+            writeCsvValue(riskWeight);
+            out.write(',');
+            writeCsvValue(rwaValue);
+            out.write(',');
+            writeCsvValue(eclAmount);
+            out.write(',');
+            if (eclStage != null) {
+                out.write(Integer.toString(eclStage));
+            }
+            out.write(',');
+            writeCsvValue(provisionAmount);
+        } else {
+            out.write("{\"snapshot_id\":");
+            out.write(Integer.toString(snapshotId));
+            out.write(",\"loan_id\":");
+            out.write(Long.toString(loanId));
+            out.write(",\"exposure_amount\":");
+            writeJsonValue(exposureAmount);
+            out.write(",\"risk_weight\":");
+            writeJsonValue(riskWeight);
+            out.write(",\"rwa_value\":");
+            writeJsonValue(rwaValue);
+            out.write(",\"ecl_amount\":");
+            writeJsonValue(eclAmount);
+            out.write(",\"ecl_stage\":");
+            out.write(eclStage != null ? Integer.toString(eclStage) : "null");
+            out.write(",\"provision_amount\":");
+            writeJsonValue(provisionAmount);
+            out.write('}');
+        }
+        out.write('\n');
+        rowCount++;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Flushes buffered rows and, for gzip output, writes the gzip trailer
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeCsvValue(BigDecimal value) throws IOException {
+        if (value != null) {
+            out.write(value.toPlainString());
+        }
+    }
+
+    private void writeJsonValue(BigDecimal value) throws IOException {
+        out.write(value != null ? value.toPlainString() : "null");
+    }
+}
@@ -1,7 +1,67 @@
 package com.wisetech.rras.service;
 
+import com.wisetech.rras.enums.ExportFormat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 
 @Service
+@Slf4j
 public class MetricComponentsService {
+
+    private static final String EXPORT_SQL = """
+            SELECT snapshot_id, loan_id, exposure_amount, risk_weight, rwa_value,
+                   ecl_amount, ecl_stage, provision_amount
+            FROM metrics.metric_components
+            WHERE snapshot_id = ?
+            ORDER BY loan_id
+            """;
+
+    private final JdbcTemplate exportJdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public MetricComponentsService(DataSource dataSource,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${export.components.fetch-size:5000}") int fetchSize) {
+        // A dedicated template so the fetch size only applies to exports
+        this.exportJdbcTemplate = new JdbcTemplate(dataSource);
+        this.exportJdbcTemplate.setFetchSize(fetchSize);
+
+        // PostgreSQL only uses a server-side cursor when auto-commit is off
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Stream all per-loan components of a snapshot to the given output stream.
+     * Rows are fetched through a server-side cursor and written as they arrive.
+     */
+    public long exportComponents(int snapshotId, ExportFormat format, OutputStream out) throws IOException {
+        long startTime = System.currentTimeMillis();
+
+        try (MetricComponentExportWriter writer = new MetricComponentExportWriter(out, format)) {
+            readOnlyTransaction.executeWithoutResult(status ->
+                    exportJdbcTemplate.query(EXPORT_SQL, rs -> {
+                        try {
+                            writer.write(rs);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, snapshotId));
+
+            log.info("Exported {} metric components for snapshot {} as {} in {} ms",
+                    writer.getRowCount(), snapshotId, format, System.currentTimeMillis() - startTime);
+            return writer.getRowCount();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 }
@@ -0,0 +1,136 @@
+package com.wisetech.rras.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs the independent reads of one request concurrently, each on its own
+ * virtual thread:
+ *
+ * <pre>
+ * try (ParallelReads.Scope scope = parallelReads.open()) {
+ *     Supplier&lt;List&lt;MetricValue&gt;&gt; metrics = scope.fork(() -> metricRepository.findValuesBySnapshotId(id));
+ *     Supplier&lt;ComponentTotals&gt; totals = scope.fork(() -> componentsRepository.findTotalsBySnapshotId(id));
+ *     scope.join();
+ *     ...metrics.get(), totals.get()
+ * }
+ * </pre>
+ *
+ * Every fork holds a database connection while it runs, so forks across all
+ * requests share max-connections permits, kept below the pool size so that
+ * requests reading on their own thread still get a connection. join() fails as
+ * soon as one fork fails or the timeout passes. Closing the scope interrupts
+ * forks still running or waiting for a permit, and a fork that gets its permit
+ * after the close returns it without reading, so an abandoned request takes no
+ * further connections.
+ */
+@Component
+public class ParallelReads {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore connections;
+    private final Duration timeout;
+
+    public ParallelReads(@Value("${reads.fan-out.max-connections:6}") int maxConnections,
+                         @Value("${reads.fan-out.timeout:10s}") Duration timeout) {
+        this.connections = new Semaphore(maxConnections, true);
+        this.timeout = timeout;
+    }
+
+    public Scope open() {
+        return new Scope();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public final class Scope implements AutoCloseable {
+
+        private final List<Future<?>> tasks = new ArrayList<>();
+        private final List<CompletableFuture<?>> forks = new ArrayList<>();
+        private final CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+        private volatile boolean closed;
+
+        /**
+         * Starts a read; its result is available from the returned supplier after join()
+         */
+        public <T> Supplier<T> fork(Supplier<T> read) {
+            CompletableFuture<T> fork = new CompletableFuture<>();
+            // Submitted rather than CompletableFuture.supplyAsync, whose cancel does not interrupt
+            tasks.add(executor.submit(() -> {
+                try {
+                    connections.acquire();
+                } catch (InterruptedException e) {
+                    fork.cancel(false);
+                    return;
+                }
+                try {
+                    if (closed) {
+                        fork.cancel(false);
+                        return;
+                    }
+                    fork.complete(read.get());
+                } catch (RuntimeException | Error e) {
+                    fork.completeExceptionally(e);
+                    firstFailure.completeExceptionally(e);
+                } finally {
+                    connections.release();
+                }
+            }));
+            forks.add(fork);
+            return fork::join;
+        }
+
+        /**
+         * Waits for every fork, rethrowing the first failure
+         */
+        public void join() {
+            CompletableFuture<Void> all = CompletableFuture.allOf(forks.toArray(CompletableFuture[]::new));
+            try {
+                CompletableFuture.anyOf(all, firstFailure).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw unwrap(e.getCause());
+            } catch (TimeoutException e) {
+                throw new IllegalStateException("Parallel reads did not finish within " + timeout, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for parallel reads", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            for (Future<?> task : tasks) {
+                task.cancel(true);
+            }
+        }
+
+        private RuntimeException unwrap(Throwable failure) {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause() : failure;
+            if (cause instanceof RuntimeException runtime && !(cause instanceof CancellationException)) {
+                return runtime;
+            }
+            return new IllegalStateException("Parallel read failed", cause);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.wisetech.rras.service;
+
+import com.wisetech.rras.enums.RunStatus;
+import com.wisetech.rras.model.snapshot.SnapshotVersion;
+import com.wisetech.rras.repository.SnapshotRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Conditional GETs of snapshot data. The calculation engine writes metrics only
+ * while a snapshot is VALIDATED, credit loss simulation included, so they should
+ * not change once it is CALCULATED. The ETag still does not rely on that: it is
+ * "snapshot-{id}-{status}-{metric count}-{last metric id}", so a metric row added
+ * or replaced afterwards changes it as surely as approval does. APPROVED is final:
+ * those responses are cacheable as immutable, and the ETags are remembered so that
+ * a matching If-None-Match is answered 304 without a query. For a CALCULATED
+ * snapshot the 304 costs one version lookup instead of the read and its
+ * serialization. Snapshots in any other status are read every time and carry no ETag.
+ */
+@Service
+public class SnapshotCaching {
+
+    private final SnapshotRepository snapshotRepository;
+    private final CacheControl approvedCacheControl;
+
+    /** ETags of the snapshots seen APPROVED, by id; one per run, so this stays small */
+    private final Map<Integer, String> approved = new ConcurrentHashMap<>();
+
+    public SnapshotCaching(SnapshotRepository snapshotRepository,
+                           @Value("${http-cache.approved-max-age:365d}") Duration approvedMaxAge) {
+        this.snapshotRepository = snapshotRepository;
+        this.approvedCacheControl = CacheControl.maxAge(approvedMaxAge).cachePrivate().immutable();
+    }
+
+    /**
+     * Answers 304 when ifNoneMatch matches the snapshot's ETag, 404 when the snapshot
+     * does not exist, else the read's response with the snapshot's caching headers
+     */
+    public <T> ResponseEntity<T> conditionalGet(int snapshotId, String ifNoneMatch,
+                                                Supplier<ResponseEntity<T>> read) {
+        String approvedEtag = approved.get(snapshotId);
+        if (approvedEtag != null && matches(ifNoneMatch, approvedEtag)) {
+            return notModified(approvedEtag, approvedCacheControl);
+        }
+
+        Optional<SnapshotVersion> version = snapshotRepository.findVersionById(snapshotId);
+        if (version.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        RunStatus status = version.get().status();
+        if (status != RunStatus.CALCULATED && status != RunStatus.APPROVED) {
+            return read.get();
+        }
+
+        String etag = etag(snapshotId, version.get());
+        if (status == RunStatus.APPROVED) {
+            approved.put(snapshotId, etag);
+        }
+        CacheControl cacheControl = status == RunStatus.APPROVED ? approvedCacheControl : CacheControl.noCache();
+        if (matches(ifNoneMatch, etag)) {
+            return notModified(etag, cacheControl);
+        }
+
+        ResponseEntity<T> response = read.get();
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            return response;
+        }
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .body(response.getBody());
+    }
+
+    private static <T> ResponseEntity<T> notModified(String etag, CacheControl cacheControl) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+    }
+
+    private static String etag(int snapshotId, SnapshotVersion version) {
+        Long lastMetricId = version.lastMetricId();
+        return "\"snapshot-" + snapshotId + "-" + version.status().getValue()
+                + "-" + version.metricCount() + "-" + (lastMetricId == null ? 0 : lastMetricId) + "\"";
+    }
+
+    /**
+     * Weak comparison, as If-None-Match requires; gzip compression may weaken the ETag sent
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,7 +1,55 @@
 package com.wisetech.rras.service;
 
+import com.wisetech.rras.model.metrics.ComponentTotals;
+import com.wisetech.rras.model.metrics.MetricValue;
+import com.wisetech.rras.model.snapshot.SnapshotOverview;
+import com.wisetech.rras.model.snapshot.SnapshotRun;
+import com.wisetech.rras.model.snapshot.SnapshotSummary;
+import com.wisetech.rras.repository.MetricComponentsRepository;
+import com.wisetech.rras.repository.RegulatoryMetricRepository;
+import com.wisetech.rras.repository.SnapshotRepository;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
 @Service
+@RequiredArgsConstructor
 public class SnapshotService {
+
+    private final ParallelReads parallelReads;
+    private final SnapshotRepository snapshotRepository;
+    private final RegulatoryMetricRepository metricRepository;
+    private final MetricComponentsRepository componentsRepository;
+
+    /**
+     * Reads the snapshot, its metrics, the previous snapshot with its metrics and the
+     * component totals concurrently; empty when the snapshot does not exist
+     */
+    public Optional<SnapshotOverview> overview(int snapshotId) {
+        try (ParallelReads.Scope scope = parallelReads.open()) {
+            Supplier<Optional<SnapshotRun>> snapshot = scope.fork(() -> snapshotRepository.findById(snapshotId));
+            Supplier<List<MetricValue>> metrics = scope.fork(() -> metricRepository.findValuesBySnapshotId(snapshotId));
+            Supplier<Previous> previous = scope.fork(() -> previous(snapshotId));
+            Supplier<ComponentTotals> components = scope.fork(() -> componentsRepository.findTotalsBySnapshotId(snapshotId));
+            scope.join();
+
+            return snapshot.get().map(run -> new SnapshotOverview(run, metrics.get(),
+                    previous.get().summary(), previous.get().metrics(), components.get()));
+        }
+    }
+
+    /**
+     * The previous snapshot's metrics depend on finding it first, so both run in one fork
+     */
+    private Previous previous(int snapshotId) {
+        return snapshotRepository.findPreviousSummary(snapshotId)
+                .map(summary -> new Previous(summary, metricRepository.findValuesBySnapshotId(summary.snapshotId())))
+                .orElse(new Previous(null, List.of()));
+    }
+
+    private record Previous(SnapshotSummary summary, List<MetricValue> metrics) {
+    }
 }
@@ -0,0 +1,265 @@
+package com.wisetech.rras.latency;
+
+import com.wisetech.rras.controller.SnapshotsController;
+import com.wisetech.rras.model.metrics.MetricValue;
+import com.wisetech.rras.model.metrics.RegulatoryMetric;
+import com.wisetech.rras.model.snapshot.SnapshotOverview;
+import com.wisetech.rras.model.snapshot.SnapshotRun;
+import com.wisetech.rras.model.snapshot.SnapshotSummary;
+import com.wisetech.rras.repository.MetricComponentsRepository;
+import com.wisetech.rras.repository.RegulatoryMetricRepository;
+import com.wisetech.rras.repository.SnapshotRepository;
+import com.wisetech.rras.service.SnapshotService;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * p50 / p99 latency of the dashboard and metric history reads under concurrent
+ * load, through the projections the controller uses and through the entity reads
+ * they replaced. Loads latency.snapshots snapshots of latency.metrics metrics,
+ * each with a metadata document as the calculation engine writes it, and runs
+ * latency.threads threads against each path. The snapshot overview, which the
+ * dashboard is built from, is also measured with its reads fanned out
+ * (SnapshotService) and with the same reads one after another on the request
+ * thread. Results are logged and written to target/latency/results.json; only the paths'
+ * answers are asserted, since timings depend on the machine.
+ *
+ * Runs in the latency profile only:
+ *   ./mvnw test -Platency -Dlatency.threads=32
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.show-sql=false"
+})
+class ReadLatencyBenchmarkTest {
+
+    private static final Path RESULTS = Path.of("target/latency/results.json");
+    private static final String HISTORY_METRIC = "CAR";
+
+    private static EmbeddedPostgres postgres;
+
+    @Autowired
+    private SnapshotsController controller;
+
+    @Autowired
+    private SnapshotRepository snapshotRepository;
+
+    @Autowired
+    private RegulatoryMetricRepository metricRepository;
+
+    @Autowired
+    private MetricComponentsRepository componentsRepository;
+
+    @Autowired
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${latency.snapshots:250}")
+    private int snapshots;
+
+    @Value("${latency.metrics:60}")
+    private int metrics;
+
+    @Value("${latency.threads:16}")
+    private int threads;
+
+    @Value("${latency.calls:1000}")
+    private int callsPerThread;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        new ResourceDatabasePopulator(new ClassPathResource("latency/schema.sql")).execute(postgres.getPostgresDatabase());
+
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @Test
+    void projectionsAgainstEntityReads() throws Exception {
+        load();
+
+        assertEquals(entityDashboard(), latestOnly(controller.getDashboard().getBody()));
+        assertEquals(entityHistory().stream().map(RegulatoryMetric::getValue).toList(),
+                controller.getMetricHistory(HISTORY_METRIC, 10).getBody().stream().map(p -> p.value()).toList());
+
+        int latestId = jdbcTemplate.queryForObject("SELECT MAX(snapshot_id) FROM snapshots.snapshot_runs", Integer.class);
+        assertEquals(Optional.of(sequentialOverview(latestId)), snapshotService.overview(latestId));
+
+        Map<String, long[]> results = new LinkedHashMap<>();
+        results.put("dashboard.entity", measure(this::entityDashboard));
+        results.put("dashboard.projection", measure(() -> controller.getDashboard().getBody()));
+        results.put("history.entity", measure(this::entityHistory));
+        results.put("history.projection", measure(() -> controller.getMetricHistory(HISTORY_METRIC, 10).getBody()));
+        results.put("overview.sequential", measure(() -> sequentialOverview(latestId)));
+        results.put("overview.fan-out", measure(() -> snapshotService.overview(latestId)));
+
+        StringBuilder json = new StringBuilder("{\n");
+        results.forEach((name, percentiles) -> {
+            System.out.printf("%-22s p50 %8.3f ms   p99 %8.3f ms%n", name, percentiles[0] / 1e6, percentiles[1] / 1e6);
+            json.append(String.format("  \"%s\": {\"p50_us\": %d, \"p99_us\": %d},%n",
+                    name, percentiles[0] / 1_000, percentiles[1] / 1_000));
+        });
+        json.setLength(json.length() - 2);
+        json.append("\n}\n");
+
+        Files.createDirectories(RESULTS.getParent());
+        Files.writeString(RESULTS, json);
+    }
+
+    /**
+     * The dashboard as it was built before the projections: every snapshot run and
+     * the latest snapshot's metrics as entities, metadata included
+     */
+    private Map<String, Object> entityDashboard() {
+        SnapshotRun latest = snapshotRepository.findAll().stream()
+                .max((a, b) -> a.getSnapshotDate().compareTo(b.getSnapshotDate()))
+                .orElseThrow();
+
+        Map<String, Object> dashboard = new HashMap<>();
+        dashboard.put("snapshotId", latest.getSnapshotId());
+        dashboard.put("snapshotDate", latest.getSnapshotDate());
+        dashboard.put("status", latest.getStatus());
+
+        Map<String, Object> metricMap = new HashMap<>();
+        for (RegulatoryMetric metric : metricRepository.findBySnapshotId(latest.getSnapshotId())) {
+            metricMap.put(metric.getMetricCode(), Map.of("value", metric.getValue(), "unit", metric.getUnit()));
+        }
+        dashboard.put("metrics", metricMap);
+        return dashboard;
+    }
+
+    /**
+     * The dashboard without what the entity path never read: deltas to the previous snapshot and component totals
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> latestOnly(Map<String, Object> dashboard) {
+        Map<String, Object> latest = new HashMap<>();
+        latest.put("snapshotId", dashboard.get("snapshotId"));
+        latest.put("snapshotDate", dashboard.get("snapshotDate"));
+        latest.put("status", dashboard.get("status"));
+
+        Map<String, Object> metricMap = new HashMap<>();
+        ((Map<String, Map<String, Object>>) dashboard.get("metrics")).forEach((code, metric) ->
+                metricMap.put(code, Map.of("value", metric.get("value"), "unit", metric.get("unit"))));
+        latest.put("metrics", metricMap);
+        return latest;
+    }
+
+    /**
+     * SnapshotService.overview's reads without the fan-out
+     */
+    private SnapshotOverview sequentialOverview(int snapshotId) {
+        SnapshotRun snapshot = snapshotRepository.findById(snapshotId).orElseThrow();
+        List<MetricValue> metrics = metricRepository.findValuesBySnapshotId(snapshotId);
+        Optional<SnapshotSummary> previous = snapshotRepository.findPreviousSummary(snapshotId);
+        List<MetricValue> previousMetrics = previous
+                .map(summary -> metricRepository.findValuesBySnapshotId(summary.snapshotId()))
+                .orElse(List.of());
+        return new SnapshotOverview(snapshot, metrics, previous.orElse(null), previousMetrics,
+                componentsRepository.findTotalsBySnapshotId(snapshotId));
+    }
+
+    private List<RegulatoryMetric> entityHistory() {
+        return metricRepository.findByMetricCodeOrderBySnapshotIdDesc(HISTORY_METRIC).stream().limit(10).toList();
+    }
+
+    /**
+     * p50 and p99 in nanoseconds of threads x calls concurrent calls, after a warm-up
+     */
+    private long[] measure(Callable<?> read) throws Exception {
+        for (int i = 0; i < 200; i++) {
+            read.call();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    long[] latencies = new long[callsPerThread];
+                    for (int i = 0; i < callsPerThread; i++) {
+                        long start = System.nanoTime();
+                        read.call();
+                        latencies[i] = System.nanoTime() - start;
+                    }
+                    return latencies;
+                }));
+            }
+
+            long[] all = new long[threads * callsPerThread];
+            int offset = 0;
+            for (Future<long[]> future : futures) {
+                long[] latencies = future.get();
+                System.arraycopy(latencies, 0, all, offset, latencies.length);
+                offset += latencies.length;
+            }
+            Arrays.sort(all);
+            return new long[]{all[all.length / 2], all[(int) (all.length * 0.99)]};
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void load() {
+        jdbcTemplate.update("""
+                INSERT INTO snapshots.snapshot_runs (snapshot_date, calculation_type, status, initiated_by,
+                                                     validated_at, calculated_at)
+                SELECT DATE '2020-01-01' + g, 'MONTHLY', 'CALCULATED', 'LATENCY_BENCHMARK',
+                       CURRENT_TIMESTAMP, CURRENT_TIMESTAMP
+                FROM generate_series(0, ? - 1) g
+                """, snapshots);
+
+        // Metric 0 is the history metric; metadata is about 1 KB, like the engine's calculation inputs
+        jdbcTemplate.update("""
+                INSERT INTO metrics.regulatory_metrics (snapshot_id, metric_code, value, unit, metadata)
+                SELECT s.snapshot_id,
+                       CASE WHEN m = 0 THEN ? ELSE 'METRIC_' || m END,
+                       round((random() * 1000)::numeric, 4),
+                       'PERCENTAGE',
+                       jsonb_build_object('inputs', (SELECT jsonb_agg(jsonb_build_object('component', 'C' || c,
+                                                           'amount', c * 1000.25, 'weight', 0.75))
+                                                     FROM generate_series(1, 15) c),
+                                          'rule', 'Basel III with Lesotho CBL overrides')
+                FROM snapshots.snapshot_runs s, generate_series(0, ? - 1) m
+                """, HISTORY_METRIC, metrics);
+
+        jdbcTemplate.execute("ANALYZE");
+    }
+}
@@ -0,0 +1,104 @@
+package com.wisetech.rras.service;
+
+import com.wisetech.rras.enums.ExportFormat;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs in its own surefire execution with a small fixed -Xmx (see pom.xml),
+ * so an export that buffers rows fails with an OutOfMemoryError.
+ */
+class MetricComponentExportWriterTest {
+
+    private static final int LARGE_ROW_COUNT = 2_000_000;
+
+    @Test
+    void exportsTwoMillionCsvRowsInConstantHeap() throws IOException {
+        LineCountingOutputStream sink = new LineCountingOutputStream();
+
+        long written = writeRows(sink, ExportFormat.CSV, LARGE_ROW_COUNT);
+
+        assertEquals(LARGE_ROW_COUNT, written);
+        assertEquals(LARGE_ROW_COUNT + 1, sink.lines); // header
+    }
+
+    @Test
+    void exportsTwoMillionGzipNdjsonRowsInConstantHeap() throws IOException {
+        LineCountingOutputStream sink = new LineCountingOutputStream();
+
+        long written = writeRows(sink, ExportFormat.NDJSON_GZIP, LARGE_ROW_COUNT);
+
+        assertEquals(LARGE_ROW_COUNT, written);
+    }
+
+    @Test
+    void writesCsvAndNdjsonRows() throws IOException {
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        try (MetricComponentExportWriter writer = new MetricComponentExportWriter(csv, ExportFormat.CSV)) {
+            writer.write(7, 42L, new BigDecimal("1000.00"), new BigDecimal("0.7500"),
+                    new BigDecimal("750.00"), null, null, null);
+        }
+
+        assertEquals("snapshot_id,loan_id,exposure_amount,risk_weight,rwa_value,ecl_amount,ecl_stage,provision_amount\n"
+                + "7,42,1000.00,0.7500,750.00,,,\n", csv.toString(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        try (MetricComponentExportWriter writer = new MetricComponentExportWriter(ndjson, ExportFormat.NDJSON_GZIP)) {
+            writer.write(7, 42L, new BigDecimal("1000.00"), new BigDecimal("0.7500"),
+                    new BigDecimal("750.00"), new BigDecimal("10.00"), 1, new BigDecimal("10.00"));
+        }
+
+        String json;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(ndjson.toByteArray()))) {
+            json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertEquals("{\"snapshot_id\":7,\"loan_id\":42,\"exposure_amount\":1000.00,\"risk_weight\":0.7500,"
+                + "\"rwa_value\":750.00,\"ecl_amount\":10.00,\"ecl_stage\":1,\"provision_amount\":10.00}\n", json);
+    }
+
+    private long writeRows(OutputStream sink, ExportFormat format, int rows) throws IOException {
+        BigDecimal riskWeight = new BigDecimal("0.7500");
+
+        try (MetricComponentExportWriter writer = new MetricComponentExportWriter(sink, format)) {
+            for (int i = 0; i < rows; i++) {
+                BigDecimal exposure = BigDecimal.valueOf(10_000L + i, 2);
+                writer.write(1, i, exposure, riskWeight, exposure.multiply(riskWeight),
+                        exposure.movePointLeft(2), 1 + i % 3, exposure.movePointLeft(2));
+            }
+            return writer.getRowCount();
+        }
+    }
+
+    /**
+     * Discards everything it is given, counting newline bytes on the way
+     */
+    private static class LineCountingOutputStream extends OutputStream {
+
+        private long lines;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    lines++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.wisetech.rras.service;
+
+import com.wisetech.rras.enums.ExportFormat;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The export as the controller runs it: MetricComponentsService reading through
+ * the server-side cursor of an embedded PostgreSQL. Runs in the constant-heap
+ * execution (see pom.xml), so a cursor that is not used, and fetches every row
+ * into the driver at once, fails with an OutOfMemoryError.
+ */
+class MetricComponentsServiceExportTest {
+
+    private static final int LARGE_ROW_COUNT = 2_000_000;
+
+    private static EmbeddedPostgres postgres;
+    private static MetricComponentsService service;
+
+    @BeforeAll
+    static void loadComponents() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        DataSource dataSource = postgres.getPostgresDatabase();
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE SCHEMA metrics");
+        jdbcTemplate.execute("""
+                CREATE TABLE metrics.metric_components (
+                    snapshot_id      INTEGER NOT NULL,
+                    loan_id          BIGINT NOT NULL,
+                    exposure_amount  NUMERIC(18, 2) NOT NULL,
+                    risk_weight      NUMERIC(7, 4) NOT NULL,
+                    rwa_value        NUMERIC(18, 2) NOT NULL,
+                    ecl_amount       NUMERIC(18, 2),
+                    ecl_stage        INTEGER,
+                    provision_amount NUMERIC(18, 2),
+                    PRIMARY KEY (snapshot_id, loan_id)
+                )
+                """);
+        jdbcTemplate.update("""
+                INSERT INTO metrics.metric_components
+                SELECT 1, g, 100 + g / 100.0, 0.75, (100 + g / 100.0) * 0.75, g / 10000.0, 1 + g % 3, g / 10000.0
+                FROM generate_series(1, ?) g
+                """, LARGE_ROW_COUNT);
+        jdbcTemplate.update("""
+                INSERT INTO metrics.metric_components VALUES (2, 42, 1000.00, 0.7500, 750.00, NULL, NULL, NULL)
+                """);
+
+        service = new MetricComponentsService(dataSource, new DataSourceTransactionManager(dataSource), 5000);
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @Test
+    void exportsTwoMillionCsvRowsFromTheDatabaseInConstantHeap() throws IOException {
+        LineCountingOutputStream sink = new LineCountingOutputStream();
+
+        long exported = service.exportComponents(1, ExportFormat.CSV, sink);
+
+        assertEquals(LARGE_ROW_COUNT, exported);
+        assertEquals(LARGE_ROW_COUNT + 1, sink.lines); // header
+    }
+
+    @Test
+    void exportsTwoMillionGzipNdjsonRowsFromTheDatabaseInConstantHeap() throws IOException {
+        long exported = service.exportComponents(1, ExportFormat.NDJSON_GZIP, OutputStream.nullOutputStream());
+
+        assertEquals(LARGE_ROW_COUNT, exported);
+    }
+
+    @Test
+    void exportsOnlyTheRequestedSnapshot() throws IOException {
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+
+        assertEquals(1, service.exportComponents(2, ExportFormat.CSV, csv));
+        assertEquals("snapshot_id,loan_id,exposure_amount,risk_weight,rwa_value,ecl_amount,ecl_stage,provision_amount\n"
+                + "2,42,1000.00,0.7500,750.00,,,\n", csv.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Discards everything it is given, counting newline bytes on the way
+     */
+    private static class LineCountingOutputStream extends OutputStream {
+
+        private long lines;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    lines++;
+                }
+            }
+        }
+    }
+}
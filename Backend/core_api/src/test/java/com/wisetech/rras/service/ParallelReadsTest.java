@@ -0,0 +1,124 @@
+package com.wisetech.rras.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelReadsTest {
+
+    private final CountDownLatch never = new CountDownLatch(1);
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+
+    private ParallelReads parallelReads;
+
+    @AfterEach
+    void shutdown() {
+        parallelReads.shutdown();
+    }
+
+    @Test
+    void forksRunConcurrentlyAndJoinReturnsTheirResults() {
+        parallelReads = new ParallelReads(2, Duration.ofSeconds(5));
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        try (ParallelReads.Scope scope = parallelReads.open()) {
+            Supplier<String> first = scope.fork(() -> meet(bothStarted, "first"));
+            Supplier<String> second = scope.fork(() -> meet(bothStarted, "second"));
+            scope.join();
+
+            assertEquals("first", first.get());
+            assertEquals("second", second.get());
+        }
+    }
+
+    @Test
+    void firstFailureIsRethrownWithoutWaitingForTheOtherForks() throws InterruptedException {
+        parallelReads = new ParallelReads(2, Duration.ofSeconds(30));
+
+        try (ParallelReads.Scope scope = parallelReads.open()) {
+            scope.fork(this::blockUntilInterrupted);
+            scope.fork(() -> {
+                throw new IllegalArgumentException("no such snapshot");
+            });
+
+            IllegalArgumentException e = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> assertThrows(IllegalArgumentException.class, scope::join));
+            assertEquals("no such snapshot", e.getMessage());
+        }
+
+        // Closing the scope interrupted the fork still reading
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void joinTimesOutAndCloseInterruptsTheRunningFork() throws InterruptedException {
+        parallelReads = new ParallelReads(2, Duration.ofMillis(200));
+
+        try (ParallelReads.Scope scope = parallelReads.open()) {
+            scope.fork(this::blockUntilInterrupted);
+
+            IllegalStateException e = assertThrows(IllegalStateException.class, scope::join);
+            assertTrue(e.getMessage().contains("did not finish within"), e.getMessage());
+        }
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void forkWaitingForAPermitNeverReadsOnceClosedAndPermitsAreReturned() throws InterruptedException {
+        parallelReads = new ParallelReads(1, Duration.ofMillis(200));
+        AtomicBoolean queuedRead = new AtomicBoolean();
+
+        try (ParallelReads.Scope scope = parallelReads.open()) {
+            scope.fork(this::blockUntilInterrupted);
+            scope.fork(() -> {
+                queuedRead.set(true);
+                return null;
+            });
+            assertThrows(IllegalStateException.class, scope::join);
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+
+        // The only permit is free again for the next request, and the abandoned fork did not use it
+        try (ParallelReads.Scope scope = parallelReads.open()) {
+            Supplier<String> next = scope.fork(() -> "next");
+            scope.join();
+            assertEquals("next", next.get());
+        }
+        assertFalse(queuedRead.get());
+    }
+
+    private String meet(CountDownLatch started, String result) {
+        started.countDown();
+        try {
+            // Only returns if the other fork runs at the same time
+            if (!started.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("forks did not run concurrently");
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
+
+    private Object blockUntilInterrupted() {
+        try {
+            never.await();
+            return null;
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+            throw new IllegalStateException("read interrupted", e);
+        }
+    }
+}
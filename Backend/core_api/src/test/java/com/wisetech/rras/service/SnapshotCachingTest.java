@@ -0,0 +1,101 @@
+package com.wisetech.rras.service;
+
+import com.wisetech.rras.enums.RunStatus;
+import com.wisetech.rras.model.snapshot.SnapshotVersion;
+import com.wisetech.rras.repository.SnapshotRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SnapshotCachingTest {
+
+    private final SnapshotRepository snapshotRepository = mock(SnapshotRepository.class);
+    private final SnapshotCaching caching = new SnapshotCaching(snapshotRepository, Duration.ofDays(365));
+    private final AtomicInteger reads = new AtomicInteger();
+    private final Supplier<ResponseEntity<String>> read = () -> {
+        reads.incrementAndGet();
+        return ResponseEntity.ok("metrics");
+    };
+
+    @Test
+    void approvedSnapshotIsImmutableAndRevalidatedWithoutQuery() {
+        when(snapshotRepository.findVersionById(1)).thenReturn(version(RunStatus.APPROVED, 60, 600));
+
+        ResponseEntity<String> first = caching.conditionalGet(1, null, read);
+        String etag = first.getHeaders().getETag();
+        assertEquals("\"snapshot-1-APPROVED-60-600\"", etag);
+        assertTrue(first.getHeaders().getCacheControl().contains("max-age=31536000"));
+        assertTrue(first.getHeaders().getCacheControl().contains("immutable"));
+
+        ResponseEntity<String> second = caching.conditionalGet(1, "W/" + etag, read);
+        assertEquals(HttpStatus.NOT_MODIFIED, second.getStatusCode());
+        assertNull(second.getBody());
+        assertEquals(1, reads.get());
+        verify(snapshotRepository, times(1)).findVersionById(1);
+    }
+
+    @Test
+    void calculatedSnapshotRevalidatesAgainstItsStatus() {
+        when(snapshotRepository.findVersionById(2)).thenReturn(version(RunStatus.CALCULATED, 60, 660));
+
+        ResponseEntity<String> first = caching.conditionalGet(2, null, read);
+        assertEquals("no-cache", first.getHeaders().getCacheControl());
+
+        ResponseEntity<String> unchanged = caching.conditionalGet(2, first.getHeaders().getETag(), read);
+        assertEquals(HttpStatus.NOT_MODIFIED, unchanged.getStatusCode());
+
+        when(snapshotRepository.findVersionById(2)).thenReturn(version(RunStatus.APPROVED, 60, 660));
+        ResponseEntity<String> approved = caching.conditionalGet(2, first.getHeaders().getETag(), read);
+        assertEquals(HttpStatus.OK, approved.getStatusCode());
+        assertEquals("\"snapshot-2-APPROVED-60-660\"", approved.getHeaders().getETag());
+        assertEquals(2, reads.get());
+    }
+
+    @Test
+    void metricsWrittenAfterCalculationChangeTheETag() {
+        when(snapshotRepository.findVersionById(5)).thenReturn(version(RunStatus.CALCULATED, 60, 660));
+        String etag = caching.conditionalGet(5, null, read).getHeaders().getETag();
+
+        // Same count, but replaced rows have new ids
+        when(snapshotRepository.findVersionById(5)).thenReturn(version(RunStatus.CALCULATED, 60, 720));
+        ResponseEntity<String> changed = caching.conditionalGet(5, etag, read);
+        assertEquals(HttpStatus.OK, changed.getStatusCode());
+        assertEquals("\"snapshot-5-CALCULATED-60-720\"", changed.getHeaders().getETag());
+        assertEquals(2, reads.get());
+    }
+
+    @Test
+    void snapshotStillCalculatingIsNotCached() {
+        when(snapshotRepository.findVersionById(3)).thenReturn(version(RunStatus.VALIDATED, 0, 0));
+
+        ResponseEntity<String> response = caching.conditionalGet(3, "*", read);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNull(response.getHeaders().getETag());
+        assertEquals(1, reads.get());
+    }
+
+    @Test
+    void missingSnapshotIsNotFound() {
+        when(snapshotRepository.findVersionById(4)).thenReturn(Optional.empty());
+
+        assertEquals(HttpStatus.NOT_FOUND, caching.conditionalGet(4, null, read).getStatusCode());
+        assertEquals(0, reads.get());
+    }
+
+    private static Optional<SnapshotVersion> version(RunStatus status, long metricCount, long lastMetricId) {
+        return Optional.of(new SnapshotVersion(status, metricCount, lastMetricId));
+    }
+}
@@ -0,0 +1,45 @@
+-- The tables the read endpoints use, as in calculation_engine's db/schema.sql
+
+CREATE SCHEMA IF NOT EXISTS snapshots;
+CREATE SCHEMA IF NOT EXISTS metrics;
+
+CREATE TABLE snapshots.snapshot_runs (
+    snapshot_id      SERIAL PRIMARY KEY,
+    snapshot_date    DATE NOT NULL,
+    calculation_type VARCHAR(20) NOT NULL,
+    status           VARCHAR(20) DEFAULT 'DRAFT',
+    initiated_by     VARCHAR(100),
+    created_at       TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+    validated_at     TIMESTAMP WITH TIME ZONE,
+    calculated_at    TIMESTAMP WITH TIME ZONE,
+    approved_at      TIMESTAMP WITH TIME ZONE,
+
+    CONSTRAINT unique_snapshot_date_type UNIQUE (snapshot_date, calculation_type)
+);
+
+CREATE TABLE metrics.regulatory_metrics (
+    metric_id     BIGSERIAL PRIMARY KEY,
+    snapshot_id   INTEGER NOT NULL REFERENCES snapshots.snapshot_runs(snapshot_id) ON DELETE CASCADE,
+    metric_code   VARCHAR(50) NOT NULL,
+    value         NUMERIC(20, 4) NOT NULL,
+    unit          VARCHAR(20),
+    metadata      JSONB,
+    calculated_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_metric_history ON metrics.regulatory_metrics(metric_code, snapshot_id);
+CREATE INDEX idx_metric_snapshot ON metrics.regulatory_metrics(snapshot_id) INCLUDE (metric_code, value, unit);
+
+-- Without the loan_exposures_snapshot foreign key: the benchmark loads no exposures
+CREATE TABLE metrics.metric_components (
+    snapshot_id      INTEGER NOT NULL,
+    loan_id          BIGINT NOT NULL,
+    exposure_amount  NUMERIC(18, 2) NOT NULL,
+    risk_weight      NUMERIC(7, 4) NOT NULL,
+    rwa_value        NUMERIC(18, 2) NOT NULL,
+    ecl_amount       NUMERIC(18, 2),
+    ecl_stage        INTEGER,
+    provision_amount NUMERIC(18, 2),
+
+    PRIMARY KEY (snapshot_id, loan_id)
+);
@@ -0,0 +1,25 @@
+package com.wisetech.rras.datagenerator;
+
+/**
+ * One chunk of customers with their accounts, loans and loan performance,
+ * ready to COPY in foreign key order.
+ */
+final class BookChunk {
+
+    final CopyBuffer customers;
+    final CopyBuffer accounts;
+    final CopyBuffer loans;
+    final CopyBuffer performance;
+    long outstandingCents;
+
+    BookChunk(int customerCount) {
+        this.customers = new CopyBuffer(customerCount);
+        this.accounts = new CopyBuffer(customerCount * 2);
+        this.loans = new CopyBuffer(customerCount);
+        this.performance = new CopyBuffer(customerCount);
+    }
+
+    int rows() {
+        return customers.rows() + accounts.rows() + loans.rows() + performance.rows();
+    }
+}
@@ -0,0 +1,249 @@
+package com.wisetech.rras.datagenerator;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads the generated book into cbs with COPY. Each worker owns a connection and
+ * commits one chunk per transaction (customers, accounts, loans, performance in
+ * foreign key order), generating its next chunk while the others are copying.
+ */
+final class BulkLoader {
+
+    private static final String COPY_CUSTOMERS = "COPY cbs.customers (customer_id, customer_type, country, "
+            + "country_risk_rating, internal_rating, external_rating, pd_value, lgd_value, is_financial_inst, "
+            + "is_public_sector) FROM STDIN";
+    private static final String COPY_ACCOUNTS = "COPY cbs.accounts (account_id, customer_id, account_type, "
+            + "currency, balance, available_balance, status) FROM STDIN";
+    private static final String COPY_LOANS = "COPY cbs.loans (loan_id, account_id, principal_amount, "
+            + "outstanding_balance, interest_rate, origination_date, maturity_date, original_term_months, "
+            + "remaining_term_months, collateral_value, collateral_type, product_type, loan_purpose, asset_class, "
+            + "stage) FROM STDIN";
+    private static final String COPY_PERFORMANCE = "COPY cbs.loan_performance (loan_id, days_past_due, "
+            + "last_payment_date, last_payment_amount) FROM STDIN";
+
+    private static final String[] TABLES = {
+            "cbs.customers", "cbs.accounts", "cbs.loans", "cbs.loan_performance",
+            "cbs.capital_components", "cbs.liquidity_assets"
+    };
+
+    // main.py's fixed stacks suit a book of roughly LSL 7bn; larger books keep the
+    // same mix scaled to these shares of the outstanding balance
+    private static final BigDecimal CAPITAL_TO_OUTSTANDING = new BigDecimal("0.15");
+    private static final BigDecimal HQLA_TO_OUTSTANDING = new BigDecimal("0.10");
+
+    private final GeneratorOptions options;
+
+    BulkLoader(GeneratorOptions options) {
+        this.options = options;
+    }
+
+    void run() throws Exception {
+        try (Connection admin = options.connect()) {
+            if (options.truncate()) {
+                try (Statement statement = admin.createStatement()) {
+                    statement.execute("TRUNCATE cbs.loan_performance, cbs.loans, cbs.accounts, cbs.customers RESTART IDENTITY");
+                }
+            }
+
+            ChunkGenerator.IdBase idBase = readIdBase(admin);
+            System.out.printf("Generating %,d customers in %,d chunks on %d threads (seed %d, as of %s)%n",
+                    options.customers(), options.chunkCount(), options.threads(), options.seed(), options.asOfDate());
+
+            long start = System.nanoTime();
+            LoadTotals totals = loadChunks(new ChunkGenerator(options, idBase));
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            writeReferenceData(admin, BigDecimal.valueOf(totals.outstandingCents.sum(), 2));
+            resetSequences(admin);
+            try (Statement statement = admin.createStatement()) {
+                for (String table : TABLES) {
+                    statement.execute("ANALYZE " + table);
+                }
+            }
+
+            long rows = totals.rows.sum();
+            System.out.printf("Loaded %,d rows (%,d loans) in %.1f s: %,.0f rows/s%n",
+                    rows, totals.loans.sum(), seconds, rows / seconds);
+        }
+    }
+
+    private LoadTotals loadChunks(ChunkGenerator generator) throws Exception {
+        LoadTotals totals = new LoadTotals();
+        AtomicInteger nextChunk = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean();
+        int chunkCount = options.chunkCount();
+        int reportEvery = Math.max(1, chunkCount / 10);
+
+        ExecutorService workers = Executors.newFixedThreadPool(options.threads());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < options.threads(); t++) {
+                futures.add(workers.submit(() -> {
+                    try (Connection connection = options.connect()) {
+                        connection.setAutoCommit(false);
+                        try (Statement statement = connection.createStatement()) {
+                            // a lost chunk on crash is acceptable for generated data
+                            statement.execute("SET synchronous_commit = off");
+                        }
+                        CopyManager copy = connection.unwrap(PGConnection.class).getCopyAPI();
+
+                        int chunkIndex;
+                        while (!failed.get() && (chunkIndex = nextChunk.getAndIncrement()) < chunkCount) {
+                            BookChunk chunk = generator.generate(chunkIndex);
+                            copy.copyIn(COPY_CUSTOMERS, new ByteArrayInputStream(chunk.customers.toBytes()));
+                            copy.copyIn(COPY_ACCOUNTS, new ByteArrayInputStream(chunk.accounts.toBytes()));
+                            copy.copyIn(COPY_LOANS, new ByteArrayInputStream(chunk.loans.toBytes()));
+                            copy.copyIn(COPY_PERFORMANCE, new ByteArrayInputStream(chunk.performance.toBytes()));
+                            connection.commit();
+
+                            totals.rows.add(chunk.rows());
+                            totals.loans.add(chunk.loans.rows());
+                            totals.outstandingCents.add(chunk.outstandingCents);
+                            int done = completed.incrementAndGet();
+                            if (done % reportEvery == 0 || done == chunkCount) {
+                                System.out.printf("  %,d / %,d chunks, %,d rows%n", done, chunkCount, totals.rows.sum());
+                            }
+                        }
+                    } catch (Exception e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Load failed, committed chunks stay in cbs "
+                            + "(re-run with --truncate)", e.getCause());
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        return totals;
+    }
+
+    /**
+     * Replaces the capital components and liquidity assets for the as-of date with
+     * main.py's stacks, scaled up to the generated book where it is larger.
+     */
+    private void writeReferenceData(Connection connection, BigDecimal outstanding) throws SQLException {
+        BigDecimal capitalScale = scale(outstanding.multiply(CAPITAL_TO_OUTSTANDING), LesothoDistributions.CAPITAL_STACK);
+        BigDecimal hqlaScale = scale(outstanding.multiply(HQLA_TO_OUTSTANDING), LesothoDistributions.LIQUIDITY_ASSETS);
+        Date asOfDate = Date.valueOf(options.asOfDate());
+
+        connection.setAutoCommit(false);
+        try (PreparedStatement deleteCapital = connection.prepareStatement(
+                     "DELETE FROM cbs.capital_components WHERE as_of_date = ?");
+             PreparedStatement deleteLiquidity = connection.prepareStatement(
+                     "DELETE FROM cbs.liquidity_assets WHERE as_of_date = ?");
+             PreparedStatement insertCapital = connection.prepareStatement(
+                     "INSERT INTO cbs.capital_components (as_of_date, component_type, component_name, amount, "
+                             + "currency, regulatory_adjustment) VALUES (?, ?, ?, ?, 'LSL', 0)");
+             PreparedStatement insertLiquidity = connection.prepareStatement(
+                     "INSERT INTO cbs.liquidity_assets (asset_type, currency, market_value, haircut_percentage, "
+                             + "hqla_level, is_unencumbered, as_of_date) VALUES (?, ?, ?, ?, ?, TRUE, ?)")) {
+
+            deleteCapital.setDate(1, asOfDate);
+            deleteCapital.executeUpdate();
+            deleteLiquidity.setDate(1, asOfDate);
+            deleteLiquidity.executeUpdate();
+
+            for (Object[] component : LesothoDistributions.CAPITAL_STACK) {
+                insertCapital.setDate(1, asOfDate);
+                insertCapital.setString(2, (String) component[0]);
+                insertCapital.setString(3, (String) component[1]);
+                insertCapital.setBigDecimal(4, scaled((Long) component[2], capitalScale));
+                insertCapital.addBatch();
+            }
+            insertCapital.executeBatch();
+
+            for (Object[] asset : LesothoDistributions.LIQUIDITY_ASSETS) {
+                insertLiquidity.setString(1, (String) asset[0]);
+                insertLiquidity.setString(2, (String) asset[1]);
+                insertLiquidity.setBigDecimal(3, scaled((Long) asset[2], hqlaScale));
+                insertLiquidity.setBigDecimal(4, BigDecimal.valueOf((Integer) asset[3], 4));
+                insertLiquidity.setString(5, (String) asset[4]);
+                insertLiquidity.setDate(6, asOfDate);
+                insertLiquidity.addBatch();
+            }
+            insertLiquidity.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static BigDecimal scale(BigDecimal target, Object[][] stack) {
+        long total = 0;
+        for (Object[] row : stack) {
+            total += (Long) row[2];
+        }
+        return target.divide(BigDecimal.valueOf(total), 6, RoundingMode.HALF_UP).max(BigDecimal.ONE);
+    }
+
+    private static BigDecimal scaled(long amount, BigDecimal scale) {
+        return BigDecimal.valueOf(amount).multiply(scale).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static ChunkGenerator.IdBase readIdBase(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT "
+                     + "(SELECT COALESCE(MAX(customer_id), 0) FROM cbs.customers), "
+                     + "(SELECT COALESCE(MAX(account_id), 0) FROM cbs.accounts), "
+                     + "(SELECT COALESCE(MAX(loan_id), 0) FROM cbs.loans)")) {
+            rs.next();
+            return new ChunkGenerator.IdBase(rs.getLong(1), rs.getLong(2), rs.getLong(3));
+        }
+    }
+
+    /** Explicit ids bypass the SERIAL sequences, move them past the loaded rows */
+    private static void resetSequences(Connection connection) throws SQLException {
+        String[][] serials = {
+                {"cbs.customers", "customer_id"},
+                {"cbs.accounts", "account_id"},
+                {"cbs.loans", "loan_id"}
+        };
+        try (Statement statement = connection.createStatement()) {
+            for (String[] serial : serials) {
+                statement.execute(String.format(
+                        "SELECT setval(pg_get_serial_sequence('%1$s', '%2$s'), "
+                                + "(SELECT COALESCE(MAX(%2$s), 0) + 1 FROM %1$s), false)",
+                        serial[0], serial[1]));
+            }
+        }
+    }
+
+    private static final class LoadTotals {
+        final LongAdder rows = new LongAdder();
+        final LongAdder loans = new LongAdder();
+        final LongAdder outstandingCents = new LongAdder();
+    }
+}
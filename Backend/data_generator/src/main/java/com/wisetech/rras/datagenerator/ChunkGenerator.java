@@ -0,0 +1,139 @@
+package com.wisetech.rras.datagenerator;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.SplittableRandom;
+
+import static com.wisetech.rras.datagenerator.LesothoDistributions.*;
+
+/**
+ * Generates the book a chunk at a time. Every chunk has its own random stream
+ * derived from (seed, chunk index) and its own id range, so the database ends up
+ * with the same rows whatever the thread count or the order chunks finish in.
+ *
+ * Customer n owns account ids 3n+1 .. 3n+3 (offset by the ids already in cbs),
+ * and a loan takes the id of its account.
+ */
+final class ChunkGenerator {
+
+    static final int ACCOUNT_SLOTS = 3;
+
+    private final GeneratorOptions options;
+    private final IdBase idBase;
+    private final LocalDate originationFrom;
+    private final int originationDays;
+
+    /** Highest ids already in cbs when the run starts */
+    record IdBase(long customer, long account, long loan) {
+    }
+
+    ChunkGenerator(GeneratorOptions options, IdBase idBase) {
+        this.options = options;
+        this.idBase = idBase;
+        // main.py: originated between five years and one year ago
+        this.originationFrom = options.asOfDate().minusYears(5);
+        this.originationDays = (int) ChronoUnit.DAYS.between(originationFrom, options.asOfDate().minusYears(1));
+    }
+
+    BookChunk generate(int chunkIndex) {
+        int first = chunkIndex * options.chunkSize();
+        int count = Math.min(options.chunkSize(), options.customers() - first);
+        SplittableRandom random = new SplittableRandom(chunkSeed(options.seed(), chunkIndex));
+        BookChunk chunk = new BookChunk(count);
+
+        for (int i = 0; i < count; i++) {
+            long local = first + i;
+            long customerId = idBase.customer() + local + 1;
+
+            String customerType = customerType(random);
+            boolean financial = "CORP".equals(customerType) && random.nextBoolean();
+            chunk.customers
+                    .number(customerId)
+                    .text(customerType)
+                    .text(country(random))
+                    .number(2 + random.nextInt(4))
+                    .text(pick(random, INTERNAL_RATINGS))
+                    .nullValue()
+                    .decimal(scaled(random, 0.001, 0.15, 6), 6)
+                    .decimal(scaled(random, 0.20, 0.60, 6), 6)
+                    .bool(financial)
+                    .bool(false)
+                    .endRow();
+
+            int accounts = 1 + random.nextInt(ACCOUNT_SLOTS);
+            for (int k = 0; k < accounts; k++) {
+                long slot = local * ACCOUNT_SLOTS + k + 1;
+                long accountId = idBase.account() + slot;
+                String accountType = pick(random, ACCOUNT_TYPES);
+                String currency = currency(random);
+                long balance = scaled(random, 500, 500_000, 2);
+                boolean loanAccount = "LOAN".equals(accountType);
+                if (loanAccount) {
+                    balance = 0; // disbursed through cbs.loans
+                }
+
+                chunk.accounts
+                        .number(accountId)
+                        .number(customerId)
+                        .text(accountType)
+                        .text(currency)
+                        .money(balance)
+                        .money(balance)
+                        .text("ACTIVE")
+                        .endRow();
+
+                if (loanAccount) {
+                    addLoan(chunk, random, idBase.loan() + slot, accountId);
+                }
+            }
+        }
+        return chunk;
+    }
+
+    private void addLoan(BookChunk chunk, SplittableRandom random, long loanId, long accountId) {
+        long principal = scaled(random, 10_000, 5_000_000, 2);
+        long outstanding = Math.round(principal * random.nextDouble(0.1, 1.0));
+        long rate = scaled(random, 0.09, 0.28, 4);
+        LocalDate origination = originationFrom.plusDays(random.nextInt(originationDays + 1));
+        int term = TERMS_MONTHS[random.nextInt(TERMS_MONTHS.length)];
+
+        String productType = pick(random, PRODUCT_TYPES);
+        int daysPastDue = daysPastDue(random);
+        String assetClass = assetClass(daysPastDue);
+
+        chunk.loans
+                .number(loanId)
+                .number(accountId)
+                .money(principal)
+                .money(outstanding)
+                .decimal(rate, 4)
+                .date(origination)
+                .date(origination.plusDays(term * 30L))
+                .number(term)
+                .number(Math.max(0, term - 12))
+                .money(collateralValue(productType, principal))
+                .text(collateralType(productType))
+                .text(productType)
+                .text(loanPurpose(productType))
+                .text(assetClass)
+                .number(stage(assetClass))
+                .endRow();
+
+        chunk.performance
+                .number(loanId)
+                .number(daysPastDue)
+                .date(options.asOfDate().minusDays(daysPastDue))
+                .money(Math.round((double) principal / term))
+                .endRow();
+
+        chunk.outstandingCents += outstanding;
+    }
+
+    /** Independent, well mixed seed per chunk (murmur3 finalizer) */
+    static long chunkSeed(long seed, int chunkIndex) {
+        long z = seed + (chunkIndex + 1L) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+}
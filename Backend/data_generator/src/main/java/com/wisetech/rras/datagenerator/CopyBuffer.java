@@ -0,0 +1,97 @@
+package com.wisetech.rras.datagenerator;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Rows in PostgreSQL COPY text format: tab separated, one row per line, \N for NULL.
+ * Amounts are carried as scaled longs (cents, basis points) so no BigDecimal is
+ * allocated per row. Values come from fixed vocabularies, so nothing needs escaping.
+ */
+final class CopyBuffer {
+
+    private static final long[] POWERS = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L};
+
+    private final StringBuilder text;
+    private boolean rowStarted;
+    private int rows;
+
+    CopyBuffer(int expectedRows) {
+        this.text = new StringBuilder(expectedRows * 96);
+    }
+
+    CopyBuffer text(String value) {
+        separator();
+        text.append(value);
+        return this;
+    }
+
+    CopyBuffer number(long value) {
+        separator();
+        text.append(value);
+        return this;
+    }
+
+    /** Writes value / 10^scale with exactly scale decimals, e.g. decimal(1234, 2) is 12.34 */
+    CopyBuffer decimal(long value, int scale) {
+        separator();
+        if (value < 0) {
+            text.append('-');
+            value = -value;
+        }
+        long power = POWERS[scale];
+        text.append(value / power);
+        if (scale > 0) {
+            text.append('.');
+            String fraction = Long.toString(value % power);
+            for (int i = fraction.length(); i < scale; i++) {
+                text.append('0');
+            }
+            text.append(fraction);
+        }
+        return this;
+    }
+
+    CopyBuffer money(long cents) {
+        return decimal(cents, 2);
+    }
+
+    CopyBuffer bool(boolean value) {
+        separator();
+        text.append(value ? 't' : 'f');
+        return this;
+    }
+
+    CopyBuffer date(LocalDate value) {
+        separator();
+        text.append(value);
+        return this;
+    }
+
+    CopyBuffer nullValue() {
+        separator();
+        text.append("\\N");
+        return this;
+    }
+
+    void endRow() {
+        text.append('\n');
+        rowStarted = false;
+        rows++;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    byte[] toBytes() {
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void separator() {
+        if (rowStarted) {
+            text.append('\t');
+        }
+        rowStarted = true;
+    }
+}
@@ -0,0 +1,37 @@
+package com.wisetech.rras.datagenerator;
+
+/**
+ * Synthetic data for the cbs schema, with the distributions of
+ * RealTimeDataSimulator/main.py. Load mode bulk loads a book (the same seed and
+ * customer count always load the same book, whatever the thread count); stream
+ * mode keeps mutating it at a fixed rate.
+ *
+ * <pre>
+ * java -jar target/data-generator.jar --customers=3000000 --truncate
+ * java -jar target/data-generator.jar --mode=stream --tps=500 --duration=600
+ * </pre>
+ */
+public class DataGenerator {
+
+    public static void main(String[] args) throws Exception {
+        GeneratorOptions options;
+        try {
+            options = GeneratorOptions.parse(args, System.getenv());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java -jar data-generator.jar [--mode=load|stream] [--seed=N] [--threads=N] "
+                    + "[--url=jdbc:postgresql://...] [--user=...] [--password=...]");
+            System.err.println("  load:   [--customers=N] [--chunk-size=N] [--as-of=yyyy-MM-dd] [--truncate]");
+            System.err.println("  stream: [--tps=N] [--duration=seconds, 0 = until stopped] [--skew=zipf exponent, "
+                    + "0 = uniform] [--report-every=seconds]");
+            System.exit(2);
+            return;
+        }
+
+        if (GeneratorOptions.STREAM.equals(options.mode())) {
+            new EventStream(options).run();
+        } else {
+            new BulkLoader(options).run();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.wisetech.rras.datagenerator;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.wisetech.rras.datagenerator.LesothoDistributions.*;
+
+/**
+ * Continuously mutates cbs at a fixed rate: repayments, DPD ticks, disbursements
+ * and rating changes, one transaction each. Loans are chosen with Zipf skew over
+ * a seeded shuffle of the loan ids, so a small set of hot loans sees most writes.
+ *
+ * The schedule is open loop: event i is due at start + i / tps whatever happened
+ * to earlier events, and latency is measured from when it was due. A slow
+ * database therefore shows up as growing latency instead of a quietly lower rate.
+ * Failed events are rolled back and kept out of the success latencies, in a
+ * histogram of their own, and the first few are printed with their SQL state.
+ */
+final class EventStream {
+
+    private static final String REPAY_LOAN =
+            "UPDATE cbs.loans SET outstanding_balance = GREATEST(0, outstanding_balance - ?) WHERE loan_id = ?";
+    private static final String REPAY_PERFORMANCE = "UPDATE cbs.loan_performance SET days_past_due = 0, "
+            + "last_payment_date = CURRENT_DATE, last_payment_amount = ? WHERE loan_id = ?";
+    private static final String DPD_TICK =
+            "UPDATE cbs.loan_performance SET days_past_due = days_past_due + ? WHERE loan_id = ?";
+    private static final String OPEN_ACCOUNT = "INSERT INTO cbs.accounts (customer_id, account_type, currency, "
+            + "balance, available_balance, status) SELECT a.customer_id, 'LOAN', ?, 0, 0, 'ACTIVE' "
+            + "FROM cbs.loans l JOIN cbs.accounts a ON a.account_id = l.account_id WHERE l.loan_id = ? "
+            + "RETURNING account_id";
+    private static final String DISBURSE_LOAN = "INSERT INTO cbs.loans (account_id, principal_amount, "
+            + "outstanding_balance, interest_rate, origination_date, maturity_date, original_term_months, "
+            + "remaining_term_months, collateral_value, collateral_type, product_type, loan_purpose, asset_class, "
+            + "stage) VALUES (?, ?, ?, ?, CURRENT_DATE, CURRENT_DATE + ?, ?, ?, ?, ?, ?, ?, 'STANDARD', 1) "
+            + "RETURNING loan_id";
+    private static final String NEW_PERFORMANCE = "INSERT INTO cbs.loan_performance (loan_id, days_past_due, "
+            + "last_payment_date) VALUES (?, 0, CURRENT_DATE)";
+    private static final String RERATE_CUSTOMER = "UPDATE cbs.customers c SET internal_rating = ?, pd_value = ? "
+            + "FROM cbs.accounts a JOIN cbs.loans l ON l.account_id = a.account_id "
+            + "WHERE l.loan_id = ? AND c.customer_id = a.customer_id";
+
+    /** Failures printed in full; later ones are only counted */
+    private static final int LOGGED_FAILURES = 10;
+
+    private final GeneratorOptions options;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<StreamEvent, LatencyHistogram> latencies = new EnumMap<>(StreamEvent.class);
+    private final Map<StreamEvent, LatencyHistogram> failures = new EnumMap<>(StreamEvent.class);
+    private final LatencyHistogram interval = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+
+    EventStream(GeneratorOptions options) {
+        this.options = options;
+        for (StreamEvent event : StreamEvent.values()) {
+            latencies.put(event, new LatencyHistogram());
+            failures.put(event, new LatencyHistogram());
+        }
+    }
+
+    void run() throws Exception {
+        long[] loanIds;
+        try (Connection connection = options.connect()) {
+            loanIds = hotOrder(readLoanIds(connection));
+        }
+        if (loanIds.length == 0) {
+            throw new IllegalStateException("cbs.loans is empty, load a book first");
+        }
+
+        System.out.printf("Streaming %,.0f events/s over %,d loans (skew %.2f) on %d connections%s%n",
+                options.tps(), loanIds.length, options.skew(), options.threads(),
+                options.durationSeconds() > 0 ? " for " + options.durationSeconds() + " s" : " until stopped");
+
+        long intervalNanos = (long) (1e9 / options.tps());
+        long start = System.nanoTime();
+        long end = options.durationSeconds() > 0
+                ? start + TimeUnit.SECONDS.toNanos(options.durationSeconds())
+                : Long.MAX_VALUE;
+
+        // Ctrl-C stops the workers and waits for the summary
+        CountDownLatch reported = new CountDownLatch(1);
+        Thread shutdownHook = new Thread(() -> {
+            running.set(false);
+            awaitQuietly(reported);
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(() -> report(options.reportSeconds()),
+                options.reportSeconds(), options.reportSeconds(), TimeUnit.SECONDS);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < options.threads(); t++) {
+            SplittableRandom random = new SplittableRandom(ChunkGenerator.chunkSeed(options.seed(), t));
+            Thread worker = new Thread(() -> work(random, loanIds, start, intervalNanos, end), "event-stream-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        reporter.shutdownNow();
+        summary((System.nanoTime() - start) / 1e9);
+        reported.countDown();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // already shutting down
+        }
+    }
+
+    private void work(SplittableRandom random, long[] loanIds, long start, long intervalNanos, long end) {
+        ZipfSampler zipf = options.skew() > 0 ? new ZipfSampler(loanIds.length, options.skew()) : null;
+
+        try (Connection connection = options.connect();
+             PreparedStatement repayLoan = connection.prepareStatement(REPAY_LOAN);
+             PreparedStatement repayPerformance = connection.prepareStatement(REPAY_PERFORMANCE);
+             PreparedStatement dpdTick = connection.prepareStatement(DPD_TICK);
+             PreparedStatement openAccount = connection.prepareStatement(OPEN_ACCOUNT);
+             PreparedStatement disburseLoan = connection.prepareStatement(DISBURSE_LOAN);
+             PreparedStatement newPerformance = connection.prepareStatement(NEW_PERFORMANCE);
+             PreparedStatement rerateCustomer = connection.prepareStatement(RERATE_CUSTOMER)) {
+            connection.setAutoCommit(false);
+
+            while (running.get()) {
+                long due = start + sequence.getAndIncrement() * intervalNanos;
+                if (due >= end) {
+                    break;
+                }
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+
+                StreamEvent event = StreamEvent.pick(random);
+                long loanId = loanIds[zipf != null ? zipf.sample(random) - 1 : random.nextInt(loanIds.length)];
+                try {
+                    switch (event) {
+                        case REPAYMENT -> {
+                            BigDecimal amount = BigDecimal.valueOf(scaled(random, 500, 20_000, 2), 2);
+                            repayLoan.setBigDecimal(1, amount);
+                            repayLoan.setLong(2, loanId);
+                            repayLoan.executeUpdate();
+                            repayPerformance.setBigDecimal(1, amount);
+                            repayPerformance.setLong(2, loanId);
+                            repayPerformance.executeUpdate();
+                        }
+                        case DPD_TICK -> {
+                            dpdTick.setInt(1, 1 + random.nextInt(30));
+                            dpdTick.setLong(2, loanId);
+                            dpdTick.executeUpdate();
+                        }
+                        case DISBURSEMENT -> disburse(random, loanId, openAccount, disburseLoan, newPerformance);
+                        case RATING_CHANGE -> {
+                            rerateCustomer.setString(1, pick(random, INTERNAL_RATINGS));
+                            rerateCustomer.setBigDecimal(2, BigDecimal.valueOf(scaled(random, 0.001, 0.15, 6), 6));
+                            rerateCustomer.setLong(3, loanId);
+                            rerateCustomer.executeUpdate();
+                        }
+                    }
+                    connection.commit();
+                    long micros = (System.nanoTime() - due) / 1_000;
+                    latencies.get(event).record(micros);
+                    interval.record(micros);
+                } catch (SQLException e) {
+                    connection.rollback();
+                    failures.get(event).record((System.nanoTime() - due) / 1_000);
+                    logFailure(event, loanId, e);
+                }
+            }
+        } catch (SQLException e) {
+            running.set(false);
+            throw new IllegalStateException("Event stream connection failed", e);
+        }
+    }
+
+    private static void disburse(SplittableRandom random, long borrowerLoanId, PreparedStatement openAccount,
+                                 PreparedStatement disburseLoan, PreparedStatement newPerformance) throws SQLException {
+        openAccount.setString(1, currency(random));
+        openAccount.setLong(2, borrowerLoanId);
+        long accountId;
+        try (ResultSet rs = openAccount.executeQuery()) {
+            if (!rs.next()) {
+                return; // borrower's account has gone
+            }
+            accountId = rs.getLong(1);
+        }
+
+        long principal = scaled(random, 10_000, 5_000_000, 2);
+        int term = TERMS_MONTHS[random.nextInt(TERMS_MONTHS.length)];
+        String productType = pick(random, PRODUCT_TYPES);
+
+        disburseLoan.setLong(1, accountId);
+        disburseLoan.setBigDecimal(2, BigDecimal.valueOf(principal, 2));
+        disburseLoan.setBigDecimal(3, BigDecimal.valueOf(principal, 2));
+        disburseLoan.setBigDecimal(4, BigDecimal.valueOf(scaled(random, 0.09, 0.28, 4), 4));
+        disburseLoan.setInt(5, term * 30);
+        disburseLoan.setInt(6, term);
+        disburseLoan.setInt(7, term);
+        disburseLoan.setBigDecimal(8, BigDecimal.valueOf(collateralValue(productType, principal), 2));
+        disburseLoan.setString(9, collateralType(productType));
+        disburseLoan.setString(10, productType);
+        disburseLoan.setString(11, loanPurpose(productType));
+        try (ResultSet rs = disburseLoan.executeQuery()) {
+            rs.next();
+            newPerformance.setLong(1, rs.getLong(1));
+        }
+        newPerformance.executeUpdate();
+    }
+
+    private void logFailure(StreamEvent event, long loanId, SQLException e) {
+        long failure = errors.incrementAndGet();
+        if (failure <= LOGGED_FAILURES) {
+            System.err.printf("%s on loan %d failed: [%s] %s%n", event, loanId, e.getSQLState(), e.getMessage());
+            if (failure == LOGGED_FAILURES) {
+                System.err.println("Further failures are counted, not printed");
+            }
+        }
+    }
+
+    private void report(int seconds) {
+        LatencyHistogram.Summary summary = interval.drain();
+        System.out.printf("  %,8.0f events/s  p50 %s  p99 %s  max %s  errors %,d%n",
+                (double) summary.count() / seconds, millis(summary.p50()), millis(summary.p99()),
+                millis(summary.max()), errors.get());
+    }
+
+    private void summary(double seconds) {
+        long total = 0;
+        System.out.printf("%-14s %10s %9s %9s %9s %9s %10s %9s%n",
+                "event", "count", "p50", "p95", "p99", "max", "failed", "fail p99");
+        for (StreamEvent event : StreamEvent.values()) {
+            LatencyHistogram.Summary summary = latencies.get(event).summary();
+            LatencyHistogram.Summary failed = failures.get(event).summary();
+            total += summary.count();
+            System.out.printf("%-14s %,10d %9s %9s %9s %9s %,10d %9s%n", event, summary.count(),
+                    millis(summary.p50()), millis(summary.p95()), millis(summary.p99()), millis(summary.max()),
+                    failed.count(), millis(failed.p99()));
+        }
+        System.out.printf("%,d events in %.1f s: %,.0f events/s (target %,.0f), %,d errors%n",
+                total, seconds, total / seconds, options.tps(), errors.get());
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2fms", micros / 1000.0);
+    }
+
+    private static long[] readLoanIds(Connection connection) throws SQLException {
+        connection.setAutoCommit(false); // lets the driver stream with a fetch size
+        try (Statement statement = connection.createStatement()) {
+            statement.setFetchSize(50_000);
+            long[] ids = new long[1024];
+            int count = 0;
+            try (ResultSet rs = statement.executeQuery("SELECT loan_id FROM cbs.loans ORDER BY loan_id")) {
+                while (rs.next()) {
+                    if (count == ids.length) {
+                        ids = Arrays.copyOf(ids, count * 2);
+                    }
+                    ids[count++] = rs.getLong(1);
+                }
+            }
+            connection.commit();
+            return Arrays.copyOf(ids, count);
+        }
+    }
+
+    /** Seeded shuffle, so the hot loans are spread over the book rather than the oldest ids */
+    private long[] hotOrder(long[] ids) {
+        SplittableRandom random = new SplittableRandom(options.seed());
+        for (int i = ids.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long swap = ids[i];
+            ids[i] = ids[j];
+            ids[j] = swap;
+        }
+        return ids;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.wisetech.rras.datagenerator;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Command line options. Connection settings default to the engine's
+ * DATABASE_URL / DATABASE_USER / DATABASE_PASSWORD variables.
+ *
+ * <pre>
+ * load:   --customers=1000000 --seed=20240630 --threads=8 --chunk-size=10000 --as-of=2024-06-30 --truncate
+ * stream: --mode=stream --tps=500 --duration=600 --skew=1.1 --threads=16 --report-every=10
+ * </pre>
+ */
+public record GeneratorOptions(
+        String mode,
+        String url,
+        String user,
+        String password,
+        int customers,
+        long seed,
+        int threads,
+        int chunkSize,
+        LocalDate asOfDate,
+        boolean truncate,
+        double tps,
+        int durationSeconds,
+        double skew,
+        int reportSeconds) {
+
+    public static final long DEFAULT_SEED = 20240630L;
+    public static final String LOAD = "load";
+    public static final String STREAM = "stream";
+
+    public static GeneratorOptions parse(String[] args, Map<String, String> env) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                values.put(arg.substring(2), "true");
+            } else {
+                values.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+
+        String url = values.getOrDefault("url", env.get("DATABASE_URL"));
+        if (url == null) {
+            throw new IllegalArgumentException("Set DATABASE_URL or pass --url=jdbc:postgresql://...");
+        }
+
+        GeneratorOptions options = new GeneratorOptions(
+                values.getOrDefault("mode", LOAD),
+                url,
+                values.getOrDefault("user", env.get("DATABASE_USER")),
+                values.getOrDefault("password", env.get("DATABASE_PASSWORD")),
+                Integer.parseInt(values.getOrDefault("customers", "100000")),
+                Long.parseLong(values.getOrDefault("seed", String.valueOf(DEFAULT_SEED))),
+                Integer.parseInt(values.getOrDefault("threads",
+                        String.valueOf(Math.min(8, Runtime.getRuntime().availableProcessors())))),
+                Integer.parseInt(values.getOrDefault("chunk-size", "10000")),
+                LocalDate.parse(values.getOrDefault("as-of", LocalDate.now().toString())),
+                Boolean.parseBoolean(values.getOrDefault("truncate", "false")),
+                Double.parseDouble(values.getOrDefault("tps", "100")),
+                Integer.parseInt(values.getOrDefault("duration", "60")),
+                Double.parseDouble(values.getOrDefault("skew", "1.0")),
+                Integer.parseInt(values.getOrDefault("report-every", "10")));
+
+        if (!LOAD.equals(options.mode()) && !STREAM.equals(options.mode())) {
+            throw new IllegalArgumentException("Unknown mode: " + options.mode());
+        }
+        if (options.customers() < 1 || options.threads() < 1 || options.chunkSize() < 1
+                || options.tps() <= 0 || options.reportSeconds() < 1) {
+            throw new IllegalArgumentException("customers, threads, chunk-size, tps and report-every must be positive");
+        }
+        if (options.durationSeconds() < 0 || options.skew() < 0) {
+            throw new IllegalArgumentException("duration and skew cannot be negative");
+        }
+        return options;
+    }
+
+    public Connection connect() throws SQLException {
+        Properties properties = new Properties();
+        if (user != null) {
+            properties.setProperty("user", user);
+        }
+        if (password != null) {
+            properties.setProperty("password", password);
+        }
+        return DriverManager.getConnection(url, properties);
+    }
+
+    public int chunkCount() {
+        return (customers + chunkSize - 1) / chunkSize;
+    }
+}
@@ -0,0 +1,85 @@
+package com.wisetech.rras.datagenerator;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram in microseconds with log-linear buckets: exact
+ * below 32 µs, then 32 buckets per power of two (about 3% relative error).
+ * Percentiles report the upper edge of their bucket.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /** count, percentiles and max in microseconds */
+    record Summary(long count, long p50, long p95, long p99, long max) {
+    }
+
+    void record(long micros) {
+        counts.incrementAndGet(index(Math.max(0, micros)));
+    }
+
+    Summary summary() {
+        return summarize(false);
+    }
+
+    /** Summary since the previous drain, for interval reporting */
+    Summary drain() {
+        return summarize(true);
+    }
+
+    private Summary summarize(boolean reset) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        int highest = -1;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = reset ? counts.getAndSet(i, 0) : counts.get(i);
+            count += snapshot[i];
+            if (snapshot[i] > 0) {
+                highest = i;
+            }
+        }
+        if (count == 0) {
+            return new Summary(0, 0, 0, 0, 0);
+        }
+        return new Summary(count,
+                percentile(snapshot, count, 0.50),
+                percentile(snapshot, count, 0.95),
+                percentile(snapshot, count, 0.99),
+                upperEdge(highest));
+    }
+
+    private static long percentile(long[] snapshot, long count, double quantile) {
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperEdge(i);
+            }
+        }
+        return upperEdge(snapshot.length - 1);
+    }
+
+    static int index(long micros) {
+        if (micros < SUB) {
+            return (int) micros;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = exp - SUB_BITS;
+        return (shift + 1) * SUB + (int) ((micros >>> shift) - SUB);
+    }
+
+    static long upperEdge(int index) {
+        if (index < SUB) {
+            return index;
+        }
+        int group = index / SUB;
+        long mantissa = SUB + index % SUB;
+        return ((mantissa + 1) << (group - 1)) - 1;
+    }
+}
@@ -0,0 +1,117 @@
+package com.wisetech.rras.datagenerator;
+
+import java.util.SplittableRandom;
+
+/**
+ * The distributions of RealTimeDataSimulator/main.py for a mid-sized Lesotho bank.
+ *
+ * - Customers: 80% retail, 20% corporate split evenly between CORP and SME,
+ *   half of CORP are financial institutions, 10% domiciled in South Africa
+ * - 1 - 3 accounts per customer, a third of them loan accounts, 15% in ZAR
+ * - Loans: principal LSL 10k - 5M, 10% - 100% outstanding, rate 9% - 28%,
+ *   products MORTGAGE / AUTO / PERSONAL / SME_LOAN in equal shares
+ * - 15% of loans are delinquent with 1 - 200 days past due
+ * - DPD maps to the CBL asset classes, asset class to the IFRS 9 stage
+ */
+final class LesothoDistributions {
+
+    static final String[] INTERNAL_RATINGS = {"AAA", "AA", "A", "BBB", "BB", "B", "CCC"};
+    static final String[] ACCOUNT_TYPES = {"SAVINGS", "CURRENT", "LOAN"};
+    static final String[] PRODUCT_TYPES = {"MORTGAGE", "AUTO", "PERSONAL", "SME_LOAN"};
+    static final int[] TERMS_MONTHS = {12, 24, 36, 60, 120, 240};
+
+    private static final double[] POWERS = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+
+    /** Capital stack in LSL: type, name, amount */
+    static final Object[][] CAPITAL_STACK = {
+            {"CET1", "Paid Up Ordinary Shares", 500_000_000L},
+            {"CET1", "Retained Earnings", 250_000_000L},
+            {"CET1", "Statutory Reserves", 50_000_000L},
+            {"AT1", "Perpetual Non-Cumulative Pref Shares", 100_000_000L},
+            {"T2", "Subordinated Debt", 150_000_000L},
+            {"T2", "General Provisions (Standard Assets)", 25_000_000L},
+    };
+
+    /** HQLA: asset type, currency, market value, haircut in basis points, level */
+    static final Object[][] LIQUIDITY_ASSETS = {
+            {"CENTRAL_BANK_RESERVES", "LSL", 120_000_000L, 0, "1"},
+            {"GOVT_SECURITIES", "LSL", 300_000_000L, 0, "1"},
+            {"GOVT_SECURITIES", "ZAR", 150_000_000L, 0, "1"},
+            {"CASH", "LSL", 45_000_000L, 0, "1"},
+            {"CORP_BONDS", "ZAR", 50_000_000L, 1500, "2A"},
+    };
+
+    private LesothoDistributions() {
+    }
+
+    static String customerType(SplittableRandom random) {
+        if (random.nextDouble() < 0.2) {
+            return random.nextBoolean() ? "CORP" : "SME";
+        }
+        return "RETAIL";
+    }
+
+    static String country(SplittableRandom random) {
+        return random.nextDouble() < 0.1 ? "South Africa" : "Lesotho";
+    }
+
+    static String currency(SplittableRandom random) {
+        return random.nextDouble() < 0.15 ? "ZAR" : "LSL";
+    }
+
+    static int daysPastDue(SplittableRandom random) {
+        return random.nextDouble() < 0.15 ? 1 + random.nextInt(200) : 0;
+    }
+
+    /** Mortgages are secured on property at 120% of principal, auto loans on the vehicle */
+    static long collateralValue(String productType, long principal) {
+        return switch (productType) {
+            case "MORTGAGE" -> Math.round(principal * 1.2);
+            case "AUTO" -> principal;
+            default -> 0;
+        };
+    }
+
+    static String collateralType(String productType) {
+        return switch (productType) {
+            case "MORTGAGE" -> "PROPERTY";
+            case "AUTO" -> "VEHICLE";
+            default -> "NONE";
+        };
+    }
+
+    static String loanPurpose(String productType) {
+        return switch (productType) {
+            case "MORTGAGE" -> "RESIDENTIAL";
+            case "AUTO" -> "VEHICLE_PURCHASE";
+            default -> "GENERAL_CONSUMPTION";
+        };
+    }
+
+    /** Days past due to Lesotho CBL asset classification */
+    static String assetClass(int daysPastDue) {
+        if (daysPastDue <= 30) return "STANDARD";
+        if (daysPastDue <= 60) return "WATCH";
+        if (daysPastDue <= 90) return "SUBSTANDARD";
+        if (daysPastDue <= 180) return "DOUBTFUL";
+        return "LOSS";
+    }
+
+    /** Asset classification to IFRS 9 stage */
+    static int stage(String assetClass) {
+        return switch (assetClass) {
+            case "STANDARD" -> 1;
+            case "WATCH" -> 2;
+            default -> 3;
+        };
+    }
+
+    /** Uniform draw in [min, max) scaled to an integer number of 10^-scale units */
+    static long scaled(SplittableRandom random, double min, double max, int scale) {
+        return Math.round(random.nextDouble(min, max) * POWERS[scale]);
+    }
+
+    static <T> T pick(SplittableRandom random, T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,36 @@
+package com.wisetech.rras.datagenerator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Core banking activity produced by the event stream, with its share of the
+ * transaction mix in percent.
+ */
+enum StreamEvent {
+
+    REPAYMENT(60),          // instalment paid, arrears cured
+    DPD_TICK(25),           // instalment missed, days past due grow
+    DISBURSEMENT(10),       // new loan to an existing borrower
+    RATING_CHANGE(5);       // borrower re-rated
+
+    private final int weight;
+
+    StreamEvent(int weight) {
+        this.weight = weight;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    static StreamEvent pick(SplittableRandom random) {
+        int roll = random.nextInt(100);
+        for (StreamEvent event : values()) {
+            roll -= event.weight;
+            if (roll < 0) {
+                return event;
+            }
+        }
+        return REPAYMENT;
+    }
+}
@@ -0,0 +1,96 @@
+package com.wisetech.rras.datagenerator;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkGeneratorTest {
+
+    private static final ChunkGenerator.IdBase EMPTY_CBS = new ChunkGenerator.IdBase(0, 0, 0);
+
+    @Test
+    void sameSeedGeneratesIdenticalRows() {
+        ChunkGenerator first = new ChunkGenerator(options(42), EMPTY_CBS);
+        ChunkGenerator second = new ChunkGenerator(options(42), EMPTY_CBS);
+
+        for (int chunk = 0; chunk < 3; chunk++) {
+            assertSameRows(first.generate(chunk), second.generate(chunk));
+        }
+    }
+
+    @Test
+    void chunkDoesNotDependOnTheChunksGeneratedBeforeIt() {
+        ChunkGenerator inOrder = new ChunkGenerator(options(42), EMPTY_CBS);
+        inOrder.generate(0);
+        inOrder.generate(1);
+        BookChunk afterOthers = inOrder.generate(2);
+
+        BookChunk alone = new ChunkGenerator(options(42), EMPTY_CBS).generate(2);
+
+        assertSameRows(afterOthers, alone);
+    }
+
+    @Test
+    void otherSeedGeneratesOtherRows() {
+        BookChunk seed42 = new ChunkGenerator(options(42), EMPTY_CBS).generate(0);
+        BookChunk seed43 = new ChunkGenerator(options(43), EMPTY_CBS).generate(0);
+
+        assertNotEquals(text(seed42.customers), text(seed43.customers));
+    }
+
+    @Test
+    void chunkSeedsAreDistinctAcrossChunksAndNearbySeeds() {
+        Set<Long> seeds = new HashSet<>();
+        for (long seed = 0; seed < 16; seed++) {
+            for (int chunk = 0; chunk < 10_000; chunk++) {
+                assertTrue(seeds.add(ChunkGenerator.chunkSeed(seed, chunk)), "seed " + seed + " chunk " + chunk);
+            }
+        }
+    }
+
+    @Test
+    void chunksCoverDisjointCustomerIdRanges() {
+        ChunkGenerator generator = new ChunkGenerator(options(42), new ChunkGenerator.IdBase(1_000, 5_000, 5_000));
+
+        Set<String> customerIds = new HashSet<>();
+        int rows = 0;
+        for (int chunk = 0; chunk < 3; chunk++) {
+            for (String row : text(generator.generate(chunk).customers).split("\n")) {
+                customerIds.add(row.substring(0, row.indexOf('\t')));
+                rows++;
+            }
+        }
+
+        // 250 customers in chunks of 100, 100 and 50, numbered after the 1,000 already in cbs
+        assertEquals(250, rows);
+        assertEquals(250, customerIds.size());
+        assertTrue(customerIds.contains("1001"));
+        assertTrue(customerIds.contains("1250"));
+    }
+
+    private static GeneratorOptions options(long seed) {
+        return GeneratorOptions.parse(new String[]{
+                "--customers=250", "--chunk-size=100", "--seed=" + seed, "--as-of=2024-06-30"
+        }, Map.of("DATABASE_URL", "jdbc:postgresql://localhost/rras"));
+    }
+
+    private static void assertSameRows(BookChunk expected, BookChunk actual) {
+        assertArrayEquals(expected.customers.toBytes(), actual.customers.toBytes());
+        assertArrayEquals(expected.accounts.toBytes(), actual.accounts.toBytes());
+        assertArrayEquals(expected.loans.toBytes(), actual.loans.toBytes());
+        assertArrayEquals(expected.performance.toBytes(), actual.performance.toBytes());
+        assertEquals(expected.outstandingCents, actual.outstandingCents);
+    }
+
+    private static String text(CopyBuffer buffer) {
+        return new String(buffer.toBytes(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,45 @@
+package com.wisetech.rras.datagenerator;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CopyBufferTest {
+
+    @Test
+    void decimalWritesExactlyScaleDigits() {
+        assertEquals("12.34", single(buffer -> buffer.decimal(1234, 2)));
+        assertEquals("0.05", single(buffer -> buffer.decimal(5, 2)));
+        assertEquals("1.000000", single(buffer -> buffer.decimal(1_000_000, 6)));
+        assertEquals("0.000042", single(buffer -> buffer.decimal(42, 6)));
+        assertEquals("7", single(buffer -> buffer.decimal(7, 0)));
+    }
+
+    @Test
+    void decimalKeepsTheSignOfSmallNegatives() {
+        assertEquals("-0.05", single(buffer -> buffer.decimal(-5, 2)));
+        assertEquals("-12.34", single(buffer -> buffer.money(-1234)));
+    }
+
+    @Test
+    void rowsAreTabSeparatedWithNullMarker() {
+        CopyBuffer buffer = new CopyBuffer(2);
+        buffer.number(1).text("CORP").nullValue().bool(true).money(250).endRow();
+        buffer.number(2).date(LocalDate.of(2024, 6, 30)).bool(false).endRow();
+
+        assertEquals("1\tCORP\t\\N\tt\t2.50\n2\t2024-06-30\tf\n", new String(buffer.toBytes(), StandardCharsets.UTF_8));
+        assertEquals(2, buffer.rows());
+    }
+
+    private static String single(Consumer<CopyBuffer> write) {
+        CopyBuffer buffer = new CopyBuffer(1);
+        write.accept(buffer);
+        buffer.endRow();
+        String row = new String(buffer.toBytes(), StandardCharsets.UTF_8);
+        return row.substring(0, row.length() - 1);
+    }
+}
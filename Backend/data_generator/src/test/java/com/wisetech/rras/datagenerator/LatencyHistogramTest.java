@@ -0,0 +1,50 @@
+package com.wisetech.rras.datagenerator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsAreExactBelowThirtyTwoMicros() {
+        for (long micros = 0; micros < 32; micros++) {
+            assertEquals(micros, LatencyHistogram.upperEdge(LatencyHistogram.index(micros)));
+        }
+    }
+
+    @Test
+    void bucketEdgeIsWithinAThirtySecondAboveTheValue() {
+        int previous = -1;
+        for (long micros = 1; micros < 1L << 40; micros = micros * 3 / 2 + 1) {
+            int index = LatencyHistogram.index(micros);
+            long edge = LatencyHistogram.upperEdge(index);
+
+            assertTrue(index >= previous, "index goes down at " + micros);
+            assertTrue(edge >= micros, micros + " above its edge " + edge);
+            assertTrue(edge - micros <= micros / 32, micros + " too far below its edge " + edge);
+            previous = index;
+        }
+    }
+
+    @Test
+    void percentilesReportTheUpperEdgeOfTheirBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100; micros++) {
+            histogram.record(micros);
+        }
+
+        assertEquals(new LatencyHistogram.Summary(100, 50, 95, 99, 101), histogram.summary());
+    }
+
+    @Test
+    void drainStartsTheNextIntervalEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5); // clock skew counts as 0
+        histogram.record(40);
+
+        assertEquals(new LatencyHistogram.Summary(2, 0, 40, 40, 40), histogram.drain());
+        assertEquals(new LatencyHistogram.Summary(0, 0, 0, 0, 0), histogram.summary());
+    }
+}
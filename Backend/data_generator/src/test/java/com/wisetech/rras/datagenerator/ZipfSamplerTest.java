@@ -0,0 +1,62 @@
+package com.wisetech.rras.datagenerator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZipfSamplerTest {
+
+    private static final int SAMPLES = 500_000;
+
+    @Test
+    void frequenciesFollowOneOverRank() {
+        int n = 1_000;
+        long[] counts = sample(new ZipfSampler(n, 1.0), n);
+
+        // P(k) = 1 / (k * H(n)) with H(1000) = 7.4855
+        double harmonic = 0;
+        for (int k = 1; k <= n; k++) {
+            harmonic += 1.0 / k;
+        }
+        for (int k : new int[]{1, 2, 10, 100}) {
+            double expected = 1.0 / (k * harmonic);
+            assertEquals(expected, (double) counts[k] / SAMPLES, expected * 0.05 + 0.0005, "rank " + k);
+        }
+    }
+
+    @Test
+    void higherExponentConcentratesOnTheHotRanks() {
+        long[] mild = sample(new ZipfSampler(10_000, 0.5), 10_000);
+        long[] steep = sample(new ZipfSampler(10_000, 1.5), 10_000);
+
+        assertTrue(steep[1] > 10 * mild[1], steep[1] + " vs " + mild[1]);
+    }
+
+    @Test
+    void ranksStayWithinOneToN() {
+        assertEquals(SAMPLES, sample(new ZipfSampler(1, 2.0), 1)[1]);
+        // the bounds check of sample() fails on anything outside 1..7
+        sample(new ZipfSampler(7, 0.01), 7);
+    }
+
+    @Test
+    void rejectsEmptyRangeAndNonPositiveExponent() {
+        assertThrows(IllegalArgumentException.class, () -> new ZipfSampler(0, 1.0));
+        assertThrows(IllegalArgumentException.class, () -> new ZipfSampler(10, 0));
+    }
+
+    private static long[] sample(ZipfSampler zipf, int n) {
+        SplittableRandom random = new SplittableRandom(20240630L);
+        long[] counts = new long[n + 1];
+        for (int i = 0; i < SAMPLES; i++) {
+            int k = zipf.sample(random);
+            assertTrue(k >= 1 && k <= n, "rank " + k);
+            counts[k]++;
+        }
+        return counts;
+    }
+}